@@ -0,0 +1,186 @@
+/*
+ * Filename: AbsolutePointsFile.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access to the binary version of abs_points (written by DataStitcher of MagRecognizer);
+ * the whole file is mapped into memory, all values are little-endian:
+ * header (magic, version, frame rate as double, frame count, points per frame),
+ * coordinates as double (per frame: 13 x values followed by 13 y values),
+ * validity bitmap (one bit per frame), and footer index (offset of coordinates, offset of bitmap, frame count, magic);
+ * coordinates are the same values written to the text file, so the results are the same as reading the text file
+ * (files of version 1 have coordinates as float, their results can differ about the 5th decimal)
+ *
+ * @author Aleman-Meza
+ */
+
+public class AbsolutePointsFile {
+
+	/** constant for file-name of abs_points.bin */
+	public static final String ABS_POINTS_BINARY_FILENAME = "abs_points.bin";
+
+	/** magic number at the start and at the end of the file ('MABS') */
+	public static final int MAGIC = 0x5342414D;
+
+	/** version of the format (coordinates as double) */
+	public static final int VERSION = 2;
+
+	/** older version of the format that can be read too (coordinates as float) */
+	public static final int VERSION_FLOAT = 1;
+
+	/** whether the binary file is read instead of the text file, it can be disabled via -DABS_POINTS_BINARY=false */
+	public static final boolean ENABLED = "false".equalsIgnoreCase( System.getProperty( "ABS_POINTS_BINARY" ) ) == false;
+
+	// size of header in bytes
+	private static final int HEADER_SIZE = 4 + 4 + 8 + 4 + 4;
+
+	// size of footer in bytes
+	private static final int FOOTER_SIZE = 8 + 8 + 4 + 4;
+
+	// the mapped contents of the file
+	private final MappedByteBuffer buffer;
+
+	// the frame rate
+	private final double frameRate;
+
+	// the number of frames
+	private final int frameCount;
+
+	// points per frame (always Frame.MIDLINE)
+	private final int pointsPerFrame;
+
+	// position of the coordinates of the first frame
+	private final int coordinatesOffset;
+
+	// position of the validity bitmap
+	private final int bitmapOffset;
+
+	// size of a coordinate in bytes (8 for double, 4 for float)
+	private final int coordinateSize;
+
+
+	/**
+	 * Constructor, maps the file into memory and verifies header and footer
+	 * @param  file  the binary abs_points file
+	 * @throws  IOException  when the file cannot be read or it is not in the expected format
+	 */
+	public AbsolutePointsFile( File file ) throws IOException {
+		FileInputStream fileInputStream = new FileInputStream( file );
+		try {
+			FileChannel channel = fileInputStream.getChannel();
+			if( channel.size() < HEADER_SIZE + FOOTER_SIZE ) {
+				throw new IOException( "File is too small ( " + file.getAbsolutePath() + " )" );
+			}; // if
+			buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+		}
+		finally {
+			fileInputStream.close();
+		}; // try
+		buffer.order( ByteOrder.LITTLE_ENDIAN );
+		if( buffer.getInt( 0 ) != MAGIC || buffer.getInt( buffer.limit() - 4 ) != MAGIC ) {
+			throw new IOException( "Not an abs_points binary file ( " + file.getAbsolutePath() + " )" );
+		}; // if
+		int version = buffer.getInt( 4 );
+		if( version != VERSION && version != VERSION_FLOAT ) {
+			throw new IOException( "Unknown version (" + version + ") of file ( " + file.getAbsolutePath() + " )" );
+		}; // if
+		coordinateSize = version == VERSION ? 8 : 4;
+		frameRate = buffer.getDouble( 8 );
+		frameCount = buffer.getInt( 16 );
+		pointsPerFrame = buffer.getInt( 20 );
+		int footer = buffer.limit() - FOOTER_SIZE;
+		coordinatesOffset = (int) buffer.getLong( footer );
+		bitmapOffset = (int) buffer.getLong( footer + 8 );
+		if( buffer.getInt( footer + 16 ) != frameCount || pointsPerFrame != Frame.MIDLINE
+		|| bitmapOffset != coordinatesOffset + frameCount * pointsPerFrame * 2 * coordinateSize
+		|| bitmapOffset + ( frameCount + 7 ) / 8 > footer ) {
+			throw new IOException( "Inconsistent index in file ( " + file.getAbsolutePath() + " )" );
+		}; // if
+	}
+
+
+	/**
+	 * Gets the abs_points file to read from a folder: the binary file, unless it is disabled, missing,
+	 * or older than the text file (e.g., the text file was written again by an older data-stitcher)
+	 * @param  directory  the folder
+	 * @return  the file to read (it might not exist)
+	 */
+	public static File getFileToRead( File directory ) {
+		File textFile = new File( directory, Utilities.ABS_POINTS_FILENAME );
+		File binaryFile = new File( directory, ABS_POINTS_BINARY_FILENAME );
+		if( binaryFile.exists() == false ) {
+			return textFile;
+		}; // if
+		if( textFile.exists() == false ) {
+			return binaryFile;
+		}; // if
+		if( ENABLED == false || textFile.lastModified() > binaryFile.lastModified() ) {
+			return textFile;
+		}; // if
+		return binaryFile;
+	}
+
+
+	/**
+	 * Gets the frame rate
+	 * @return  the frame rate
+	 */
+	public double getFrameRate() {
+		return frameRate;
+	}
+
+
+	/**
+	 * Gets the number of frames
+	 * @return  the number of frames (valid and invalid)
+	 */
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+
+	/**
+	 * Whether a frame has valid points
+	 * @param  frame  the frame index
+	 * @return  true when the frame is valid; false otherwise
+	 */
+	public boolean isValid( int frame ) {
+		return ( buffer.get( bitmapOffset + frame / 8 ) & ( 1 << ( frame % 8 ) ) ) != 0;
+	}
+
+
+	/**
+	 * Gets the x coordinate of a point
+	 * @param  frame  the frame index
+	 * @param  point  the point index (0 to 12)
+	 * @return  the x coordinate (mm)
+	 */
+	public double getX( int frame, int point ) {
+		int position = coordinatesOffset + ( frame * pointsPerFrame * 2 + point ) * coordinateSize;
+		return coordinateSize == 8 ? buffer.getDouble( position ) : buffer.getFloat( position );
+	}
+
+
+	/**
+	 * Gets the y coordinate of a point
+	 * @param  frame  the frame index
+	 * @param  point  the point index (0 to 12)
+	 * @return  the y coordinate (mm)
+	 */
+	public double getY( int frame, int point ) {
+		int position = coordinatesOffset + ( frame * pointsPerFrame * 2 + pointsPerFrame + point ) * coordinateSize;
+		return coordinateSize == 8 ? buffer.getDouble( position ) : buffer.getFloat( position );
+	}
+
+} // class AbsolutePointsFile
+
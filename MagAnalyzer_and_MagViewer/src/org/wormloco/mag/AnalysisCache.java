@@ -0,0 +1,163 @@
+/*
+ * Filename: AnalysisCache.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.zip.CRC32;
+
+/**
+ * Cache of the parameter values of one folder (the metrics row of Video), kept in a text file inside the folder;
+ * the cache is keyed by size and last-modified time of abs_points and frametime.txt
+ * and by a hash of the analysis constants, it is used only while all of them match
+ *
+ * @author Aleman-Meza
+ */
+
+public class AnalysisCache {
+
+	/** file-name of the cache file */
+	public static final String FILENAME = "analysis_cache.txt";
+
+	/** version of the analysis, increase it whenever the calculation of parameters changes */
+	public static final int ANALYSIS_VERSION = 1;
+
+	/** whether the cache is used, it can be disabled via -DANALYSIS_CACHE=false */
+	public static final boolean ENABLED = "false".equalsIgnoreCase( System.getProperty( "ANALYSIS_CACHE" ) ) == false;
+
+	// prefix of the first line (the key), changed when the format of the file changes
+	private static final String KEY_PREFIX = "#analysis_cache2\t";
+
+	// suffix of temporary file
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	// hash of the analysis constants
+	private static final String CONSTANTS_HASH;
+
+	static { // static constructor
+		String constants = "version=" + ANALYSIS_VERSION
+			+ ";BENDING_ANGLE_THRESHOLD=" + Video.BENDING_ANGLE_THRESHOLD
+			+ ";DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE=" + Video.DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE
+			+ ";ANGLE_THRESHOLD_FOR_DIRECTION_CHANGE=" + Video.ANGLE_THRESHOLD_FOR_DIRECTION_CHANGE
+			+ ";MIDLINE=" + Frame.MIDLINE
+			+ ";RADIOUS=" + Frame.RADIOUS
+			+ ";MINIMUM_STRIDES_FOR_BEING_VALID_STRIDE=" + Run.MINIMUM_STRIDES_FOR_BEING_VALID_STRIDE;
+		CRC32 crc32 = new CRC32();
+		crc32.update( constants.getBytes() );
+		CONSTANTS_HASH = Long.toHexString( crc32.getValue() );
+	}
+
+	// the folder
+	private final File folder;
+
+
+	/**
+	 * Constructor
+	 * @param  folder  the folder (containing abs_points)
+	 */
+	public AnalysisCache( File folder ) {
+		this.folder = folder;
+	}
+
+
+	/**
+	 * Gets the key of the current contents of the folder:
+	 * hash of constants, abs_points file (the one that is read, see AbsolutePointsFile.getFileToRead) and frametime.txt (name, size, last-modified)
+	 * @return  the key
+	 */
+	public String getKey() {
+		File absPointsFile = AbsolutePointsFile.getFileToRead( folder );
+		File frametimeFile = new File( folder, Video.FRAMETIME_TXT );
+		return KEY_PREFIX + CONSTANTS_HASH
+			+ "\t" + absPointsFile.getName() + "\t" + absPointsFile.length() + "\t" + absPointsFile.lastModified()
+			+ "\t" + frametimeFile.getName() + "\t" + frametimeFile.length() + "\t" + frametimeFile.lastModified();
+	}
+
+
+	/**
+	 * Reads the cached values
+	 * @return  the values (one per column of MetricsSchema), or null when there is no cache or it is out of date
+	 */
+	public MetricsRow read() {
+		File file = new File( folder, FILENAME );
+		if( file.exists() == false ) {
+			return null;
+		}; // if
+		MetricsRow row = new MetricsRow();
+		boolean[] found = new boolean[ MetricsSchema.size() ];
+		int count = 0;
+		BufferedReader bufferedReader = null;
+		try {
+			bufferedReader = new BufferedReader( new FileReader( file ) );
+			String line = bufferedReader.readLine();
+			if( line == null || line.equals( getKey() ) == false ) {
+				bufferedReader.close();
+				return null;
+			}; // if
+			while( ( line = bufferedReader.readLine() ) != null ) {
+				int tab = line.indexOf( '\t' );
+				int index = tab < 0 ? -1 : MetricsSchema.find( line.substring( 0, tab ) );
+				if( index < 0 || found[ index ] == true || MetricsSchema.getType( index ) == MetricsSchema.TEXT ) {
+					bufferedReader.close();
+					return null;
+				}; // if
+				row.set( index, Double.parseDouble( line.substring( tab + 1 ) ) );
+				found[ index ] = true;
+				count++;
+			}; // while
+			bufferedReader.close();
+		}
+		catch( IOException ioe ) {
+			// a broken cache is just ignored (values get computed again)
+			return null;
+		}
+		catch( NumberFormatException nfe ) {
+			return null;
+		}; // try
+		// all columns (except the label) must be there
+		if( count != MetricsSchema.size() - 1 ) {
+			return null;
+		}; // if
+		return row;
+	}
+
+
+	/**
+	 * Writes the values into the cache file (first into a temporary file, then it is moved into place)
+	 * @param  row  the values
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String write( MetricsRow row ) {
+		File file = new File( folder, FILENAME );
+		File temporaryFile = new File( folder, FILENAME + TEMPORARY_SUFFIX );
+		try {
+			PrintWriter printWriter = new PrintWriter( new BufferedWriter( new FileWriter( temporaryFile ) ) );
+			printWriter.println( getKey() );
+			for( int index = 0; index < MetricsSchema.size(); index++ ) {
+				if( MetricsSchema.getType( index ) != MetricsSchema.TEXT ) {
+					printWriter.println( MetricsSchema.getId( index ) + "\t" + row.get( index ) );
+				}; // if
+			}; // for
+			printWriter.close();
+			if( printWriter.checkError() == true ) {
+				temporaryFile.delete();
+				return "Error writing " + temporaryFile.getAbsolutePath();
+			}; // if
+		}
+		catch( IOException ioe ) {
+			temporaryFile.delete();
+			return "Unable to write analysis cache: " + ioe;
+		}; // try
+		return Utilities.moveIntoPlace( temporaryFile, file );
+	}
+
+} // class AnalysisCache
+
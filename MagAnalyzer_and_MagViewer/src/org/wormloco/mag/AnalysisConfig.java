@@ -0,0 +1,214 @@
+/*
+ * Filename: AnalysisConfig.java
+ */
+
+package org.wormloco.mag;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The thresholds used when calculating parameters of a video (immutable);
+ * the default configuration has the values of the constants in Video, Run and Frame.
+ * A list of configurations (a grid) can be made for a parameter sweep, e.g., from
+ * "BENDING_ANGLE_THRESHOLD=40,45,50" and "RADIOUS=22,23"
+ *
+ * @author Aleman-Meza
+ */
+
+public class AnalysisConfig {
+
+	/** names of the parameters (same names as the constants) */
+	public static final String[] PARAMETER_NAMES = new String[] {
+		"BENDING_ANGLE_THRESHOLD",
+		"DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE",
+		"ANGLE_THRESHOLD_FOR_DIRECTION_CHANGE",
+		"MINIMUM_STRIDES_FOR_BEING_VALID_STRIDE",
+		"RADIOUS" };
+
+	/** the default configuration */
+	public static final AnalysisConfig DEFAULT = new AnalysisConfig(
+		Video.BENDING_ANGLE_THRESHOLD,
+		Video.DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE,
+		Video.ANGLE_THRESHOLD_FOR_DIRECTION_CHANGE,
+		Run.MINIMUM_STRIDES_FOR_BEING_VALID_STRIDE,
+		Frame.RADIOUS );
+
+	// the bending angle threshold
+	private final double bendingAngleThreshold;
+
+	// the threshold of distance for direction change
+	private final double distanceThresholdForDirectionChange;
+
+	// the threshold of angle for direction change
+	private final double angleThresholdForDirectionChange;
+
+	// minimum number of strides so that a run is valid
+	private final int minimumStridesForBeingValidStride;
+
+	// radious of 'inside' measurements
+	private final double radious;
+
+
+	/**
+	 * Constructor
+	 * @param  bendingAngleThreshold  the bending angle threshold
+	 * @param  distanceThresholdForDirectionChange  the threshold of distance for direction change
+	 * @param  angleThresholdForDirectionChange  the threshold of angle for direction change
+	 * @param  minimumStridesForBeingValidStride  minimum number of strides so that a run is valid
+	 * @param  radious  radious of 'inside' measurements
+	 */
+	public AnalysisConfig( double bendingAngleThreshold, double distanceThresholdForDirectionChange,
+			double angleThresholdForDirectionChange, int minimumStridesForBeingValidStride, double radious ) {
+		this.bendingAngleThreshold = bendingAngleThreshold;
+		this.distanceThresholdForDirectionChange = distanceThresholdForDirectionChange;
+		this.angleThresholdForDirectionChange = angleThresholdForDirectionChange;
+		this.minimumStridesForBeingValidStride = minimumStridesForBeingValidStride;
+		this.radious = radious;
+	}
+
+
+	/** @return  the bending angle threshold */
+	public double getBendingAngleThreshold() {
+		return bendingAngleThreshold;
+	}
+
+
+	/** @return  the threshold of distance for direction change */
+	public double getDistanceThresholdForDirectionChange() {
+		return distanceThresholdForDirectionChange;
+	}
+
+
+	/** @return  the threshold of angle for direction change */
+	public double getAngleThresholdForDirectionChange() {
+		return angleThresholdForDirectionChange;
+	}
+
+
+	/** @return  minimum number of strides so that a run is valid */
+	public int getMinimumStridesForBeingValidStride() {
+		return minimumStridesForBeingValidStride;
+	}
+
+
+	/** @return  radious of 'inside' measurements */
+	public double getRadious() {
+		return radious;
+	}
+
+
+	/**
+	 * Gets the value of a parameter
+	 * @param  index  the index of the parameter (same as in PARAMETER_NAMES)
+	 * @return  the value
+	 */
+	public double getValue( int index ) {
+		switch( index ) {
+			case 0: return bendingAngleThreshold;
+			case 1: return distanceThresholdForDirectionChange;
+			case 2: return angleThresholdForDirectionChange;
+			case 3: return minimumStridesForBeingValidStride;
+			case 4: return radious;
+			default: throw new IllegalArgumentException( "Invalid index of parameter: " + index );
+		} // switch
+	}
+
+
+	/**
+	 * Makes a copy of this configuration with a different value of a parameter
+	 * @param  name  the name of the parameter (one of PARAMETER_NAMES)
+	 * @param  value  the value
+	 * @return  the new configuration
+	 * @throws  IllegalArgumentException  when the name is unknown or the value is not valid for the parameter
+	 */
+	public AnalysisConfig with( String name, double value ) {
+		if( Double.isNaN( value ) == true || Double.isInfinite( value ) == true || value < 0 ) {
+			throw new IllegalArgumentException( "Invalid value of " + name + ": " + value );
+		}; // if
+		double[] values = new double[ PARAMETER_NAMES.length ];
+		int found = -1;
+		for( int index = 0; index < PARAMETER_NAMES.length; index++ ) {
+			values[ index ] = getValue( index );
+			if( PARAMETER_NAMES[ index ].equalsIgnoreCase( name ) == true ) {
+				values[ index ] = value;
+				found = index;
+			}; // if
+		}; // for
+		if( found == -1 ) {
+			throw new IllegalArgumentException( "Unknown parameter: " + name );
+		}; // if
+		if( values[ 3 ] != Math.floor( values[ 3 ] ) ) {
+			throw new IllegalArgumentException( "Invalid value of " + name + " (it must be an integer): " + value );
+		}; // if
+		return new AnalysisConfig( values[ 0 ], values[ 1 ], values[ 2 ], (int) values[ 3 ], values[ 4 ] );
+	}
+
+
+	/**
+	 * Makes the grid of configurations (every combination of values), starting from the default configuration
+	 * @param  specificationList  list of specifications, each one like "NAME=value1,value2,..."
+	 * @return  the configurations (the first parameter changes slowest)
+	 * @throws  IllegalArgumentException  when a specification is not valid
+	 */
+	public static List<AnalysisConfig> createGrid( List<String> specificationList ) {
+		List<AnalysisConfig> gridList = new ArrayList<AnalysisConfig>();
+		gridList.add( DEFAULT );
+		for( String specification : specificationList ) {
+			int equals = specification.indexOf( '=' );
+			if( equals <= 0 || equals == specification.length() - 1 ) {
+				throw new IllegalArgumentException( "Invalid sweep specification (expected NAME=value1,value2,...): " + specification );
+			}; // if
+			String name = specification.substring( 0, equals ).trim();
+			String[] parts = specification.substring( equals + 1 ).split( "," );
+			List<AnalysisConfig> newList = new ArrayList<AnalysisConfig>();
+			for( AnalysisConfig config : gridList ) {
+				for( String part : parts ) {
+					double value = 0;
+					try {
+						value = Double.parseDouble( part.trim() );
+					}
+					catch( NumberFormatException nfe ) {
+						throw new IllegalArgumentException( "Invalid value of " + name + ": " + part );
+					}; // try
+					newList.add( config.with( name, value ) );
+				}; // for
+			}; // for
+			gridList = newList;
+		}; // for
+		return gridList;
+	}
+
+
+	/**
+	 * Returns the values of the parameters separated by tabs (same order as PARAMETER_NAMES)
+	 * @return  the values separated by tabs
+	 */
+	public String toColumns() {
+		StringBuilder builder = new StringBuilder();
+		for( int index = 0; index < PARAMETER_NAMES.length; index++ ) {
+			if( index > 0 ) {
+				builder.append( '\t' );
+			}; // if
+			if( index == 3 ) {
+				builder.append( minimumStridesForBeingValidStride );
+			}
+			else {
+				builder.append( getValue( index ) );
+			}; // if
+		}; // for
+		return builder.toString();
+	}
+
+
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		String[] values = toColumns().split( "\t" );
+		for( int index = 0; index < PARAMETER_NAMES.length; index++ ) {
+			builder.append( index == 0 ? "" : ";" ).append( PARAMETER_NAMES[ index ] ).append( "=" ).append( values[ index ] );
+		}; // for
+		return builder.toString();
+	}
+
+} // class AnalysisConfig
+
@@ -7,6 +7,7 @@ package org.wormloco.mag;
 import java.awt.image.BufferedImage;
 
 import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Image;
 
@@ -33,6 +34,8 @@ import com.sun.media.BasicCodec;
  * The <code>BasicEffect</code> class simplifies the task of processing video effects. Much of the code was
  * copied from com.sun.media.effects.JAIEffect and then commented. For convenience purposes, subclasses need
  * only implement the <code>getName</code> and <code>process</code> methods.
+ * The <code>process</code> method (codec thread) does not draw on the panel, it posts the state of each frame
+ * into a mailbox; the panel takes the latest state and calls <code>render</code> (event-dispatch thread).
  * Copyright (c) 2007 Eviatar Yemini & Medical Research Council, UK
  * All rights reserved.
  * 
@@ -45,20 +48,33 @@ public abstract class BasicEffect extends BasicCodec implements Effect{
 	// reference to the panel onto which effect is shown
 	protected JPanel targetPanel;
 
+	// the latest state posted by the codec thread
+	protected final RenderMailbox mailbox = new RenderMailbox();
+
 	/**
 	 * A utility to convert a <code>javax.media.Buffer</code> into a <code>java.awt.Image</code>.
 	 */
 	private BufferToImage bufferToImage = null;
 
-	// for formatting output purposes 
-	protected static final NumberFormat formatter;
+	// for formatting output purposes (one per thread because formatters are not thread-safe)
+	protected static final ThreadLocal<NumberFormat> formatter;
 
 	// for formatting output purposes, zero decimals
-	protected static final NumberFormat formatter0;
+	protected static final ThreadLocal<NumberFormat> formatter0;
 
 	static { // static constructor
-		formatter = new DecimalFormat( "#0.0#" );
-		formatter0 = new DecimalFormat( "#0" );
+		formatter = new ThreadLocal<NumberFormat>() {
+			@Override
+			protected NumberFormat initialValue() {
+				return new DecimalFormat( "#0.0#" );
+			}
+		};
+		formatter0 = new ThreadLocal<NumberFormat>() {
+			@Override
+			protected NumberFormat initialValue() {
+				return new DecimalFormat( "#0" );
+			}
+		};
 	}
 
 	/**
@@ -164,7 +180,7 @@ public abstract class BasicEffect extends BasicCodec implements Effect{
 		if( value == null ) {
 			return "NULL";
 		}; // if
-		return formatter.format( value );
+		return formatter.get().format( value );
 	}
 
 
@@ -177,10 +193,38 @@ public abstract class BasicEffect extends BasicCodec implements Effect{
 		if( value == null ) {
 			return "NULL";
 		}; // if
-		return formatter0.format( value );
+		return formatter0.get().format( value );
 	}
 
 
+	/**
+	 * Gets the mailbox where the state of each frame is posted
+	 * @return  the mailbox
+	 */
+	public RenderMailbox getMailbox() {
+		return mailbox;
+	}
+
+
+	/**
+	 * Makes the state of any frame (e.g., when scrubbing); effects that draw only from the video data ignore the image
+	 * @param  frameNumber  the frame number
+	 * @param  image  the decoded image of the frame (it is not modified), can be null
+	 * @return  the state, or null when it can not be made
+	 */
+	public RenderState createState( int frameNumber, BufferedImage image ) {
+		return new RenderState( frameNumber, null );
+	}
+
+
+	/**
+	 * Draws the state of a frame (called on the event-dispatch thread)
+	 * @param  graphics  graphics of the panel
+	 * @param  state  the state of the frame
+	 */
+	public abstract void render( Graphics graphics, RenderState state );
+
+
 	/** get the resources needed by this effect **/
 	public void open() throws ResourceUnavailableException {
 	}
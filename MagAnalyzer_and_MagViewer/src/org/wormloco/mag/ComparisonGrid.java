@@ -0,0 +1,297 @@
+/*
+ * Filename: ComparisonGrid.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.BorderLayout;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+
+import java.io.PrintStream;
+
+import javax.swing.JButton;
+import javax.swing.JFrame;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JSlider;
+import javax.swing.Timer;
+
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Shows several larvae side by side (a grid of tiles), all of them at the same time since their first frame
+ * (from frametime.txt); the frames of all tiles are made by one shared TileDecodeScheduler,
+ * the repaint loop (a Swing timer) moves the clock and shows the latest frame of each tile
+ *
+ * @author Aleman-Meza
+ */
+
+public class ComparisonGrid extends JPanel implements ActionListener, ChangeListener {
+
+	// serial version UID
+	private static final long serialVersionUID = 1L;
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	/** maximum number of tiles */
+	public static final int MAX_TILES = 16;
+
+	/** number of threads that make the frames of the tiles */
+	public static final int THREADS = 4;
+
+	/** constant for the play/pause button */
+	public static final String PLAY = "Play";
+
+	/** constant for the play/pause button */
+	public static final String PAUSE = "Pause";
+
+	/** constant for the action of the repaint loop */
+	public static final String TICK = "Grid tick";
+
+	// steps of the time slider per second
+	private static final int SLIDER_STEPS_PER_SECOND = 10;
+
+	// the tiles
+	private final ComparisonTile[] tiles;
+
+	// the panels showing the tiles
+	private final TilePanel[] tilePanels;
+
+	// makes the frames of the tiles
+	private final TileDecodeScheduler scheduler;
+
+	// the repaint loop
+	private final Timer timer = new Timer( MagViewer.RENDER_TICK_MILLISECONDS, this );
+
+	// play/pause button
+	private final JButton playButton = new JButton( PLAY );
+
+	// the time slider
+	private final JSlider timeSlider;
+
+	// shows the time
+	private final JLabel timeLabel = new JLabel( " " );
+
+	// shows the frames skipped
+	private final JLabel statusLabel = new JLabel( " " );
+
+	// the longest duration of the tiles (seconds)
+	private final double duration;
+
+	// the clock: seconds since the first frame
+	private double clock = 0;
+
+	// whether the clock is moving
+	private boolean playing = false;
+
+	// time of the previous tick (milliseconds)
+	private long previousTick = 0;
+
+	// whether the slider is being moved by the clock (not by the user)
+	private boolean updatingSlider = false;
+
+
+	/**
+	 * Constructor
+	 * @param  tiles  the tiles (already open)
+	 */
+	public ComparisonGrid( ComparisonTile[] tiles ) {
+		super( new BorderLayout() );
+		this.tiles = tiles;
+		scheduler = new TileDecodeScheduler( Math.min( THREADS, Math.max( 1, tiles.length ) ) );
+
+		int columns = (int) Math.ceil( Math.sqrt( tiles.length ) );
+		int rows = (int) Math.ceil( tiles.length * 1.0 / Math.max( 1, columns ) );
+		JPanel gridPanel = new JPanel( new GridLayout( Math.max( 1, rows ), Math.max( 1, columns ), 2, 2 ) );
+		gridPanel.setBackground( Color.DARK_GRAY );
+		tilePanels = new TilePanel[ tiles.length ];
+		double longest = 0;
+		for( int i = 0; i < tiles.length; i++ ) {
+			tilePanels[ i ] = new TilePanel();
+			gridPanel.add( tilePanels[ i ] );
+			longest = Math.max( longest, tiles[ i ].getDataset().getDuration() );
+		}; // for
+		duration = longest;
+		add( gridPanel, BorderLayout.CENTER );
+
+		timeSlider = new JSlider( 0, (int) Math.ceil( duration * SLIDER_STEPS_PER_SECOND ), 0 );
+		timeSlider.addChangeListener( this );
+		playButton.setActionCommand( PLAY );
+		playButton.addActionListener( this );
+		JPanel controlPanel = new JPanel( new BorderLayout() );
+		controlPanel.add( playButton, BorderLayout.WEST );
+		controlPanel.add( timeSlider, BorderLayout.CENTER );
+		controlPanel.add( timeLabel, BorderLayout.EAST );
+		controlPanel.add( statusLabel, BorderLayout.SOUTH );
+		add( controlPanel, BorderLayout.SOUTH );
+
+		timer.setActionCommand( TICK );
+		timer.start();
+	}
+
+
+	/**
+	 * Actions of the button and of the repaint loop take place here
+	 * @param  actionEvent  the action-event object
+	 */
+	public void actionPerformed( ActionEvent actionEvent ) {
+		if( TICK.equals( actionEvent.getActionCommand() ) == true ) {
+			tick();
+			return;
+		}; // if
+		if( PLAY.equals( actionEvent.getActionCommand() ) == true ) {
+			if( clock >= duration ) {
+				clock = 0;
+			}; // if
+			playing = true;
+			playButton.setText( PAUSE );
+			playButton.setActionCommand( PAUSE );
+			return;
+		}; // if
+		if( PAUSE.equals( actionEvent.getActionCommand() ) == true ) {
+			playing = false;
+			playButton.setText( PLAY );
+			playButton.setActionCommand( PLAY );
+		}; // if
+	}
+
+
+	/**
+	 * Time slider moved by the user: the clock goes to that time
+	 * @param  changeEvent  the change-event object
+	 */
+	public void stateChanged( ChangeEvent changeEvent ) {
+		if( updatingSlider == true ) {
+			return;
+		}; // if
+		clock = timeSlider.getValue() * 1.0 / SLIDER_STEPS_PER_SECOND;
+	}
+
+
+	/**
+	 * One tick of the repaint loop: moves the clock, schedules the frames of the tiles and shows the latest ones
+	 */
+	private void tick() {
+		long now = System.currentTimeMillis();
+		if( playing == true && previousTick > 0 ) {
+			clock += ( now - previousTick ) / 1000.0;
+			if( clock >= duration ) {
+				clock = duration;
+				actionPerformed( new ActionEvent( this, ActionEvent.ACTION_PERFORMED, PAUSE ) );
+			}; // if
+		}; // if
+		previousTick = now;
+
+		// all tiles have the same size
+		int width = tilePanels.length == 0 ? 0 : tilePanels[ 0 ].getWidth();
+		int height = tilePanels.length == 0 ? 0 : tilePanels[ 0 ].getHeight();
+		if( width > 0 && height > 0 ) {
+			scheduler.schedule( tiles, clock, width, height );
+		}; // if
+		long skipped = 0;
+		for( int i = 0; i < tiles.length; i++ ) {
+			tilePanels[ i ].update( tiles[ i ].getMailbox().take() );
+			skipped += tiles[ i ].getSkippedCount();
+		}; // for
+
+		updatingSlider = true;
+		timeSlider.setValue( (int) Math.round( clock * SLIDER_STEPS_PER_SECOND ) );
+		updatingSlider = false;
+		timeLabel.setText( " " + BasicEffect.format( clock ) + " / " + BasicEffect.format( duration ) + " sec. " );
+		statusLabel.setText( "Tiles: " + tiles.length + ".   Frames skipped (tiles too slow): " + skipped );
+	}
+
+
+	/**
+	 * Stops the repaint loop and the scheduler, and closes the movies of the tiles once no frame is being made
+	 * (a movie still being decoded is left open rather than closed under the decoder)
+	 */
+	public void close() {
+		timer.stop();
+		if( scheduler.shutdown() == false ) {
+			out.println( "Comparison grid: frames still being made, the movies are left open" );
+			return;
+		}; // if
+		for( int i = 0; i < tiles.length; i++ ) {
+			tiles[ i ].close();
+		}; // for
+	}
+
+
+	/**
+	 * Shows a grid in its own window, closing the window closes the grid
+	 * @param  tiles  the tiles (already open)
+	 * @return  the window
+	 */
+	public static JFrame showGrid( ComparisonTile[] tiles ) {
+		final ComparisonGrid grid = new ComparisonGrid( tiles );
+		JFrame frame = new JFrame( "Compare Videos (" + tiles.length + " larvae)" );
+		frame.setDefaultCloseOperation( JFrame.DISPOSE_ON_CLOSE );
+		frame.addWindowListener( new WindowAdapter() {
+			public void windowClosed( WindowEvent windowEvent ) {
+				grid.close();
+			}
+		} );
+		frame.getContentPane().add( grid );
+		frame.setSize( new Dimension( 1024, 800 ) );
+		frame.setVisible( true );
+		return frame;
+	}
+
+
+	/**
+	 * Panel (double-buffered) that shows the latest frame made for a tile
+	 */
+	private static class TilePanel extends JPanel {
+
+		// serial version UID
+		private static final long serialVersionUID = 1L;
+
+		// the state being shown, null when none
+		private RenderState state = null;
+
+		/**
+		 * Constructor
+		 */
+		public TilePanel() {
+			super( true );
+			setBackground( Color.BLACK );
+		}
+
+		/**
+		 * Shows a new state (event-dispatch thread)
+		 * @param  newState  the state, null when there is nothing new
+		 */
+		public void update( RenderState newState ) {
+			if( newState == null ) {
+				return;
+			}; // if
+			state = newState;
+			repaint();
+		}
+
+		/**
+		 * Paints the image of the state (already downscaled to the size of the tile)
+		 * @param  graphics  the graphics object
+		 */
+		protected void paintComponent( Graphics graphics ) {
+			super.paintComponent( graphics );
+			RenderState tmp = state;
+			if( tmp != null && tmp.image != null ) {
+				graphics.drawImage( tmp.image, 0, 0, null );
+			}; // if
+		}
+
+	} // class TilePanel
+
+} // class ComparisonGrid
+
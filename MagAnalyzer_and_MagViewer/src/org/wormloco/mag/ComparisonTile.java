@@ -0,0 +1,244 @@
+/*
+ * Filename: ComparisonTile.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.swing.JPanel;
+
+/**
+ * One larva of the comparison grid: its movie is decoded (its own decoder), the frame is downscaled once
+ * to the size of the tile, and then the midline (from the pixel points) and a mini track are drawn on the small image.
+ * At most one frame of a tile is being made at any time (see TileDecodeScheduler)
+ *
+ * @author Aleman-Meza
+ */
+
+public class ComparisonTile {
+
+	/** file-name of the movie (as named by MagRecognizer) */
+	public static final String MOVIE_FILENAME = "movie.avi";
+
+	/** width and height of the mini track (pixels) */
+	public static final int TRACK_SIZE = 90;
+
+	// font of the label
+	private static final Font FONT = new Font( null, Font.PLAIN, 11 );
+
+	// the parsed data of the larva
+	private final LarvaDataset dataset;
+
+	// label of the tile (plate and larva folder)
+	private final String label;
+
+	// the latest frame made, taken by the repaint loop
+	private final RenderMailbox mailbox = new RenderMailbox();
+
+	// whether a frame is being made
+	private final AtomicBoolean busy = new AtomicBoolean( false );
+
+	// the frame scheduled last, -1 when none
+	private volatile int scheduledFrame = -1;
+
+	// number of frames jumped over because the tile was busy (never made)
+	private volatile long skippedCount = 0;
+
+	// the decoder, null when not open
+	private MovieDecoder decoder = null;
+
+	// draws the mini track
+	private TrackEffect trackEffect = null;
+
+
+	/**
+	 * Constructor
+	 * @param  dataset  the parsed data of the larva (already loaded)
+	 */
+	public ComparisonTile( LarvaDataset dataset ) {
+		this.dataset = dataset;
+		File directory = dataset.getDirectory();
+		String parent = directory.getAbsoluteFile().getParentFile() == null ? "" : directory.getAbsoluteFile().getParentFile().getName() + File.separator;
+		label = parent + directory.getName();
+	}
+
+
+	/**
+	 * Creates the decoder of the movie (subclasses may decode frames differently)
+	 * @param  movieFile  the movie file
+	 * @return  the decoder (not open yet)
+	 */
+	protected MovieDecoder createDecoder( File movieFile ) {
+		return new MovieDecoder( movieFile );
+	}
+
+
+	/**
+	 * Opens the movie and prepares the mini track
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String open() {
+		File movieFile = new File( dataset.getDirectory(), MOVIE_FILENAME );
+		decoder = createDecoder( movieFile );
+		String error = decoder.open();
+		if( error != null ) {
+			return error;
+		}; // if
+		// the panel is never shown, it tells the size of the mini track (track-image.png of the larva is left as it is)
+		JPanel trackPanel = new JPanel();
+		trackPanel.setSize( TRACK_SIZE, TRACK_SIZE );
+		trackEffect = new TrackEffect( trackPanel, dataset.getVideo() );
+		return null;
+	}
+
+
+	/**
+	 * Closes the movie
+	 */
+	public void close() {
+		if( decoder != null ) {
+			decoder.close();
+			decoder = null;
+		}; // if
+	}
+
+
+	/**
+	 * Makes the image of a frame: decoded, downscaled to fit the tile, then midline and mini track are drawn
+	 * (called by one thread at a time, see tryStart)
+	 * @param  frameNumber  the frame number
+	 * @param  width  width of the tile
+	 * @param  height  height of the tile
+	 * @return  the state of the frame, or null when it could not be decoded
+	 */
+	public RenderState makeFrame( int frameNumber, int width, int height ) {
+		BufferedImage image = decoder.decode( frameNumber );
+		if( image == null ) {
+			return null;
+		}; // if
+		double scale = Math.min( width * 1.0 / image.getWidth(), height * 1.0 / image.getHeight() );
+		int tileWidth = Math.max( 1, (int) Math.round( image.getWidth() * scale ) );
+		int tileHeight = Math.max( 1, (int) Math.round( image.getHeight() * scale ) );
+		BufferedImage tileImage = new BufferedImage( tileWidth, tileHeight, BufferedImage.TYPE_INT_RGB );
+		Graphics2D graphics = tileImage.createGraphics();
+		graphics.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR );
+		graphics.drawImage( image, 0, 0, tileWidth, tileHeight, null );
+
+		// the midline
+		Video video = dataset.getVideo();
+		Frame frame = video.frameList.get( frameNumber );
+		int[][][] points = dataset.getPoints();
+		if( points != null && frameNumber < points.length && points[ frameNumber ] != null ) {
+			graphics.setColor( frame.onTheRepellent == true ? Color.BLUE : Color.RED );
+			int prevX = 0;
+			int prevY = 0;
+			for( int i = 0; i < points[ frameNumber ][ 0 ].length; i++ ) {
+				int x = (int) Math.round( points[ frameNumber ][ 0 ][ i ] * scale );
+				int y = (int) Math.round( points[ frameNumber ][ 1 ][ i ] * scale );
+				if( i == 0 ) {
+					graphics.fillOval( x - 2, y - 2, 5, 5 );
+				}
+				else {
+					graphics.drawLine( prevX, prevY, x, y );
+				}; // if
+				prevX = x;
+				prevY = y;
+			}; // for
+		}; // if
+
+		// the label and the time
+		graphics.setFont( FONT );
+		graphics.setColor( Color.YELLOW );
+		graphics.drawString( label, 4, 13 );
+		graphics.drawString( "Frame: " + frameNumber + "  (" + BasicEffect.format( dataset.getFrameTime( frameNumber ) ) + " sec.)", 4, 26 );
+
+		// the mini track, bottom-right corner
+		if( tileWidth > TRACK_SIZE * 2 && tileHeight > TRACK_SIZE * 2 ) {
+			graphics.translate( tileWidth - TRACK_SIZE, tileHeight - TRACK_SIZE );
+			trackEffect.render( graphics, new RenderState( frameNumber, null ) );
+		}; // if
+		graphics.dispose();
+		return new RenderState( frameNumber, tileImage );
+	}
+
+
+	/**
+	 * Marks the tile as busy
+	 * @param  frameNumber  the frame about to be made
+	 * @return  true when the tile was not busy (the frame must be made, then call finish); false when it was busy
+	 */
+	public boolean tryStart( int frameNumber ) {
+		if( busy.compareAndSet( false, true ) == false ) {
+			return false;
+		}; // if
+		if( scheduledFrame != -1 && frameNumber > scheduledFrame + 1 ) {
+			skippedCount += frameNumber - scheduledFrame - 1;
+		}; // if
+		scheduledFrame = frameNumber;
+		return true;
+	}
+
+
+	/**
+	 * Marks the tile as no longer busy
+	 */
+	public void finish() {
+		busy.set( false );
+	}
+
+
+	/**
+	 * Gets the frame scheduled last
+	 * @return  the frame number, -1 when none
+	 */
+	public int getScheduledFrame() {
+		return scheduledFrame;
+	}
+
+
+	/**
+	 * Gets the number of frames jumped over (going forward) because the tile was busy
+	 * @return  the number of frames
+	 */
+	public long getSkippedCount() {
+		return skippedCount;
+	}
+
+
+	/**
+	 * Gets the mailbox of the frames made
+	 * @return  the mailbox
+	 */
+	public RenderMailbox getMailbox() {
+		return mailbox;
+	}
+
+
+	/**
+	 * Gets the parsed data of the larva
+	 * @return  the data
+	 */
+	public LarvaDataset getDataset() {
+		return dataset;
+	}
+
+
+	/**
+	 * Gets the label of the tile
+	 * @return  plate and larva folder
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+} // class ComparisonTile
+
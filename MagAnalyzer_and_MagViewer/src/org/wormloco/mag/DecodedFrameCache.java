@@ -0,0 +1,124 @@
+/*
+ * Filename: DecodedFrameCache.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.image.BufferedImage;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Decoded images of video frames by frame number, least-recently-used ones are removed when the memory
+ * goes above a budget; images in the cache are never modified (they are copied before drawing on them).
+ * Thread-safe
+ *
+ * @author Aleman-Meza
+ */
+
+public class DecodedFrameCache {
+
+	/** default memory budget (bytes), about 150 frames of 640x480 */
+	public static final long DEFAULT_BUDGET_BYTES = 192L * 1024 * 1024;
+
+	// the memory budget (bytes)
+	private final long budgetBytes;
+
+	// the images, in access order
+	private final LinkedHashMap<Integer,BufferedImage> frameMap = new LinkedHashMap<Integer,BufferedImage>( 256, 0.75f, true );
+
+	// memory of the images
+	private long totalBytes = 0;
+
+
+	/**
+	 * Constructor
+	 * @param  budgetBytes  the memory budget (bytes)
+	 */
+	public DecodedFrameCache( long budgetBytes ) {
+		this.budgetBytes = budgetBytes;
+	}
+
+
+	/**
+	 * Gets the memory of an image
+	 * @param  image  the image
+	 * @return  number of bytes (four per pixel)
+	 */
+	public static long getBytes( BufferedImage image ) {
+		return image.getWidth() * (long) image.getHeight() * 4;
+	}
+
+
+	/**
+	 * Gets the image of a frame (it becomes the most recently used)
+	 * @param  frameNumber  the frame number
+	 * @return  the image, or null when not in the cache
+	 */
+	public synchronized BufferedImage get( int frameNumber ) {
+		return frameMap.get( frameNumber );
+	}
+
+
+	/**
+	 * Whether the image of a frame is in the cache (it does not change the order of use)
+	 * @param  frameNumber  the frame number
+	 * @return  true when it is in the cache
+	 */
+	public synchronized boolean contains( int frameNumber ) {
+		return frameMap.containsKey( frameNumber );
+	}
+
+
+	/**
+	 * Adds the image of a frame, then removes least-recently-used ones while above the budget
+	 * @param  frameNumber  the frame number
+	 * @param  image  the image (not to be modified afterwards)
+	 */
+	public synchronized void put( int frameNumber, BufferedImage image ) {
+		BufferedImage previous = frameMap.put( frameNumber, image );
+		if( previous != null ) {
+			totalBytes -= getBytes( previous );
+		}; // if
+		totalBytes += getBytes( image );
+		Iterator<BufferedImage> iterator = frameMap.values().iterator();
+		while( totalBytes > budgetBytes && frameMap.size() > 1 && iterator.hasNext() == true ) {
+			BufferedImage eldest = iterator.next();
+			if( eldest == image ) {
+				continue;
+			}; // if
+			iterator.remove();
+			totalBytes -= getBytes( eldest );
+		}; // while
+	}
+
+
+	/**
+	 * Removes all images
+	 */
+	public synchronized void clear() {
+		frameMap.clear();
+		totalBytes = 0;
+	}
+
+
+	/**
+	 * Gets the number of images in the cache
+	 * @return  the number of images
+	 */
+	public synchronized int size() {
+		return frameMap.size();
+	}
+
+
+	/**
+	 * Gets the memory of the images in the cache
+	 * @return  number of bytes
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+} // class DecodedFrameCache
+
@@ -0,0 +1,110 @@
+/*
+ * Filename: EffectPanel.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.Graphics;
+
+import javax.swing.JPanel;
+
+/**
+ * Panel (double-buffered) that shows an effect: the repaint loop calls update() on the event-dispatch thread,
+ * which takes the latest state posted by the effect and repaints; the painting itself is done by the effect
+ *
+ * @author Aleman-Meza
+ */
+
+public class EffectPanel extends JPanel {
+
+	// serial version UID
+	private static final long serialVersionUID = 1L;
+
+	// the effect, null when none
+	private volatile BasicEffect effect = null;
+
+	// the state being shown, null when none
+	private volatile RenderState state = null;
+
+	// number of states shown
+	private long shownCount = 0;
+
+
+	/**
+	 * Constructor
+	 */
+	public EffectPanel() {
+		super( true );
+	}
+
+
+	/**
+	 * Sets the effect shown by this panel (any state being shown is forgotten)
+	 * @param  effect  the effect, can be null
+	 */
+	public void setEffect( BasicEffect effect ) {
+		this.effect = effect;
+		state = null;
+		repaint();
+	}
+
+
+	/**
+	 * Takes the latest state of the effect, and repaints when there is a new one (event-dispatch thread)
+	 * @return  true when there was a new state
+	 */
+	public boolean update() {
+		BasicEffect tmp = effect;
+		if( tmp == null ) {
+			return false;
+		}; // if
+		RenderState newState = tmp.getMailbox().take();
+		if( newState == null ) {
+			return false;
+		}; // if
+		state = newState;
+		shownCount++;
+		repaint();
+		return true;
+	}
+
+
+	/**
+	 * Gets the number of states shown
+	 * @return  the number of states shown
+	 */
+	public long getShownCount() {
+		return shownCount;
+	}
+
+
+	/**
+	 * Gets the frame being shown
+	 * @return  the frame number, -1 when none
+	 */
+	public int getShownFrame() {
+		RenderState tmpState = state;
+		return tmpState == null ? -1 : tmpState.frameNumber;
+	}
+
+
+	/**
+	 * Gets the effect
+	 * @return  the effect, or null
+	 */
+	public BasicEffect getEffect() {
+		return effect;
+	}
+
+
+	protected void paintComponent( Graphics graphics ) {
+		super.paintComponent( graphics );
+		BasicEffect tmp = effect;
+		RenderState tmpState = state;
+		if( tmp != null && tmpState != null ) {
+			tmp.render( graphics, tmpState );
+		}; // if
+	}
+
+} // class EffectPanel
+
@@ -0,0 +1,198 @@
+/*
+ * Filename: FixedDecimalFormat.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.PrintStream;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+
+import java.util.Random;
+
+/**
+ * Formats double values the same way as DecimalFormat with pattern "#0.0##" (or "#0.0####", etc.)
+ * but appends the digits directly into a string-builder (no intermediate objects);
+ * values that are not simple to round (ties, very large or tiny-negative values) are formatted by DecimalFormat.
+ * Not thread-safe (same as DecimalFormat)
+ *
+ * @author Aleman-Meza
+ */
+
+public class FixedDecimalFormat {
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// largest scaled value handled directly (its fraction is still precise enough to tell ties apart)
+	private static final double MAXIMUM_SCALED = 1e9;
+
+	// distance from one half considered as a tie (handled by DecimalFormat)
+	private static final double TIE_TOLERANCE = 1e-6;
+
+	// maximum number of digits after the decimal point
+	private final int decimals;
+
+	// ten to the power of decimals
+	private final long scale;
+
+	// the formatter used when values are not simple to round
+	private final DecimalFormat decimalFormat;
+
+	// decimal separator of the default locale
+	private final char decimalSeparator;
+
+	// minus sign of the default locale
+	private final char minusSign;
+
+	// zero digit of the default locale
+	private final char zeroDigit;
+
+
+	/**
+	 * Constructor
+	 * @param  decimals  maximum number of digits after the decimal point (at least one digit is always written)
+	 */
+	public FixedDecimalFormat( int decimals ) {
+		if( decimals < 1 || decimals > 9 ) {
+			throw new IllegalArgumentException( "Number of decimals must be between 1 and 9: " + decimals );
+		}; // if
+		this.decimals = decimals;
+		long tmp = 1;
+		String pattern = "#0.0";
+		for( int i = 0; i < decimals; i++ ) {
+			tmp *= 10;
+			if( i > 0 ) {
+				pattern += "#";
+			}; // if
+		}; // for
+		scale = tmp;
+		decimalFormat = new DecimalFormat( pattern );
+		DecimalFormatSymbols symbols = decimalFormat.getDecimalFormatSymbols();
+		decimalSeparator = symbols.getDecimalSeparator();
+		minusSign = symbols.getMinusSign();
+		zeroDigit = symbols.getZeroDigit();
+	}
+
+
+	/**
+	 * Formats a value
+	 * @param  value  the value
+	 * @return  the formatted value
+	 */
+	public String format( double value ) {
+		return append( new StringBuilder( 16 ), value ).toString();
+	}
+
+
+	/**
+	 * Appends a formatted value into a string-builder
+	 * @param  builder  the string-builder
+	 * @param  value  the value
+	 * @return  the same string-builder
+	 */
+	public StringBuilder append( StringBuilder builder, double value ) {
+		double scaled = Math.abs( value ) * scale;
+		if( scaled >= MAXIMUM_SCALED || Double.isNaN( value ) == true ) {
+			return builder.append( decimalFormat.format( value ) );
+		}; // if
+		long rounded = (long) scaled;
+		double fraction = scaled - rounded;
+		if( Math.abs( fraction - 0.5 ) < TIE_TOLERANCE ) {
+			return builder.append( decimalFormat.format( value ) );
+		}; // if
+		if( fraction > 0.5 ) {
+			rounded++;
+		}; // if
+		// negative zero (and negative values rounded to zero) are left to DecimalFormat
+		if( rounded == 0 && ( value < 0 || Double.doubleToRawLongBits( value ) != 0 ) ) {
+			return builder.append( decimalFormat.format( value ) );
+		}; // if
+
+		if( value < 0 ) {
+			builder.append( minusSign );
+		}; // if
+		appendDigits( builder, rounded / scale, 1 );
+		builder.append( decimalSeparator );
+		long fractionDigits = rounded % scale;
+		int digits = decimals;
+		while( digits > 1 && fractionDigits % 10 == 0 ) {
+			fractionDigits /= 10;
+			digits--;
+		}; // while
+		appendDigits( builder, fractionDigits, digits );
+		return builder;
+	}
+
+
+	/**
+	 * Appends the digits of a non-negative number, with leading zeros up to a minimum number of digits
+	 * @param  builder  the string-builder
+	 * @param  number  the number
+	 * @param  minimumDigits  the minimum number of digits
+	 */
+	private void appendDigits( StringBuilder builder, long number, int minimumDigits ) {
+		int start = builder.length();
+		int count = 0;
+		while( number > 0 || count < minimumDigits ) {
+			builder.insert( start, (char) ( zeroDigit + ( number % 10 ) ) );
+			number /= 10;
+			count++;
+		}; // while
+	}
+
+
+	/** for testing purposes only, randomized comparison with DecimalFormat, and timing */
+	public static void main( String[] args ) {
+		Random random = new Random( 38 );
+		int mismatches = 0;
+		for( int decimals = 1; decimals <= 5; decimals++ ) {
+			FixedDecimalFormat fixedDecimalFormat = new FixedDecimalFormat( decimals );
+			DecimalFormat decimalFormat = fixedDecimalFormat.decimalFormat;
+			for( int i = 0; i < 2000000; i++ ) {
+				double value;
+				switch( i % 5 ) {
+					case 0: value = random.nextDouble() * 1000; break;
+					case 1: value = ( random.nextDouble() - 0.5 ) * 20; break;
+					case 2: value = random.nextInt( 200000 ) / 1000.0 - 100; break;
+					case 3: value = ( random.nextInt( 20001 ) - 10000 ) / 2000.0; break;
+					default: value = ( random.nextDouble() - 0.5 ) * Math.pow( 10, random.nextInt( 16 ) - 6 ); break;
+				}; // switch
+				String expected = decimalFormat.format( value );
+				String actual = fixedDecimalFormat.format( value );
+				if( expected.equals( actual ) == false ) {
+					if( mismatches < 10 ) {
+						out.println( "MISMATCH (" + decimals + " decimals) " + value + " expected: " + expected + " actual: " + actual );
+					}; // if
+					mismatches++;
+				}; // if
+			}; // for
+		}; // for
+		out.println( "mismatches: " + mismatches );
+
+		// timing, three decimals (as in details.txt)
+		double[] values = new double[ 1000000 ];
+		for( int i = 0; i < values.length; i++ ) {
+			values[ i ] = random.nextDouble() * 600;
+		}; // for
+		FixedDecimalFormat fixedDecimalFormat = new FixedDecimalFormat( 3 );
+		StringBuilder builder = new StringBuilder();
+		for( int round = 0; round < 3; round++ ) {
+			long start = System.nanoTime();
+			long length = 0;
+			for( double value : values ) {
+				length += fixedDecimalFormat.decimalFormat.format( value ).length();
+			}; // for
+			long middle = System.nanoTime();
+			for( double value : values ) {
+				builder.setLength( 0 );
+				length += fixedDecimalFormat.append( builder, value ).length();
+			}; // for
+			long end = System.nanoTime();
+			out.println( "DecimalFormat: " + ( middle - start ) / 1000000 + " ms, FixedDecimalFormat: " + ( end - middle ) / 1000000 + " ms (" + length + ")" );
+		}; // for
+	}
+
+} // class FixedDecimalFormat
+
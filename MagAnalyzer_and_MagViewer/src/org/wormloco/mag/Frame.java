@@ -109,9 +109,20 @@ public class Frame {
 	 * if so, then the 'onTheRepellent' boolean variable is set to true
 	 */
 	public void verifyPositionOnTheRepellent() {
+		verifyPositionOnTheRepellent( RADIOUS );
+	}
+
+
+	/** 
+	 * Determine whether any of the points is outside (i.e., over the repellent) of a given radious,
+	 * the 'onTheRepellent' boolean variable is set accordingly
+	 * @param  radious  radious of 'inside' measurements
+	 */
+	public void verifyPositionOnTheRepellent( double radious ) {
+		onTheRepellent = false;
 		for( int p = 0; p < MIDLINE; p++ ) {
 			double dist = Utilities.distance( 0, 0, x[ p ], y[ p ] );
-			if( dist >= RADIOUS ) {
+			if( dist >= radious ) {
 				onTheRepellent = true;
 				break;
 			}; // if
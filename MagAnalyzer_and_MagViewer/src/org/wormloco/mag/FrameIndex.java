@@ -0,0 +1,146 @@
+/*
+ * Filename: FrameIndex.java
+ */
+
+package org.wormloco.mag;
+
+import java.util.List;
+
+/**
+ * Prefix counts of per-frame flags (over the repellent, head bending, body bending, and their combinations)
+ * so that the number of frames with a flag within a range of frames is obtained in constant time;
+ * it must be created after bending angles and position on the repellent are computed
+ *
+ * @author Aleman-Meza
+ */
+
+public class FrameIndex {
+
+	// prefix counts: value at position k is the number of frames with the flag among frames 0..k-1
+	private final int[] repellent;
+	private final int[] headBending;
+	private final int[] bodyBending;
+	private final int[] bending;
+	private final int[] headBendingOverRepellent;
+	private final int[] bodyBendingOverRepellent;
+	private final int[] bendingOverRepellent;
+
+
+	/**
+	 * Constructor
+	 * @param  frameList  the frames (with bending angles and position on the repellent already computed)
+	 * @param  bendingAngleThreshold  a frame is bending when its angle is equal or bigger than this threshold
+	 */
+	public FrameIndex( List<Frame> frameList, double bendingAngleThreshold ) {
+		int n = frameList.size();
+		repellent = new int[ n + 1 ];
+		headBending = new int[ n + 1 ];
+		bodyBending = new int[ n + 1 ];
+		bending = new int[ n + 1 ];
+		headBendingOverRepellent = new int[ n + 1 ];
+		bodyBendingOverRepellent = new int[ n + 1 ];
+		bendingOverRepellent = new int[ n + 1 ];
+		for( int f = 0; f < n; f++ ) {
+			Frame frame = frameList.get( f );
+			boolean overRepellentFlag = frame.onTheRepellent;
+			boolean headFlag = frame.bendingHead >= bendingAngleThreshold;
+			boolean bodyFlag = frame.bendingBody >= bendingAngleThreshold;
+			repellent[ f + 1 ] = repellent[ f ] + ( overRepellentFlag == true ? 1 : 0 );
+			headBending[ f + 1 ] = headBending[ f ] + ( headFlag == true ? 1 : 0 );
+			bodyBending[ f + 1 ] = bodyBending[ f ] + ( bodyFlag == true ? 1 : 0 );
+			bending[ f + 1 ] = bending[ f ] + ( headFlag == true || bodyFlag == true ? 1 : 0 );
+			headBendingOverRepellent[ f + 1 ] = headBendingOverRepellent[ f ] + ( headFlag == true && overRepellentFlag == true ? 1 : 0 );
+			bodyBendingOverRepellent[ f + 1 ] = bodyBendingOverRepellent[ f ] + ( bodyFlag == true && overRepellentFlag == true ? 1 : 0 );
+			bendingOverRepellent[ f + 1 ] = bendingOverRepellent[ f ]
+				+ ( ( headFlag == true || bodyFlag == true ) && overRepellentFlag == true ? 1 : 0 );
+		}; // for
+	}
+
+
+	/**
+	 * Gets the number of frames
+	 * @return  the number of frames
+	 */
+	public int size() {
+		return repellent.length - 1;
+	}
+
+
+	/**
+	 * Counts frames over the repellent
+	 * @param  first  first frame (inclusive)
+	 * @param  last  last frame (inclusive)
+	 * @return  the number of frames over the repellent in the range
+	 */
+	public int countOverRepellent( int first, int last ) {
+		return repellent[ last + 1 ] - repellent[ first ];
+	}
+
+
+	/**
+	 * Counts frames with head bending
+	 * @param  first  first frame (inclusive)
+	 * @param  last  last frame (inclusive)
+	 * @return  the number of frames with head bending in the range
+	 */
+	public int countHeadBending( int first, int last ) {
+		return headBending[ last + 1 ] - headBending[ first ];
+	}
+
+
+	/**
+	 * Counts frames with body bending
+	 * @param  first  first frame (inclusive)
+	 * @param  last  last frame (inclusive)
+	 * @return  the number of frames with body bending in the range
+	 */
+	public int countBodyBending( int first, int last ) {
+		return bodyBending[ last + 1 ] - bodyBending[ first ];
+	}
+
+
+	/**
+	 * Counts frames with head bending or body bending
+	 * @param  first  first frame (inclusive)
+	 * @param  last  last frame (inclusive)
+	 * @return  the number of frames with head bending or body bending in the range
+	 */
+	public int countBending( int first, int last ) {
+		return bending[ last + 1 ] - bending[ first ];
+	}
+
+
+	/**
+	 * Counts frames with head bending that are over the repellent
+	 * @param  first  first frame (inclusive)
+	 * @param  last  last frame (inclusive)
+	 * @return  the number of such frames in the range
+	 */
+	public int countHeadBendingOverRepellent( int first, int last ) {
+		return headBendingOverRepellent[ last + 1 ] - headBendingOverRepellent[ first ];
+	}
+
+
+	/**
+	 * Counts frames with body bending that are over the repellent
+	 * @param  first  first frame (inclusive)
+	 * @param  last  last frame (inclusive)
+	 * @return  the number of such frames in the range
+	 */
+	public int countBodyBendingOverRepellent( int first, int last ) {
+		return bodyBendingOverRepellent[ last + 1 ] - bodyBendingOverRepellent[ first ];
+	}
+
+
+	/**
+	 * Counts frames with head bending or body bending that are over the repellent
+	 * @param  first  first frame (inclusive)
+	 * @param  last  last frame (inclusive)
+	 * @return  the number of such frames in the range
+	 */
+	public int countBendingOverRepellent( int first, int last ) {
+		return bendingOverRepellent[ last + 1 ] - bendingOverRepellent[ first ];
+	}
+
+} // class FrameIndex
+
@@ -0,0 +1,183 @@
+/*
+ * Filename: FrameIndexMap.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Media time (seconds into the movie file) of each frame, used to position the player when scrubbing;
+ * it is made once per movie (from the player, which can be slow) and kept in a text file next to the movie,
+ * the file is used again only while the movie has the same length and last-modified time
+ *
+ * @author Aleman-Meza
+ */
+
+public class FrameIndexMap {
+
+	/** file-name of the frame index */
+	public static final String FILENAME = "frame_index.txt";
+
+	// media time of each frame (seconds)
+	private final double[] times;
+
+	// length of the movie file
+	private final long movieLength;
+
+	// last-modified time of the movie file
+	private final long movieModified;
+
+
+	/**
+	 * Constructor
+	 * @param  times  media time of each frame (seconds, not decreasing)
+	 * @param  movieFile  the movie file
+	 */
+	public FrameIndexMap( double[] times, File movieFile ) {
+		this( times, movieFile.length(), movieFile.lastModified() );
+	}
+
+
+	// constructor with the values read from the file
+	private FrameIndexMap( double[] times, long movieLength, long movieModified ) {
+		this.times = times;
+		this.movieLength = movieLength;
+		this.movieModified = movieModified;
+	}
+
+
+	/**
+	 * Makes the frame index assuming a constant frame rate (used until the real one is available)
+	 * @param  frames  number of frames
+	 * @param  frameRate  the frame rate
+	 * @param  movieFile  the movie file
+	 * @return  the frame index
+	 */
+	public static FrameIndexMap createDefault( int frames, double frameRate, File movieFile ) {
+		double[] times = new double[ frames ];
+		for( int f = 0; f < frames; f++ ) {
+			times[ f ] = f / frameRate;
+		}; // for
+		return new FrameIndexMap( times, movieFile );
+	}
+
+
+	/**
+	 * Reads the frame index kept next to a movie
+	 * @param  movieFile  the movie file
+	 * @return  the frame index, or null when there is none (or the movie changed, or the file is not valid)
+	 */
+	public static FrameIndexMap read( File movieFile ) {
+		File file = new File( movieFile.getParentFile(), FILENAME );
+		if( file.isFile() == false ) {
+			return null;
+		}; // if
+		FrameIndexMap ret = null;
+		try {
+			BufferedReader bufferedReader = new BufferedReader( new FileReader( file ) );
+			String[] header = String.valueOf( bufferedReader.readLine() ).split( "\t" );
+			if( header.length == 6 && "#frames".equals( header[ 0 ] ) == true
+			&&  Long.parseLong( header[ 3 ] ) == movieFile.length() && Long.parseLong( header[ 5 ] ) == movieFile.lastModified() ) {
+				double[] times = new double[ Integer.parseInt( header[ 1 ] ) ];
+				int f = 0;
+				String line = null;
+				while( f < times.length && ( line = bufferedReader.readLine() ) != null ) {
+					String[] parts = line.split( "\t" );
+					if( parts.length != 2 || Integer.parseInt( parts[ 0 ] ) != f ) {
+						break;
+					}; // if
+					times[ f ] = Double.parseDouble( parts[ 1 ] );
+					f++;
+				}; // while
+				if( f == times.length ) {
+					ret = new FrameIndexMap( times, movieFile.length(), movieFile.lastModified() );
+				}; // if
+			}; // if
+			bufferedReader.close();
+		}
+		catch( IOException ioe ) {
+			ret = null;
+		}
+		catch( NumberFormatException nfe ) {
+			ret = null;
+		}; // try
+		return ret;
+	}
+
+
+	/**
+	 * Writes the frame index next to a movie
+	 * @param  movieFile  the movie file
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String write( File movieFile ) {
+		File file = new File( movieFile.getParentFile(), FILENAME );
+		try {
+			PrintWriter printWriter = new PrintWriter( new BufferedWriter( new FileWriter( file ) ) );
+			printWriter.println( "#frames\t" + times.length + "\tmovie_length\t" + movieLength + "\tmovie_modified\t" + movieModified );
+			for( int f = 0; f < times.length; f++ ) {
+				printWriter.println( f + "\t" + times[ f ] );
+			}; // for
+			printWriter.close();
+			if( printWriter.checkError() == true ) {
+				return "Error writing " + file.getAbsolutePath();
+			}; // if
+		}
+		catch( IOException ioe ) {
+			return "Unable to write " + file.getAbsolutePath() + " : " + ioe;
+		}; // try
+		return null;
+	}
+
+
+	/**
+	 * Gets the number of frames
+	 * @return  the number of frames
+	 */
+	public int size() {
+		return times.length;
+	}
+
+
+	/**
+	 * Gets the media time of a frame
+	 * @param  frameNumber  the frame number (clamped to the valid range)
+	 * @return  the time in seconds
+	 */
+	public double getTime( int frameNumber ) {
+		if( times.length == 0 ) {
+			return 0;
+		}; // if
+		return times[ Math.max( 0, Math.min( times.length - 1, frameNumber ) ) ];
+	}
+
+
+	/**
+	 * Gets the frame shown at a media time
+	 * @param  seconds  the time in seconds
+	 * @return  the last frame whose time is not after the given time (zero when it is before the first frame)
+	 */
+	public int getFrame( double seconds ) {
+		int low = 0;
+		int high = times.length - 1;
+		while( low < high ) {
+			int middle = ( low + high + 1 ) >>> 1;
+			if( times[ middle ] <= seconds ) {
+				low = middle;
+			}
+			else {
+				high = middle - 1;
+			}; // if
+		}; // while
+		return low;
+	}
+
+} // class FrameIndexMap
+
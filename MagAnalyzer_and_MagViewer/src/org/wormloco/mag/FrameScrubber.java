@@ -0,0 +1,410 @@
+/*
+ * Filename: FrameScrubber.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import javax.media.Buffer;
+
+/**
+ * Shows any frame of a movie on request (scrubbing): the frame comes from the cache of decoded frames when possible,
+ * otherwise a thread of its own decodes it (MovieDecoder, the processor playing the movie is not used),
+ * then it keeps decoding frames ahead in the direction of the requests (prefetch) so that stepping is immediate.
+ * A frame is shown by posting the state made by each effect (the overlays are drawn from the shared data of the folder)
+ *
+ * @author Aleman-Meza
+ */
+
+public class FrameScrubber implements Runnable {
+
+	/** number of frames decoded ahead of the requested frame */
+	public static final int PREFETCH_FRAMES = 24;
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// the movie file
+	protected final File movieFile;
+
+	// number of frames of the movie
+	protected final int frames;
+
+	// frames per second (used when the player does not know the time of a frame)
+	protected final double frameRate;
+
+	// the decoded frames (shared with the position effect)
+	private final DecodedFrameCache frameCache;
+
+	// effects that show the requested frame
+	private final BasicEffect[] effects;
+
+	// media time of each frame (made from the frame rate until the real one is available)
+	private volatile FrameIndexMap frameIndexMap;
+
+	// the decoder, null when not open
+	private MovieDecoder decoder = null;
+
+	// guards the request and the direction
+	private final Object lock = new Object();
+
+	// the latest requested frame, -1 when none
+	private int requestedFrame = -1;
+
+	// direction of the requests (1 forward, -1 backward)
+	private int direction = 1;
+
+	// the frame shown last, -1 when none
+	private volatile int shownFrame = -1;
+
+	// whether it was closed
+	private volatile boolean closed = false;
+
+	// counts of requests served from the cache, and of frames decoded
+	private volatile long hitCount = 0;
+	private volatile long decodedCount = 0;
+
+
+	/**
+	 * Constructor
+	 * @param  movieFile  the movie file
+	 * @param  frames  number of frames of the movie
+	 * @param  frameRate  frames per second
+	 * @param  frameCache  the cache of decoded frames
+	 * @param  effects  effects that show the requested frame
+	 */
+	public FrameScrubber( File movieFile, int frames, double frameRate, DecodedFrameCache frameCache, BasicEffect[] effects ) {
+		this.movieFile = movieFile;
+		this.frames = frames;
+		this.frameRate = frameRate;
+		this.frameCache = frameCache;
+		this.effects = effects;
+		this.frameIndexMap = FrameIndexMap.createDefault( frames, frameRate, movieFile );
+	}
+
+
+	/**
+	 * Starts the thread that decodes frames
+	 */
+	public void start() {
+		Thread thread = new Thread( this, "FrameScrubber" );
+		thread.setDaemon( true );
+		thread.start();
+	}
+
+
+	/**
+	 * Stops the thread that decodes frames (the decoder is closed)
+	 */
+	public void close() {
+		closed = true;
+		synchronized( lock ) {
+			lock.notifyAll();
+		}; // synchronized
+	}
+
+
+	/**
+	 * Requests a frame to be shown; when it is in the cache it is shown right away (on the calling thread),
+	 * otherwise it is shown once decoded
+	 * @param  frameNumber  the frame number (clamped to the valid range)
+	 */
+	public void request( int frameNumber ) {
+		frameNumber = Math.max( 0, Math.min( frames - 1, frameNumber ) );
+		synchronized( lock ) {
+			if( requestedFrame != -1 && frameNumber != requestedFrame ) {
+				direction = frameNumber > requestedFrame ? 1 : -1;
+			}; // if
+			requestedFrame = frameNumber;
+			lock.notifyAll();
+		}; // synchronized
+		BufferedImage image = frameCache.get( frameNumber );
+		if( image != null ) {
+			hitCount++;
+			show( frameNumber, image );
+		}; // if
+	}
+
+
+	/**
+	 * Shows a frame by posting the state made by each effect
+	 * @param  frameNumber  the frame number
+	 * @param  image  the decoded image of the frame
+	 */
+	private void show( int frameNumber, BufferedImage image ) {
+		for( BasicEffect effect : effects ) {
+			RenderState state = effect.createState( frameNumber, image );
+			if( state != null ) {
+				effect.getMailbox().post( state );
+			}; // if
+		}; // for
+		shownFrame = frameNumber;
+	}
+
+
+	/** the thread: decodes the requested frame (when not in the cache), then the frames ahead of it */
+	public void run() {
+		String error = openDecoder();
+		if( error != null ) {
+			out.println( "Scrubbing uses only the frames already decoded: " + error );
+		}
+		else {
+			loadFrameIndexMap();
+		}; // if
+		int handledFrame = -1;
+		while( closed == false ) {
+			int target;
+			int step;
+			synchronized( lock ) {
+				while( closed == false && requestedFrame == handledFrame ) {
+					try {
+						lock.wait();
+					}
+					catch( InterruptedException ie ) {
+						closed = true;
+					}; // try
+				}; // while
+				target = requestedFrame;
+				step = direction;
+			}; // synchronized
+			if( closed == true ) {
+				break;
+			}; // if
+			handledFrame = target;
+			if( error != null ) {
+				continue;
+			}; // if
+			if( frameCache.contains( target ) == false ) {
+				BufferedImage image = decodeToCache( target );
+				if( image != null && isLatestRequest( target ) == true ) {
+					show( target, image );
+				}; // if
+			}; // if
+			// prefetch, until a new request arrives
+			for( int i = 1; i <= PREFETCH_FRAMES && closed == false && isLatestRequest( target ) == true; i++ ) {
+				int frameNumber = target + i * step;
+				if( frameNumber < 0 || frameNumber >= frames ) {
+					break;
+				}; // if
+				if( frameCache.contains( frameNumber ) == false ) {
+					decodeToCache( frameNumber );
+				}; // if
+			}; // for
+		}; // while
+		closeDecoder();
+	}
+
+
+	/**
+	 * Whether a frame is still the latest requested one
+	 * @param  frameNumber  the frame number
+	 * @return  true when no other frame was requested after it
+	 */
+	private boolean isLatestRequest( int frameNumber ) {
+		synchronized( lock ) {
+			return requestedFrame == frameNumber;
+		}
+	}
+
+
+	/**
+	 * Decodes a frame and puts it in the cache
+	 * @param  frameNumber  the frame number
+	 * @return  the image, or null when it could not be decoded
+	 */
+	private BufferedImage decodeToCache( int frameNumber ) {
+		BufferedImage image = decode( frameNumber );
+		if( image != null ) {
+			decodedCount++;
+			frameCache.put( frameNumber, image );
+		}; // if
+		return image;
+	}
+
+
+	/**
+	 * Opens the decoder
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	protected String openDecoder() {
+		decoder = new MovieDecoder( movieFile );
+		return decoder.open();
+	}
+
+
+	/**
+	 * Closes the decoder
+	 */
+	protected void closeDecoder() {
+		if( decoder != null ) {
+			decoder.close();
+			decoder = null;
+		}; // if
+	}
+
+
+	/**
+	 * Decodes a frame
+	 * @param  frameNumber  the frame number
+	 * @return  the image (it belongs to the caller), or null when it could not be decoded
+	 */
+	protected BufferedImage decode( int frameNumber ) {
+		return decoder.decode( frameNumber );
+	}
+
+
+	/**
+	 * Reads the frame index kept next to the movie, or makes it with the decoder (and keeps it for next time)
+	 */
+	protected void loadFrameIndexMap() {
+		FrameIndexMap map = FrameIndexMap.read( movieFile );
+		if( map != null && map.size() == frames ) {
+			frameIndexMap = map;
+			return;
+		}; // if
+		double[] times = new double[ frames ];
+		for( int f = 0; f < frames; f++ ) {
+			times[ f ] = decoder.getMediaTime( f );
+			if( Double.isNaN( times[ f ] ) == true ) {
+				times[ f ] = f / frameRate;
+			}; // if
+			// the times must not decrease (binary search)
+			if( f > 0 && times[ f ] < times[ f - 1 ] ) {
+				times[ f ] = times[ f - 1 ];
+			}; // if
+		}; // for
+		map = new FrameIndexMap( times, movieFile );
+		String error = map.write( movieFile );
+		if( error != null ) {
+			out.println( error );
+		}; // if
+		frameIndexMap = map;
+	}
+
+
+	/**
+	 * Gets the media time of each frame
+	 * @return  the frame index
+	 */
+	public FrameIndexMap getFrameIndexMap() {
+		return frameIndexMap;
+	}
+
+
+	/**
+	 * Gets the number of frames of the movie
+	 * @return  the number of frames
+	 */
+	public int getFrames() {
+		return frames;
+	}
+
+
+	/**
+	 * Gets the frame shown last by the scrubber
+	 * @return  the frame number, -1 when none
+	 */
+	public int getShownFrame() {
+		return shownFrame;
+	}
+
+
+	/**
+	 * Gets the number of requests served from the cache
+	 * @return  the number of requests
+	 */
+	public long getHitCount() {
+		return hitCount;
+	}
+
+
+	/**
+	 * Gets the number of frames decoded by the scrubber
+	 * @return  the number of frames
+	 */
+	public long getDecodedCount() {
+		return decodedCount;
+	}
+
+
+	/** for testing purposes only, scrubs synthetic frames (forward, then backward) and prints cache hits and decodes */
+	public static void main( String[] args ) throws Exception {
+		int frames = 300;
+		DecodedFrameCache cache = new DecodedFrameCache( 100 * 320 * 240 * 4L );
+		BasicEffect effect = new BasicEffect() {
+			public int process( Buffer inputBuffer, Buffer outputBuffer ) {
+				return BUFFER_PROCESSED_OK;
+			}
+			public RenderState createState( int frameNumber, BufferedImage image ) {
+				return new RenderState( frameNumber, image );
+			}
+			public void render( Graphics graphics, RenderState state ) {
+			}
+		};
+		FrameScrubber scrubber = new FrameScrubber( new File( "synthetic.avi" ), frames, 7.5, cache, new BasicEffect[] { effect } ) {
+			protected String openDecoder() {
+				return null;
+			}
+			protected void closeDecoder() {
+			}
+			protected BufferedImage decode( int frameNumber ) {
+				try {
+					// slow decoding, as when seeking from a keyframe
+					Thread.sleep( 5 );
+				}
+				catch( InterruptedException ie ) {
+					return null;
+				}; // try
+				BufferedImage image = new BufferedImage( 320, 240, BufferedImage.TYPE_INT_RGB );
+				Graphics graphics = image.getGraphics();
+				graphics.setColor( new Color( frameNumber % 256, 0, 0 ) );
+				graphics.fillRect( 0, 0, 320, 240 );
+				graphics.dispose();
+				return image;
+			}
+			protected void loadFrameIndexMap() {
+			}
+		};
+		scrubber.start();
+		long start = System.nanoTime();
+		for( int f = 100; f < 160; f++ ) {
+			scrubber.request( f );
+			Thread.sleep( 10 );
+		}; // for
+		out.println( "forward:  hits " + scrubber.getHitCount() + ", decoded " + scrubber.getDecodedCount() + ", cached " + cache.size() );
+		long hits = scrubber.getHitCount();
+		for( int f = 159; f >= 120; f-- ) {
+			scrubber.request( f );
+			Thread.sleep( 10 );
+		}; // for
+		out.println( "backward: hits " + ( scrubber.getHitCount() - hits ) + " of 40, decoded " + scrubber.getDecodedCount() + ", cached " + cache.size() );
+		// a jump forward prefetches forward
+		scrubber.request( 200 );
+		Thread.sleep( 300 );
+		RenderState state = effect.getMailbox().take();
+		out.println( "jump to 200: shown " + scrubber.getShownFrame() + ", state frame " + ( state == null ? -1 : state.frameNumber )
+			+ ", prefetched 201.." + ( 200 + PREFETCH_FRAMES ) + ": " + cache.contains( 200 + PREFETCH_FRAMES )
+			+ ", bytes " + cache.getTotalBytes() + ", " + ( System.nanoTime() - start ) / 1000000 + " ms" );
+		scrubber.close();
+
+		// frame index, round trip
+		File movieFile = File.createTempFile( "scrub", ".avi" );
+		FrameIndexMap map = FrameIndexMap.createDefault( frames, 7.5, movieFile );
+		String error = map.write( movieFile );
+		FrameIndexMap again = FrameIndexMap.read( movieFile );
+		out.println( "frame index: write " + ( error == null ? "OK" : error ) + ", read " + ( again == null ? "null" : again.size() + " frames" )
+			+ ", frame at 10.0 sec: " + ( again == null ? -1 : again.getFrame( 10.0 ) ) );
+		movieFile.setLastModified( movieFile.lastModified() - 60000 );
+		out.println( "frame index after the movie changed: " + FrameIndexMap.read( movieFile ) );
+		new File( movieFile.getParentFile(), FrameIndexMap.FILENAME ).delete();
+		movieFile.delete();
+	}
+
+} // class FrameScrubber
+
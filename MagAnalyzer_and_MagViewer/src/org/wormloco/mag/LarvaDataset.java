@@ -0,0 +1,353 @@
+/*
+ * Filename: LarvaDataset.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.util.Arrays;
+
+/**
+ * The parsed data of one larva folder, as used by the effects of MagViewer:
+ * the video with its parameters already calculated (absolute points of each frame),
+ * the pixel points of each frame (points.txt, with head/tail already corrected), and the time of each frame (frametime.txt);
+ * it is loaded once and then shared (see LarvaDatasetCache), nothing is changed after loading
+ *
+ * @author Aleman-Meza
+ */
+
+public class LarvaDataset {
+
+	/** file-name of the pixel points */
+	public static final String POINTS_FILENAME = "points.txt";
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// the folder
+	private final File directory;
+
+	// the video, parameters calculated
+	private Video video = null;
+
+	// pixel points, null when there is no points file
+	private int[][][] points = null;
+
+	// time (seconds) of each frame, NaN when not known
+	private double[] frameTimes = null;
+
+	// time of each frame since the first frame (seconds, not decreasing), the frame rate is used when a time is not known
+	private double[] timeAxis = null;
+
+	// last-modified and length of the input files when loaded (to tell whether they changed)
+	private long[] fileStamps = null;
+
+
+	/**
+	 * Constructor
+	 * @param  directory  the folder of the larva (containing abs_points and points files)
+	 */
+	public LarvaDataset( File directory ) {
+		this.directory = directory;
+	}
+
+
+	/**
+	 * Loads the data: calculates all parameters of the video, reads the pixel points (and corrects head/tail)
+	 * and the frame times
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String load() {
+		fileStamps = readFileStamps();
+		Video newVideo = new Video();
+		newVideo.setDirectory( directory.getAbsolutePath() );
+		String error = newVideo.calculateAllParameters();
+		if( error != null ) {
+			return error;
+		}; // if
+		video = newVideo;
+		File pointsFile = new File( directory, POINTS_FILENAME );
+		if( pointsFile.exists() == true ) {
+			points = Utilities.readPoints( pointsFile.getAbsolutePath() );
+			if( points != null ) {
+				correctHeadTail();
+			}; // if
+		}; // if
+		frameTimes = readFrameTimes();
+		timeAxis = makeTimeAxis();
+		return null;
+	}
+
+
+	/**
+	 * Makes the time axis: time of each frame since the first frame, from the frame times when known
+	 * (otherwise one frame-period after the previous frame), never decreasing
+	 * @return  time of each frame (seconds)
+	 */
+	private double[] makeTimeAxis() {
+		double period = 1.0 / video.getFrameRate();
+		double[] times = new double[ video.frameList.size() ];
+		double first = Double.NaN;
+		for( int f = 0; f < times.length; f++ ) {
+			double time = getFrameTime( f );
+			if( Double.isNaN( first ) == true && Double.isNaN( time ) == false ) {
+				first = time - f * period;
+			}; // if
+			if( Double.isNaN( time ) == true || f > 0 && time - first < times[ f - 1 ] ) {
+				times[ f ] = f == 0 ? 0 : times[ f - 1 ] + period;
+			}
+			else {
+				times[ f ] = time - first;
+			}; // if
+		}; // for
+		return times;
+	}
+
+
+	/**
+	 * Swaps the pixel points of frames whose head/tail does not match that of the absolute points
+	 */
+	private void correctHeadTail() {
+		for( int frameNumber = 0; frameNumber < points.length && frameNumber < video.frameList.size(); frameNumber++ ) {
+			if( points[ frameNumber ] == null ) {
+				continue;
+			}; // if
+			int[] x = points[ frameNumber ][ 0 ];
+			int[] y = points[ frameNumber ][ 1 ];
+			Frame frame = video.frameList.get( frameNumber );
+			int width = x[ 12 ] - x[ 0 ];
+			double widthMm = frame.x[ 12 ] - frame.x[ 0 ];
+			// at least 20 pixels (arbitrary value)
+			if( Math.abs( width ) > 20 && Math.abs( widthMm ) > 0.5 ) {
+				if( width < 0 && widthMm > 0 ) {
+					out.println( frameNumber + "(1)  " + width + "   mm: " + widthMm );
+				}; // if
+				if( width < 0 && widthMm < 0 ) {
+					out.println( frameNumber + "(2)  " + width + "   mm: " + widthMm );
+				}; // if
+				if( width > 0 && widthMm < 0 ) {
+					swap( x, y );
+					continue;
+				}; // if
+			}; // if
+			int heigth = y[ 12 ] - y[ 0 ];
+			double heightMm = frame.y[ 12 ] - frame.y[ 0 ];
+			// at least 20 pixels (arbitrary value)
+			if( Math.abs( heigth ) > 20 && Math.abs( heightMm ) > 0.5 ) {
+				if( ( heigth < 0 && heightMm < 0 ) || ( heigth > 0 && heightMm > 0 ) ) {
+					swap( x, y );
+					continue;
+				}; // if
+			}; // if
+		}; // for
+	}
+
+
+	/**
+	 * Reverses the order of the points of a frame
+	 * @param  x  x of the points
+	 * @param  y  y of the points
+	 */
+	private static void swap( int[] x, int[] y ) {
+		for( int p = 0; p < x.length / 2; p++ ) {
+			int tmp = x[ p ];
+			x[ p ] = x[ x.length - p - 1 ];
+			x[ x.length - p - 1 ] = tmp;
+			tmp = y[ p ];
+			y[ p ] = y[ y.length - p - 1 ];
+			y[ y.length - p - 1 ] = tmp;
+		}; // for
+	}
+
+
+	/**
+	 * Reads the time of each frame from the frame-time text file (first line is skipped, same as Video.writeDetailsTextfile)
+	 * @return  time of each frame (NaN when not known), or null when the file is not available
+	 */
+	private double[] readFrameTimes() {
+		File file = new File( directory, Video.FRAMETIME_TXT );
+		if( file.isFile() == false ) {
+			return null;
+		}; // if
+		double[] times = new double[ video.frameList.size() ];
+		Arrays.fill( times, Double.NaN );
+		BufferedReader bufferedReader = null;
+		try {
+			bufferedReader = new BufferedReader( new FileReader( file ) );
+			String line = bufferedReader.readLine();
+			while( line != null && ( line = bufferedReader.readLine() ) != null ) {
+				String[] parts = line.split( "\t" );
+				if( parts.length != 2 ) {
+					continue;
+				}; // if
+				try {
+					int frameNumber = Integer.parseInt( parts[ 0 ] );
+					if( frameNumber >= 0 && frameNumber < times.length ) {
+						times[ frameNumber ] = Double.parseDouble( parts[ 1 ] );
+					}; // if
+				}
+				catch( NumberFormatException nfe ) {
+					// not a frame line
+				}; // try
+			}; // while
+			bufferedReader.close();
+		}
+		catch( IOException ioe ) {
+			out.println( "Unable to read " + file.getAbsolutePath() + " : " + ioe );
+			return null;
+		}; // try
+		return times;
+	}
+
+
+	/**
+	 * Gets the last-modified time and the length of each input file
+	 * @return  two values per input file
+	 */
+	private long[] readFileStamps() {
+		String[] filenames = { Utilities.ABS_POINTS_FILENAME, AbsolutePointsFile.ABS_POINTS_BINARY_FILENAME, POINTS_FILENAME, Video.FRAMETIME_TXT };
+		long[] stamps = new long[ filenames.length * 2 ];
+		for( int i = 0; i < filenames.length; i++ ) {
+			File file = new File( directory, filenames[ i ] );
+			stamps[ i * 2 ] = file.lastModified();
+			stamps[ i * 2 + 1 ] = file.length();
+		}; // for
+		return stamps;
+	}
+
+
+	/**
+	 * Whether the input files are the same as when the data was loaded
+	 * @return  true when none of the input files changed
+	 */
+	public boolean isCurrent() {
+		return fileStamps != null && Arrays.equals( fileStamps, readFileStamps() );
+	}
+
+
+	/**
+	 * Estimates the memory used by the data
+	 * @return  approximate number of bytes
+	 */
+	public long estimateBytes() {
+		long bytes = 0;
+		if( video != null ) {
+			// each frame: object and fields, x, y and speed of each point
+			bytes += video.frameList.size() * ( 160L + 3 * ( 16 + Frame.MIDLINE * 8 ) );
+			bytes += video.strideList.size() * 64L + video.runList.size() * 64L;
+		}; // if
+		if( points != null ) {
+			// each frame: array of two arrays of 13 ints
+			bytes += points.length * ( 24L + 2 * ( 16 + 13 * 4 ) );
+		}; // if
+		if( frameTimes != null ) {
+			bytes += 16 + frameTimes.length * 8L;
+		}; // if
+		if( timeAxis != null ) {
+			bytes += 16 + timeAxis.length * 8L;
+		}; // if
+		return bytes;
+	}
+
+
+	/**
+	 * Gets the folder
+	 * @return  the folder
+	 */
+	public File getDirectory() {
+		return directory;
+	}
+
+
+	/**
+	 * Gets the video (all parameters calculated)
+	 * @return  the video, null when not loaded
+	 */
+	public Video getVideo() {
+		return video;
+	}
+
+
+	/**
+	 * Gets the pixel points: points[f][0][i] and points[f][1][i] are x and y of point i at frame f
+	 * (points[f] is null when the frame has no points)
+	 * @return  the points, null when there is no points file
+	 */
+	public int[][][] getPoints() {
+		return points;
+	}
+
+
+	/**
+	 * Gets the time of a frame
+	 * @param  frameNumber  the frame number
+	 * @return  the time in seconds, NaN when not known
+	 */
+	public double getFrameTime( int frameNumber ) {
+		if( frameTimes == null || frameNumber < 0 || frameNumber >= frameTimes.length ) {
+			return Double.NaN;
+		}; // if
+		return frameTimes[ frameNumber ];
+	}
+
+
+	/**
+	 * Gets the frame shown at a time since the first frame (to show several larvae on a common time axis)
+	 * @param  seconds  the time in seconds
+	 * @return  the last frame whose time is not after the given time (zero when it is before the first frame)
+	 */
+	public int getFrameAt( double seconds ) {
+		int low = 0;
+		int high = timeAxis.length - 1;
+		while( low < high ) {
+			int middle = ( low + high + 1 ) >>> 1;
+			if( timeAxis[ middle ] <= seconds ) {
+				low = middle;
+			}
+			else {
+				high = middle - 1;
+			}; // if
+		}; // while
+		return low;
+	}
+
+
+	/**
+	 * Gets the time of the last frame since the first frame
+	 * @return  the time in seconds
+	 */
+	public double getDuration() {
+		return timeAxis.length == 0 ? 0 : timeAxis[ timeAxis.length - 1 ];
+	}
+
+
+	/**
+	 * Gets the first frame of the next (or previous) stride, for jumping from stride to stride
+	 * @param  frameNumber  the frame number
+	 * @param  direction  positive for the next stride, negative for the previous one
+	 * @return  the first frame of the stride, or -1 when there is none
+	 */
+	public int getStrideStart( int frameNumber, int direction ) {
+		if( video == null ) {
+			return -1;
+		}; // if
+		int ret = -1;
+		for( Stride stride : video.strideList ) {
+			int start = stride.indexFirstMinima;
+			if( direction > 0 && start > frameNumber && ( ret == -1 || start < ret ) ) {
+				ret = start;
+			}; // if
+			if( direction < 0 && start < frameNumber && start > ret ) {
+				ret = start;
+			}; // if
+		}; // for
+		return ret;
+	}
+
+} // class LarvaDataset
+
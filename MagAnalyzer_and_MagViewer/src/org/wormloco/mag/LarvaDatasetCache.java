@@ -0,0 +1,149 @@
+/*
+ * Filename: LarvaDatasetCache.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of loaded larva folders (LarvaDataset), least-recently-used ones are removed when the estimated memory
+ * goes above a budget (the most recent one is always kept); a folder whose input files changed is loaded again.
+ * Thread-safe
+ *
+ * @author Aleman-Meza
+ */
+
+public class LarvaDatasetCache {
+
+	/** default memory budget (bytes) */
+	public static final long DEFAULT_BUDGET_BYTES = 256L * 1024 * 1024;
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// the memory budget (bytes)
+	private final long budgetBytes;
+
+	// loaded folders (by canonical path), in access order
+	private final LinkedHashMap<String,LarvaDataset> datasetMap = new LinkedHashMap<String,LarvaDataset>( 16, 0.75f, true );
+
+	// estimated memory of the loaded folders
+	private long totalBytes = 0;
+
+
+	/**
+	 * Constructor
+	 * @param  budgetBytes  the memory budget (bytes)
+	 */
+	public LarvaDatasetCache( long budgetBytes ) {
+		this.budgetBytes = budgetBytes;
+	}
+
+
+	/**
+	 * Gets the key of a folder
+	 * @param  directory  the folder
+	 * @return  the key (canonical path when possible)
+	 */
+	private static String getKey( File directory ) {
+		try {
+			return directory.getCanonicalPath();
+		}
+		catch( IOException ioe ) {
+			return directory.getAbsolutePath();
+		}
+	}
+
+
+	/**
+	 * Gets the loaded data of a folder
+	 * @param  directory  the folder
+	 * @return  the data, or null when the folder is not in the cache (or its files changed since loaded)
+	 */
+	public synchronized LarvaDataset get( File directory ) {
+		String key = getKey( directory );
+		LarvaDataset dataset = datasetMap.get( key );
+		if( dataset != null && dataset.isCurrent() == false ) {
+			datasetMap.remove( key );
+			totalBytes -= dataset.estimateBytes();
+			return null;
+		}; // if
+		return dataset;
+	}
+
+
+	/**
+	 * Adds the loaded data of a folder (replacing any previous one), then removes least-recently-used ones
+	 * while above the budget
+	 * @param  dataset  the data (already loaded)
+	 */
+	public synchronized void put( LarvaDataset dataset ) {
+		LarvaDataset previous = datasetMap.put( getKey( dataset.getDirectory() ), dataset );
+		if( previous != null ) {
+			totalBytes -= previous.estimateBytes();
+		}; // if
+		totalBytes += dataset.estimateBytes();
+		Iterator<Map.Entry<String,LarvaDataset>> iterator = datasetMap.entrySet().iterator();
+		while( totalBytes > budgetBytes && datasetMap.size() > 1 && iterator.hasNext() == true ) {
+			LarvaDataset eldest = iterator.next().getValue();
+			if( eldest == dataset ) {
+				continue;
+			}; // if
+			iterator.remove();
+			totalBytes -= eldest.estimateBytes();
+		}; // while
+	}
+
+
+	/**
+	 * Gets the number of folders in the cache
+	 * @return  the number of folders
+	 */
+	public synchronized int size() {
+		return datasetMap.size();
+	}
+
+
+	/**
+	 * Gets the estimated memory of the folders in the cache
+	 * @return  approximate number of bytes
+	 */
+	public synchronized long getTotalBytes() {
+		return totalBytes;
+	}
+
+
+	/** for testing purposes only, loads folders given as arguments twice (second time comes from the cache) */
+	public static void main( String[] args ) {
+		LarvaDatasetCache cache = new LarvaDatasetCache( DEFAULT_BUDGET_BYTES );
+		for( int round = 0; round < 2; round++ ) {
+			for( String each : args ) {
+				long start = System.nanoTime();
+				File directory = new File( each );
+				LarvaDataset dataset = cache.get( directory );
+				boolean cached = dataset != null;
+				if( dataset == null ) {
+					dataset = new LarvaDataset( directory );
+					String error = dataset.load();
+					if( error != null ) {
+						out.println( each + " error: " + error );
+						continue;
+					}; // if
+					cache.put( dataset );
+				}; // if
+				out.println( each + ( cached == true ? " (cached) " : " (loaded) " ) + ( System.nanoTime() - start ) / 1000000 + " ms, frames: "
+					+ dataset.getVideo().frameList.size() + ", bytes: " + dataset.estimateBytes() );
+			}; // for
+		}; // for
+		out.println( "folders: " + cache.size() + ", total bytes: " + cache.getTotalBytes() );
+	}
+
+} // class LarvaDatasetCache
+
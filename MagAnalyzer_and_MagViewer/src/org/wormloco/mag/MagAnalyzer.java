@@ -4,6 +4,7 @@
 
 package org.wormloco.mag;
 
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -11,8 +12,14 @@ import java.io.PrintStream;
 import java.io.PrintWriter;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 
 /**
@@ -26,13 +33,84 @@ public class MagAnalyzer {
 	// for convenience on println statements
 	private static final PrintStream out = System.out;
 
+	// file-name (without extension) of the output files of a parameter sweep
+	private static final String SWEEP_FILENAME = "datadm_sweep";
+
+	// file-name of the aggregate of windowed metrics of all larvae
+	private static final String WINDOWS_FILENAME = "datadm_windows.txt";
+
 	/** Everything happens here */
 	public static void main( String[] args ) {
-		if( args.length != 1 ) {
-			out.println( "USAGE: specify directory containing many folders." );
-			out.println( "       (folder and/or sub-folders are the ones created by MagRecognizer.)\n\n" );
+		if( args.length < 1 ) {
+			usage();
 			System.exit( 1 );
 		}; // if
+		Options options = new Options();
+		int threads = 1;
+		List<String> sweepList = new ArrayList<String>();
+		for( int k = 1; k < args.length; k++ ) {
+			if( "--threads".equalsIgnoreCase( args[ k ] ) == true && ( k + 1 ) < args.length ) {
+				k++;
+				try {
+					threads = Integer.parseInt( args[ k ] );
+				}
+				catch( NumberFormatException nfe ) {
+					threads = 0;
+				}; // try
+			}
+			else if( "--binary".equalsIgnoreCase( args[ k ] ) == true ) {
+				options.binaryFlag = true;
+			}
+			else if( "--details".equalsIgnoreCase( args[ k ] ) == true ) {
+				options.detailsFlag = true;
+			}
+			else if( "--sweep".equalsIgnoreCase( args[ k ] ) == true && ( k + 1 ) < args.length ) {
+				k++;
+				sweepList.add( args[ k ] );
+			}
+			else if( "--long".equalsIgnoreCase( args[ k ] ) == true ) {
+				options.longFlag = true;
+			}
+			else if( "--window".equalsIgnoreCase( args[ k ] ) == true && ( k + 1 ) < args.length ) {
+				k++;
+				try {
+					options.windowSeconds = Double.parseDouble( args[ k ] );
+				}
+				catch( NumberFormatException nfe ) {
+					options.windowSeconds = 0;
+				}; // try
+				if( ( options.windowSeconds > 0 ) == false ) {
+					out.println( "Error: --window needs a number of seconds greater than zero (given: " + args[ k ] + ")\n" );
+					usage();
+					System.exit( 1 );
+				}; // if
+			}
+			else {
+				threads = 0;
+			}; // if
+			if( threads < 1 ) {
+				usage();
+				System.exit( 1 );
+			}; // if
+		}; // for
+
+		// the configurations of a parameter sweep
+		if( sweepList.isEmpty() == false ) {
+			try {
+				options.configList = AnalysisConfig.createGrid( sweepList );
+			}
+			catch( IllegalArgumentException iae ) {
+				out.println( "Error: " + iae.getMessage() + "\n" );
+				usage();
+				System.exit( 1 );
+			}; // try
+			if( options.binaryFlag == true || options.detailsFlag == true || options.windowSeconds > 0 ) {
+				out.println( "Error: --binary, --details and --window can not be used with --sweep\n" );
+				usage();
+				System.exit( 1 );
+			}; // if
+		}; // if
+		List<AnalysisConfig> configList = options.configList;
 
 		String directory = args[ 0 ];
 		if( directory.endsWith( "/" ) == false && directory.endsWith( "\\" ) == false ) {
@@ -42,8 +120,7 @@ public class MagAnalyzer {
 		File file = new File( directory );
 		if( file.exists() == false ) {
 			out.println( "Error, directory does not exist!\n" );
-			out.println( "USAGE: specify directory containing many folders." );
-			out.println( "       (folder and/or sub-folders are the ones created by MagRecognizer.)\n\n" );
+			usage();
 			out.println( "Bye!\n\n" );
 			System.exit( 1 );
 		}; // if
@@ -56,17 +133,29 @@ public class MagAnalyzer {
 			System.exit( 1 );
 		}; // if
 
+		// when running in parallel, each folder is analyzed by a worker (each worker has its own Video),
+		// the results are kept in the position of the folder so that they are written in the same order
 		Video video = new Video();
-		String headerLine = null;
-		PrintWriter printWriter = null;
+		List<Future<Result>> resultsList = null;
+		ExecutorService executorService = null;
+		if( threads > 1 ) {
+			executorService = Executors.newFixedThreadPool( threads );
+			resultsList = submitAll( foldersList, executorService, options );
+		}; // if
 
+		// one writer for datadm.txt, or one per configuration of the sweep, or one for the long table of the sweep
+		List<MetricsWriter> writerList = new ArrayList<MetricsWriter>();
+		List<String> labelList = new ArrayList<String>();
+		List<MetricsRow> rowList = new ArrayList<MetricsRow>();
+		// aggregate of the windows of all larvae (long format)
+		PrintWriter windowsWriter = null;
 
 		// process each folder
 		int i = 0;
 		for( File each : foldersList ) {
 			if( each.isDirectory() == false ) {
 				out.println( "ERROR, not a folder! " + each.getName() );
-				return;
+				break;
 			}; // if
 
 			i++;
@@ -76,40 +165,285 @@ public class MagAnalyzer {
 				out.println( "[ " + i + " of " + foldersList.size() + " ] ----- " + nameOnly + " --- " + parentFolder + " (bad)" );
 				continue;
 			}; // if
-			video.resetEverything();
 			out.println( "[ " + i + " of " + foldersList.size() + " ] ----- " + nameOnly + " --- " + parentFolder );
-			
-			video.setDirectory( each.getAbsolutePath() );
-			error = video.calculateAllParameters();
-			if( error != null ) {
-				out.println( "\t" + error );
+
+			Result result = null;
+			if( resultsList == null ) {
+				result = analyze( video, each, options );
+			}
+			else {
+				result = getResult( resultsList.get( i - 1 ) );
+			}; // if
+			if( result.error != null ) {
+				out.println( "\t" + result.error );
 				continue;
 			}; // if
 			
-			if( printWriter == null ) {
-				try {
-					printWriter = new PrintWriter( new FileWriter( directory + "datadm.txt" ) );
-				}
-				catch( IOException ioe ) {
-					out.println( "Error when creating output file (data.txt)" );
+			if( configList != null ) {
+				writeSweep( directory, configList, options.longFlag, writerList, parentFolder + File.separator, result.sweepRowList );
+				continue;
+			}; // if
+			if( writerList.isEmpty() == true ) {
+				// the header is the same for all folders (see MetricsSchema)
+				writerList.add( createMetricsWriter( directory + "datadm.txt" ) );
+				writerList.get( 0 ).writeHeader();
+			}; // if
+			MetricsWriter metricsWriter = writerList.get( 0 );
+			metricsWriter.writeRow( parentFolder + File.separator, result.row );
+			if( metricsWriter.flush() == true ) {
+				out.println( "Error when writing output file (datadm.txt)" );
+				System.exit( 1 );
+			}; // if
+			if( options.windowSeconds > 0 ) {
+				if( windowsWriter == null ) {
+					windowsWriter = createOutputFile( directory + WINDOWS_FILENAME );
+					windowsWriter.println( "#larvae\t" + WindowedMetrics.HEADER.substring( 1 ) );
+				}; // if
+				for( String line : result.windowList ) {
+					windowsWriter.println( parentFolder + File.separator + result.row.getLabel() + "\t" + line );
+				}; // for
+				windowsWriter.flush();
+				if( windowsWriter.checkError() == true ) {
+					out.println( "Error when writing output file (" + WINDOWS_FILENAME + ")" );
 					System.exit( 1 );
-				}; // try
+				}; // if
+			}; // if
+			if( options.binaryFlag == true ) {
+				labelList.add( parentFolder + File.separator + result.row.getLabel() );
+				rowList.add( result.row );
+			}; // if
+		}; // for
+		if( executorService != null ) {
+			executorService.shutdownNow();
+		}; // if
+		if( windowsWriter != null ) {
+			windowsWriter.close();
+		}; // if
+		if( options.binaryFlag == true ) {
+			error = MetricsWriter.writeBinary( new File( directory, MetricsWriter.BINARY_FILENAME ), labelList, rowList );
+			if( error != null ) {
+				out.println( error );
+			}; // if
+		}; // if
+	}
+
+
+	/**
+	 * Displays usage of the command-line parameters
+	 */
+	public static void usage() {
+		out.println( "USAGE: specify directory containing many folders." );
+		out.println( "       (folder and/or sub-folders are the ones created by MagRecognizer.)" );
+		out.println( "       optional: --threads N   to analyze N folders at the same time" );
+		out.println( "       optional: --binary      to write also " + MetricsWriter.BINARY_FILENAME + " (columnar, for R/Python)" );
+		out.println( "       optional: --details     to write also details.txt in each folder" );
+		out.println( "       optional: --sweep NAME=value1,value2,...   parameter sweep, it can be repeated (every combination is analyzed)," );
+		out.println( "                 names: " + Arrays.toString( AnalysisConfig.PARAMETER_NAMES ) );
+		out.println( "                 writes " + SWEEP_FILENAME + "_N.txt (one per configuration, see " + SWEEP_FILENAME + "_configs.txt)" );
+		out.println( "       optional: --long        (with --sweep) writes one long table instead: " + SWEEP_FILENAME + ".txt" );
+		out.println( "       optional: --window S    metrics within windows of S seconds, written to " + WindowedMetrics.FILENAME
+			+ " in each folder and to " + WINDOWS_FILENAME );
+		out.println( "       (values of folders whose data did not change are taken from " + AnalysisCache.FILENAME + ", -DANALYSIS_CACHE=false disables it)" );
+		out.println( "       (" + AbsolutePointsFile.ABS_POINTS_BINARY_FILENAME + " is read instead of " + Utilities.ABS_POINTS_FILENAME + ", -DABS_POINTS_BINARY=false reads the text file)\n\n" );
+	}
+
+
+	/**
+	 * Creates a writer of rows of values, the program ends when the file can not be created
+	 * @param  filename  the file name
+	 * @return  the writer
+	 */
+	protected static MetricsWriter createMetricsWriter( String filename ) {
+		return new MetricsWriter( createOutputFile( filename ) );
+	}
+
+
+	/**
+	 * Creates an output text file, the program ends when the file can not be created
+	 * @param  filename  the file name
+	 * @return  the print-writer of the file
+	 */
+	protected static PrintWriter createOutputFile( String filename ) {
+		PrintWriter printWriter = null;
+		try {
+			printWriter = new PrintWriter( new BufferedWriter( new FileWriter( filename ) ) );
+		}
+		catch( IOException ioe ) {
+			out.println( "Error when creating output file (" + filename + ")" );
+			System.exit( 1 );
+		}; // try
+		return printWriter;
+	}
+
+
+	/**
+	 * Writes the values of one folder for each configuration of a parameter sweep;
+	 * output files are created (with their headers) the first time
+	 * @param  directory  the directory of the output files
+	 * @param  configList  the configurations
+	 * @param  longFlag  whether to write one long table (otherwise one table per configuration)
+	 * @param  writerList  the writers (empty the first time)
+	 * @param  prefix  text written before the name of the larvae
+	 * @param  rowList  values of each configuration
+	 */
+	protected static void writeSweep( String directory, List<AnalysisConfig> configList, boolean longFlag,
+			List<MetricsWriter> writerList, String prefix, List<MetricsRow> rowList ) {
+		String header = "config\t";
+		for( String name : AnalysisConfig.PARAMETER_NAMES ) {
+			header += name + "\t";
+		}; // for
+		if( writerList.isEmpty() == true ) {
+			if( longFlag == true ) {
+				writerList.add( createMetricsWriter( directory + SWEEP_FILENAME + ".txt" ) );
+				writerList.get( 0 ).writeHeader( header );
+			}
+			else {
+				// the index of configurations, then one file per configuration
+				List<String> linesList = new ArrayList<String>();
+				linesList.add( "#" + header.trim() );
+				for( int k = 0; k < configList.size(); k++ ) {
+					linesList.add( ( k + 1 ) + "\t" + configList.get( k ).toColumns() );
+					writerList.add( createMetricsWriter( directory + SWEEP_FILENAME + "_" + ( k + 1 ) + ".txt" ) );
+					writerList.get( k ).writeHeader();
+				}; // for
+				String error = Utilities.writeFile( directory + SWEEP_FILENAME + "_configs.txt", linesList );
+				if( error != null ) {
+					out.println( "Error when writing output file (" + SWEEP_FILENAME + "_configs.txt)" );
+					System.exit( 1 );
+				}; // if
+			}; // if
+		}; // if
+		for( int k = 0; k < configList.size(); k++ ) {
+			if( longFlag == true ) {
+				writerList.get( 0 ).writeRow( ( k + 1 ) + "\t" + configList.get( k ).toColumns() + "\t" + prefix, rowList.get( k ) );
+			}
+			else {
+				writerList.get( k ).writeRow( prefix, rowList.get( k ) );
+			}; // if
+		}; // for
+		for( MetricsWriter metricsWriter : writerList ) {
+			if( metricsWriter.flush() == true ) {
+				out.println( "Error when writing output files (" + SWEEP_FILENAME + ")" );
+				System.exit( 1 );
 			}; // if
+		}; // for
+	}
+
 
-			if( headerLine == null ) {
-				headerLine = video.getValuesHeader();
-				printWriter.println( headerLine );
+	/**
+	 * Analyzes one folder, or gets its values from the analysis cache when its data did not change;
+	 * in a parameter sweep, the data is read and the invariant parameters are calculated once for all configurations
+	 * @param  video  the video object to use (it gets reset)
+	 * @param  folder  the folder
+	 * @param  options  the options (when details or windows are written, values are always computed, not taken from the cache)
+	 * @return  the result: error (null when things go OK) and parameter values
+	 */
+	public static Result analyze( Video video, File folder, Options options ) {
+		Result result = new Result();
+		video.resetEverything();
+		video.setDirectory( folder.getAbsolutePath() );
+		if( options.configList != null ) {
+			result.error = video.calculateInvariantParameters();
+			result.sweepRowList = new ArrayList<MetricsRow>();
+			for( AnalysisConfig config : options.configList ) {
+				if( result.error != null ) {
+					break;
+				}; // if
+				result.error = video.calculateParameters( config );
+				result.sweepRowList.add( video.getMetrics() );
+			}; // for
+			video.setConfig( AnalysisConfig.DEFAULT );
+			return result;
+		}; // if
+
+		// folders whose data did not change are taken from the cache
+		AnalysisCache analysisCache = new AnalysisCache( folder );
+		boolean computeFlag = options.detailsFlag == true || options.windowSeconds > 0;
+		MetricsRow cachedRow = AnalysisCache.ENABLED == true && computeFlag == false ? analysisCache.read() : null;
+		if( cachedRow != null ) {
+			video.setMetrics( cachedRow );
+		}
+		else {
+			result.error = video.calculateAllParameters();
+			if( result.error == null && AnalysisCache.ENABLED == true ) {
+				String error = analysisCache.write( video.getMetrics() );
+				if( error != null ) {
+					out.println( "\tWARNING, " + error );
+				}; // if
+			}; // if
+			if( result.error == null && options.detailsFlag == true ) {
+				String error = video.writeDetailsTextfile();
+				if( error != null ) {
+					out.println( "\tWARNING, " + error );
+				}; // if
 			}; // if
-			printWriter.println( parentFolder + File.separator + video.getValues() );
-			printWriter.flush();
+			if( result.error == null && options.windowSeconds > 0 ) {
+				result.windowList = new ArrayList<String>();
+				video.createWindowedMetrics().addWindows( options.windowSeconds, null, result.windowList );
+				String error = WindowedMetrics.write( new File( folder, WindowedMetrics.FILENAME ), result.windowList );
+				if( error != null ) {
+					out.println( "\tWARNING, " + error );
+				}; // if
+			}; // if
+		}; // if
+		if( result.error == null ) {
+			result.row = video.getMetrics();
+		}; // if
+		return result;
+	}
+
 
-			// just in case verification
-			if( headerLine.equals( video.getValuesHeader() ) == false ) {
-				out.println( "WARNING, header lines are different! , see below" );
-				out.println( headerLine );
-				out.println( video.getValuesHeader() );
+	/**
+	 * Submits the analysis of all (non 'bad') folders to the executor service; each thread uses its own video object
+	 * @param  foldersList  the folders
+	 * @param  executorService  the executor service
+	 * @param  options  the options
+	 * @return  the list of results, same positions as the folders (null for folders not submitted)
+	 */
+	protected static List<Future<Result>> submitAll( List<File> foldersList, ExecutorService executorService, final Options options ) {
+		final ThreadLocal<Video> videos = new ThreadLocal<Video>() {
+			@Override
+			protected Video initialValue() {
+				return new Video();
+			}
+		};
+		List<Future<Result>> resultsList = new ArrayList<Future<Result>>();
+		for( final File each : foldersList ) {
+			if( each.isDirectory() == false || each.getName().startsWith( "bad" ) == true ) {
+				resultsList.add( null );
+				continue;
 			}; // if
+			resultsList.add( executorService.submit( new Callable<Result>() {
+				public Result call() {
+					return analyze( videos.get(), each, options );
+				}
+			} ) );
 		}; // for
+		return resultsList;
+	}
+
+
+	/**
+	 * Waits for the result of a folder
+	 * @param  future  the pending result
+	 * @return  the result
+	 */
+	protected static Result getResult( Future<Result> future ) {
+		Result result = null;
+		try {
+			result = future.get();
+		}
+		catch( InterruptedException ie ) {
+			Thread.currentThread().interrupt();
+			result = new Result();
+			result.error = "Interrupted while waiting for results!";
+		}
+		catch( ExecutionException ee ) {
+			ee.getCause().printStackTrace();
+			result = new Result();
+			result.error = "Error: " + ee.getCause();
+		}; // try
+		return result;
 	}
 
 
@@ -144,7 +478,12 @@ public class MagAnalyzer {
 			}; // if
 			int i = 0;
 			for( String filename : wanted ) {
-				if( filename.equals( each.getName() ) == true ) {
+				// the binary version of abs_points can take the place of the text file
+				if( filename.equals( each.getName() ) == true
+				|| ( Utilities.ABS_POINTS_FILENAME.equals( filename ) == true && AbsolutePointsFile.ABS_POINTS_BINARY_FILENAME.equals( each.getName() ) == true ) ) {
+					if( wantedFlag[ i ] == true ) {
+						break;
+					}; // if
 					wantedFlag[ i ] = true;
 					hits++;
 				}; // if
@@ -175,5 +514,49 @@ public class MagAnalyzer {
 		}; // for
 		return null;
 	}
+
+
+	/**
+	 * Result of the analysis of a folder
+	 */
+	public static class Result {
+
+		/** error message, null when things went OK */
+		public String error = null;
+
+		/** the parameter values, null when there was an error */
+		public MetricsRow row = null;
+
+		/** the parameter values of each configuration of a parameter sweep */
+		public List<MetricsRow> sweepRowList = null;
+
+		/** lines of the windows (see WindowedMetrics), null when not asked for */
+		public List<String> windowList = null;
+
+	} // class Result
+
+
+	/**
+	 * Options of the analysis (from the command-line parameters)
+	 */
+	public static class Options {
+
+		/** whether to write the binary columnar file */
+		public boolean binaryFlag = false;
+
+		/** whether to write details.txt in each folder */
+		public boolean detailsFlag = false;
+
+		/** whether to write one long table of a parameter sweep */
+		public boolean longFlag = false;
+
+		/** window size in seconds of windowed metrics, zero when not asked for */
+		public double windowSeconds = 0;
+
+		/** the configurations of a parameter sweep, null when not sweeping */
+		public List<AnalysisConfig> configList = null;
+
+	} // class Options
+
 }
 
@@ -19,8 +19,12 @@ import java.io.PrintStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.media.CachingControlEvent;
 import javax.media.ConfigureCompleteEvent;
+import javax.media.Controller;
 import javax.media.ControllerClosedEvent;
 import javax.media.ControllerEvent;
 import javax.media.ControllerErrorEvent;
@@ -36,6 +40,8 @@ import javax.media.PrefetchCompleteEvent;
 import javax.media.Processor;
 import javax.media.ProcessorModel;
 import javax.media.RealizeCompleteEvent;
+import javax.media.StopEvent;
+import javax.media.Time;
 
 import javax.media.control.TrackControl;
 
@@ -48,6 +54,7 @@ import javax.swing.Box;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBoxMenuItem;
+import javax.swing.JComboBox;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
@@ -56,10 +63,15 @@ import javax.swing.JMenuBar;
 import javax.swing.JMenuItem;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JSlider;
 import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.UIManager;
 
-public class MagViewer extends JPanel implements ActionListener, ControllerListener {
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+public class MagViewer extends JPanel implements ActionListener, ChangeListener, ControllerListener {
 
 	// serial version UID
 	private static final long serialVersionUID = 1L;
@@ -76,6 +88,9 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 	/** constant for open menu-option */
 	public static final String OPEN = "Open ...";
 
+	/** constant for compare-videos menu item */
+	public static final String COMPARE = "Compare Videos ...";
+
 	/** constant for head-angle options-menu */
 	public static final String HEAD_ANGLE = "Show/hide Head Angle";
 
@@ -85,6 +100,21 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 	/** constant for stride-info options-menu */
 	public static final String STRIDE_INFO = "Show/hide Stride Information";
 
+	/** action command of the repaint loop (swing timer) */
+	public static final String RENDER_TICK = "Render tick";
+
+	/** milliseconds between ticks of the repaint loop */
+	public static final int RENDER_TICK_MILLISECONDS = 15;
+
+	/** constant for the speed selector */
+	public static final String SPEED = "Speed";
+
+	/** constant for jump-to-previous-stride button */
+	public static final String STRIDE_BACK = "<< Stride";
+
+	/** constant for jump-to-next-stride button */
+	public static final String STRIDE_FORWARD = "Stride >>";
+
 	// remember the parent frame
 	private final JFrame parentFrame;
 
@@ -92,19 +122,54 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 	protected final JFileChooser videoFileChooser;
 
 	// panel for playing video
-	private final JPanel imagePanel = new JPanel( true );
+	private final EffectPanel imagePanel = new EffectPanel();
 
 	// panel for video controls
 	private final JPanel controlsPanel = new JPanel();
 
 	// panel for drawing-track
-	private final JPanel trackPanel = new JPanel( true );
+	private final EffectPanel trackPanel = new EffectPanel();
 
 	// panel for body-size
-	private final JPanel bodySizePanel = new JPanel();
+	private final EffectPanel bodySizePanel = new EffectPanel();
 
 	// panel for velocity
-	private final JPanel velocityPanel = new JPanel();
+	private final EffectPanel velocityPanel = new EffectPanel();
+
+	// panels showing effects (updated by the repaint loop)
+	private final EffectPanel[] effectPanels = { imagePanel, trackPanel, bodySizePanel, velocityPanel };
+
+	// status bar (frames per second of decoding and rendering)
+	private final JLabel statusLabel = new JLabel( " " );
+
+	// the repaint loop, it runs on the event-dispatch thread
+	private final Timer renderTimer = new Timer( RENDER_TICK_MILLISECONDS, this );
+
+	// time when frames per second were last measured, and counts at that time
+	private long measureTime = 0;
+	private long measurePosted = 0;
+	private long measureShown = 0;
+
+	// scrub bar (frame number)
+	private final JSlider scrubSlider = new JSlider( 0, 0, 0 );
+
+	// whether the scrub bar is being moved by the repaint loop (not by the user)
+	private boolean updatingSlider = false;
+
+	// decoded frames, filled during playback and by the scrubber
+	private final DecodedFrameCache frameCache = new DecodedFrameCache( DecodedFrameCache.DEFAULT_BUDGET_BYTES );
+
+	// speed of playback, and which frames are drawn when drawing all of them would take too long
+	private final PlaybackController playbackController = new PlaybackController( RENDER_TICK_MILLISECONDS );
+
+	// selects the speed of playback
+	private final JComboBox<String> speedComboBox = new JComboBox<String>();
+
+	// shows any frame on request, null when no video is open
+	private FrameScrubber scrubber = null;
+
+	// parsed data of the open folder
+	private LarvaDataset dataset = null;
 
 	// checkbox-menu for head-angle
 	private final JCheckBoxMenuItem headLineMenuItem = new JCheckBoxMenuItem( HEAD_ANGLE );
@@ -142,6 +207,9 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 	// the actual video data
 	private Video video = new Video();
 
+	// parsed data of recently opened folders (switching back to one of them does not read or calculate again)
+	private final LarvaDatasetCache datasetCache = new LarvaDatasetCache( LarvaDatasetCache.DEFAULT_BUDGET_BYTES );
+
 	// video-width
 	private int videoWidth = 0;
 
@@ -184,18 +252,23 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 		fileMenu.setMnemonic( KeyEvent.VK_F );
 
 		JMenuItem openMenuItem = new JMenuItem( OPEN );
+		JMenuItem compareMenuItem = new JMenuItem( COMPARE );
 		JMenuItem quitMenuItem = new JMenuItem( QUIT );
 
 		openMenuItem.setActionCommand( OPEN );
+		compareMenuItem.setActionCommand( COMPARE );
 		quitMenuItem.setActionCommand( QUIT );
 
 		openMenuItem.addActionListener( this );
+		compareMenuItem.addActionListener( this );
 		quitMenuItem.addActionListener( this );
 
 		openMenuItem.setMnemonic( KeyEvent.VK_O );
+		compareMenuItem.setMnemonic( KeyEvent.VK_C );
 		quitMenuItem.setMnemonic( KeyEvent.VK_Q );
 
 		fileMenu.add( openMenuItem );
+		fileMenu.add( compareMenuItem );
 		fileMenu.add( quitMenuItem );
 
 		JMenu optionsMenu = new JMenu( "Options" );
@@ -243,6 +316,31 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 		videoPanel.add( buttonsPanel, new GBC( 0, 0 ) );
 		videoPanel.add( imagePanel, new GBC( 0, 1 ) );
 
+		// scrub bar with stride jumps
+		JPanel scrubPanel = new JPanel( new GridBagLayout() );
+		JButton strideBackButton = new JButton( STRIDE_BACK );
+		strideBackButton.setActionCommand( STRIDE_BACK );
+		strideBackButton.addActionListener( this );
+		JButton strideForwardButton = new JButton( STRIDE_FORWARD );
+		strideForwardButton.setActionCommand( STRIDE_FORWARD );
+		strideForwardButton.addActionListener( this );
+		scrubSlider.setPreferredSize( new Dimension( 460, scrubSlider.getPreferredSize().height ) );
+		scrubSlider.setEnabled( false );
+		scrubSlider.addChangeListener( this );
+		scrubPanel.add( strideBackButton, new GBC( 0, 0 ) );
+		scrubPanel.add( scrubSlider, new GBC( 1, 0 ) );
+		scrubPanel.add( strideForwardButton, new GBC( 2, 0 ) );
+		for( int i = 0; i < PlaybackController.SPEEDS.length; i++ ) {
+			speedComboBox.addItem( BasicEffect.format( PlaybackController.SPEEDS[ i ] ) + "x" );
+			if( PlaybackController.SPEEDS[ i ] == 1 ) {
+				speedComboBox.setSelectedIndex( i );
+			}; // if
+		}; // for
+		speedComboBox.setActionCommand( SPEED );
+		speedComboBox.addActionListener( this );
+		scrubPanel.add( speedComboBox, new GBC( 3, 0 ) );
+		videoPanel.add( scrubPanel, new GBC( 0, 2 ) );
+
 		trackPanel.setBorder( BorderFactory.createEtchedBorder() );
 		trackPanel.setPreferredSize( new Dimension( 310, 310 ) );
 		bodySizePanel.setBorder( BorderFactory.createEtchedBorder() );
@@ -254,6 +352,7 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 		add( bodySizePanel, new GBC( 0, 1 ).setDefaultInsets() );
 		add( velocityPanel, new GBC( 1, 1 ).setDefaultInsets() );
 		add( trackPanel, new GBC( 1, 0 ).setDefaultInsets() );
+		add( statusLabel, new GBC( 0, 2 ).setSpan( 2, 1 ).setAnchor( GBC.WEST ).setDefaultInsets() );
 
 		// set up the file-chooser
 		if( "/".equals( File.separator ) == true ) {
@@ -266,6 +365,9 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 		videoFileChooser.setFileSelectionMode( JFileChooser.FILES_ONLY );
 		videoFile = null;
 		player = null;
+
+		renderTimer.setActionCommand( RENDER_TICK );
+		renderTimer.start();
 	}
 
 
@@ -311,6 +413,11 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 	 * @param  actionEvent  the action-event object
 	 */
 	public void actionPerformed( ActionEvent actionEvent ) {
+		if( RENDER_TICK.equals( actionEvent.getActionCommand() ) == true ) {
+			renderTick();
+			return;
+		}; // if
+
 		if( OPEN.equals( actionEvent.getActionCommand() ) == true ) {
 			int returnValue = videoFileChooser.showOpenDialog( this );
 			if( returnValue != JFileChooser.APPROVE_OPTION ) {
@@ -320,12 +427,36 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 			videoFile = videoFileChooser.getSelectedFile();
 		}; // if
 
+		if( SPEED.equals( actionEvent.getActionCommand() ) == true ) {
+			applySpeed();
+			return;
+		}; // if
+
+		if( COMPARE.equals( actionEvent.getActionCommand() ) == true ) {
+			compareVideos();
+			return;
+		}; // if
+
 		if( HEAD_ANGLE.equals( actionEvent.getActionCommand() ) == true 
 		||  BODY_ANGLE.equals( actionEvent.getActionCommand() ) == true 
 		||  STRIDE_INFO.equals( actionEvent.getActionCommand() ) == true ) {
 			trickToTellPositionEffectWhetherToShowAngles();
 		}; // if
 
+		if( STRIDE_BACK.equals( actionEvent.getActionCommand() ) == true 
+		||  STRIDE_FORWARD.equals( actionEvent.getActionCommand() ) == true ) {
+			if( scrubber == null || dataset == null ) {
+				return;
+			}; // if
+			int direction = STRIDE_FORWARD.equals( actionEvent.getActionCommand() ) == true ? 1 : -1;
+			int frameNumber = dataset.getStrideStart( scrubSlider.getValue(), direction );
+			if( frameNumber != -1 ) {
+				// the scrub bar shows the frame (see stateChanged)
+				scrubSlider.setValue( frameNumber );
+			}; // if
+			return;
+		}; // if
+
 		if( QUIT.equals( actionEvent.getActionCommand() ) == true ) {
 			parentFrame.setVisible( false );
 			parentFrame.dispose();
@@ -383,6 +514,175 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 	}
 	
 
+	/**
+	 * One tick of the repaint loop (event-dispatch thread): each panel shows the latest state posted by its effect,
+	 * and about once per second the status bar shows the frames per second of decoding and rendering
+	 */
+	private void renderTick() {
+		for( EffectPanel effectPanel : effectPanels ) {
+			effectPanel.update();
+		}; // for
+		// during playback the scrub bar follows the frame shown
+		int shownFrame = imagePanel.getShownFrame();
+		if( processor != null && processor.getState() == Controller.Started && shownFrame >= 0
+		&&  shownFrame != scrubSlider.getValue() && scrubSlider.getValueIsAdjusting() == false ) {
+			updatingSlider = true;
+			scrubSlider.setValue( shownFrame );
+			updatingSlider = false;
+		}; // if
+		long now = System.currentTimeMillis();
+		if( now - measureTime < 1000 ) {
+			return;
+		}; // if
+		BasicEffect effect = imagePanel.getEffect();
+		if( effect == null ) {
+			statusLabel.setText( " " );
+		}
+		else {
+			long posted = effect.getMailbox().getPostedCount();
+			long shown = imagePanel.getShownCount();
+			// counts start again with a new effect
+			if( measureTime > 0 && posted >= measurePosted ) {
+				double seconds = ( now - measureTime ) / 1000.0;
+				statusLabel.setText( "Decode: " + BasicEffect.format( ( posted - measurePosted ) / seconds ) + " fps.   "
+					+ "Render: " + BasicEffect.format( ( shown - measureShown ) / seconds ) + " fps.   "
+					+ "Dropped frames: " + effect.getMailbox().getDroppedCount() + ".   "
+					+ "Speed: " + BasicEffect.format( playbackController.getSpeed() ) + "x.   "
+					+ "Effective: " + BasicEffect.format( playbackController.getEffectiveFps() ) + " fps.   "
+					+ "Skipped (render budget): " + playbackController.getSkippedCount() );
+			}; // if
+			measurePosted = posted;
+			measureShown = shown;
+		}; // if
+		measureTime = now;
+	}
+
+
+	/**
+	 * Scrub bar moved (by the user, or by a stride jump): playback stops and the frame is shown,
+	 * playback continues from that frame
+	 * @param  changeEvent  the change-event object
+	 */
+	public void stateChanged( ChangeEvent changeEvent ) {
+		if( updatingSlider == true || scrubber == null ) {
+			return;
+		}; // if
+		int frameNumber = scrubSlider.getValue();
+		if( processor != null && processor.getState() == Controller.Started ) {
+			processor.stop();
+		}; // if
+		// the StopEvent arrives later, it must not draw the frame skipped during playback over this one
+		playbackController.forgetSkippedLastFrame();
+		scrubber.request( frameNumber );
+		if( processor != null ) {
+			processor.setMediaTime( new Time( scrubber.getFrameIndexMap().getTime( frameNumber ) ) );
+		}; // if
+	}
+
+
+	/**
+	 * Sets the speed selected on the processor (the processor may choose a different rate, which is then shown)
+	 */
+	private void applySpeed() {
+		int index = speedComboBox.getSelectedIndex();
+		if( index < 0 ) {
+			return;
+		}; // if
+		float rate = (float) PlaybackController.SPEEDS[ index ];
+		if( processor != null ) {
+			rate = processor.setRate( rate );
+		}; // if
+		playbackController.setSpeed( rate );
+	}
+
+
+	/**
+	 * Draws the last frame processed when it was skipped, so that a stopped video shows the frame where it stopped
+	 */
+	private void showSkippedLastFrame() {
+		int frameNumber = playbackController.getSkippedLastFrame();
+		if( frameNumber != -1 && scrubber != null ) {
+			scrubber.request( frameNumber );
+		}; // if
+	}
+
+
+	/**
+	 * Asks for folders (plates, or larva folders) and shows their larvae side by side in a comparison grid
+	 */
+	private void compareVideos() {
+		JFileChooser folderChooser = new JFileChooser( videoFileChooser.getCurrentDirectory() );
+		folderChooser.setFileSelectionMode( JFileChooser.DIRECTORIES_ONLY );
+		folderChooser.setMultiSelectionEnabled( true );
+		folderChooser.setDialogTitle( COMPARE );
+		if( folderChooser.showOpenDialog( this ) != JFileChooser.APPROVE_OPTION ) {
+			return;
+		}; // if
+		List<File> foldersList = new ArrayList<File>();
+		File[] selectedFiles = folderChooser.getSelectedFiles();
+		for( int i = 0; i < selectedFiles.length; i++ ) {
+			String error = MagAnalyzer.findSubfoldersWithData( selectedFiles[ i ], foldersList );
+			if( error != null ) {
+				out.println( "\t" + "Error: " + error );
+			}; // if
+		}; // for
+		if( foldersList.isEmpty() == true ) {
+			JOptionPane.showMessageDialog( this, "No larva folders with data were found.", COMPARE, JOptionPane.WARNING_MESSAGE );
+			return;
+		}; // if
+		if( foldersList.size() > ComparisonGrid.MAX_TILES ) {
+			JOptionPane.showMessageDialog( this, "Only the first " + ComparisonGrid.MAX_TILES + " of " + foldersList.size() + " larvae are compared.", COMPARE, JOptionPane.INFORMATION_MESSAGE );
+			foldersList = foldersList.subList( 0, ComparisonGrid.MAX_TILES );
+		}; // if
+
+		List<ComparisonTile> tilesList = new ArrayList<ComparisonTile>();
+		String errors = "";
+		for( File folder : foldersList ) {
+			LarvaDataset larvaDataset = datasetCache.get( folder );
+			if( larvaDataset == null ) {
+				larvaDataset = new LarvaDataset( folder );
+				String error = larvaDataset.load();
+				if( error != null ) {
+					errors += folder.getAbsolutePath() + " : " + error + "\n";
+					continue;
+				}; // if
+				datasetCache.put( larvaDataset );
+			}; // if
+			ComparisonTile tile = new ComparisonTile( larvaDataset );
+			String error = tile.open();
+			if( error != null ) {
+				tile.close();
+				errors += error + "\n";
+				continue;
+			}; // if
+			tilesList.add( tile );
+		}; // for
+		if( errors.length() > 0 ) {
+			out.println( "\t" + "Errors: " + errors );
+			JOptionPane.showMessageDialog( this, "Some larvae can not be compared.\nErrors:\n" + errors, COMPARE, JOptionPane.ERROR_MESSAGE );
+		}; // if
+		if( tilesList.isEmpty() == true ) {
+			return;
+		}; // if
+		ComparisonGrid.showGrid( tilesList.toArray( new ComparisonTile[ tilesList.size() ] ) );
+	}
+
+
+	/**
+	 * Closes the scrubber (if any) and disables the scrub bar
+	 */
+	private void closeScrubber() {
+		if( scrubber != null ) {
+			scrubber.close();
+			scrubber = null;
+		}; // if
+		updatingSlider = true;
+		scrubSlider.setValue( 0 );
+		scrubSlider.setEnabled( false );
+		updatingSlider = false;
+	}
+
+
 	/**
 	 * Start media file playback. This function is called the
 	 * first time that the Applet runs and every
@@ -405,18 +705,24 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 
 		if( event instanceof ConfigureCompleteEvent ) {
 			//out.println( "ConfigureCompleteEvent" );
-			video.resetEverything();
-			video.setDirectory( videoFile.getParent() );
-			String error = video.calculateAllParameters();
-			if( error != null ) {
-				out.println( "\t" + "Error in Video.java: " + error );
-				JOptionPane.showMessageDialog( null, "Unable to play video.\nError:\n" + error , "Unable to play video.", JOptionPane.ERROR_MESSAGE );
-				return;
-			}; // if
-			error = video.writeDetailsTextfile();
-			if( error != null ) {
-				out.println( "\t" + "Error inside Video.java: " + error );
+			closeScrubber();
+			dataset = datasetCache.get( videoFile.getParentFile() );
+			if( dataset == null ) {
+				dataset = new LarvaDataset( videoFile.getParentFile() );
+				String error = dataset.load();
+				if( error != null ) {
+					out.println( "\t" + "Error in Video.java: " + error );
+					JOptionPane.showMessageDialog( null, "Unable to play video.\nError:\n" + error , "Unable to play video.", JOptionPane.ERROR_MESSAGE );
+					return;
+				}; // if
+				// details.txt is written when the folder is loaded (not again while it stays in the cache)
+				error = dataset.getVideo().writeDetailsTextfile();
+				if( error != null ) {
+					out.println( "\t" + "Error inside Video.java: " + error );
+				}; // if
+				datasetCache.put( dataset );
 			}; // if
+			video = dataset.getVideo();
 
 			processor.setContentDescriptor( null );
 			TrackControl[] trackControls = processor.getTrackControls();
@@ -424,12 +730,30 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 			for( int i = 0; i < trackControls.length; i++ ) {
 				if( trackControls[ i ].getFormat() instanceof VideoFormat ) {
 					trackControls[ i ].setFormat( new VideoFormat( VideoFormat.CINEPAK ) );
-					Effect[] effects = { 
-						new TrackEffect( videoFile, trackPanel, video ), 
-						new PositionEffect( videoFile, imagePanel, video ),
-						new PlotBodySizeEffect( videoFile, bodySizePanel, video ), 
-						new VelocityEffect( videoFile, velocityPanel, video ), 
-						};
+					TrackEffect trackEffect = new TrackEffect( videoFile, trackPanel, video );
+					PositionEffect positionEffect = new PositionEffect( videoFile, imagePanel, dataset );
+					PlotBodySizeEffect plotBodySizeEffect = new PlotBodySizeEffect( videoFile, bodySizePanel, video );
+					VelocityEffect velocityEffect = new VelocityEffect( videoFile, velocityPanel, video );
+					Effect[] effects = { trackEffect, positionEffect, plotBodySizeEffect, velocityEffect };
+					// the effects post the state of each frame, the panels paint it (repaint loop)
+					imagePanel.removeAll();
+					trackPanel.setEffect( trackEffect );
+					imagePanel.setEffect( positionEffect );
+					bodySizePanel.setEffect( plotBodySizeEffect );
+					velocityPanel.setEffect( velocityEffect );
+					// decoded frames are kept for scrubbing, the scrubber shows any frame with the same effects
+					frameCache.clear();
+					positionEffect.setFrameCache( frameCache );
+					playbackController.reset();
+					positionEffect.setPlaybackController( playbackController );
+					BasicEffect[] scrubEffects = { trackEffect, positionEffect, plotBodySizeEffect, velocityEffect };
+					scrubber = new FrameScrubber( videoFile, video.frameList.size(), video.getFrameRate(), frameCache, scrubEffects );
+					scrubber.start();
+					updatingSlider = true;
+					scrubSlider.setMaximum( Math.max( 0, video.frameList.size() - 1 ) );
+					scrubSlider.setValue( 0 );
+					scrubSlider.setEnabled( true );
+					updatingSlider = false;
 					try {
 						trackControls[ i ].setCodecChain( effects );
 					}
@@ -469,13 +793,18 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 				controlComponent.invalidate();
 				parentFrame.pack();
 			}; // if
+			applySpeed();
 			processor.start();
 		} 
 		else if( event instanceof EndOfMediaEvent ) {
 			//out.println( "EndOfMediaEvent" );
+			showSkippedLastFrame();
 			// We've reached the end of the media
 			//player.setMediaTime(new Time(0));
 		} 
+		else if( event instanceof StopEvent ) {
+			showSkippedLastFrame();
+		}
 		else if( event instanceof ControllerErrorEvent ) {
 			//out.println( "ControllerErrorEvent" );
 			player = null;
@@ -483,6 +812,10 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 		} 
 		else if( event instanceof ControllerClosedEvent ) {
 			//out.println( "ControllerClosedEvent" );
+			closeScrubber();
+			for( EffectPanel effectPanel : effectPanels ) {
+				effectPanel.setEffect( null );
+			}; // for
 			imagePanel.removeAll();
 			imagePanel.add( new JLabel( imageIcon ) );
 			imagePanel.invalidate();
@@ -502,6 +835,10 @@ public class MagViewer extends JPanel implements ActionListener, ControllerListe
 		if( player != null ) {
 			player.stop();
 			player.deallocate();
+			closeScrubber();
+			for( EffectPanel effectPanel : effectPanels ) {
+				effectPanel.setEffect( null );
+			}; // for
 			imagePanel.removeAll();
 			imagePanel.add( new JLabel( imageIcon ) );
 			imagePanel.invalidate();
@@ -0,0 +1,108 @@
+/*
+ * Filename: MetricsRow.java
+ */
+
+package org.wormloco.mag;
+
+import java.util.Arrays;
+
+/**
+ * The values of the columns of MetricsSchema for one video;
+ * the text column (name of the larvae) is the label, other columns are kept as double values
+ * where NaN means that the value is not available (written as NULL)
+ *
+ * @author Aleman-Meza
+ */
+
+public class MetricsRow {
+
+	// the label (name of the larvae)
+	private String label = null;
+
+	// value of each column (NaN when not available)
+	private final double[] values;
+
+
+	/** Default constructor, all values are not available */
+	public MetricsRow() {
+		values = new double[ MetricsSchema.size() ];
+		Arrays.fill( values, Double.NaN );
+	}
+
+
+	/**
+	 * Makes a copy of this row
+	 * @return  the copy (same label and values)
+	 */
+	public MetricsRow copy() {
+		MetricsRow row = new MetricsRow();
+		row.label = label;
+		System.arraycopy( values, 0, row.values, 0, values.length );
+		return row;
+	}
+
+
+	/**
+	 * Sets the label
+	 * @param  label  the label (name of the larvae)
+	 */
+	public void setLabel( String label ) {
+		this.label = label;
+	}
+
+
+	/**
+	 * Gets the label
+	 * @return  the label (name of the larvae)
+	 */
+	public String getLabel() {
+		return label;
+	}
+
+
+	/**
+	 * Sets the value of a column
+	 * @param  id  the id of the column
+	 * @param  value  the value, null when not available
+	 */
+	public void set( String id, Double value ) {
+		int index = MetricsSchema.indexOf( id );
+		// NaN is never expected in values with up to 5 decimals (it would be written as NULL)
+		if( value != null && value.isNaN() == true && MetricsSchema.getType( index ) == MetricsSchema.DECIMAL ) {
+			throw new RuntimeException( "Got a Nan, check the code! (" + id + ")" );
+		}; // if
+		values[ index ] = value == null ? Double.NaN : value.doubleValue();
+	}
+
+
+	/**
+	 * Sets the value of a column
+	 * @param  index  the index of the column
+	 * @param  value  the value, NaN when not available
+	 */
+	public void set( int index, double value ) {
+		values[ index ] = value;
+	}
+
+
+	/**
+	 * Gets the value of a column
+	 * @param  id  the id of the column
+	 * @return  the value, NaN when not available
+	 */
+	public double get( String id ) {
+		return values[ MetricsSchema.indexOf( id ) ];
+	}
+
+
+	/**
+	 * Gets the value of a column
+	 * @param  index  the index of the column
+	 * @return  the value, NaN when not available
+	 */
+	public double get( int index ) {
+		return values[ index ];
+	}
+
+} // class MetricsRow
+
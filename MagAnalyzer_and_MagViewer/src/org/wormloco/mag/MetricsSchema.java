@@ -0,0 +1,225 @@
+/*
+ * Filename: MetricsSchema.java
+ */
+
+package org.wormloco.mag;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The fixed set of columns (parameters) computed for each video, in the order they are written into datadm.txt;
+ * each column has an id (as in the header line), a unit (text within brackets in the id, if any) and a type
+ * that tells how its value is written
+ *
+ * @author Aleman-Meza
+ */
+
+public class MetricsSchema {
+
+	/** type of column: text (the name of the larvae) */
+	public static final int TEXT = 0;
+
+	/** type of column: decimal value written with up to 5 decimals */
+	public static final int DECIMAL = 1;
+
+	/** type of column: decimal value written with all its digits */
+	public static final int RAW = 2;
+
+	/** type of column: integer count */
+	public static final int COUNT = 3;
+
+	/** names of the types (same order as their values) */
+	public static final String[] TYPE_NAMES = new String[] { "text", "decimal", "raw", "count" };
+
+	// the id of each column
+	private static final List<String> idList = new ArrayList<String>();
+
+	// the unit of each column
+	private static final List<String> unitList = new ArrayList<String>();
+
+	// the type of each column
+	private static final List<Integer> typeList = new ArrayList<Integer>();
+
+	// index of each column id
+	private static final Map<String,Integer> indexMap = new HashMap<String,Integer>();
+
+	// the type of each column (same as typeList, for quick access)
+	private static final int[] types;
+
+	// the header line
+	private static final String header;
+
+
+	static { // static constructor, the columns in the order they are written
+		add( "larvae", TEXT );
+		add( "frame_rate[fps]", DECIMAL );
+		add( "video_length[seconds]", DECIMAL );
+		addStatistics( "body_length", "[mm]" );
+		addStatistics( "body_length_contracted", "[mm]" );
+		addStatistics( "body_length_extended", "[mm]" );
+		addOverallInsideOutside( "time_head_bending_", "[%]", RAW );
+		addOverallInsideOutside( "time_body_bending_", "[%]", RAW );
+		addOverallInsideOutside( "time_bending_", "[%]", RAW );
+		String[] places = new String[] { "overall", "inside", "outside" };
+		for( String place : places ) {
+			for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
+				addStatistics( "speed_" + place + "_at_point_" + eachPoint, "[mm/second]" );
+			}; // for
+		}; // for
+		addOverallInsideOutside( "time_striding_", "[%]", RAW );
+		add( "strides_per_minute", DECIMAL );
+		for( String place : places ) {
+			addStatistics( "stride_duration_" + place, "[second]" );
+		}; // for
+		for( String place : places ) {
+			addStatistics( "stride_distance_" + place, "[mm]" );
+		}; // for
+		for( String place : places ) {
+			for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
+				addStatistics( "speed_striding_" + place + "_at_point_" + eachPoint, "[mm/second]" );
+			}; // for
+		}; // for
+		for( String place : places ) {
+			addStatistics( "contraction_rate_" + place, "[mm/second]" );
+		}; // for
+		for( String place : places ) {
+			addStatistics( "extension_rate_" + place, "[mm/second]" );
+		}; // for
+		addOverallInsideOutside( "distance_traveled_per_minute_", "[mm]", DECIMAL );
+		addOverallInsideOutside( "direction_change_", "[%]", DECIMAL );
+		addStatistics( "run_distance", "[mm]" );
+		addStatistics( "run_duration", "[second]" );
+		addStatistics( "strides_per_run", "" );
+		add( "runs_per_minute", DECIMAL );
+		add( "time_not_over_repellent[%]", DECIMAL );
+
+		StringBuilder builder = new StringBuilder( "#" );
+		for( int i = 0; i < idList.size(); i++ ) {
+			builder.append( i == 0 ? "" : "\t" ).append( idList.get( i ) );
+		}; // for
+		header = builder.toString();
+		types = new int[ typeList.size() ];
+		for( int i = 0; i < types.length; i++ ) {
+			types[ i ] = typeList.get( i );
+		}; // for
+	}
+
+
+	/**
+	 * Registers a column
+	 * @param  id  the id of the column
+	 * @param  type  the type of the column
+	 */
+	private static void add( String id, int type ) {
+		int start = id.indexOf( "[" );
+		int end = id.indexOf( "]", start + 1 );
+		indexMap.put( id, idList.size() );
+		idList.add( id );
+		unitList.add( start != -1 && end != -1 ? id.substring( start + 1, end ) : "" );
+		typeList.add( type );
+	}
+
+
+	/**
+	 * Registers the columns of statistics of a parameter: mean, std-dev, n
+	 * @param  name  the name of the parameter
+	 * @param  unit  the unit within brackets (empty when there is no unit)
+	 */
+	private static void addStatistics( String name, String unit ) {
+		add( name + unit + "_mean", DECIMAL );
+		add( name + unit + "_stdev", DECIMAL );
+		add( name + "_n", COUNT );
+	}
+
+
+	/**
+	 * Registers the overall, inside and outside columns of a parameter
+	 * @param  name  the name of the parameter (without place)
+	 * @param  unit  the unit within brackets
+	 * @param  type  the type of the columns
+	 */
+	private static void addOverallInsideOutside( String name, String unit, int type ) {
+		add( name + "overall" + unit, type );
+		add( name + "inside" + unit, type );
+		add( name + "outside" + unit, type );
+	}
+
+
+	/**
+	 * Gets the number of columns
+	 * @return  the number of columns
+	 */
+	public static int size() {
+		return idList.size();
+	}
+
+
+	/**
+	 * Gets the index of a column
+	 * @param  id  the id of the column
+	 * @return  the index of the column
+	 * @throws  IllegalArgumentException  when there is no such column
+	 */
+	public static int indexOf( String id ) {
+		Integer index = indexMap.get( id );
+		if( index == null ) {
+			throw new IllegalArgumentException( "Programming error: column '" + id + "' is not in the metrics schema!" );
+		}; // if
+		return index;
+	}
+
+
+	/**
+	 * Gets the index of a column
+	 * @param  id  the id of the column
+	 * @return  the index of the column, or -1 when there is no such column
+	 */
+	public static int find( String id ) {
+		Integer index = indexMap.get( id );
+		return index == null ? -1 : index;
+	}
+
+
+	/**
+	 * Gets the id of a column
+	 * @param  index  the index of the column
+	 * @return  the id of the column
+	 */
+	public static String getId( int index ) {
+		return idList.get( index );
+	}
+
+
+	/**
+	 * Gets the unit of a column
+	 * @param  index  the index of the column
+	 * @return  the unit of the column (empty when it has no unit)
+	 */
+	public static String getUnit( int index ) {
+		return unitList.get( index );
+	}
+
+
+	/**
+	 * Gets the type of a column
+	 * @param  index  the index of the column
+	 * @return  the type of the column: TEXT, DECIMAL, RAW or COUNT
+	 */
+	public static int getType( int index ) {
+		return types[ index ];
+	}
+
+
+	/**
+	 * Gets the header line (ids of columns separated by tabs, starting with '#')
+	 * @return  the header line
+	 */
+	public static String getHeader() {
+		return header;
+	}
+
+} // class MetricsSchema
+
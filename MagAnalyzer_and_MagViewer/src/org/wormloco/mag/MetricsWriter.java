@@ -0,0 +1,227 @@
+/*
+ * Filename: MetricsWriter.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import java.util.List;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+
+/**
+ * Writes rows of MetricsSchema values: as tab-separated text lines (datadm.txt),
+ * with a formatter and a line buffer that are reused for every row;
+ * and optionally as a binary columnar file (datadm.bin), all values little-endian:
+ * header (magic 'MDDM', version, row count, column count),
+ * each column (id, unit, type as one byte; strings are the number of bytes as int followed by UTF-8 bytes),
+ * label of each row (string),
+ * and values of each column as consecutive doubles, one per row (NaN when not available; text columns have no values)
+ *
+ * @author Aleman-Meza
+ */
+
+public class MetricsWriter {
+
+	/** file-name of the binary columnar file */
+	public static final String BINARY_FILENAME = "datadm.bin";
+
+	/** magic number at start of binary columnar file ('MDDM') */
+	public static final int BINARY_MAGIC = 0x4D44444D;
+
+	/** version of the binary columnar file */
+	public static final int BINARY_VERSION = 1;
+
+	// the text output (null when only formatting)
+	private final PrintWriter printWriter;
+
+	// formatter of decimal values (same as Video.format)
+	private final NumberFormat formatter = new DecimalFormat( "#0.0####" );
+
+	// buffer of a line, reused for every row
+	private final StringBuilder builder = new StringBuilder( 8192 );
+
+
+	/**
+	 * Constructor
+	 * @param  printWriter  the text output, null when the writer is used only for formatting rows
+	 */
+	public MetricsWriter( PrintWriter printWriter ) {
+		this.printWriter = printWriter;
+	}
+
+
+	/**
+	 * Writes the header line
+	 */
+	public void writeHeader() {
+		printWriter.println( MetricsSchema.getHeader() );
+	}
+
+
+	/**
+	 * Writes the header line with extra columns before the columns of the schema
+	 * @param  prefix  names of the extra columns, separated by tabs (and ending with a tab)
+	 */
+	public void writeHeader( String prefix ) {
+		printWriter.println( "#" + prefix + MetricsSchema.getHeader().substring( 1 ) );
+	}
+
+
+	/**
+	 * Writes a row
+	 * @param  prefix  text written before the label of the row (e.g., the parent folder), can be null
+	 * @param  row  the row
+	 */
+	public void writeRow( String prefix, MetricsRow row ) {
+		builder.setLength( 0 );
+		if( prefix != null ) {
+			builder.append( prefix );
+		}; // if
+		appendRow( builder, row );
+		printWriter.append( builder ).println();
+	}
+
+
+	/**
+	 * Formats a row as text (values separated by tabs)
+	 * @param  row  the row
+	 * @return  the text
+	 */
+	public String format( MetricsRow row ) {
+		builder.setLength( 0 );
+		return appendRow( builder, row ).toString();
+	}
+
+
+	/**
+	 * Appends a row (values separated by tabs) into a string-builder
+	 * @param  stringBuilder  the string-builder
+	 * @param  row  the row
+	 * @return  the same string-builder
+	 */
+	public StringBuilder appendRow( StringBuilder stringBuilder, MetricsRow row ) {
+		for( int index = 0; index < MetricsSchema.size(); index++ ) {
+			if( index > 0 ) {
+				stringBuilder.append( '\t' );
+			}; // if
+			int type = MetricsSchema.getType( index );
+			if( type == MetricsSchema.TEXT ) {
+				stringBuilder.append( row.getLabel() );
+				continue;
+			}; // if
+			double value = row.get( index );
+			if( Double.isNaN( value ) == true ) {
+				stringBuilder.append( "NULL" );
+			}
+			else if( type == MetricsSchema.DECIMAL ) {
+				stringBuilder.append( formatter.format( value ) );
+			}
+			else if( type == MetricsSchema.COUNT ) {
+				stringBuilder.append( (long) value );
+			}
+			else {
+				stringBuilder.append( value );
+			}; // if
+		}; // for
+		return stringBuilder;
+	}
+
+
+	/**
+	 * Flushes the text output
+	 * @return  true when there was an error writing the text output
+	 */
+	public boolean flush() {
+		printWriter.flush();
+		return printWriter.checkError();
+	}
+
+
+	/**
+	 * Writes rows into a binary columnar file (first into a temporary file, then it is moved into place)
+	 * @param  file  the file
+	 * @param  labelList  the label of each row (e.g., parent folder and name of larvae)
+	 * @param  rowList  the rows
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public static String writeBinary( File file, List<String> labelList, List<MetricsRow> rowList ) {
+		Charset utf8 = Charset.forName( "UTF-8" );
+		int columns = MetricsSchema.size();
+		int size = 4 * 4;
+		for( int index = 0; index < columns; index++ ) {
+			size += 4 + MetricsSchema.getId( index ).getBytes( utf8 ).length + 4 + MetricsSchema.getUnit( index ).getBytes( utf8 ).length + 1;
+		}; // for
+		for( String label : labelList ) {
+			size += 4 + label.getBytes( utf8 ).length;
+		}; // for
+		for( int index = 0; index < columns; index++ ) {
+			if( MetricsSchema.getType( index ) != MetricsSchema.TEXT ) {
+				size += 8 * rowList.size();
+			}; // if
+		}; // for
+
+		ByteBuffer buffer = ByteBuffer.allocate( size ).order( ByteOrder.LITTLE_ENDIAN );
+		buffer.putInt( BINARY_MAGIC );
+		buffer.putInt( BINARY_VERSION );
+		buffer.putInt( rowList.size() );
+		buffer.putInt( columns );
+		for( int index = 0; index < columns; index++ ) {
+			putString( buffer, MetricsSchema.getId( index ), utf8 );
+			putString( buffer, MetricsSchema.getUnit( index ), utf8 );
+			buffer.put( (byte) MetricsSchema.getType( index ) );
+		}; // for
+		for( String label : labelList ) {
+			putString( buffer, label, utf8 );
+		}; // for
+		for( int index = 0; index < columns; index++ ) {
+			if( MetricsSchema.getType( index ) == MetricsSchema.TEXT ) {
+				continue;
+			}; // if
+			for( MetricsRow row : rowList ) {
+				buffer.putDouble( row.get( index ) );
+			}; // for
+		}; // for
+		buffer.flip();
+
+		File temporaryFile = new File( file.getPath() + ".tmp" );
+		try {
+			FileOutputStream fileOutputStream = new FileOutputStream( temporaryFile );
+			FileChannel fileChannel = fileOutputStream.getChannel();
+			while( buffer.hasRemaining() == true ) {
+				fileChannel.write( buffer );
+			}; // while
+			fileOutputStream.close();
+		}
+		catch( IOException ioe ) {
+			temporaryFile.delete();
+			return "Unable to write " + file.getAbsolutePath() + " : " + ioe;
+		}; // try
+		return Utilities.moveIntoPlace( temporaryFile, file );
+	}
+
+
+	/**
+	 * Puts a string: number of bytes followed by the UTF-8 bytes
+	 * @param  buffer  the buffer
+	 * @param  text  the string
+	 * @param  utf8  the UTF-8 charset
+	 */
+	private static void putString( ByteBuffer buffer, String text, Charset utf8 ) {
+		byte[] bytes = text.getBytes( utf8 );
+		buffer.putInt( bytes.length );
+		buffer.put( bytes );
+	}
+
+} // class MetricsWriter
+
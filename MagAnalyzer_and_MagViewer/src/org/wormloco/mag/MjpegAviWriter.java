@@ -0,0 +1,317 @@
+/*
+ * Filename: MjpegAviWriter.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Writes a Motion-JPEG AVI file (one video stream, every frame is a JPEG image) that common players can open;
+ * frames are given already JPEG-encoded (so that encoding can happen in other threads) and are written in order,
+ * the headers and the index are completed when the file is closed. Not thread-safe
+ *
+ * @author Aleman-Meza
+ */
+
+public class MjpegAviWriter {
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// position of the 'movi' four-character code (the headers before it have a fixed size)
+	private static final int MOVI_POSITION = 220;
+
+	// positions of values completed when the file is closed
+	private static final int RIFF_SIZE_POSITION = 4;
+	private static final int AVIH_MAX_BYTES_PER_SEC_POSITION = 36;
+	private static final int AVIH_TOTAL_FRAMES_POSITION = 48;
+	private static final int AVIH_SUGGESTED_BUFFER_POSITION = 60;
+	private static final int STRH_LENGTH_POSITION = 140;
+	private static final int STRH_SUGGESTED_BUFFER_POSITION = 144;
+	private static final int MOVI_SIZE_POSITION = 216;
+
+	// the file
+	private final RandomAccessFile file;
+
+	// frames per second
+	private final double frameRate;
+
+	// index entries: offset and length of each frame
+	private int[] offsets = new int[ 1024 ];
+	private int[] lengths = new int[ 1024 ];
+
+	// number of frames written
+	private int frames = 0;
+
+	// size of the largest frame
+	private int maxLength = 0;
+
+	// position where the next frame is written
+	private long position = MOVI_POSITION + 4;
+
+	// buffer for values written in little-endian order
+	private final byte[] word = new byte[ 4 ];
+
+
+	/**
+	 * Constructor, the headers are written right away
+	 * @param  outputFile  the AVI file
+	 * @param  width  width of the frames
+	 * @param  height  height of the frames
+	 * @param  frameRate  frames per second
+	 * @throws  IOException  when the file can not be written
+	 */
+	public MjpegAviWriter( File outputFile, int width, int height, double frameRate ) throws IOException {
+		this.frameRate = frameRate;
+		outputFile.delete();
+		file = new RandomAccessFile( outputFile, "rw" );
+		writeFourCC( "RIFF" );
+		writeInt( 0 );
+		writeFourCC( "AVI " );
+		writeFourCC( "LIST" );
+		writeInt( 192 );
+		writeFourCC( "hdrl" );
+
+		// main header
+		writeFourCC( "avih" );
+		writeInt( 56 );
+		writeInt( (int) Math.round( 1000000 / frameRate ) );
+		writeInt( 0 );
+		writeInt( 0 );
+		// has index
+		writeInt( 0x10 );
+		writeInt( 0 );
+		writeInt( 0 );
+		writeInt( 1 );
+		writeInt( 0 );
+		writeInt( width );
+		writeInt( height );
+		for( int i = 0; i < 4; i++ ) {
+			writeInt( 0 );
+		}; // for
+
+		// stream header
+		writeFourCC( "LIST" );
+		writeInt( 116 );
+		writeFourCC( "strl" );
+		writeFourCC( "strh" );
+		writeInt( 56 );
+		writeFourCC( "vids" );
+		writeFourCC( "MJPG" );
+		writeInt( 0 );
+		// priority and language (two shorts), initial frames
+		writeInt( 0 );
+		writeInt( 0 );
+		// scale and rate
+		writeInt( 1000 );
+		writeInt( (int) Math.round( frameRate * 1000 ) );
+		writeInt( 0 );
+		writeInt( 0 );
+		writeInt( 0 );
+		writeInt( -1 );
+		writeInt( 0 );
+		// frame rectangle (four shorts)
+		writeInt( 0 );
+		writeInt( ( width & 0xFFFF ) | ( height << 16 ) );
+
+		// stream format
+		writeFourCC( "strf" );
+		writeInt( 40 );
+		writeInt( 40 );
+		writeInt( width );
+		writeInt( height );
+		// planes and bits per pixel (two shorts)
+		writeInt( 1 | ( 24 << 16 ) );
+		writeFourCC( "MJPG" );
+		writeInt( width * height * 3 );
+		for( int i = 0; i < 4; i++ ) {
+			writeInt( 0 );
+		}; // for
+
+		writeFourCC( "LIST" );
+		writeInt( 0 );
+		writeFourCC( "movi" );
+		if( file.getFilePointer() != position ) {
+			throw new IOException( "Programming error: wrong size of AVI headers (" + file.getFilePointer() + ")" );
+		}; // if
+	}
+
+
+	/**
+	 * Encodes an image as JPEG
+	 * @param  image  the image
+	 * @return  the JPEG data
+	 * @throws  IOException  when the image can not be encoded
+	 */
+	public static byte[] encode( BufferedImage image ) throws IOException {
+		ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream( image.getWidth() * image.getHeight() / 4 );
+		if( ImageIO.write( image, "jpg", byteArrayOutputStream ) == false ) {
+			throw new IOException( "No JPEG encoder available" );
+		}; // if
+		return byteArrayOutputStream.toByteArray();
+	}
+
+
+	/**
+	 * Writes the next frame
+	 * @param  jpeg  the frame, JPEG-encoded (see encode)
+	 * @throws  IOException  when the file can not be written
+	 */
+	public void writeFrame( byte[] jpeg ) throws IOException {
+		if( frames == offsets.length ) {
+			int[] tmp = new int[ frames * 2 ];
+			System.arraycopy( offsets, 0, tmp, 0, frames );
+			offsets = tmp;
+			tmp = new int[ frames * 2 ];
+			System.arraycopy( lengths, 0, tmp, 0, frames );
+			lengths = tmp;
+		}; // if
+		// chunks start at even positions
+		int padding = jpeg.length % 2;
+		if( position + 8 + jpeg.length + padding > Integer.MAX_VALUE ) {
+			throw new IOException( "AVI file would be bigger than 2GB" );
+		}; // if
+		offsets[ frames ] = (int) ( position - MOVI_POSITION );
+		lengths[ frames ] = jpeg.length;
+		file.seek( position );
+		writeFourCC( "00dc" );
+		writeInt( jpeg.length );
+		file.write( jpeg );
+		if( padding > 0 ) {
+			file.write( 0 );
+		}; // if
+		position += 8 + jpeg.length + padding;
+		maxLength = Math.max( maxLength, jpeg.length );
+		frames++;
+	}
+
+
+	/**
+	 * Writes the index, completes the headers and closes the file
+	 * @throws  IOException  when the file can not be written
+	 */
+	public void close() throws IOException {
+		file.seek( position );
+		writeFourCC( "idx1" );
+		writeInt( frames * 16 );
+		byte[] index = new byte[ frames * 16 ];
+		for( int f = 0; f < frames; f++ ) {
+			putInt( index, f * 16, 0x63643030 );
+			// key frame
+			putInt( index, f * 16 + 4, 0x10 );
+			putInt( index, f * 16 + 8, offsets[ f ] );
+			putInt( index, f * 16 + 12, lengths[ f ] );
+		}; // for
+		file.write( index );
+		long end = file.getFilePointer();
+		file.seek( RIFF_SIZE_POSITION );
+		writeInt( (int) ( end - 8 ) );
+		file.seek( AVIH_MAX_BYTES_PER_SEC_POSITION );
+		writeInt( (int) Math.min( Integer.MAX_VALUE, Math.round( maxLength * frameRate ) ) );
+		file.seek( AVIH_TOTAL_FRAMES_POSITION );
+		writeInt( frames );
+		file.seek( AVIH_SUGGESTED_BUFFER_POSITION );
+		writeInt( maxLength + 8 );
+		file.seek( STRH_LENGTH_POSITION );
+		writeInt( frames );
+		file.seek( STRH_SUGGESTED_BUFFER_POSITION );
+		writeInt( maxLength + 8 );
+		file.seek( MOVI_SIZE_POSITION );
+		writeInt( (int) ( position - MOVI_POSITION ) );
+		file.close();
+	}
+
+
+	/**
+	 * Gets the number of frames written
+	 * @return  the number of frames
+	 */
+	public int getFrames() {
+		return frames;
+	}
+
+
+	// writes a four-character code
+	private void writeFourCC( String fourCC ) throws IOException {
+		for( int i = 0; i < 4; i++ ) {
+			word[ i ] = (byte) fourCC.charAt( i );
+		}; // for
+		file.write( word );
+	}
+
+
+	// writes an int in little-endian order
+	private void writeInt( int value ) throws IOException {
+		putInt( word, 0, value );
+		file.write( word );
+	}
+
+
+	// puts an int in little-endian order into an array
+	private static void putInt( byte[] array, int index, int value ) {
+		array[ index ] = (byte) value;
+		array[ index + 1 ] = (byte) ( value >>> 8 );
+		array[ index + 2 ] = (byte) ( value >>> 16 );
+		array[ index + 3 ] = (byte) ( value >>> 24 );
+	}
+
+
+	// reads an int in little-endian order from an array
+	private static int getInt( byte[] array, int index ) {
+		return ( array[ index ] & 0xFF ) | ( ( array[ index + 1 ] & 0xFF ) << 8 )
+			| ( ( array[ index + 2 ] & 0xFF ) << 16 ) | ( ( array[ index + 3 ] & 0xFF ) << 24 );
+	}
+
+
+	/** for testing purposes only, writes a short movie then reads it back through its index */
+	public static void main( String[] args ) throws IOException {
+		File aviFile = File.createTempFile( "mjpeg", ".avi" );
+		int width = 160;
+		int height = 120;
+		MjpegAviWriter writer = new MjpegAviWriter( aviFile, width, height, 7.5 );
+		for( int f = 0; f < 30; f++ ) {
+			BufferedImage image = new BufferedImage( width, height, BufferedImage.TYPE_INT_RGB );
+			Graphics graphics = image.getGraphics();
+			graphics.setColor( Color.WHITE );
+			graphics.fillRect( f * 4, 0, 20, height );
+			graphics.dispose();
+			writer.writeFrame( encode( image ) );
+		}; // for
+		writer.close();
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile( aviFile, "r" );
+		byte[] data = new byte[ (int) randomAccessFile.length() ];
+		randomAccessFile.readFully( data );
+		randomAccessFile.close();
+		int moviSize = getInt( data, MOVI_SIZE_POSITION );
+		int indexPosition = MOVI_POSITION + moviSize;
+		int frames = getInt( data, indexPosition + 4 ) / 16;
+		int decoded = 0;
+		for( int f = 0; f < frames; f++ ) {
+			int chunk = MOVI_POSITION + getInt( data, indexPosition + 8 + f * 16 + 8 );
+			int length = getInt( data, chunk + 4 );
+			BufferedImage image = ImageIO.read( new ByteArrayInputStream( data, chunk + 8, length ) );
+			if( image != null && image.getWidth() == width && ( image.getRGB( f * 4 + 10, 60 ) & 0xFF ) > 200 ) {
+				decoded++;
+			}; // if
+		}; // for
+		out.println( "RIFF size ok: " + ( getInt( data, RIFF_SIZE_POSITION ) == data.length - 8 ) + ", total frames: " + getInt( data, AVIH_TOTAL_FRAMES_POSITION )
+			+ ", stream length: " + getInt( data, STRH_LENGTH_POSITION ) + ", index entries: " + frames + ", decoded: " + decoded
+			+ ", bytes: " + data.length );
+		aviFile.delete();
+	}
+
+} // class MjpegAviWriter
+
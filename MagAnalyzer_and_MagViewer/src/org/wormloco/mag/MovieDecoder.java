@@ -0,0 +1,147 @@
+/*
+ * Filename: MovieDecoder.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.Graphics;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+
+import javax.media.Buffer;
+import javax.media.Controller;
+import javax.media.Manager;
+import javax.media.MediaLocator;
+import javax.media.Player;
+import javax.media.Time;
+
+import javax.media.control.FrameGrabbingControl;
+import javax.media.control.FramePositioningControl;
+
+import javax.media.format.VideoFormat;
+
+import javax.media.util.BufferToImage;
+
+/**
+ * Decodes any frame of a movie (same as Snappy of MagRecognizer: a realized player,
+ * positioned with its frame-positioning control, then the frame is grabbed); nothing is shown on screen.
+ * Not thread-safe, each thread needs its own decoder
+ *
+ * @author Aleman-Meza
+ */
+
+public class MovieDecoder {
+
+	/** milliseconds to wait for the player to be prefetched */
+	public static final int TIMEOUT_MILLISECONDS = 10000;
+
+	// the movie file
+	protected final File movieFile;
+
+	// the player, null when not open
+	private Player player = null;
+
+	// controls of the player
+	private FramePositioningControl positioningControl = null;
+	private FrameGrabbingControl grabbingControl = null;
+
+	// converts the grabbed buffers
+	private BufferToImage bufferToImage = null;
+
+
+	/**
+	 * Constructor
+	 * @param  movieFile  the movie file
+	 */
+	public MovieDecoder( File movieFile ) {
+		this.movieFile = movieFile;
+	}
+
+
+	/**
+	 * Opens the movie: a player with controls for positioning and grabbing frames
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String open() {
+		try {
+			player = Manager.createRealizedPlayer( new MediaLocator( movieFile.toURI().toURL() ) );
+		}
+		catch( Exception e ) {
+			return "Unable to create decoder for " + movieFile.getAbsolutePath() + " : " + e;
+		}; // try
+		positioningControl = (FramePositioningControl) player.getControl( "javax.media.control.FramePositioningControl" );
+		grabbingControl = (FrameGrabbingControl) player.getControl( "javax.media.control.FrameGrabbingControl" );
+		if( positioningControl == null || grabbingControl == null ) {
+			return "The decoder can not position or grab frames of " + movieFile.getAbsolutePath();
+		}; // if
+		player.prefetch();
+		long start = System.currentTimeMillis();
+		while( player.getState() < Controller.Prefetched && System.currentTimeMillis() - start < TIMEOUT_MILLISECONDS ) {
+			try {
+				Thread.sleep( 10 );
+			}
+			catch( InterruptedException ie ) {
+				break;
+			}; // try
+		}; // while
+		if( player.getState() < Controller.Prefetched ) {
+			return "The decoder of " + movieFile.getAbsolutePath() + " was not prefetched";
+		}; // if
+		return null;
+	}
+
+
+	/**
+	 * Closes the movie
+	 */
+	public void close() {
+		if( player != null ) {
+			player.close();
+			player = null;
+		}; // if
+	}
+
+
+	/**
+	 * Decodes a frame
+	 * @param  frameNumber  the frame number
+	 * @return  the image (it belongs to the caller), or null when it could not be decoded
+	 */
+	public BufferedImage decode( int frameNumber ) {
+		positioningControl.seek( frameNumber );
+		Buffer buffer = grabbingControl.grabFrame();
+		if( buffer == null || buffer.getData() == null || ( buffer.getFormat() instanceof VideoFormat ) == false ) {
+			return null;
+		}; // if
+		if( bufferToImage == null ) {
+			bufferToImage = new BufferToImage( (VideoFormat) buffer.getFormat() );
+		}; // if
+		Image image = bufferToImage.createImage( buffer );
+		if( image == null || image.getWidth( null ) <= 0 ) {
+			return null;
+		}; // if
+		BufferedImage ret = new BufferedImage( image.getWidth( null ), image.getHeight( null ), BufferedImage.TYPE_INT_RGB );
+		Graphics graphics = ret.getGraphics();
+		graphics.drawImage( image, 0, 0, null );
+		graphics.dispose();
+		return ret;
+	}
+
+
+	/**
+	 * Gets the media time of a frame
+	 * @param  frameNumber  the frame number
+	 * @return  the time in seconds, NaN when the player does not know it
+	 */
+	public double getMediaTime( int frameNumber ) {
+		Time time = positioningControl.mapFrameToTime( frameNumber );
+		if( time == null || time == FramePositioningControl.TIME_UNKNOWN ) {
+			return Double.NaN;
+		}; // if
+		return time.getSeconds();
+	}
+
+} // class MovieDecoder
+
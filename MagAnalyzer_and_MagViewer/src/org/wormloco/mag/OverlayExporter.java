@@ -0,0 +1,354 @@
+/*
+ * Filename: OverlayExporter.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import javax.swing.JPanel;
+
+/**
+ * Exports the overlays of MagViewer (midline, head/body angle lines, stride info, repellent markers) without a screen:
+ * each frame of movie.avi is decoded, annotated with the same drawing code as PositionEffect on an off-screen image,
+ * and written as a numbered PNG image or as a frame of an MJPEG AVI file, for each larva of a directory tree.
+ * Frames are decoded in batches by one thread (the decoder is sequential) while the previous batch is annotated
+ * and encoded by the worker threads; the size of a batch is given by a memory budget
+ *
+ * @author Aleman-Meza
+ */
+
+public class OverlayExporter {
+
+	/** file-name of the exported AVI (in the folder of the larva) */
+	public static final String AVI_FILENAME = "overlay.avi";
+
+	/** folder of the exported PNG images (in the folder of the larva) */
+	public static final String PNG_FOLDER = "overlay_frames";
+
+	/** default memory budget (megabytes) for the decoded frames */
+	public static final int DEFAULT_MEMORY_MB = 256;
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// file-name of the movie (as named by MagRecognizer)
+	private static final String MOVIE_FILENAME = "movie.avi";
+
+	// whether to write PNG images (otherwise an AVI file)
+	private final boolean pngFlag;
+
+	// options of the overlays, same text as the name of the panel of MagViewer (see trickToTellPositionEffectWhetherToShowAngles)
+	private final String overlayOptions;
+
+	// memory budget (bytes) for the decoded frames of two batches
+	private final long memoryBytes;
+
+	// the worker threads
+	private final ExecutorService executorService;
+
+	// number of worker threads
+	private final int threads;
+
+
+	/**
+	 * Constructor
+	 * @param  pngFlag  whether to write PNG images (otherwise an AVI file)
+	 * @param  overlayOptions  options of the overlays (contains MagViewer.HEAD_ANGLE, BODY_ANGLE and/or STRIDE_INFO)
+	 * @param  memoryBytes  memory budget (bytes) for the decoded frames
+	 * @param  threads  number of worker threads
+	 */
+	public OverlayExporter( boolean pngFlag, String overlayOptions, long memoryBytes, int threads ) {
+		this.pngFlag = pngFlag;
+		this.overlayOptions = overlayOptions;
+		this.memoryBytes = memoryBytes;
+		this.threads = threads;
+		executorService = Executors.newFixedThreadPool( threads );
+	}
+
+
+	/**
+	 * Runs the exporter
+	 * @param  args  the first parameter must be a directory; then the options (see usage)
+	 */
+	public static void main( String[] args ) {
+		if( System.getProperty( "java.awt.headless" ) == null ) {
+			System.setProperty( "java.awt.headless", "true" );
+		}; // if
+		if( args.length < 1 ) {
+			usage();
+			System.exit( 1 );
+		}; // if
+		boolean pngFlag = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int memoryMegabytes = DEFAULT_MEMORY_MB;
+		boolean headFlag = false;
+		boolean bodyFlag = false;
+		boolean strideFlag = true;
+		boolean okFlag = true;
+		for( int k = 1; k < args.length; k++ ) {
+			if( "--png".equalsIgnoreCase( args[ k ] ) == true ) {
+				pngFlag = true;
+			}
+			else if( "--head".equalsIgnoreCase( args[ k ] ) == true ) {
+				headFlag = true;
+			}
+			else if( "--body".equalsIgnoreCase( args[ k ] ) == true ) {
+				bodyFlag = true;
+			}
+			else if( "--no-stride".equalsIgnoreCase( args[ k ] ) == true ) {
+				strideFlag = false;
+			}
+			else if( ( "--threads".equalsIgnoreCase( args[ k ] ) == true || "--memory".equalsIgnoreCase( args[ k ] ) == true ) && ( k + 1 ) < args.length ) {
+				int value = 0;
+				try {
+					value = Integer.parseInt( args[ k + 1 ] );
+				}
+				catch( NumberFormatException nfe ) {
+					value = 0;
+				}; // try
+				if( "--threads".equalsIgnoreCase( args[ k ] ) == true ) {
+					threads = value;
+				}
+				else {
+					memoryMegabytes = value;
+				}; // if
+				okFlag = value > 0;
+				k++;
+			}
+			else {
+				okFlag = false;
+			}; // if
+			if( okFlag == false ) {
+				usage();
+				System.exit( 1 );
+			}; // if
+		}; // for
+
+		File directory = new File( args[ 0 ] );
+		if( directory.isDirectory() == false ) {
+			out.println( "Error, directory does not exist! " + args[ 0 ] );
+			usage();
+			System.exit( 1 );
+		}; // if
+		List<File> foldersList = new ArrayList<File>();
+		String error = MagAnalyzer.findSubfoldersWithData( directory, foldersList );
+		if( error != null ) {
+			out.println( "Errors: " + error );
+			System.exit( 1 );
+		}; // if
+		out.println( "Found " + foldersList.size() + " folders (" + threads + " threads, " + memoryMegabytes + " MB for frames)." );
+
+		// same text as the name of the panel of MagViewer
+		String overlayOptions = ( headFlag == true ? MagViewer.HEAD_ANGLE : "" ) + "|"
+			+ ( bodyFlag == true ? MagViewer.BODY_ANGLE : "" ) + "|"
+			+ ( strideFlag == true ? MagViewer.STRIDE_INFO : "" );
+		OverlayExporter overlayExporter = new OverlayExporter( pngFlag, overlayOptions, memoryMegabytes * 1024L * 1024L, threads );
+		int i = 0;
+		for( File each : foldersList ) {
+			i++;
+			long start = System.currentTimeMillis();
+			out.println( "[ " + i + " of " + foldersList.size() + " ] ----- " + each.getAbsolutePath() );
+			error = overlayExporter.export( each );
+			if( error != null ) {
+				out.println( "\t" + error );
+				continue;
+			}; // if
+			out.println( "\t" + ( System.currentTimeMillis() - start ) + " ms" );
+		}; // for
+		overlayExporter.shutdown();
+	}
+
+
+	/**
+	 * Displays usage of the command-line parameters
+	 */
+	public static void usage() {
+		out.println( "USAGE: specify directory containing many folders." );
+		out.println( "       (folder and/or sub-folders are the ones created by MagRecognizer.)" );
+		out.println( "       writes " + AVI_FILENAME + " (MJPEG) in each folder, with the overlays shown by MagViewer" );
+		out.println( "       optional: --png         to write numbered PNG images in " + PNG_FOLDER + " instead" );
+		out.println( "       optional: --head        to draw the head-angle lines" );
+		out.println( "       optional: --body        to draw the body-angle lines" );
+		out.println( "       optional: --no-stride   to leave out the stride information" );
+		out.println( "       optional: --threads N   number of threads that annotate and encode frames (default is the number of processors)" );
+		out.println( "       optional: --memory M    megabytes for decoded frames (default " + DEFAULT_MEMORY_MB + ")\n\n" );
+	}
+
+
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown() {
+		executorService.shutdownNow();
+	}
+
+
+	/**
+	 * Creates the decoder of a movie (subclasses may decode frames differently)
+	 * @param  movieFile  the movie file
+	 * @return  the decoder (not open yet)
+	 */
+	protected MovieDecoder createDecoder( File movieFile ) {
+		return new MovieDecoder( movieFile );
+	}
+
+
+	/**
+	 * Exports the overlays of one larva
+	 * @param  folder  the folder of the larva
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String export( File folder ) {
+		LarvaDataset dataset = new LarvaDataset( folder );
+		String error = dataset.load();
+		if( error != null ) {
+			return error;
+		}; // if
+		if( dataset.getPoints() == null ) {
+			return "Unable to read " + LarvaDataset.POINTS_FILENAME;
+		}; // if
+		File movieFile = new File( folder, MOVIE_FILENAME );
+		// the panel is never shown, its name tells the effect which overlays to draw
+		JPanel panel = new JPanel();
+		panel.setName( overlayOptions );
+		final PositionEffect positionEffect = new PositionEffect( movieFile, panel, dataset );
+		MovieDecoder decoder = createDecoder( movieFile );
+		error = decoder.open();
+		if( error != null ) {
+			decoder.close();
+			return error;
+		}; // if
+		File pngFolder = new File( folder, PNG_FOLDER );
+		if( pngFlag == true && pngFolder.isDirectory() == false && pngFolder.mkdir() == false ) {
+			decoder.close();
+			return "Unable to create folder " + pngFolder.getAbsolutePath();
+		}; // if
+		int frames = dataset.getVideo().frameList.size();
+		MjpegAviWriter aviWriter = null;
+		int batchSize = 1;
+		List<Future<byte[]>> pendingList = new ArrayList<Future<byte[]>>();
+		try {
+			int frameNumber = 0;
+			while( frameNumber < frames ) {
+				// decode the next batch (the workers are busy with the previous one)
+				List<BufferedImage> batchList = new ArrayList<BufferedImage>();
+				int first = frameNumber;
+				while( frameNumber < frames && batchList.size() < batchSize ) {
+					BufferedImage image = decoder.decode( frameNumber );
+					if( image == null ) {
+						return "Unable to decode frame " + frameNumber + " of " + movieFile.getAbsolutePath();
+					}; // if
+					if( aviWriter == null ) {
+						// two batches in memory at any time
+						long frameBytes = DecodedFrameCache.getBytes( image );
+						batchSize = (int) Math.max( threads, Math.min( frames, memoryBytes / ( 2 * frameBytes ) ) );
+						if( pngFlag == false ) {
+							aviWriter = new MjpegAviWriter( new File( folder, AVI_FILENAME ), image.getWidth(), image.getHeight(),
+								dataset.getVideo().getFrameRate() );
+						}; // if
+					}; // if
+					batchList.add( image );
+					frameNumber++;
+				}; // while
+				writePending( pendingList, aviWriter );
+				pendingList = submitBatch( positionEffect, batchList, first, pngFolder );
+			}; // while
+			writePending( pendingList, aviWriter );
+			if( aviWriter != null ) {
+				aviWriter.close();
+				aviWriter = null;
+			}; // if
+		}
+		catch( IOException ioe ) {
+			return "Unable to write overlays of " + folder.getAbsolutePath() + " : " + ioe.getMessage();
+		}
+		catch( ExecutionException ee ) {
+			return "Unable to export overlays of " + folder.getAbsolutePath() + " : " + ee.getCause();
+		}
+		catch( InterruptedException ie ) {
+			Thread.currentThread().interrupt();
+			return "Interrupted while exporting overlays!";
+		}
+		finally {
+			for( Future<byte[]> future : pendingList ) {
+				future.cancel( true );
+			}; // for
+			if( aviWriter != null ) {
+				try {
+					aviWriter.close();
+				}
+				catch( IOException ignore ) {
+					// an error was already returned
+				}; // try
+			}; // if
+			decoder.close();
+		}; // try
+		return null;
+	}
+
+
+	/**
+	 * Submits the annotation and encoding of a batch of frames to the worker threads
+	 * @param  positionEffect  the effect that draws the overlays
+	 * @param  batchList  decoded images of the batch (they are annotated in place)
+	 * @param  first  frame number of the first image
+	 * @param  pngFolder  folder of PNG images
+	 * @return  pending results: JPEG data of each frame (AVI), or null when the PNG image was written
+	 */
+	private List<Future<byte[]>> submitBatch( final PositionEffect positionEffect, List<BufferedImage> batchList, int first, final File pngFolder ) {
+		List<Future<byte[]>> pendingList = new ArrayList<Future<byte[]>>();
+		for( int i = 0; i < batchList.size(); i++ ) {
+			final BufferedImage image = batchList.get( i );
+			final int frameNumber = first + i;
+			pendingList.add( executorService.submit( new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					positionEffect.annotate( image, frameNumber );
+					if( pngFlag == false ) {
+						return MjpegAviWriter.encode( image );
+					}; // if
+					File pngFile = new File( pngFolder, String.format( "frame_%05d.png", frameNumber ) );
+					if( ImageIO.write( image, "png", pngFile ) == false ) {
+						throw new IOException( "No PNG encoder available" );
+					}; // if
+					return null;
+				}
+			} ) );
+		}; // for
+		return pendingList;
+	}
+
+
+	/**
+	 * Waits for pending results and writes them in order
+	 * @param  pendingList  the pending results (emptied)
+	 * @param  aviWriter  the AVI writer, null when writing PNG images
+	 */
+	private static void writePending( List<Future<byte[]>> pendingList, MjpegAviWriter aviWriter )
+			throws IOException, ExecutionException, InterruptedException {
+		for( Future<byte[]> future : pendingList ) {
+			byte[] jpeg = future.get();
+			if( aviWriter != null ) {
+				aviWriter.writeFrame( jpeg );
+			}; // if
+		}; // for
+		pendingList.clear();
+	}
+
+} // class OverlayExporter
+
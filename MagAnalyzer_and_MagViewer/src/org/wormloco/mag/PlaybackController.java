@@ -0,0 +1,239 @@
+/*
+ * Filename: PlaybackController.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.PrintStream;
+
+/**
+ * Speed of playback (0.25x to 16x) and frame skipping under load: the codec thread asks for each frame
+ * whether it is drawn; a frame is skipped when the previous drawn frame is too recent, that is, when drawing
+ * every frame would take more than the render budget (a fraction of the time of the codec thread),
+ * or would be faster than the repaint loop can show. Effects that only post the frame number
+ * (track, charts) are never skipped, so their state keeps advancing
+ *
+ * @author Aleman-Meza
+ */
+
+public class PlaybackController {
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	/** the speeds that can be selected */
+	public static final double[] SPEEDS = { 0.25, 0.5, 1, 2, 4, 8, 16 };
+
+	/** fraction of the time of the codec thread that may be spent drawing frames (the render budget) */
+	public static final double MAX_LOAD = 0.75;
+
+	// weight of the newest cost in the moving average of the cost of drawing a frame
+	private static final double COST_WEIGHT = 0.1;
+
+	// nanoseconds per millisecond
+	private static final long NANOS_PER_MILLISECOND = 1000000L;
+
+	// shortest time between drawn frames (nanoseconds), a frame more often than that is never shown
+	private final long minIntervalNanos;
+
+	// the speed selected
+	private volatile double speed = 1;
+
+	// moving average of the cost of drawing a frame (nanoseconds)
+	private double averageCostNanos = 0;
+
+	// time when the last drawn frame was started, -1 when none
+	private long lastRenderedNanos = -1;
+
+	// the last frame processed, and whether it was drawn
+	private volatile int lastFrame = -1;
+	private volatile boolean lastFrameRendered = true;
+
+	// counts of frames
+	private volatile long processedCount = 0;
+	private volatile long renderedCount = 0;
+	private volatile long skippedCount = 0;
+
+	// frames drawn per second, measured over about one second
+	private volatile double effectiveFps = 0;
+
+	// start of the measure of frames per second, and frames drawn at that time
+	private long measureNanos = -1;
+	private long measureRendered = 0;
+
+
+	/**
+	 * Constructor
+	 * @param  minIntervalMilliseconds  shortest time between drawn frames (e.g., the tick of the repaint loop)
+	 */
+	public PlaybackController( int minIntervalMilliseconds ) {
+		minIntervalNanos = minIntervalMilliseconds * NANOS_PER_MILLISECOND;
+	}
+
+
+	/**
+	 * Sets the speed
+	 * @param  speed  the speed (1 is normal speed)
+	 */
+	public void setSpeed( double speed ) {
+		this.speed = speed;
+	}
+
+
+	/**
+	 * Gets the speed
+	 * @return  the speed (1 is normal speed)
+	 */
+	public double getSpeed() {
+		return speed;
+	}
+
+
+	/**
+	 * Forgets the counts and the cost of drawing (e.g., when another video is opened)
+	 */
+	public synchronized void reset() {
+		averageCostNanos = 0;
+		lastRenderedNanos = -1;
+		lastFrame = -1;
+		lastFrameRendered = true;
+		processedCount = 0;
+		renderedCount = 0;
+		skippedCount = 0;
+		effectiveFps = 0;
+		measureNanos = -1;
+		measureRendered = 0;
+	}
+
+
+	/**
+	 * Tells whether a frame is drawn (codec thread); when it is, rendered must be called once it is drawn
+	 * @param  frameNumber  the frame number
+	 * @param  nowNanos  the time (System.nanoTime)
+	 * @return  true when the frame is drawn; false when it is skipped
+	 */
+	public synchronized boolean shouldRender( int frameNumber, long nowNanos ) {
+		processedCount++;
+		lastFrame = frameNumber;
+		long interval = Math.max( minIntervalNanos, (long) ( averageCostNanos / MAX_LOAD ) );
+		if( lastRenderedNanos != -1 && nowNanos - lastRenderedNanos < interval ) {
+			skippedCount++;
+			lastFrameRendered = false;
+			return false;
+		}; // if
+		lastRenderedNanos = nowNanos;
+		lastFrameRendered = true;
+		return true;
+	}
+
+
+	/**
+	 * A frame was drawn (codec thread)
+	 * @param  costNanos  the time it took to draw it
+	 * @param  nowNanos  the time (System.nanoTime)
+	 */
+	public synchronized void rendered( long costNanos, long nowNanos ) {
+		renderedCount++;
+		averageCostNanos = renderedCount == 1 ? costNanos : averageCostNanos * ( 1 - COST_WEIGHT ) + costNanos * COST_WEIGHT;
+		if( measureNanos == -1 ) {
+			measureNanos = nowNanos;
+			measureRendered = renderedCount;
+		}
+		else if( nowNanos - measureNanos >= 1000 * NANOS_PER_MILLISECOND ) {
+			effectiveFps = ( renderedCount - measureRendered ) * 1e9 / ( nowNanos - measureNanos );
+			measureNanos = nowNanos;
+			measureRendered = renderedCount;
+		}; // if
+	}
+
+
+	/**
+	 * Gets the last frame processed when it was skipped (e.g., to draw it once playback stops)
+	 * @return  the frame number, -1 when the last frame was drawn
+	 */
+	public int getSkippedLastFrame() {
+		return lastFrameRendered == true ? -1 : lastFrame;
+	}
+
+
+	/**
+	 * Forgets the last frame processed when it was skipped (e.g., another frame was requested after playback stopped,
+	 * so the skipped frame must not be drawn over it)
+	 */
+	public synchronized void forgetSkippedLastFrame() {
+		lastFrameRendered = true;
+	}
+
+
+	/**
+	 * Gets the number of frames processed
+	 * @return  the number of frames
+	 */
+	public long getProcessedCount() {
+		return processedCount;
+	}
+
+
+	/**
+	 * Gets the number of frames drawn
+	 * @return  the number of frames
+	 */
+	public long getRenderedCount() {
+		return renderedCount;
+	}
+
+
+	/**
+	 * Gets the number of frames skipped (not drawn because of the render budget)
+	 * @return  the number of frames
+	 */
+	public long getSkippedCount() {
+		return skippedCount;
+	}
+
+
+	/**
+	 * Gets the frames drawn per second, measured over about the last second
+	 * @return  frames per second
+	 */
+	public double getEffectiveFps() {
+		return effectiveFps;
+	}
+
+
+	/**
+	 * Gets the average time it takes to draw a frame
+	 * @return  milliseconds
+	 */
+	public synchronized double getAverageCostMilliseconds() {
+		return averageCostNanos / NANOS_PER_MILLISECOND;
+	}
+
+
+	/** for testing purposes only, 20 seconds of a 7.5 fps movie at each speed, drawing a frame costs 20 ms (simulated clock) */
+	public static void main( String[] args ) {
+		double frameRate = 7.5;
+		long costNanos = 20 * NANOS_PER_MILLISECOND;
+		for( int s = 0; s < SPEEDS.length; s++ ) {
+			PlaybackController controller = new PlaybackController( MagViewer.RENDER_TICK_MILLISECONDS );
+			controller.setSpeed( SPEEDS[ s ] );
+			long periodNanos = (long) ( 1e9 / ( frameRate * SPEEDS[ s ] ) );
+			// frames come every period, or right after the previous one when the codec thread is busy drawing
+			long now = 0;
+			int frames = (int) ( 20 * frameRate * SPEEDS[ s ] );
+			for( int f = 0; f < frames; f++ ) {
+				now = Math.max( now, f * periodNanos );
+				if( controller.shouldRender( f, now ) == true ) {
+					now += costNanos;
+					controller.rendered( costNanos, now );
+				}; // if
+			}; // for
+			double seconds = now / 1e9;
+			out.println( "speed " + SPEEDS[ s ] + "x: processed " + controller.getProcessedCount() + ", drawn " + controller.getRenderedCount()
+				+ ", skipped " + controller.getSkippedCount() + ", effective " + BasicEffect.format( controller.getEffectiveFps() ) + " fps"
+				+ ", took " + BasicEffect.format( seconds ) + " sec. (expected " + BasicEffect.format( 20.0 ) + ")" );
+		}; // for
+	}
+
+} // class PlaybackController
+
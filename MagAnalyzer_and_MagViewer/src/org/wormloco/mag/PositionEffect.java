@@ -37,11 +37,15 @@ import javax.swing.JOptionPane;
  */
 public class PositionEffect extends BasicEffect {
 
+	// pixel points of each frame (head/tail already corrected), shared with other effects
 	protected int[][][] points = null;
 
 	// the video data
 	protected Video video = null;
 
+	// the parsed data of the larva
+	protected LarvaDataset dataset = null;
+
 	// the video file
 	protected File videoFile = null;
     
@@ -57,86 +61,27 @@ public class PositionEffect extends BasicEffect {
 	// remember the frames of strides having at least one bending of body or head
 	private Set<Integer> bendingFramesSet = new TreeSet<Integer>();
 
+	// image of a dropped state (never shown), reused for the next frame
+	private BufferedImage spareImage = null;
+
+	// decoded frames (for scrubbing), null when not used
+	private DecodedFrameCache frameCache = null;
+
+	// decides which frames are drawn (speed and render budget), null when every frame is drawn
+	private PlaybackController playbackController = null;
+
 
 	/** 
 	 * Constructor
 	 */
-	public PositionEffect( File videoFile, JPanel targetPanel, Video video ) {
+	public PositionEffect( File videoFile, JPanel targetPanel, LarvaDataset dataset ) {
 		this.targetPanel = targetPanel;
-		String pointsFilename = videoFile.getParent() + File.separator + "points.txt";
-		File file = new File( pointsFilename );
+		this.dataset = dataset;
+		Video video = dataset.getVideo();
+		points = dataset.getPoints();
+		File file = new File( dataset.getDirectory(), LarvaDataset.POINTS_FILENAME );
 		if( file.exists() == false ) {
 			JOptionPane.showMessageDialog( null, "Unable to find points.txt file.\nLocation: " + file.getAbsolutePath() , "Unable to mark midline of larva.", JOptionPane.ERROR_MESSAGE );
-			return;
-		}; // if
-		points = Utilities.readPoints( pointsFilename );
-		if( points != null ) {
-			for( int frameNumber = 0; frameNumber < points.length; frameNumber++ ) {
-				if( points[ frameNumber ] == null ) {
-					continue;
-				}; // if
-				int[] x = points[ frameNumber ][ 0 ];
-				int[] y = points[ frameNumber ][ 1 ];
-				Frame frame = video.frameList.get( frameNumber );
-				int width = x[ 12 ] - x[ 0 ];
-				double widthMm = frame.x[ 12 ] - frame.x[ 0 ];
-				// at least 20 pixels (arbitrary value)
-				if( Math.abs( width ) > 20 && Math.abs( widthMm ) > 0.5 ) {
-					if( width < 0 && widthMm > 0 ) { 
-						out.println( frameNumber + "(1)  " + width + "   mm: " + widthMm );
-					}
-					if( width < 0 && widthMm < 0 ) { 
-						out.println( frameNumber + "(2)  " + width + "   mm: " + widthMm );
-					}
-					if( width > 0 && widthMm < 0 ) { 
-						// swapping is needed
-						int[] originalx = new int[ x.length ];
-						int[] originaly = new int[ x.length ];
-						for( int p = 0; p < x.length; p++ ) {
-							originalx[ p ] = x[ p ];
-							originaly[ p ] = y[ p ];
-						}; // for
-						for( int p = 0; p < x.length; p++ ) {
-							x[ x.length - p - 1 ] = originalx[ p ];
-							y[ x.length - p - 1 ] = originaly[ p ];
-						}; // for
-						continue;
-					}; // if
-				}
-				int heigth = y[ 12 ] - y[ 0 ];
-				double heightMm = frame.y[ 12 ] - frame.y[ 0 ];
-				// at least 20 pixels (arbitrary value)
-				if( Math.abs( heigth ) > 20 && Math.abs( heightMm ) > 0.5 ) {
-					if( heigth < 0 && heightMm < 0 ) { 
-						// swapping is needed
-						int[] originalx = new int[ x.length ];
-						int[] originaly = new int[ x.length ];
-						for( int p = 0; p < x.length; p++ ) {
-							originalx[ p ] = x[ p ];
-							originaly[ p ] = y[ p ];
-						}; // for
-						for( int p = 0; p < x.length; p++ ) {
-							x[ x.length - p - 1 ] = originalx[ p ];
-							y[ x.length - p - 1 ] = originaly[ p ];
-						}; // for
-						continue;
-					}; // if
-					if( heigth > 0 && heightMm > 0 ) { 
-						// swapping is needed
-						int[] originalx = new int[ x.length ];
-						int[] originaly = new int[ x.length ];
-						for( int p = 0; p < x.length; p++ ) {
-							originalx[ p ] = x[ p ];
-							originaly[ p ] = y[ p ];
-						}; // for
-						for( int p = 0; p < x.length; p++ ) {
-							x[ x.length - p - 1 ] = originalx[ p ];
-							y[ x.length - p - 1 ] = originaly[ p ];
-						}; // for
-						continue;
-					}; // if
-				}; // if
-			}; // for
 		}; // if
 		this.video = video;
 		this.videoFile = videoFile;
@@ -193,28 +138,104 @@ public class PositionEffect extends BasicEffect {
 	}
 
 
+	/**
+	 * Sets the cache where decoded frames are kept (for scrubbing)
+	 * @param  frameCache  the cache, can be null
+	 */
+	public void setFrameCache( DecodedFrameCache frameCache ) {
+		this.frameCache = frameCache;
+	}
+
+
+	/**
+	 * Sets the controller that decides which frames are drawn; skipped frames are neither converted nor annotated
+	 * @param  playbackController  the controller, can be null (every frame is drawn)
+	 */
+	public void setPlaybackController( PlaybackController playbackController ) {
+		this.playbackController = playbackController;
+	}
+
+
 	/** do the processing **/
 	public int process(Buffer inputBuffer, Buffer outputBuffer){
 		int frameNumber = (int) inputBuffer.getSequenceNumber() - 1;
+		long start = System.nanoTime();
+		if( playbackController != null && playbackController.shouldRender( frameNumber, start ) == false ) {
+			return BUFFER_PROCESSED_OK;
+		}; // if
 		BufferedImage image = buffer2Image( inputBuffer );
 		if( image == null ) {
 			out.println( "buffer2image returned null, leaving" );
 			System.exit( 1 );
 		}; // if
 
-		Graphics panelGraphics = targetPanel.getGraphics();
-		if( panelGraphics == null ) {
-			out.println( "panelGraphics is null" );
-		}
-		else {
-			if( points == null ) {
-				panelGraphics.drawImage( image, 0, 0, targetPanel.getWidth() - 1, targetPanel.getHeight() - 1, targetPanel );
-				return BUFFER_PROCESSED_OK;
-			}; // if
+		// the decoded frame is kept (unchanged) for scrubbing
+		if( frameCache != null && frameCache.contains( frameNumber ) == false ) {
+			frameCache.put( frameNumber, copyImage( image, null ) );
+		}; // if
+
+		// the decoded image is copied, the copy belongs to the posted state
+		BufferedImage frameImage = copyImage( image, spareImage );
+		spareImage = null;
+		annotate( frameImage, frameNumber );
+		RenderState dropped = mailbox.post( new RenderState( frameNumber, frameImage ) );
+		if( dropped != null ) {
+			spareImage = dropped.image;
+		}; // if
+		if( playbackController != null ) {
+			long now = System.nanoTime();
+			playbackController.rendered( now - start, now );
+		}; // if
+		return BUFFER_PROCESSED_OK;
+    }
+
+
+	/**
+	 * Makes the state of any frame (e.g., when scrubbing) from its decoded image, which is not modified
+	 * @param  frameNumber  the frame number
+	 * @param  image  the decoded image of the frame
+	 * @return  the state (an annotated copy of the image), or null when there is no image
+	 */
+	public RenderState createState( int frameNumber, BufferedImage image ) {
+		if( image == null ) {
+			return null;
+		}; // if
+		BufferedImage frameImage = copyImage( image, null );
+		annotate( frameImage, frameNumber );
+		return new RenderState( frameNumber, frameImage );
+	}
+
+
+	/**
+	 * Copies an image
+	 * @param  image  the image
+	 * @param  target  image where to copy (reused when it has the same size), can be null
+	 * @return  the copy
+	 */
+	private static BufferedImage copyImage( BufferedImage image, BufferedImage target ) {
+		if( target == null || target.getWidth() != image.getWidth() || target.getHeight() != image.getHeight() ) {
+			target = new BufferedImage( image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB );
+		}; // if
+		Graphics graphics = target.getGraphics();
+		graphics.drawImage( image, 0, 0, null );
+		graphics.dispose();
+		return target;
+	}
+
+
+	/**
+	 * Draws the midline, angles, stride info, etc. of a frame on its image
+	 * @param  image  the image of the frame
+	 * @param  frameNumber  the frame number
+	 */
+	protected void annotate( BufferedImage image, int frameNumber ) {
+		if( points != null ) {
 			Graphics graphics = image.getGraphics();
 			graphics.setColor( Color.BLUE );
 			graphics.setFont( new Font(null, Font.PLAIN, 16) );
-			graphics.drawString( "Frame: " + frameNumber  + " of " + video.frameList.size(), 20, 40 );
+			double frameTime = dataset.getFrameTime( frameNumber );
+			graphics.drawString( "Frame: " + frameNumber  + " of " + video.frameList.size()
+				+ ( Double.isNaN( frameTime ) == true ? "" : "  (" + format( frameTime ) + " sec.)" ), 20, 40 );
 			graphics.setColor( Color.RED );
 			Frame frame = video.frameList.get( frameNumber );
 
@@ -229,7 +250,8 @@ public class PositionEffect extends BasicEffect {
 			int y = 0;
 			int prevX = 0; 
 			int prevY = 0;
-			if( points != null ) {
+			// frames without points (larva not recognized) have no midline
+			if( frameNumber < points.length && points[ frameNumber ] != null ) {
 				for( int i = 0; i < 13; i++ ) {
 					if( points[ frameNumber ] == null ) {
 						continue;
@@ -328,11 +350,15 @@ public class PositionEffect extends BasicEffect {
 				graphics.drawString( "Direction change: " + format0( Math.floor( frame.directionChangeAngle ) ) + " degrees.", 400, 400 );
 			}; // if
 
-			panelGraphics.drawImage( image, 0, 0, targetPanel.getWidth() - 1, targetPanel.getHeight() - 1, targetPanel );
-
+			graphics.dispose();
 		}; // if
-		return BUFFER_PROCESSED_OK;
-    }
+	}
+
+
+	/** draws the image of the frame (with the annotations) **/
+	public void render( Graphics graphics, RenderState state ) {
+		graphics.drawImage( state.image, 0, 0, targetPanel.getWidth() - 1, targetPanel.getHeight() - 1, targetPanel );
+	}
 
 
     /**
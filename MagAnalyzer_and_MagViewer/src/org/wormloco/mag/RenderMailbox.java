@@ -0,0 +1,72 @@
+/*
+ * Filename: RenderMailbox.java
+ */
+
+package org.wormloco.mag;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Single-slot mailbox (lock-free) between the codec thread, which posts the state of each frame,
+ * and the repaint loop, which takes the latest state; a state that is replaced before being taken
+ * is a dropped frame (the rendering fell behind the decoding)
+ *
+ * @author Aleman-Meza
+ */
+
+public class RenderMailbox {
+
+	// the slot, null when empty
+	private final AtomicReference<RenderState> slot = new AtomicReference<RenderState>();
+
+	// number of states posted
+	private final AtomicLong postedCount = new AtomicLong();
+
+	// number of states replaced before being taken
+	private final AtomicLong droppedCount = new AtomicLong();
+
+
+	/**
+	 * Posts a state (it replaces the state not yet taken, if any)
+	 * @param  state  the state
+	 * @return  the state that was replaced (dropped), or null
+	 */
+	public RenderState post( RenderState state ) {
+		postedCount.incrementAndGet();
+		RenderState previous = slot.getAndSet( state );
+		if( previous != null ) {
+			droppedCount.incrementAndGet();
+		}; // if
+		return previous;
+	}
+
+
+	/**
+	 * Takes the latest state, leaving the slot empty
+	 * @return  the state, or null when nothing was posted since the last time
+	 */
+	public RenderState take() {
+		return slot.getAndSet( null );
+	}
+
+
+	/**
+	 * Gets the number of states posted
+	 * @return  the number of states posted
+	 */
+	public long getPostedCount() {
+		return postedCount.get();
+	}
+
+
+	/**
+	 * Gets the number of dropped states
+	 * @return  the number of states replaced before being taken
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+} // class RenderMailbox
+
@@ -0,0 +1,37 @@
+/*
+ * Filename: RenderState.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * What an effect shows for one frame (immutable), made in the codec thread and painted later on the
+ * event-dispatch thread; the image (when there is one) belongs to the state once it is published,
+ * the codec does not draw on it again
+ *
+ * @author Aleman-Meza
+ */
+
+public class RenderState {
+
+	/** the frame number (starting at zero) */
+	public final int frameNumber;
+
+	/** image of the frame (e.g., video frame with annotations), null when the effect draws only from the video data */
+	public final BufferedImage image;
+
+
+	/**
+	 * Constructor
+	 * @param  frameNumber  the frame number
+	 * @param  image  image of the frame, can be null
+	 */
+	public RenderState( int frameNumber, BufferedImage image ) {
+		this.frameNumber = frameNumber;
+		this.image = image;
+	}
+
+} // class RenderState
+
@@ -34,6 +34,9 @@ public class Run {
 	// the run number (for the purpose of identifying different runs in same video)
 	public final int runNumber;
 
+	// minimum number of strides so that the run is valid
+	public final int minimumStrides;
+
 
 	/**
 	 * Default constructor
@@ -41,8 +44,20 @@ public class Run {
 	 * @param  cushion  number of frames to tolerate when two strides are not adjacent 
 	 */
 	public Run( int runNumber, int cushion ) {
+		this( runNumber, cushion, MINIMUM_STRIDES_FOR_BEING_VALID_STRIDE );
+	}
+
+
+	/**
+	 * Constructor
+	 * @param  runNumber  the arbitrary number assigned to the run
+	 * @param  cushion  number of frames to tolerate when two strides are not adjacent 
+	 * @param  minimumStrides  minimum number of strides so that the run is valid
+	 */
+	public Run( int runNumber, int cushion, int minimumStrides ) {
 		this.runNumber = runNumber;
 		this.cushion = cushion;
+		this.minimumStrides = minimumStrides;
 		strideList = new ArrayList<Stride>();
 	}
 
@@ -74,7 +89,7 @@ public class Run {
 	 * @return  true when valid; false otherwise
 	 */
 	public boolean isValid() {
-		if( strideList.size() >= MINIMUM_STRIDES_FOR_BEING_VALID_STRIDE ) {
+		if( strideList.size() >= minimumStrides ) {
 			return true;
 		}; // if
 		return false;
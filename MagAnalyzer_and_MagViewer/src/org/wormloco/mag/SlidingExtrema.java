@@ -0,0 +1,153 @@
+/*
+ * Filename: SlidingExtrema.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.PrintStream;
+
+import java.util.Random;
+
+/**
+ * Finds the frames that are the maximum (or minimum) of the window of frames centered on them,
+ * via monotonic deques (one pass over the values, linear time regardless of the window size);
+ * when several frames of a window share the maximum (or minimum) value, the last of them is the one that counts
+ *
+ * @author Aleman-Meza
+ */
+
+public class SlidingExtrema {
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+
+	/**
+	 * Marks, for each index f in [padding, n - padding), whether values[ f ] is the maximum (last one when there are ties)
+	 * of the values in [f - padding, f + padding], and the same for the minimum; other indexes are marked false
+	 * @param  values  the values (finite)
+	 * @param  padding  the number of values before and after each index
+	 * @param  isMax  output, whether each index is the maximum of its window
+	 * @param  isMin  output, whether each index is the minimum of its window
+	 */
+	public static void find( double[] values, int padding, boolean[] isMax, boolean[] isMin ) {
+		int n = values.length;
+		// deques of indexes, values of maxDeque are decreasing, values of minDeque are increasing
+		int[] maxDeque = new int[ n ];
+		int[] minDeque = new int[ n ];
+		int maxHead = 0;
+		int maxTail = 0;
+		int minHead = 0;
+		int minTail = 0;
+		for( int r = 0; r < n; r++ ) {
+			// an equal value replaces the previous one, so that the last index of the maximum stays
+			while( maxTail > maxHead && values[ maxDeque[ maxTail - 1 ] ] <= values[ r ] ) {
+				maxTail--;
+			}; // while
+			maxDeque[ maxTail++ ] = r;
+			while( minTail > minHead && values[ minDeque[ minTail - 1 ] ] >= values[ r ] ) {
+				minTail--;
+			}; // while
+			minDeque[ minTail++ ] = r;
+
+			int f = r - padding;
+			isMax[ r ] = false;
+			isMin[ r ] = false;
+			if( f - padding < 0 ) {
+				continue;
+			}; // if
+			// drop the indexes that left the window [f - padding, r]
+			while( maxDeque[ maxHead ] < f - padding ) {
+				maxHead++;
+			}; // while
+			while( minDeque[ minHead ] < f - padding ) {
+				minHead++;
+			}; // while
+			isMax[ f ] = maxDeque[ maxHead ] == f;
+			isMin[ f ] = minDeque[ minHead ] == f;
+		}; // for
+	}
+
+
+	/**
+	 * Same as find(), scanning the whole window around each index (reference implementation)
+	 * @param  values  the values
+	 * @param  padding  the number of values before and after each index
+	 * @param  isMax  output, whether each index is the maximum of its window
+	 * @param  isMin  output, whether each index is the minimum of its window
+	 */
+	public static void findByScanning( double[] values, int padding, boolean[] isMax, boolean[] isMin ) {
+		for( int f = 0; f < values.length; f++ ) {
+			isMax[ f ] = false;
+			isMin[ f ] = false;
+			if( ( f - padding ) < 0 || ( f + padding ) >= values.length ) {
+				continue;
+			}; // if
+			int maxIndex = f;
+			int minIndex = f;
+			for( int m = ( f - padding ); m <= ( f + padding ); m++ ) {
+				if( values[ maxIndex ] <= values[ m ] ) {
+					maxIndex = m;
+				}; // if
+				if( values[ minIndex ] >= values[ m ] ) {
+					minIndex = m;
+				}; // if
+			}; // for
+			isMax[ f ] = maxIndex == f;
+			isMin[ f ] = minIndex == f;
+		}; // for
+	}
+
+
+	/** for testing purposes only, randomized equivalence with the scanning approach, and micro-benchmark at 30 and 120 fps */
+	public static void main( String[] args ) {
+		Random random = new Random( 33 );
+		int mismatches = 0;
+		for( int round = 0; round < 2000; round++ ) {
+			int n = random.nextInt( 400 );
+			int padding = random.nextInt( 70 );
+			double[] values = new double[ n ];
+			for( int i = 0; i < n; i++ ) {
+				// few distinct values in some rounds so that there are many ties
+				values[ i ] = round % 2 == 0 ? random.nextInt( 4 ) : 2.5 + random.nextGaussian();
+			}; // for
+			boolean[] isMax = new boolean[ n ];
+			boolean[] isMin = new boolean[ n ];
+			boolean[] isMaxScan = new boolean[ n ];
+			boolean[] isMinScan = new boolean[ n ];
+			find( values, padding, isMax, isMin );
+			findByScanning( values, padding, isMaxScan, isMinScan );
+			for( int i = 0; i < n; i++ ) {
+				if( isMax[ i ] != isMaxScan[ i ] || isMin[ i ] != isMinScan[ i ] ) {
+					mismatches++;
+				}; // if
+			}; // for
+		}; // for
+		out.println( "randomized equivalence, mismatches: " + mismatches );
+
+		// half an hour of video at 30 and at 120 frames per second
+		int[] frameRates = new int[] { 30, 120 };
+		for( int frameRate : frameRates ) {
+			int n = frameRate * 60 * 30;
+			int padding = (int) Math.round( Math.floor( frameRate / 2.0 ) );
+			double[] values = new double[ n ];
+			for( int i = 0; i < n; i++ ) {
+				values[ i ] = 3.0 + 0.4 * Math.sin( i * 2 * Math.PI / frameRate ) + 0.05 * random.nextGaussian();
+			}; // for
+			boolean[] isMax = new boolean[ n ];
+			boolean[] isMin = new boolean[ n ];
+			for( int round = 0; round < 5; round++ ) {
+				long start = System.nanoTime();
+				find( values, padding, isMax, isMin );
+				long dequeNanos = System.nanoTime() - start;
+				start = System.nanoTime();
+				findByScanning( values, padding, isMax, isMin );
+				long scanNanos = System.nanoTime() - start;
+				out.println( frameRate + " fps, " + n + " frames, round " + round + ": deques " + ( dequeNanos / 1000 ) + " microseconds, "
+					+ "scanning " + ( scanNanos / 1000 ) + " microseconds" );
+			}; // for
+		}; // for
+	}
+
+} // class SlidingExtrema
+
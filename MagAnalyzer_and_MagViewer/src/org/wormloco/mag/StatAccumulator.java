@@ -0,0 +1,199 @@
+/*
+ * Filename: StatAccumulator.java
+ */
+
+package org.wormloco.mag;
+
+import org.apache.commons.math.stat.StatUtils;
+
+import java.io.PrintStream;
+
+import java.util.Random;
+
+/**
+ * Streaming statistics of a sequence of values (count, mean, variance, min, max) without keeping the values;
+ * it uses Welford's update, and two accumulators can be merged (Chan et al.)
+ *
+ * @author Aleman-Meza
+ */
+
+public class StatAccumulator {
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// number of values
+	private long count = 0;
+
+	// mean of the values
+	private double mean = 0.0;
+
+	// sum of squares of differences from the mean
+	private double m2 = 0.0;
+
+	// minimum value
+	private double min = Double.NaN;
+
+	// maximum value
+	private double max = Double.NaN;
+
+
+	/**
+	 * Adds a value
+	 * @param  value  the value
+	 */
+	public void add( double value ) {
+		count++;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * ( value - mean );
+		if( count == 1 ) {
+			min = value;
+			max = value;
+		}
+		else {
+			min = value < min ? value : min;
+			max = value > max ? value : max;
+		}; // if
+	}
+
+
+	/**
+	 * Adds the values of another accumulator (as if they were added here)
+	 * @param  other  the other accumulator
+	 */
+	public void merge( StatAccumulator other ) {
+		if( other.count == 0 ) {
+			return;
+		}; // if
+		if( count == 0 ) {
+			count = other.count;
+			mean = other.mean;
+			m2 = other.m2;
+			min = other.min;
+			max = other.max;
+			return;
+		}; // if
+		long total = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / total;
+		m2 += other.m2 + delta * delta * count * other.count / total;
+		count = total;
+		min = other.min < min ? other.min : min;
+		max = other.max > max ? other.max : max;
+	}
+
+
+	/**
+	 * Gets the number of values
+	 * @return  the number of values
+	 */
+	public long getCount() {
+		return count;
+	}
+
+
+	/**
+	 * Gets the mean
+	 * @return  the mean, NaN when there are no values
+	 */
+	public double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+
+
+	/**
+	 * Gets the (sample) variance, same as StatUtils.variance
+	 * @return  the variance, zero when there is one value, NaN when there are no values
+	 */
+	public double getVariance() {
+		if( count == 0 ) {
+			return Double.NaN;
+		}; // if
+		if( count == 1 ) {
+			return 0.0;
+		}; // if
+		return m2 / ( count - 1 );
+	}
+
+
+	/**
+	 * Gets the minimum value
+	 * @return  the minimum, NaN when there are no values
+	 */
+	public double getMin() {
+		return min;
+	}
+
+
+	/**
+	 * Gets the maximum value
+	 * @return  the maximum, NaN when there are no values
+	 */
+	public double getMax() {
+		return max;
+	}
+
+
+	/**
+	 * Creates an array of accumulators
+	 * @param  size  the size of the array
+	 * @return  the array (all accumulators are empty)
+	 */
+	public static StatAccumulator[] createArray( int size ) {
+		StatAccumulator[] array = new StatAccumulator[ size ];
+		for( int i = 0; i < size; i++ ) {
+			array[ i ] = new StatAccumulator();
+		}; // for
+		return array;
+	}
+
+
+	/** for testing purposes only, randomized comparison with StatUtils (adding values and merging accumulators) */
+	public static void main( String[] args ) {
+		Random random = new Random( 35 );
+		double worstMean = 0;
+		double worstVariance = 0;
+		int failures = 0;
+		for( int round = 0; round < 5000; round++ ) {
+			int n = 1 + random.nextInt( 3000 );
+			double offset = random.nextInt( 3 ) * 100.0;
+			double scale = random.nextDouble() * 10;
+			double[] values = new double[ n ];
+			StatAccumulator all = new StatAccumulator();
+			StatAccumulator first = new StatAccumulator();
+			StatAccumulator second = new StatAccumulator();
+			int split = random.nextInt( n + 1 );
+			for( int i = 0; i < n; i++ ) {
+				values[ i ] = offset + scale * random.nextGaussian();
+				all.add( values[ i ] );
+				if( i < split ) {
+					first.add( values[ i ] );
+				}
+				else {
+					second.add( values[ i ] );
+				}; // if
+			}; // for
+			first.merge( second );
+			double mean = StatUtils.mean( values );
+			double variance = StatUtils.variance( values, mean );
+			double[] means = new double[] { all.getMean(), first.getMean() };
+			double[] variances = new double[] { all.getVariance(), first.getVariance() };
+			for( int i = 0; i < means.length; i++ ) {
+				double meanError = Math.abs( means[ i ] - mean );
+				double varianceError = Math.abs( variances[ i ] - variance );
+				worstMean = Math.max( worstMean, meanError );
+				worstVariance = Math.max( worstVariance, varianceError );
+				if( meanError > 1e-12 || varianceError > 1e-12 ) {
+					failures++;
+				}; // if
+			}; // for
+			if( all.getCount() != n || first.getCount() != n || all.getMin() != StatUtils.min( values ) || first.getMax() != StatUtils.max( values ) ) {
+				failures++;
+			}; // if
+		}; // for
+		out.println( "largest difference of mean: " + worstMean + ", of variance: " + worstVariance + ", failures (over 1e-12): " + failures );
+	}
+
+} // class StatAccumulator
+
@@ -0,0 +1,218 @@
+/*
+ * Filename: StripChart.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Scrolling chart of a value of each frame (one column per frame) drawn on a panel during playback;
+ * the y-axis is drawn once into an image, and the series is kept in an off-screen strip
+ * that shifts one column to the left when a frame is added, so only the newest frame is drawn;
+ * frames skipped by the rendering are added one by one, and the strip is redrawn (only the visible frames)
+ * when going back or far ahead (e.g., a seek).
+ * Subclasses draw the axis labels and each frame
+ *
+ * @author Aleman-Meza
+ */
+
+public abstract class StripChart {
+
+	/** font of text in charts */
+	public static final Font FONT = new Font( null, Font.PLAIN, 16 );
+
+	/** top of the drawing area */
+	public static final int TOP_MARKER = 20;
+
+	/** x of the y-axis */
+	public static final int X_OF_Y_AXIS = 20;
+
+	/** length of markers of the y-axis */
+	public static final int MARKER_LENGTH = 6;
+
+	/** x where the series start */
+	public static final int START_DRAWING_ON_X = X_OF_Y_AXIS + MARKER_LENGTH + 10;
+
+	/** separation of frames (pixels) */
+	public static final int SEPARATION = 3;
+
+	// x (on the panel) of left side of the strip
+	private static final int STRIP_X = START_DRAWING_ON_X - 3;
+
+	// y (on the panel) of top side of the strip
+	private static final int STRIP_Y = 1;
+
+	/** width of the panel */
+	public final int width;
+
+	/** height of the panel */
+	public final int height;
+
+	/** bottom of the drawing area */
+	public final int bottomMarker;
+
+	/** height of the drawing area */
+	public final int drawAreaHeight;
+
+	/** number of frames shown */
+	public final int maxLines;
+
+	// background color (same as that of the panel)
+	private final Color background;
+
+	// image of the y-axis (drawn once)
+	private BufferedImage axesImage = null;
+
+	// the strip of the series
+	private final BufferedImage stripImage;
+
+	// number of frames in the strip
+	private int count = 0;
+
+	// last frame added to the strip, -1 when none
+	private int lastFrame = -1;
+
+
+	/**
+	 * Constructor
+	 * @param  width  width of the panel
+	 * @param  height  height of the panel
+	 * @param  background  background color of the panel
+	 */
+	public StripChart( int width, int height, Color background ) {
+		this.width = width;
+		this.height = height;
+		this.background = background;
+		bottomMarker = height - 20;
+		drawAreaHeight = bottomMarker - TOP_MARKER;
+		maxLines = Math.max( 1, (int) Math.round( ( width - START_DRAWING_ON_X * 2.0 ) / SEPARATION ) );
+		stripImage = new BufferedImage( Math.max( 1, width - START_DRAWING_ON_X - 2 ), Math.max( 1, height - 3 ), BufferedImage.TYPE_INT_RGB );
+		clear( 0, stripImage.getWidth() );
+	}
+
+
+	/**
+	 * Whether the chart was made for a panel size
+	 * @param  width  width of the panel
+	 * @param  height  height of the panel
+	 * @return  true when it has that size
+	 */
+	public boolean hasSize( int width, int height ) {
+		return this.width == width && this.height == height;
+	}
+
+
+	/**
+	 * Scales a value to the y of the panel
+	 * @param  value  the value
+	 * @param  minValue  value at the bottom of the drawing area
+	 * @param  segments  range of values of the drawing area
+	 * @return  the y on the panel
+	 */
+	public int scaleY( double value, int minValue, int segments ) {
+		return bottomMarker - (int) Math.ceil( ( ( value - minValue ) / segments ) * drawAreaHeight );
+	}
+
+
+	/**
+	 * Draws the chart showing frames up to a given frame (the y-axis and the strip)
+	 * @param  graphics  graphics of the panel
+	 * @param  frameNumber  the current frame
+	 */
+	public void render( Graphics graphics, int frameNumber ) {
+		if( axesImage == null ) {
+			axesImage = new BufferedImage( STRIP_X, Math.max( 1, height ), BufferedImage.TYPE_INT_RGB );
+			Graphics2D axesGraphics = axesImage.createGraphics();
+			axesGraphics.setColor( background );
+			axesGraphics.fillRect( 0, 0, axesImage.getWidth(), axesImage.getHeight() );
+			axesGraphics.setFont( FONT );
+			drawAxes( axesGraphics );
+			axesGraphics.dispose();
+		}; // if
+		if( frameNumber != lastFrame ) {
+			if( frameNumber > lastFrame && frameNumber - lastFrame <= maxLines ) {
+				// frames skipped by the rendering (dropped) are added too
+				for( int f = lastFrame + 1; f <= frameNumber; f++ ) {
+					add( f );
+				}; // for
+			}
+			else {
+				// go back (or jump far ahead): redraw the visible frames
+				clear( 0, stripImage.getWidth() );
+				count = 0;
+				resetSeries();
+				for( int f = Math.max( 0, frameNumber - maxLines + 1 ); f <= frameNumber; f++ ) {
+					add( f );
+				}; // for
+			}; // if
+		}; // if
+		graphics.drawImage( axesImage, 0, 0, null );
+		graphics.drawImage( stripImage, STRIP_X, STRIP_Y, null );
+	}
+
+
+	/**
+	 * Adds a frame to the strip (shifting the strip when it is full)
+	 * @param  frameNumber  the frame
+	 */
+	private void add( int frameNumber ) {
+		Graphics2D graphics = stripImage.createGraphics();
+		if( count == maxLines ) {
+			graphics.copyArea( SEPARATION, 0, stripImage.getWidth() - SEPARATION, stripImage.getHeight(), - SEPARATION, 0 );
+			count--;
+			// the right side is empty, and nothing is drawn to the left of the first frame
+			clear( stripImage.getWidth() - SEPARATION, SEPARATION );
+			clear( 0, 2 );
+		}; // if
+		// draw using the coordinates of the panel
+		graphics.translate( - STRIP_X, - STRIP_Y );
+		graphics.setFont( FONT );
+		drawFrame( graphics, frameNumber, START_DRAWING_ON_X + count * SEPARATION );
+		graphics.dispose();
+		count++;
+		lastFrame = frameNumber;
+	}
+
+
+	/**
+	 * Clears columns of the strip
+	 * @param  x  first column
+	 * @param  columns  number of columns
+	 */
+	private void clear( int x, int columns ) {
+		Graphics2D graphics = stripImage.createGraphics();
+		graphics.setColor( background );
+		graphics.fillRect( x, 0, columns, stripImage.getHeight() );
+		graphics.dispose();
+	}
+
+
+	/**
+	 * Draws the y-axis (done once)
+	 * @param  graphics  the graphics (coordinates of the panel)
+	 */
+	protected abstract void drawAxes( Graphics graphics );
+
+
+	/**
+	 * Forgets the previous frames (called before the strip is redrawn)
+	 */
+	protected abstract void resetSeries();
+
+
+	/**
+	 * Draws a frame, it is the newest (current) frame of the strip;
+	 * frames are drawn in order, the previous frame (if any) is one column to the left
+	 * @param  graphics  the graphics (coordinates of the panel)
+	 * @param  frameNumber  the frame
+	 * @param  x  the x of the frame
+	 */
+	protected abstract void drawFrame( Graphics graphics, int frameNumber, int x );
+
+} // class StripChart
+
@@ -0,0 +1,192 @@
+/*
+ * Filename: TileDecodeScheduler.java
+ */
+
+package org.wormloco.mag;
+
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the tiles of the comparison grid, shared by all tiles (a few threads for up to 16 tiles):
+ * on each tick the clock gives the frame of each tile; the budget of a tile is one frame being made at a time,
+ * a tile still busy with an earlier frame is skipped (it shows the newest frame once it is free again)
+ * so that a slow movie drops frames instead of holding back the others. Tiles are submitted in turns
+ * (round-robin), no tile is always the last one in the queue
+ *
+ * @author Aleman-Meza
+ */
+
+public class TileDecodeScheduler {
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	/** longest wait for the frames being made when the threads are stopped (seconds) */
+	public static final int SHUTDOWN_SECONDS = 10;
+
+	// the threads that make the frames
+	private final ExecutorService executorService;
+
+	// tile submitted first on the next tick
+	private int nextTile = 0;
+
+	// number of frames submitted
+	private long submittedCount = 0;
+
+
+	/**
+	 * Constructor
+	 * @param  threads  number of threads that make the frames
+	 */
+	public TileDecodeScheduler( int threads ) {
+		executorService = Executors.newFixedThreadPool( threads );
+	}
+
+
+	/**
+	 * Submits the frame of each tile at a time (tiles already showing that frame, or busy, are not submitted)
+	 * @param  tiles  the tiles
+	 * @param  seconds  the time since the first frame
+	 * @param  width  width of a tile
+	 * @param  height  height of a tile
+	 */
+	public void schedule( ComparisonTile[] tiles, double seconds, final int width, final int height ) {
+		for( int k = 0; k < tiles.length; k++ ) {
+			final ComparisonTile tile = tiles[ ( nextTile + k ) % tiles.length ];
+			final int frameNumber = tile.getDataset().getFrameAt( seconds );
+			if( frameNumber == tile.getScheduledFrame() || tile.tryStart( frameNumber ) == false ) {
+				continue;
+			}; // if
+			submittedCount++;
+			executorService.execute( new Runnable() {
+				public void run() {
+					try {
+						RenderState state = tile.makeFrame( frameNumber, width, height );
+						if( state != null ) {
+							tile.getMailbox().post( state );
+						}; // if
+					}
+					finally {
+						tile.finish();
+					}; // try
+				}
+			} );
+		}; // for
+		nextTile = tiles.length == 0 ? 0 : ( nextTile + 1 ) % tiles.length;
+	}
+
+
+	/**
+	 * Gets the number of frames submitted
+	 * @return  the number of frames
+	 */
+	public long getSubmittedCount() {
+		return submittedCount;
+	}
+
+
+	/**
+	 * Stops the threads: frames not started yet are dropped, then it waits for the frames being made
+	 * (after that, no thread uses the movies of the tiles and they can be closed)
+	 * @return  true when all threads stopped; false when a frame was still being made after SHUTDOWN_SECONDS
+	 */
+	public boolean shutdown() {
+		executorService.shutdownNow();
+		boolean terminated = false;
+		try {
+			terminated = executorService.awaitTermination( SHUTDOWN_SECONDS, TimeUnit.SECONDS );
+		}
+		catch( InterruptedException ie ) {
+			Thread.currentThread().interrupt();
+		}; // try
+		return terminated;
+	}
+
+
+	/** for testing purposes only, a grid of folders given as arguments with one slow movie, 10 seconds of clock at 60 ticks per second */
+	public static void main( String[] args ) throws Exception {
+		ComparisonTile[] tiles = new ComparisonTile[ args.length ];
+		for( int i = 0; i < args.length; i++ ) {
+			LarvaDataset dataset = new LarvaDataset( new File( args[ i ] ) );
+			String error = dataset.load();
+			if( error != null ) {
+				out.println( args[ i ] + " error: " + error );
+				return;
+			}; // if
+			// the first movie takes 250 ms per frame (slower than its frame rate), the others 5 ms
+			final int decodeMilliseconds = i == 0 ? 250 : 5;
+			tiles[ i ] = new ComparisonTile( dataset ) {
+				protected MovieDecoder createDecoder( File movieFile ) {
+					return new MovieDecoder( movieFile ) {
+						public String open() {
+							return null;
+						}
+						public BufferedImage decode( int frameNumber ) {
+							try {
+								Thread.sleep( decodeMilliseconds );
+							}
+							catch( InterruptedException ie ) {
+								return null;
+							}; // try
+							BufferedImage image = new BufferedImage( 640, 480, BufferedImage.TYPE_INT_RGB );
+							Graphics graphics = image.getGraphics();
+							graphics.setColor( Color.GRAY );
+							graphics.fillRect( 0, 0, 640, 480 );
+							graphics.dispose();
+							return image;
+						}
+					};
+				}
+			};
+			tiles[ i ].open();
+		}; // for
+		TileDecodeScheduler scheduler = new TileDecodeScheduler( 2 );
+		long[] shown = new long[ tiles.length ];
+		int[] lastFrame = new int[ tiles.length ];
+		int ticks = 600;
+		for( int tick = 0; tick <= ticks; tick++ ) {
+			double seconds = tick / 60.0;
+			scheduler.schedule( tiles, seconds, 320, 240 );
+			for( int i = 0; i < tiles.length; i++ ) {
+				RenderState state = tiles[ i ].getMailbox().take();
+				if( state != null ) {
+					shown[ i ]++;
+					lastFrame[ i ] = state.frameNumber;
+				}; // if
+			}; // for
+			Thread.sleep( 1000 / 60 );
+		}; // for
+		Thread.sleep( 200 );
+		for( int i = 0; i < tiles.length; i++ ) {
+			RenderState state = tiles[ i ].getMailbox().take();
+			if( state != null ) {
+				shown[ i ]++;
+				lastFrame[ i ] = state.frameNumber;
+			}; // if
+			LarvaDataset dataset = tiles[ i ].getDataset();
+			out.println( tiles[ i ].getLabel() + ": shown " + shown[ i ] + ", skipped " + tiles[ i ].getSkippedCount()
+				+ ", last frame " + lastFrame[ i ] + " (expected " + dataset.getFrameAt( ticks / 60.0 ) + "), at "
+				+ BasicEffect.format( dataset.getFrameTime( lastFrame[ i ] ) ) + " sec." );
+		}; // for
+		out.println( "submitted: " + scheduler.getSubmittedCount() );
+		// one more tick so that the slow movie is being decoded while the threads are stopped
+		scheduler.schedule( tiles, 0, 320, 240 );
+		long start = System.currentTimeMillis();
+		boolean terminated = scheduler.shutdown();
+		out.println( "stopped: " + terminated + ", waited " + ( System.currentTimeMillis() - start ) + " ms for the frames being made" );
+		for( int i = 0; i < tiles.length; i++ ) {
+			tiles[ i ].close();
+		}; // for
+	}
+
+} // class TileDecodeScheduler
+
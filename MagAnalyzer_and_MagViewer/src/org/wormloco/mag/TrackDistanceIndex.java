@@ -0,0 +1,287 @@
+/*
+ * Filename: TrackDistanceIndex.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.PrintStream;
+
+import java.util.Random;
+
+/**
+ * Index of the positions of a track (one point per frame) for finding the closest frame, before or after a given frame,
+ * whose point is at least some distance away from the point of the given frame;
+ * it is a segment tree of bounding boxes: a whole range of frames is skipped when even the farthest corner of its box
+ * is closer than the distance, so that a pause of thousands of frames is skipped in logarithmic time;
+ * results are exactly the ones of walking frame by frame (same distance computation, rounding is monotone)
+ *
+ * @author Aleman-Meza
+ */
+
+public class TrackDistanceIndex {
+
+	// for convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// x coordinate of each frame
+	private final double[] x;
+
+	// y coordinate of each frame
+	private final double[] y;
+
+	// bounding box of each node of the tree (node 1 is the root, children of node k are 2k and 2k+1)
+	private final double[] minX;
+	private final double[] maxX;
+	private final double[] minY;
+	private final double[] maxY;
+
+	// whether a node contains a point that is not finite (such node is never skipped)
+	private final boolean[] nonFinite;
+
+
+	/**
+	 * Constructor
+	 * @param  x  x coordinate of each frame
+	 * @param  y  y coordinate of each frame
+	 */
+	public TrackDistanceIndex( double[] x, double[] y ) {
+		this.x = x;
+		this.y = y;
+		int size = 4 * Math.max( 1, x.length );
+		minX = new double[ size ];
+		maxX = new double[ size ];
+		minY = new double[ size ];
+		maxY = new double[ size ];
+		nonFinite = new boolean[ size ];
+		if( x.length > 0 ) {
+			build( 1, 0, x.length );
+		}; // if
+	}
+
+
+	/**
+	 * Computes the bounding box of a node (and its children)
+	 * @param  node  the node
+	 * @param  low  first frame of the node (inclusive)
+	 * @param  high  last frame of the node (exclusive)
+	 */
+	private void build( int node, int low, int high ) {
+		if( high - low == 1 ) {
+			minX[ node ] = x[ low ];
+			maxX[ node ] = x[ low ];
+			minY[ node ] = y[ low ];
+			maxY[ node ] = y[ low ];
+			nonFinite[ node ] = Double.isNaN( x[ low ] ) || Double.isInfinite( x[ low ] ) || Double.isNaN( y[ low ] ) || Double.isInfinite( y[ low ] );
+			return;
+		}; // if
+		int middle = ( low + high ) >>> 1;
+		build( 2 * node, low, middle );
+		build( 2 * node + 1, middle, high );
+		minX[ node ] = Math.min( minX[ 2 * node ], minX[ 2 * node + 1 ] );
+		maxX[ node ] = Math.max( maxX[ 2 * node ], maxX[ 2 * node + 1 ] );
+		minY[ node ] = Math.min( minY[ 2 * node ], minY[ 2 * node + 1 ] );
+		maxY[ node ] = Math.max( maxY[ 2 * node ], maxY[ 2 * node + 1 ] );
+		nonFinite[ node ] = nonFinite[ 2 * node ] || nonFinite[ 2 * node + 1 ];
+	}
+
+
+	/**
+	 * Finds the closest frame before a frame whose point is at least at some distance from the point of the frame
+	 * @param  frame  the frame
+	 * @param  distance  the distance
+	 * @return  the index of the frame, or -1 when there is none
+	 */
+	public int lastBefore( int frame, double distance ) {
+		return lastBefore( 1, 0, x.length, frame, x[ frame ], y[ frame ], distance );
+	}
+
+
+	/**
+	 * Finds the closest frame after a frame whose point is at least at some distance from the point of the frame
+	 * @param  frame  the frame
+	 * @param  distance  the distance
+	 * @return  the index of the frame, or -1 when there is none
+	 */
+	public int firstAfter( int frame, double distance ) {
+		return firstAfter( 1, 0, x.length, frame + 1, x[ frame ], y[ frame ], distance );
+	}
+
+
+	/**
+	 * Searches (in a node) the last frame before 'end' that is far enough from a point
+	 * @param  node  the node
+	 * @param  low  first frame of the node (inclusive)
+	 * @param  high  last frame of the node (exclusive)
+	 * @param  end  frames must be smaller than this one
+	 * @param  px  x coordinate of the point
+	 * @param  py  y coordinate of the point
+	 * @param  distance  the distance
+	 * @return  the index of the frame, or -1 when there is none
+	 */
+	private int lastBefore( int node, int low, int high, int end, double px, double py, double distance ) {
+		if( low >= end || mayReach( node, px, py, distance ) == false ) {
+			return -1;
+		}; // if
+		if( high - low == 1 ) {
+			return isFar( low, px, py, distance ) == true ? low : -1;
+		}; // if
+		int middle = ( low + high ) >>> 1;
+		int found = lastBefore( 2 * node + 1, middle, high, end, px, py, distance );
+		if( found != -1 ) {
+			return found;
+		}; // if
+		return lastBefore( 2 * node, low, middle, end, px, py, distance );
+	}
+
+
+	/**
+	 * Searches (in a node) the first frame from 'start' that is far enough from a point
+	 * @param  node  the node
+	 * @param  low  first frame of the node (inclusive)
+	 * @param  high  last frame of the node (exclusive)
+	 * @param  start  frames must be equal or bigger than this one
+	 * @param  px  x coordinate of the point
+	 * @param  py  y coordinate of the point
+	 * @param  distance  the distance
+	 * @return  the index of the frame, or -1 when there is none
+	 */
+	private int firstAfter( int node, int low, int high, int start, double px, double py, double distance ) {
+		if( high <= start || mayReach( node, px, py, distance ) == false ) {
+			return -1;
+		}; // if
+		if( high - low == 1 ) {
+			return isFar( low, px, py, distance ) == true ? low : -1;
+		}; // if
+		int middle = ( low + high ) >>> 1;
+		int found = firstAfter( 2 * node, low, middle, start, px, py, distance );
+		if( found != -1 ) {
+			return found;
+		}; // if
+		return firstAfter( 2 * node + 1, middle, high, start, px, py, distance );
+	}
+
+
+	/**
+	 * Whether a frame is far enough from a point (same test as when walking frame by frame: not closer than the distance)
+	 * @param  frame  the frame
+	 * @param  px  x coordinate of the point
+	 * @param  py  y coordinate of the point
+	 * @param  distance  the distance
+	 * @return  true when the frame is far enough
+	 */
+	private boolean isFar( int frame, double px, double py, double distance ) {
+		return ( Utilities.distance( px, py, x[ frame ], y[ frame ] ) < distance ) == false;
+	}
+
+
+	/**
+	 * Whether some point in a node may be far enough from a point, that is, the farthest corner of the box is far enough
+	 * @param  node  the node
+	 * @param  px  x coordinate of the point
+	 * @param  py  y coordinate of the point
+	 * @param  distance  the distance
+	 * @return  false when no point in the node can be far enough
+	 */
+	private boolean mayReach( int node, double px, double py, double distance ) {
+		if( nonFinite[ node ] == true ) {
+			return true;
+		}; // if
+		double cornerX = Math.abs( px - minX[ node ] ) > Math.abs( px - maxX[ node ] ) ? minX[ node ] : maxX[ node ];
+		double cornerY = Math.abs( py - minY[ node ] ) > Math.abs( py - maxY[ node ] ) ? minY[ node ] : maxY[ node ];
+		return ( Utilities.distance( px, py, cornerX, cornerY ) < distance ) == false;
+	}
+
+
+	/**
+	 * Same as lastBefore(), walking backwards frame by frame (reference implementation)
+	 * @param  x  x coordinate of each frame
+	 * @param  y  y coordinate of each frame
+	 * @param  frame  the frame
+	 * @param  distance  the distance
+	 * @return  the index of the frame, or -1 when there is none
+	 */
+	public static int lastBeforeByWalking( double[] x, double[] y, int frame, double distance ) {
+		for( int j = frame - 1; j >= 0; j-- ) {
+			if( ( Utilities.distance( x[ frame ], y[ frame ], x[ j ], y[ j ] ) < distance ) == false ) {
+				return j;
+			}; // if
+		}; // for
+		return -1;
+	}
+
+
+	/**
+	 * Same as firstAfter(), walking forward frame by frame (reference implementation)
+	 * @param  x  x coordinate of each frame
+	 * @param  y  y coordinate of each frame
+	 * @param  frame  the frame
+	 * @param  distance  the distance
+	 * @return  the index of the frame, or -1 when there is none
+	 */
+	public static int firstAfterByWalking( double[] x, double[] y, int frame, double distance ) {
+		for( int j = frame + 1; j < x.length; j++ ) {
+			if( ( Utilities.distance( x[ frame ], y[ frame ], x[ j ], y[ j ] ) < distance ) == false ) {
+				return j;
+			}; // if
+		}; // for
+		return -1;
+	}
+
+
+	/** for testing purposes only, stress test on a synthetic track with long pauses (equivalence and timing) */
+	public static void main( String[] args ) {
+		Random random = new Random( 34 );
+		final double distance = Video.DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE;
+		for( int round = 0; round < 4; round++ ) {
+			// half an hour at 7.5 fps: crawling (0.15 mm per frame) and pauses of up to 8 minutes (jitter only)
+			int n = 13500;
+			double[] x = new double[ n ];
+			double[] y = new double[ n ];
+			double heading = 0;
+			boolean paused = false;
+			int remaining = 0;
+			for( int f = 1; f < n; f++ ) {
+				if( remaining == 0 ) {
+					paused = paused == false;
+					remaining = paused == true ? 500 + random.nextInt( 3100 ) : 50 + random.nextInt( 400 );
+				}; // if
+				remaining--;
+				double step = paused == true ? 0 : 0.15;
+				heading += random.nextGaussian() * 0.1;
+				x[ f ] = x[ f - 1 ] + step * Math.cos( heading ) + random.nextGaussian() * 0.02;
+				y[ f ] = y[ f - 1 ] + step * Math.sin( heading ) + random.nextGaussian() * 0.02;
+			}; // for
+			if( round == 3 ) {
+				// same points in every frame of a stretch, and a single far point in the middle of a pause
+				for( int f = 6000; f < 9000; f++ ) {
+					x[ f ] = x[ 6000 ];
+					y[ f ] = y[ 6000 ];
+				}; // for
+				x[ 7500 ] += distance;
+			}; // if
+
+			long start = System.nanoTime();
+			TrackDistanceIndex trackDistanceIndex = new TrackDistanceIndex( x, y );
+			int[] before = new int[ n ];
+			int[] after = new int[ n ];
+			for( int f = 0; f < n; f++ ) {
+				before[ f ] = trackDistanceIndex.lastBefore( f, distance );
+				after[ f ] = trackDistanceIndex.firstAfter( f, distance );
+			}; // for
+			long indexNanos = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			int mismatches = 0;
+			for( int f = 0; f < n; f++ ) {
+				if( before[ f ] != lastBeforeByWalking( x, y, f, distance ) || after[ f ] != firstAfterByWalking( x, y, f, distance ) ) {
+					mismatches++;
+				}; // if
+			}; // for
+			long walkingNanos = System.nanoTime() - start;
+			out.println( "round " + round + ", " + n + " frames: index " + ( indexNanos / 1000 ) + " microseconds, "
+				+ "walking " + ( walkingNanos / 1000 ) + " microseconds, mismatches: " + mismatches );
+		}; // for
+	}
+
+} // class TrackDistanceIndex
+
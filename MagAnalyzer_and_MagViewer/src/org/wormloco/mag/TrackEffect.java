@@ -4,6 +4,7 @@
 
 package org.wormloco.mag;
 
+import java.awt.AlphaComposite;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics;
@@ -25,7 +26,9 @@ import javax.swing.JPanel;
  * See also: http://stackoverflow.com/questions/7847217/video-effects-in-jmf
  * @original-author ashoka
  *
- * Draws the track on a Component object
+ * Draws the track on a Component object;
+ * the track of old frames is kept in an off-screen image (track layer) to which only the new segments are added,
+ * it is redrawn from the start only when going back in the video
  *
  * @author Aleman-Meza (modifications from original listed above)
  */
@@ -43,13 +46,26 @@ public class TrackEffect extends BasicEffect {
 	protected int panelHeight;
 
 	protected int panelSmallerSide;
+
+	// off-screen image of plate, crawling area and track of old frames (transparent elsewhere)
+	protected BufferedImage trackLayer = null;
+
+	// number of old frames already drawn into the track layer
+	protected int trackLayerFrames = 0;
     
 	// for convenience on println statements
 	private static final PrintStream out = System.out;
 
 
-	/** Constructor with video-file */
+	/** Constructor with video-file, it also writes the track image (track-image.png) next to the video-file */
 	public TrackEffect( File videoFile, JPanel targetPanel, Video video ) {
+		this( targetPanel, video );
+		drawTrackImage( videoFile );
+	}
+
+
+	/** Constructor without video-file, nothing is written (e.g., a mini track of the comparison grid) */
+	public TrackEffect( JPanel targetPanel, Video video ) {
 		super();
 		this.targetPanel = targetPanel;
 		
@@ -60,7 +76,6 @@ public class TrackEffect extends BasicEffect {
 		panelHeight = targetPanel.getHeight() - 10;
 		panelSmallerSide = Math.min( panelWidth, panelHeight );
 		this.video = video;
-		drawTrackImage( videoFile );
 	}
 
 
@@ -70,52 +85,12 @@ public class TrackEffect extends BasicEffect {
 	public void drawTrackImage( File videoFile ) {
 		BufferedImage bufferedImage = new BufferedImage( 310, 310, BufferedImage.TYPE_INT_ARGB );
 		Graphics2D graphics = bufferedImage.createGraphics();
-		// draw the plate (these lines are similar to the ones inside 'process' method).
-		graphics.setColor( Color.LIGHT_GRAY );
-		graphics.fillRect( scaleX( - PLATE_WIDTH / 2.0 ), scaleY( - PLATE_WIDTH / 2.0 ), magnitude( PLATE_WIDTH ), magnitude( PLATE_WIDTH ) );
-		// draw the crawling area (these lines are similar to the ones inside 'process' method).
-		graphics.setColor( Color.WHITE );
-		graphics.fillOval( scaleX( - Frame.RADIOUS ), scaleY( - Frame.RADIOUS ), magnitude( Frame.RADIOUS * 2 ), magnitude( Frame.RADIOUS * 2 ) );
-
+		drawPlate( graphics );
 		for( int oldFrameIndex = 0; oldFrameIndex < video.frameList.size(); oldFrameIndex++ ) {
-			Frame oldFrame = video.frameList.get( oldFrameIndex );
-			// draw the track of old frames
-			int x = scaleX( oldFrame.x[ Frame.CENTER_POINT ] );
-			int y = scaleY( - oldFrame.y[ Frame.CENTER_POINT ] );
-			if( oldFrameIndex > 0 ) {
-				// draw the previous point
-				Frame oldFrameMinusOne = video.frameList.get( oldFrameIndex - 1 );
-				int prevX = scaleX( oldFrameMinusOne.x[ Frame.CENTER_POINT ] );
-				int prevY = scaleY( - oldFrameMinusOne.y[ Frame.CENTER_POINT ] );
-				if( oldFrame.directionChangeAngle == null ) {
-					if( oldFrameIndex < video.frameList.size() ) {
-						graphics.setColor( Color.GRAY );
-					}
-					else {
-						graphics.setColor( Color.BLACK );
-					}; // if
-				}
-				else if( oldFrame.directionChangeAngle < Video.ANGLE_THRESHOLD_FOR_DIRECTION_CHANGE ) {
-					graphics.setColor( Color.GREEN );
-				}
-				else {
-					graphics.setColor( Color.RED );
-				}; // if
-				if( oldFrame.onTheRepellent == true ) {
-					graphics.setColor( graphics.getColor().darker() );
-				}; // if
-				// draw the previous point
-				graphics.fillOval( prevX - 1, prevY - 1, 3, 3 );
-				double distance = Utilities.distance( x, y, prevX, prevY );
-				if( Math.ceil( distance ) >= 2 ) {
-					graphics.drawLine( x, y, prevX, prevY );
-				}; // if
-			}; // if
+			drawSegment( graphics, oldFrameIndex );
 		}; // for
 		graphics.setColor( Color.BLACK );
-		Frame frameZero = video.frameList.get( 0 );
-		graphics.drawLine( scaleX( frameZero.x[ Frame.CENTER_POINT ] ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] - 2 ), scaleX( frameZero.x[ Frame.CENTER_POINT ] ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] + 2 ) );
-		graphics.drawLine( scaleX( frameZero.x[ Frame.CENTER_POINT ] - 2 ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] ), scaleX( frameZero.x[ Frame.CENTER_POINT ] + 2 ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] ) );
+		drawStart( graphics );
 		try {
 			File outputFile = new File( videoFile.getParent(), "track-image.png" );
 			ImageIO.write( bufferedImage, "png", outputFile );
@@ -126,6 +101,103 @@ public class TrackEffect extends BasicEffect {
 	}
 
 
+	/**
+	 * Draws the plate and the crawling area
+	 * @param  graphics  the graphics
+	 */
+	protected void drawPlate( Graphics graphics ) {
+		// draw the plate
+		graphics.setColor( Color.LIGHT_GRAY );
+		graphics.fillRect( scaleX( - PLATE_WIDTH / 2.0 ), scaleY( - PLATE_WIDTH / 2.0 ), magnitude( PLATE_WIDTH ), magnitude( PLATE_WIDTH ) );
+		// draw the crawling area
+		double radious = video.getConfig().getRadious();
+		graphics.setColor( Color.WHITE );
+		graphics.fillOval( scaleX( - radious ), scaleY( - radious ), magnitude( radious * 2 ), magnitude( radious * 2 ) );
+	}
+
+
+	/**
+	 * Draws the segment of the track that ends at a frame (nothing for the first frame)
+	 * @param  graphics  the graphics
+	 * @param  oldFrameIndex  the frame
+	 */
+	protected void drawSegment( Graphics graphics, int oldFrameIndex ) {
+		if( oldFrameIndex <= 0 ) {
+			return;
+		}; // if
+		Frame oldFrame = video.frameList.get( oldFrameIndex );
+		// draw the track of old frames
+		int x = scaleX( oldFrame.x[ Frame.CENTER_POINT ] );
+		int y = scaleY( - oldFrame.y[ Frame.CENTER_POINT ] );
+		// draw the previous point
+		Frame oldFrameMinusOne = video.frameList.get( oldFrameIndex - 1 );
+		int prevX = scaleX( oldFrameMinusOne.x[ Frame.CENTER_POINT ] );
+		int prevY = scaleY( - oldFrameMinusOne.y[ Frame.CENTER_POINT ] );
+		if( oldFrame.directionChangeAngle == null ) {
+			graphics.setColor( Color.GRAY );
+		}
+		else if( oldFrame.directionChangeAngle < video.getConfig().getAngleThresholdForDirectionChange() ) {
+			graphics.setColor( Color.GREEN );
+		}
+		else {
+			graphics.setColor( Color.RED );
+		}; // if
+		if( oldFrame.onTheRepellent == true ) {
+			graphics.setColor( graphics.getColor().darker() );
+		}; // if
+		// draw the previous point
+		graphics.fillOval( prevX - 1, prevY - 1, 3, 3 );
+		double distance = Utilities.distance( x, y, prevX, prevY );
+		if( Math.ceil( distance ) >= 2 ) {
+			graphics.drawLine( x, y, prevX, prevY );
+		}; // if
+	}
+
+
+	/**
+	 * Brings the track layer up to a number of old frames: only the new segments are drawn,
+	 * unless it goes back in the video (e.g., a seek), then the layer is redrawn from the start
+	 * @param  frames  number of old frames that the track layer should have
+	 */
+	protected void updateTrackLayer( int frames ) {
+		frames = Math.max( 0, Math.min( frames, video.frameList.size() ) );
+		if( trackLayer == null || frames < trackLayerFrames ) {
+			if( trackLayer == null ) {
+				trackLayer = new BufferedImage( panelWidth + 10, panelHeight + 10, BufferedImage.TYPE_INT_ARGB );
+			}; // if
+			Graphics2D graphics = trackLayer.createGraphics();
+			// make it all transparent
+			graphics.setComposite( AlphaComposite.Clear );
+			graphics.fillRect( 0, 0, trackLayer.getWidth(), trackLayer.getHeight() );
+			graphics.setComposite( AlphaComposite.SrcOver );
+			drawPlate( graphics );
+			graphics.setColor( Color.GREEN );
+			drawStart( graphics );
+			graphics.dispose();
+			trackLayerFrames = 0;
+		}; // if
+		if( frames > trackLayerFrames ) {
+			Graphics2D graphics = trackLayer.createGraphics();
+			for( int oldFrameIndex = trackLayerFrames; oldFrameIndex < frames; oldFrameIndex++ ) {
+				drawSegment( graphics, oldFrameIndex );
+			}; // for
+			graphics.dispose();
+			trackLayerFrames = frames;
+		}; // if
+	}
+
+
+	/**
+	 * Draws a cross at the position of the first frame (with the current color)
+	 * @param  graphics  the graphics
+	 */
+	protected void drawStart( Graphics graphics ) {
+		Frame frameZero = video.frameList.get( 0 );
+		graphics.drawLine( scaleX( frameZero.x[ Frame.CENTER_POINT ] ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] - 2 ), scaleX( frameZero.x[ Frame.CENTER_POINT ] ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] + 2 ) );
+		graphics.drawLine( scaleX( frameZero.x[ Frame.CENTER_POINT ] - 2 ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] ), scaleX( frameZero.x[ Frame.CENTER_POINT ] + 2 ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] ) );
+	}
+
+
 	/**
 	 * Scales a value to the coordinate-x of the panel in pixels
 	 */
@@ -149,55 +221,19 @@ public class TrackEffect extends BasicEffect {
 	/** do the processing **/
 	public int process(Buffer inputBuffer, Buffer outputBuffer){
 		int frameNumber = (int) inputBuffer.getSequenceNumber() - 1;
-		Graphics graphics = targetPanel.getGraphics();
-		if( graphics != null ) {
-			// draw the plate
-			graphics.setColor( Color.LIGHT_GRAY );
-			graphics.fillRect( scaleX( - PLATE_WIDTH / 2.0 ), scaleY( - PLATE_WIDTH / 2.0 ), magnitude( PLATE_WIDTH ), magnitude( PLATE_WIDTH ) );
+		mailbox.post( new RenderState( frameNumber, null ) );
+		outputBuffer.copy( inputBuffer, false );
+		return BUFFER_PROCESSED_OK;
+    }
 
-			// draw the crawling area
-			graphics.setColor( Color.WHITE );
-			graphics.fillOval( scaleX( - Frame.RADIOUS ), scaleY( - Frame.RADIOUS ), magnitude( Frame.RADIOUS * 2 ), magnitude( Frame.RADIOUS * 2 ) );
-			graphics.setColor( Color.GREEN );
-			Frame frameZero = video.frameList.get( 0 );
-			graphics.drawLine( scaleX( frameZero.x[ Frame.CENTER_POINT ] ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] - 2 ), scaleX( frameZero.x[ Frame.CENTER_POINT ] ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] + 2 ) );
-			graphics.drawLine( scaleX( frameZero.x[ Frame.CENTER_POINT ] - 2 ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] ), scaleX( frameZero.x[ Frame.CENTER_POINT ] + 2 ), scaleY( - frameZero.y[ Frame.CENTER_POINT ] ) );
-
-			for( int oldFrameIndex = 0; oldFrameIndex < ( frameNumber - 1 ); oldFrameIndex++ ) {
-				Frame oldFrame = video.frameList.get( oldFrameIndex );
-				// draw the track of old frames
-				int x = scaleX( oldFrame.x[ Frame.CENTER_POINT ] );
-				int y = scaleY( - oldFrame.y[ Frame.CENTER_POINT ] );
-				if( oldFrameIndex > 0 ) {
-					// draw the previous point
-					Frame oldFrameMinusOne = video.frameList.get( oldFrameIndex - 1 );
-					int prevX = scaleX( oldFrameMinusOne.x[ Frame.CENTER_POINT ] );
-					int prevY = scaleY( - oldFrameMinusOne.y[ Frame.CENTER_POINT ] );
-					if( oldFrame.directionChangeAngle == null ) {
-						if( oldFrameIndex < video.frameList.size() ) {
-							graphics.setColor( Color.GRAY );
-						}
-						else {
-							graphics.setColor( Color.BLACK );
-						}; // if
-					}
-					else if( oldFrame.directionChangeAngle < Video.ANGLE_THRESHOLD_FOR_DIRECTION_CHANGE ) {
-						graphics.setColor( Color.GREEN );
-					}
-					else {
-						graphics.setColor( Color.RED );
-					}; // if
-					if( oldFrame.onTheRepellent == true ) {
-						graphics.setColor( graphics.getColor().darker() );
-					}; // if
-					// draw the previous point
-					graphics.fillOval( prevX - 1, prevY - 1, 3, 3 );
-					double distance = Utilities.distance( x, y, prevX, prevY );
-					if( Math.ceil( distance ) >= 2 ) {
-						graphics.drawLine( x, y, prevX, prevY );
-					}; // if
-				}; // if
-			}; // for
+
+	/** draws the track up to the frame of the state **/
+	public void render( Graphics graphics, RenderState state ) {
+		int frameNumber = state.frameNumber;
+		if( graphics != null ) {
+			// plate, crawling area and track of old frames (only new segments are drawn into the layer)
+			updateTrackLayer( frameNumber - 1 );
+			graphics.drawImage( trackLayer, 0, 0, null );
 
 			// draw the current frame's larvae
 			graphics.setColor( Color.BLUE );
@@ -221,10 +257,7 @@ public class TrackEffect extends BasicEffect {
 			y = scaleX( - frame.y[ 12 ] );
 			graphics.drawLine( x, y, otherX, otherY );
 		}; // if
-
-		outputBuffer.copy( inputBuffer, false );
-		return BUFFER_PROCESSED_OK;
-    }
+	}
 
 }
 
@@ -14,6 +14,10 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -54,24 +58,26 @@ public class Utilities {
 	// when there is some error, it returns null ( or exits via system.exit() )
 	public static int[][][] readPoints( String filename ) {
 		try {
-			// count the total number of images
-			int totalImages = 0;
+			// the file is read once; the frame number of the last line gives the total number of images
+			List<String> linesList = new ArrayList<String>();
 			BufferedReader br = new BufferedReader( new FileReader( filename ) );
 			String line = null;
 			while( ( line = br.readLine() )!= null ) {
-				StringTokenizer st = new StringTokenizer( line );
-				String frameNo = st.nextToken();
-				totalImages = ( new Integer( frameNo ) ).intValue();
+				linesList.add( line );
 			}
 			br.close();
-			br = new BufferedReader( new FileReader( filename ) );
+			int totalImages = 0;
+			if( linesList.isEmpty() == false ) {
+				StringTokenizer st = new StringTokenizer( linesList.get( linesList.size() - 1 ) );
+				totalImages = Integer.parseInt( st.nextToken() );
+			}; // if
 			totalImages++;
 			int[][][] points = new int[ totalImages ][ 2 ][ 13 ];
 			
 			//read points to an array
 			for( int k = 0; k < totalImages; k++ ) {
-				String xline = br.readLine();
-				String yline = br.readLine();				
+				String xline = linesList.get( k * 2 );
+				String yline = linesList.get( k * 2 + 1 );
 				StringTokenizer st1 = new StringTokenizer( xline );
 				StringTokenizer st2 = new StringTokenizer( yline );
 				// these two lines skip the token that has the frame number
@@ -89,12 +95,11 @@ public class Utilities {
 						valid = false;
 						continue;
 					}; // continue
-					points[k][0][c] = ( new Integer( x1 ) ).intValue();
-					points[k][1][c] = ( new Integer( y1 ) ).intValue();
+					points[k][0][c] = Integer.parseInt( x1 );
+					points[k][1][c] = Integer.parseInt( y1 );
 					c++;
 				}; // while
 			}; // for
-			br.close(); 
 			return points;			
 		}	
 		catch( Exception e ) {
@@ -199,5 +204,29 @@ public class Utilities {
 		return null;
 	}; // writeFile
 
+
+	/**
+	 * Replaces a file with a (completely written) temporary file, atomically when the file-system allows it
+	 * (as DataStitcher.moveIntoPlace of MagRecognizer); this way readers never see a partially written file
+	 * @param  temporaryFile  the temporary file (deleted when it cannot be moved)
+	 * @param  file  the file to be replaced
+	 * @return  null if everything went well, otherwise a string containing error message
+	 */
+	public static String moveIntoPlace( File temporaryFile, File file ) {
+		try {
+			try {
+				Files.move( temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+			}
+			catch( AtomicMoveNotSupportedException amnse ) {
+				Files.move( temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			}; // try
+		}
+		catch( IOException ioe ) {
+			temporaryFile.delete();
+			return "Unable to rename " + temporaryFile.getAbsolutePath() + " to " + file.getName() + " : " + ioe;
+		}; // try
+		return null;
+	}
+
 } // class Utilities
 
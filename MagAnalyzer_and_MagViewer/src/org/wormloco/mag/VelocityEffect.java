@@ -5,7 +5,6 @@
 package org.wormloco.mag;
 
 import java.awt.Color;
-import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 
@@ -40,6 +39,9 @@ public class VelocityEffect extends BasicEffect {
 	// for convenience on println statements
 	private static final PrintStream out = System.out;
 
+	// the chart (made again when the size of the panel changes)
+	private SpeedChart chart = null;
+
 
 	/** Constructor with video-file */
 	public VelocityEffect( File videoFile, JPanel targetPanel, Video video ) {
@@ -51,77 +53,106 @@ public class VelocityEffect extends BasicEffect {
 	/** do the processing **/
 	public int process(Buffer inputBuffer, Buffer outputBuffer){
 		int frameNumber = (int) inputBuffer.getSequenceNumber() - 1;
-		Graphics graphics = targetPanel.getGraphics();
+		mailbox.post( new RenderState( frameNumber, null ) );
+		outputBuffer.copy( inputBuffer, false );
+		return BUFFER_PROCESSED_OK;
+    }
+
+
+	/** draws the chart up to the frame of the state **/
+	public void render( Graphics graphics, RenderState state ) {
 		int width = targetPanel.getWidth();
 		int height = targetPanel.getHeight();
-		final int A_HANDFUL_OF_FRAMES = 20;
-		final int TOP_MARKER = 20;
-		final int BOTTOM_MARKER = height - 20;
-		final int DRAW_AREA_HEIGHT = BOTTOM_MARKER - TOP_MARKER;
-		final int X_OF_Y_AXIS = 20;
-		final int MARKER_LENGTH = 6;
-		final int START_DRAWING_ON_X = X_OF_Y_AXIS + MARKER_LENGTH + 10;
-		final int SEPARATION = 3;
-
-		int minValue = (int) Math.round( video.speedMin - 0.1 );
-		int maxValue = (int) Math.ceil( video.speedMax );
-		int segments = maxValue - minValue;
-
-		if( graphics != null ) {
-			graphics.setFont( new Font( null, Font.PLAIN, 16 ) );
-			if( frameNumber < A_HANDFUL_OF_FRAMES ) {
-				// draw the y-axis
-				int added = 0;
-				int i = 0;
-				for( int marker = maxValue; marker >= minValue; marker-- ) {
-					added = (int) Math.round( i * DRAW_AREA_HEIGHT * 1.0 / segments );
-					graphics.setColor( Color.GRAY );
-					graphics.drawString( marker + "", X_OF_Y_AXIS - 10, TOP_MARKER + added + 4 );
-					graphics.setColor( Color.BLACK );
-					graphics.drawLine( X_OF_Y_AXIS, TOP_MARKER + added, X_OF_Y_AXIS + MARKER_LENGTH, TOP_MARKER + added );
-					i++;
-				}; // for
-				graphics.drawLine( X_OF_Y_AXIS + MARKER_LENGTH, TOP_MARKER - 10, X_OF_Y_AXIS + MARKER_LENGTH, BOTTOM_MARKER + 10 );
-			}; // if
-			int maxLines = (int) Math.round( ( width - START_DRAWING_ON_X * 2.0 ) / SEPARATION );
-			graphics.clearRect( START_DRAWING_ON_X - 3, 1, width - START_DRAWING_ON_X - 2, height - 3 );
-			graphics.setColor( Color.GRAY );
-			graphics.drawString( "Speed (mm/sec).", START_DRAWING_ON_X * 2, TOP_MARKER );
-			Integer prevX = null;
-			Integer prevY = null;
-			for( int i = 0; i < maxLines; i++ ) {
-				int index = i;
-				boolean current = i == frameNumber;
-				if( frameNumber > maxLines ) {
-					index = i + ( frameNumber - maxLines );
-					current = i == ( maxLines - 1 );
-				}
-				else if( i > frameNumber ) {
-					break;
-				}; // if
-				Frame frame = video.frameList.get( index );
-				double value = frame.speed; 
-				if( value > 0 ) {
-					int x = START_DRAWING_ON_X + i * SEPARATION;
-					int y = BOTTOM_MARKER - (int) Math.ceil( ( ( value - minValue ) / segments ) * DRAW_AREA_HEIGHT );
-
-					graphics.setColor( current == true ? Color.RED : Color.GRAY );
-					graphics.fillOval( x - 1, y - 1, 3, 3 );
-					if( prevX != null && prevY != null ) {
-						graphics.setColor( Color.GRAY );
-						graphics.drawLine( x, y, prevX, prevY );
-					}; // if
-
-					prevX = x;
-					prevY = y;
-
-				}; // if
-			}; // for
+		if( chart == null || chart.hasSize( width, height ) == false ) {
+			chart = new SpeedChart( width, height );
 		}; // if
+		chart.render( graphics, state.frameNumber );
+		graphics.setFont( StripChart.FONT );
+		graphics.setColor( Color.GRAY );
+		graphics.drawString( "Speed (mm/sec).", StripChart.START_DRAWING_ON_X * 2, StripChart.TOP_MARKER );
+	}
 
-		outputBuffer.copy( inputBuffer, false );
-		return BUFFER_PROCESSED_OK;
-    }
+
+	/**
+	 * Chart of speed
+	 */
+	private class SpeedChart extends StripChart {
+
+		// value at the bottom of the chart
+		private final int minValue;
+
+		// value at the top of the chart
+		private final int maxValue;
+
+		// range of values of the chart
+		private final int segments;
+
+		// last frame drawn (value above zero), -1 when none
+		private int prevIndex = -1;
+		private int prevY;
+
+		// whether the last frame drawn is shown as current (red)
+		private boolean prevCurrent = false;
+
+
+		/**
+		 * Constructor
+		 * @param  width  width of the panel
+		 * @param  height  height of the panel
+		 */
+		SpeedChart( int width, int height ) {
+			super( width, height, targetPanel.getBackground() );
+			minValue = (int) Math.round( video.speedMin - 0.1 );
+			maxValue = (int) Math.ceil( video.speedMax );
+			segments = maxValue - minValue;
+		}
+
+
+		protected void drawAxes( Graphics graphics ) {
+			int added = 0;
+			int i = 0;
+			for( int marker = maxValue; marker >= minValue; marker-- ) {
+				added = (int) Math.round( i * drawAreaHeight * 1.0 / segments );
+				graphics.setColor( Color.GRAY );
+				graphics.drawString( marker + "", X_OF_Y_AXIS - 10, TOP_MARKER + added + 4 );
+				graphics.setColor( Color.BLACK );
+				graphics.drawLine( X_OF_Y_AXIS, TOP_MARKER + added, X_OF_Y_AXIS + MARKER_LENGTH, TOP_MARKER + added );
+				i++;
+			}; // for
+			graphics.drawLine( X_OF_Y_AXIS + MARKER_LENGTH, TOP_MARKER - 10, X_OF_Y_AXIS + MARKER_LENGTH, bottomMarker + 10 );
+		}
+
+
+		protected void resetSeries() {
+			prevIndex = -1;
+			prevCurrent = false;
+		}
+
+
+		protected void drawFrame( Graphics graphics, int frameNumber, int x ) {
+			// the previous frame is no longer the current one
+			if( prevCurrent == true ) {
+				graphics.setColor( Color.GRAY );
+				graphics.fillOval( x - ( frameNumber - prevIndex ) * SEPARATION - 1, prevY - 1, 3, 3 );
+				prevCurrent = false;
+			}; // if
+			double value = video.frameList.get( frameNumber ).speed;
+			if( value <= 0 ) {
+				return;
+			}; // if
+			int y = scaleY( value, minValue, segments );
+			graphics.setColor( Color.RED );
+			graphics.fillOval( x - 1, y - 1, 3, 3 );
+			if( prevIndex != -1 ) {
+				graphics.setColor( Color.GRAY );
+				graphics.drawLine( x, y, x - ( frameNumber - prevIndex ) * SEPARATION, prevY );
+			}; // if
+			prevIndex = frameNumber;
+			prevY = y;
+			prevCurrent = true;
+		}
+
+	} // class SpeedChart
 
 }
 
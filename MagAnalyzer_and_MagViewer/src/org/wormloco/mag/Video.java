@@ -4,11 +4,10 @@
 
 package org.wormloco.mag;
 
-import org.apache.commons.math.stat.StatUtils;
-
 import java.awt.geom.Line2D;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileNotFoundException;
@@ -16,14 +15,11 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
+import java.io.Writer;
 
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Set;
-import java.util.TreeMap;
 import java.util.TreeSet;
 
 import java.text.DecimalFormat;
@@ -37,13 +33,13 @@ import java.text.NumberFormat;
 
 public class Video {
 
-	/** the bending angle threshold */
+	/** the bending angle threshold (default, see AnalysisConfig) */
 	public static final double BENDING_ANGLE_THRESHOLD = 45.0;
 	
-	/** the threshold of distance for direction change */
+	/** the threshold of distance for direction change (default, see AnalysisConfig) */
 	public static final double DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE = 2.25;
 
-	/** the threshold of angle for direction change */
+	/** the threshold of angle for direction change (default, see AnalysisConfig) */
 	public static final double ANGLE_THRESHOLD_FOR_DIRECTION_CHANGE = 25.0;
 
 	/** the name of frametime text file */
@@ -61,8 +57,8 @@ public class Video {
 	// the frame rate
 	private Double frameRate;
 	
-	// parameter values (calculated or obtained from the video)
-	protected Map<String,String> valuesMap;
+	// parameter values (calculated or obtained from the video), columns of MetricsSchema
+	protected MetricsRow metrics;
 
 	// the list of frames
 	protected List<Frame> frameList;
@@ -73,6 +69,18 @@ public class Video {
 	// the list of runs
 	protected List<Run> runList;
 
+	// prefix counts of flags of frames (repellent, bending), available after computeBending
+	protected FrameIndex frameIndex;
+
+	// the thresholds used in calculations (kept when everything is reset)
+	private AnalysisConfig config = AnalysisConfig.DEFAULT;
+
+	// parameter values that do not depend on the thresholds, available after calculateInvariantParameters
+	protected MetricsRow invariantMetrics;
+
+	// index of positions of the center point, for direction change (it does not depend on the thresholds)
+	protected TrackDistanceIndex trackDistanceIndex;
+
 	/** minimum value of x found in all frames */
 	public Double minX;
 
@@ -109,14 +117,24 @@ public class Video {
 	// for convenience on println statements
 	private static final PrintStream out = System.out;
 
-	// for formatting output purposes 
-	protected static final NumberFormat formatter;
-	protected static final NumberFormat formatter3;
+	// for formatting output purposes (one per thread because formatters are not thread-safe)
+	protected static final ThreadLocal<NumberFormat> formatter;
+	protected static final ThreadLocal<NumberFormat> formatter3;
 
 
 	static { // static constructor
-		formatter = new DecimalFormat( "#0.0####" );
-		formatter3 = new DecimalFormat( "#0.0##" );
+		formatter = new ThreadLocal<NumberFormat>() {
+			@Override
+			protected NumberFormat initialValue() {
+				return new DecimalFormat( "#0.0####" );
+			}
+		};
+		formatter3 = new ThreadLocal<NumberFormat>() {
+			@Override
+			protected NumberFormat initialValue() {
+				return new DecimalFormat( "#0.0##" );
+			}
+		};
 		if( DEBUG == true ) {
 			out.println( "(Video.java) debugging is enabled." );
 		}; // if
@@ -125,7 +143,7 @@ public class Video {
 
 	/** Default constructor */
 	public Video() {
-		valuesMap = new LinkedHashMap<String,String>();
+		metrics = new MetricsRow();
 		frameList = new ArrayList<Frame>();
 		strideList = new ArrayList<Stride>();
 		runList = new ArrayList<Run>();
@@ -148,19 +166,22 @@ public class Video {
 		index = k < j ? j : index;
 		index = k > j ? k : index;
 		larvae = directory.substring( index + 1, directory.length() - 1 );
-		valuesMap = new LinkedHashMap<String,String>();
-		valuesMap.put( "larvae", larvae );
+		metrics = new MetricsRow();
+		metrics.setLabel( larvae );
 	}
 
 	
 	/** 
-	 * Read the data from ABS_POINTS_FILENAME text file,
-	 * sets these values into valuesMap: frame_rate, video_length[seconds],
+	 * Read the data from the binary abs_points file, or from ABS_POINTS_FILENAME text file (see AbsolutePointsFile.getFileToRead),
+	 * sets these values into metrics: frame_rate, video_length[seconds],
 	 * sets the values of minX, minY, maxX, maxY
 	 * @return  null if everything went OK; otherwise the error message
 	 */
 	public String readAbsolutePoints() {
-		File file = new File( directory, Utilities.ABS_POINTS_FILENAME );
+		File file = AbsolutePointsFile.getFileToRead( new File( directory ) );
+		if( AbsolutePointsFile.ABS_POINTS_BINARY_FILENAME.equals( file.getName() ) == true ) {
+			return readAbsolutePointsBinary( file );
+		}; // if
 		if( file.exists() == false ) {
 			return Utilities.FILE_NOT_FOUND;
 		}; // if
@@ -177,7 +198,7 @@ public class Video {
 				if( c == 1 ) {
 					if( line.startsWith( ">frame rate:" ) == true ) {
 						frameRate = new Double( line.substring( ">frame rate:".length() ) );
-						valuesMap.put( "frame_rate[fps]", format( frameRate ) );
+						metrics.set( "frame_rate[fps]", frameRate );
 					}; // if
 				}
 				else {
@@ -203,11 +224,11 @@ public class Video {
 			return "Programming error: frameList must be emptied before using it again!";
 		}; // if
 
-		String timeInSeconds = format( linesList.size() / frameRate );
+		double timeInSeconds = linesList.size() / frameRate;
 		if( DEBUG == true ) {
-			out.println( "\t video_length[seconds] \t" + timeInSeconds );
+			out.println( "\t video_length[seconds] \t" + format( timeInSeconds ) );
 		}; // if
-		valuesMap.put( "video_length[seconds]", timeInSeconds );
+		metrics.set( "video_length[seconds]", timeInSeconds );
 
 		// load and make sure all columns have data
 		int frameNumber = 0;
@@ -283,6 +304,67 @@ public class Video {
 
 		return null;
 	}
+
+
+	/** 
+	 * Read the data from the binary version of abs_points (same results as reading the text file,
+	 * except for files of version 1 whose coordinates are float)
+	 * @param  file  the binary abs_points file
+	 * @return  null if everything went OK; otherwise the error message
+	 */
+	protected String readAbsolutePointsBinary( File file ) {
+		AbsolutePointsFile absolutePointsFile = null;
+		try {
+			absolutePointsFile = new AbsolutePointsFile( file );
+		}
+		catch( IOException ioe ) {
+			return "Error, could not read file ( " + file.getAbsolutePath() + " ). " + ioe.getMessage();
+		}; // try
+		int frameCount = absolutePointsFile.getFrameCount();
+		if( frameCount == 0 ) {
+			return "Data was empty, nothing to do!";
+		}; // if
+		if( frameList.size() > 0 ) {
+			// just in case verification
+			return "Programming error: frameList must be emptied before using it again!";
+		}; // if
+		frameRate = absolutePointsFile.getFrameRate();
+		metrics.set( "frame_rate[fps]", frameRate );
+		double timeInSeconds = frameCount / frameRate;
+		if( DEBUG == true ) {
+			out.println( "\t video_length[seconds] \t" + format( timeInSeconds ) );
+		}; // if
+		metrics.set( "video_length[seconds]", timeInSeconds );
+
+		double x = 0;
+		double y = 0;
+		for( int f = 0; f < frameCount; f++ ) {
+			if( absolutePointsFile.isValid( f ) == false ) {
+				return "Error in data point (-1.#IND00) in frame: " + f;
+			}; // if
+			Frame frame = new Frame();
+			for( int point = 0; point < Frame.MIDLINE; point++ ) {
+				x = absolutePointsFile.getX( f, point );
+				y = absolutePointsFile.getY( f, point );
+				frame.x[ point ] = x;
+				frame.y[ point ] = y;
+				if( minX == null ) {
+					minX = x;
+					maxX = x;
+					minY = y;
+					maxY = y;
+				}
+				else {
+					minX = Math.min( x, minX );
+					maxX = Math.max( x, maxX );
+					minY = Math.min( y, minY );
+					maxY = Math.max( y, maxY );
+				}; // if
+			}; // for
+			frameList.add( frame );
+		}; // for
+		return null;
+	}
 	
 
 	/**
@@ -293,11 +375,11 @@ public class Video {
 		if( frameList.size() < 3 ) {
 			return "Unable to calculate length statistics, n = " + frameList.size();
 		}; // if
-		List<Double> bodyLengthList = new ArrayList<Double>();
+		StatAccumulator bodyLengthStats = new StatAccumulator();
 		for( int f = 0; f < frameList.size(); f++ ) {
 			Frame frame = frameList.get( f );
 			frame.calculateBodyLength();
-			bodyLengthList.add( frame.bodyLength );
+			bodyLengthStats.add( frame.bodyLength );
 			if( bodyLengthMin == null ) {
 				bodyLengthMin = frame.bodyLength;
 			}
@@ -311,7 +393,7 @@ public class Video {
 				bodyLengthMax = Math.max( bodyLengthMax, frame.bodyLength );
 			}; // if
 		}; // for
-		computeStatisticsAndAddThemToValuesMap( bodyLengthList, "body_length" + "[mm]" );
+		computeStatisticsAndAddThemToValuesMap( bodyLengthStats, "body_length" + "[mm]" );
 
 		// output length values to a text file
 		File file = new File( directory, "tmp_length.txt" );
@@ -337,7 +419,7 @@ public class Video {
 	public void verifyPositionOnTheRepellent() {
 		for( int f = 0; f < frameList.size(); f++ ) {
 			Frame frame = frameList.get( f );
-			frame.verifyPositionOnTheRepellent();
+			frame.verifyPositionOnTheRepellent( config.getRadious() );
 		}; // for
 		// figure out the total time inside, and the total time outside (on the repellent)
 		int insideCount = 0;
@@ -408,24 +490,20 @@ public class Video {
 		int prevMaximaIndex = -1;
 		int prevMinimaIndex = -1;
 		int PADDING = (int) Math.round( Math.floor( frameRate / 2.0 ) );
+		// find whether each frame is the minimum and/or maximum within a window around it
+		double[] smoothBodyLengths = new double[ frameList.size() ];
+		for( int f = 0; f < frameList.size(); f++ ) {
+			smoothBodyLengths[ f ] = frameList.get( f ).smoothBodyLength;
+		}; // for
+		boolean[] isWindowMax = new boolean[ frameList.size() ];
+		boolean[] isWindowMin = new boolean[ frameList.size() ];
+		SlidingExtrema.find( smoothBodyLengths, PADDING, isWindowMax, isWindowMin );
 		for( int f = 0; f < frameList.size(); f++ ) {
 			if( ( f - PADDING ) < 0 || ( f + PADDING ) >= frameList.size() ) {
 				continue;
 			}; // if
-			maxIndex = f;
-			minIndex = f;
-			// find the minimum and maximum within a window around current frame
-			for( int m = ( f - PADDING ); m <= ( f + PADDING ); m++ ) {
-				Frame frameMax = frameList.get( maxIndex );
-				Frame frameMin = frameList.get( minIndex );
-				Frame frameM = frameList.get( m );
-				if( frameMax.smoothBodyLength <= frameM.smoothBodyLength ) {
-					maxIndex = m;
-				}; // if
-				if( frameMin.smoothBodyLength >= frameM.smoothBodyLength ) {
-					minIndex = m;
-				}; // if
-			}; // for
+			maxIndex = isWindowMax[ f ] == true ? f : -1;
+			minIndex = isWindowMin[ f ] == true ? f : -1;
 			// is the current frame the max of the window we looked at?
 			if( maxIndex == f ) {
 				Frame frameMax = frameList.get( maxIndex );
@@ -483,7 +561,7 @@ public class Video {
 	public void localMinimaMaximaVerifications() {
 		Frame prevMinimaFrame = null;
 		List<Integer> indexList = new ArrayList<Integer>();
-		Double threshold = new Double( valuesMap.get( "body_length[mm]_mean" ) );
+		Double threshold = new Double( format( metrics.get( "body_length[mm]_mean" ) ) );
 		threshold = threshold / 60.0;
 
 		// remember the frames that are local minima or maxima
@@ -625,26 +703,16 @@ public class Video {
 	 * Calculates time bending percentages
 	 */
 	private void computeBendingPercentageHead( ) {
-		int insideCount = 0;
-		int repellentCount = 0;
-		for( int f = 0; f < frameList.size(); f++ ) {
-			Frame frame = frameList.get( f );
-			if( frame.bendingHead >= BENDING_ANGLE_THRESHOLD ) {
-				// it is bending, but, is it inside or outside (over repellent)?
-				if( frame.onTheRepellent == true ) {
-					repellentCount++;
-				}
-				else {
-					insideCount++;
-				}; // if
-			}; // if
-		}; // for
+		int last = frameList.size() - 1;
+		// it is bending, but, is it inside or outside (over repellent)?
+		int repellentCount = frameIndex.countHeadBendingOverRepellent( 0, last );
+		int insideCount = frameIndex.countHeadBending( 0, last ) - repellentCount;
 		double timeBendingOverall = ( insideCount + repellentCount ) * 1.0 /  frameList.size();
 		double timeBendingInside = insideCount * 1.0 /  totalFramesInside;
 		double timeBendingOutside = totalFramesOverRepellent > 0 ? ( repellentCount * 1.0 /  totalFramesOverRepellent ) : 0;
-		valuesMap.put( "time_head_bending_overall" + "[%]", timeBendingOverall + "" );
-		valuesMap.put( "time_head_bending_inside" + "[%]", timeBendingInside + "" );
-		valuesMap.put( "time_head_bending_outside" + "[%]", timeBendingOutside + "" );
+		metrics.set( "time_head_bending_overall" + "[%]", timeBendingOverall );
+		metrics.set( "time_head_bending_inside" + "[%]", timeBendingInside );
+		metrics.set( "time_head_bending_outside" + "[%]", timeBendingOutside );
 		// verification just in case
 		if( timeBendingOverall < 0 || timeBendingOverall > 1 ) {
 			out.println( "ERRRROR : timeBendingOverall " + timeBendingOverall );
@@ -665,26 +733,16 @@ public class Video {
 	 * Calculates time bending percentages
 	 */
 	private void computeBendingPercentageBody( ) {
-		int insideCount = 0;
-		int repellentCount = 0;
-		for( int f = 0; f < frameList.size(); f++ ) {
-			Frame frame = frameList.get( f );
-			if( frame.bendingBody >= BENDING_ANGLE_THRESHOLD ) {
-				// it is bending, but, is it inside or outside (over repellent)?
-				if( frame.onTheRepellent == true ) {
-					repellentCount++;
-				}
-				else {
-					insideCount++;
-				}; // if
-			}; // if
-		}; // for
+		int last = frameList.size() - 1;
+		// it is bending, but, is it inside or outside (over repellent)?
+		int repellentCount = frameIndex.countBodyBendingOverRepellent( 0, last );
+		int insideCount = frameIndex.countBodyBending( 0, last ) - repellentCount;
 		double timeBendingOverall = ( insideCount + repellentCount ) * 1.0 /  frameList.size();
 		double timeBendingInside = insideCount * 1.0 /  totalFramesInside;
 		double timeBendingOutside = totalFramesOverRepellent > 0 ? ( repellentCount * 1.0 /  totalFramesOverRepellent ) : 0;
-		valuesMap.put( "time_body_bending_overall" + "[%]", timeBendingOverall + "" );
-		valuesMap.put( "time_body_bending_inside" + "[%]", timeBendingInside + "" );
-		valuesMap.put( "time_body_bending_outside" + "[%]", timeBendingOutside + "" );
+		metrics.set( "time_body_bending_overall" + "[%]", timeBendingOverall );
+		metrics.set( "time_body_bending_inside" + "[%]", timeBendingInside );
+		metrics.set( "time_body_bending_outside" + "[%]", timeBendingOutside );
 		//verification just in case
 		if( timeBendingOverall < 0 || timeBendingOverall > 1 ) {
 			out.println( "ERRRROR : body timeBendingOverall " + timeBendingOverall );
@@ -705,27 +763,16 @@ public class Video {
 	 * Calculates time bending percentages
 	 */
 	private void computeBendingPercentageHeadOrBody( ) {
-		int insideCount = 0;
-		int repellentCount = 0;
-		for( int f = 0; f < frameList.size(); f++ ) {
-			Frame frame = frameList.get( f );
-			if( frame.bendingHead >= BENDING_ANGLE_THRESHOLD
-			||  frame.bendingBody >= BENDING_ANGLE_THRESHOLD ) {
-				// it is bending, but, is it inside or outside (over repellent)?
-				if( frame.onTheRepellent == true ) {
-					repellentCount++;
-				}
-				else {
-					insideCount++;
-				}; // if
-			}; // if
-		}; // for
+		int last = frameList.size() - 1;
+		// it is bending, but, is it inside or outside (over repellent)?
+		int repellentCount = frameIndex.countBendingOverRepellent( 0, last );
+		int insideCount = frameIndex.countBending( 0, last ) - repellentCount;
 		double timeBendingOverall = ( insideCount + repellentCount ) * 1.0 /  frameList.size();
 		double timeBendingInside = insideCount * 1.0 /  totalFramesInside;
 		double timeBendingOutside = totalFramesOverRepellent > 0 ? ( repellentCount * 1.0 /  totalFramesOverRepellent ) : 0;
-		valuesMap.put( "time_bending_overall" + "[%]", timeBendingOverall + "" );
-		valuesMap.put( "time_bending_inside" + "[%]", timeBendingInside + "" );
-		valuesMap.put( "time_bending_outside" + "[%]", timeBendingOutside + "" );
+		metrics.set( "time_bending_overall" + "[%]", timeBendingOverall );
+		metrics.set( "time_bending_inside" + "[%]", timeBendingInside );
+		metrics.set( "time_bending_outside" + "[%]", timeBendingOutside );
 		//verification just in case
 		if( timeBendingOverall < 0 || timeBendingOverall > 1 ) {
 			out.println( "ERRRROR : both timeBendingOverall " + timeBendingOverall );
@@ -746,24 +793,25 @@ public class Video {
 	 * Calculates body-length when larvae is extended (and when it is contracted)
 	 */
 	public void lengthExtendedContracted( ) {
-		List<Double> minimaList = new ArrayList<Double>();
-		List<Double> maximaList = new ArrayList<Double>();
+		StatAccumulator minimaStats = new StatAccumulator();
+		StatAccumulator maximaStats = new StatAccumulator();
 		for( int f = 0; f < frameList.size(); f++ ) {
 			Frame frame = frameList.get( f );
 			if( frame.localMinima == true ) {
-				minimaList.add( frame.bodyLength );
+				minimaStats.add( frame.bodyLength );
 			}; // if
 			if( frame.localMaxima == true ) {
-				maximaList.add( frame.bodyLength );
+				maximaStats.add( frame.bodyLength );
 			}; // if
 		}; // for
-		computeStatisticsAndAddThemToValuesMap( minimaList, "body_length_contracted" + "[mm]" );
-		computeStatisticsAndAddThemToValuesMap( maximaList, "body_length_extended" + "[mm]" );
+		computeStatisticsAndAddThemToValuesMap( minimaStats, "body_length_contracted" + "[mm]" );
+		computeStatisticsAndAddThemToValuesMap( maximaStats, "body_length_extended" + "[mm]" );
 	}
 	
 
 	/** 
-	 * Calculates speed
+	 * Calculates speed of each frame (statistics at each point are done by calculateSpeedStatisticsAtEachPoint
+	 * because they depend on the position on the repellent)
 	 */
 	public void calculateSpeed( ) {
 		final int PADDING = 2;
@@ -799,30 +847,19 @@ public class Video {
 		}; // for
 
 		calculateSpeedStatistics( );
-		calculateSpeedStatisticsAtEachPoint( );
 	}
 
 
 	/** 
-	 * Calculates speed statistics
+	 * Calculates speed statistics (minimum and maximum speed)
 	 */
 	public void calculateSpeedStatistics( ) {
-		List<Double> overallList = new ArrayList<Double>();
-		List<Double> insideList = new ArrayList<Double>();
-		List<Double> outsideList = new ArrayList<Double>();
 		for( int f = 0; f < frameList.size(); f++ ) {
 			Frame frame = frameList.get( f );
 			if( frame.speed == -999 ) {
 				//out.println( f + "]] " + frame.speed );
 				continue;
 			}; // if
-			overallList.add( frame.speed );
-			if( frame.onTheRepellent == false ) {
-				insideList.add( frame.speed );
-			}
-			else {
-				outsideList.add( frame.speed );
-			}; // if
 			if( speedMax == null ) {
 				speedMax = frame.speed;
 			}
@@ -843,49 +880,33 @@ public class Video {
 	 * Calculates speed statistics at each of the 13 points
 	 */
 	public void calculateSpeedStatisticsAtEachPoint( ) {
-		// calculate 'overall'
-		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			List<Double> overallList = new ArrayList<Double>();
-			for( int f = 0; f < frameList.size(); f++ ) {
-				Frame frame = frameList.get( f );
+		// one pass over the frames for 'inside' and 'outside' of all points, 'overall' is both of them
+		StatAccumulator[] insideStats = StatAccumulator.createArray( Frame.MIDLINE );
+		StatAccumulator[] outsideStats = StatAccumulator.createArray( Frame.MIDLINE );
+		for( int f = 0; f < frameList.size(); f++ ) {
+			Frame frame = frameList.get( f );
+			StatAccumulator[] stats = frame.onTheRepellent == false ? insideStats : outsideStats;
+			for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
 				if( frame.speedAt[ eachPoint ] == -999 ) {
 					continue;
 				}; // if
-				overallList.add( frame.speedAt[ eachPoint ] );
+				stats[ eachPoint ].add( frame.speedAt[ eachPoint ] );
 			}; // for
-			computeStatisticsAndAddThemToValuesMap( overallList, "speed_overall_at_point_" + eachPoint + "" + "[mm/second]" );
+		}; // for
+		// calculate 'overall'
+		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
+			StatAccumulator overallStats = new StatAccumulator();
+			overallStats.merge( insideStats[ eachPoint ] );
+			overallStats.merge( outsideStats[ eachPoint ] );
+			computeStatisticsAndAddThemToValuesMap( overallStats, "speed_overall_at_point_" + eachPoint + "" + "[mm/second]" );
 		}; // for
 		// calculate 'inside' 
 		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			List<Double> insideList = new ArrayList<Double>();
-			for( int f = 0; f < frameList.size(); f++ ) {
-				Frame frame = frameList.get( f );
-				if( frame.speedAt[ eachPoint ] == -999 ) {
-					//out.println( f + "]] " + frame.speed );
-					continue;
-				}; // if
-				if( frame.onTheRepellent == false ) {
-					insideList.add( frame.speedAt[ eachPoint ] );
-				}; // if
-			}; // for
-			computeStatisticsAndAddThemToValuesMap( insideList, "speed_inside_at_point_" + eachPoint + "" + "[mm/second]" );
+			computeStatisticsAndAddThemToValuesMap( insideStats[ eachPoint ], "speed_inside_at_point_" + eachPoint + "" + "[mm/second]" );
 		}; // for
 		// calculate 'outside'
 		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			List<Double> outsideList = new ArrayList<Double>();
-			for( int f = 0; f < frameList.size(); f++ ) {
-				Frame frame = frameList.get( f );
-				if( frame.speedAt[ eachPoint ] == -999 ) {
-					//out.println( f + "]] " + frame.speed );
-					continue;
-				}; // if
-				if( frame.onTheRepellent == false ) {
-				}
-				else {
-					outsideList.add( frame.speedAt[ eachPoint ] );
-				}; // if
-			}; // for
-			computeStatisticsAndAddThemToValuesMap( outsideList, "speed_outside_at_point_" + eachPoint + "" + "[mm/second]" );
+			computeStatisticsAndAddThemToValuesMap( outsideStats[ eachPoint ], "speed_outside_at_point_" + eachPoint + "" + "[mm/second]" );
 		}; // for
 	}
 
@@ -901,7 +922,7 @@ public class Video {
 		Frame prevMinimaFrame = null;
 		int prevMinimaIndex = -1;
 		int strideNumber = 0;
-		Double stride_distance_threshold = new Double( valuesMap.get( "body_length[mm]_mean" ) );
+		Double stride_distance_threshold = new Double( format( metrics.get( "body_length[mm]_mean" ) ) );
 		stride_distance_threshold = stride_distance_threshold / 20.0;
 		
 		for( int f = 0; f < frameList.size(); f++ ) {
@@ -914,30 +935,11 @@ public class Video {
 					double xPrev = ( prevMinimaFrame.x[ Frame.MIDLINE - 1 ] + prevMinimaFrame.x[ Frame.MIDLINE - 2 ] ) / 2.0;
 					double yPrev = ( prevMinimaFrame.y[ Frame.MIDLINE - 1 ] + prevMinimaFrame.y[ Frame.MIDLINE - 2 ] ) / 2.0;
 					double tailMovement = Utilities.distance( x, y, xPrev, yPrev );
-					boolean bodyBendingFlag = false;
-					int headBendingCount = 0;
 					if( tailMovement > stride_distance_threshold ) {	
-						// see whether it was bending
-						for( int q = prevMinimaIndex; q <= f; q++ ) {
-							Frame tmpFrame = frameList.get( q );
-							if( tmpFrame.bendingBody >= Video.BENDING_ANGLE_THRESHOLD ) {
-								bodyBendingFlag = true;
-								break;
-							}; // if
-							if( tmpFrame.bendingHead >= Video.BENDING_ANGLE_THRESHOLD ) {
-								headBendingCount++;
-							}; // if
-						}; // for
-						if( bodyBendingFlag == false && headBendingCount < 2 ) {
+						// see whether it was bending (no body bending, and head bending in less than 2 frames)
+						if( frameIndex.countBodyBending( prevMinimaIndex, f ) == 0 && frameIndex.countHeadBending( prevMinimaIndex, f ) < 2 ) {
 							// figure out whether any point was on the repellent
-							boolean overRepellent = false;
-							for( int tmp = prevMinimaIndex; tmp <= f; tmp++ ) {
-								Frame tmpFrame = frameList.get( tmp );
-								if( tmpFrame.onTheRepellent == true ) {
-									overRepellent = true;
-									break;
-								}; // if
-							}; // for
+							boolean overRepellent = frameIndex.countOverRepellent( prevMinimaIndex, f ) > 0;
 							// how far did the center-point move?
 							double centerpointDistance = Utilities.distance( 
 							frame.x[ Frame.CENTER_POINT - 1 ], frame.y[ Frame.CENTER_POINT - 1 ], 
@@ -973,15 +975,12 @@ public class Video {
 	 * Calculates stride statistics: time_striding[%], speed_striding, stride_duration, stride_distance
 	 */
 	public void calculateStrideStatistics( ) {
-		List<Double> stridingSpeedOverallList = new ArrayList<Double>();
-		List<Double> stridingSpeedInsideList = new ArrayList<Double>();
-		List<Double> stridingSpeedOutsideList = new ArrayList<Double>();
-		List<Double> strideDurationOverallList = new ArrayList<Double>();
-		List<Double> strideDurationInsideList = new ArrayList<Double>();
-		List<Double> strideDurationOutsideList = new ArrayList<Double>();
-		List<Double> strideDistanceOverallList = new ArrayList<Double>();
-		List<Double> strideDistanceInsideList = new ArrayList<Double>();
-		List<Double> strideDistanceOutsideList = new ArrayList<Double>();
+		StatAccumulator strideDurationOverallStats = new StatAccumulator();
+		StatAccumulator strideDurationInsideStats = new StatAccumulator();
+		StatAccumulator strideDurationOutsideStats = new StatAccumulator();
+		StatAccumulator strideDistanceOverallStats = new StatAccumulator();
+		StatAccumulator strideDistanceInsideStats = new StatAccumulator();
+		StatAccumulator strideDistanceOutsideStats = new StatAccumulator();
 		double timeStridingInside = 0.0;
 		double timeStridingOutside = 0.0;
 		int strideCount = 0;
@@ -1002,21 +1001,17 @@ public class Video {
 		for( Stride stride : strideList ) {
 			int frames = stride.indexSecondMinima - stride.indexFirstMinima ;
 			double timeSeconds = frames / frameRate;
-			double speed = stride.distanceTraveledCenterPoint / ( frames / frameRate );
-			stridingSpeedOverallList.add( speed );
-			strideDurationOverallList.add( timeSeconds );
-			strideDistanceOverallList.add( stride.distanceTraveledCenterPoint );
+			strideDurationOverallStats.add( timeSeconds );
+			strideDistanceOverallStats.add( stride.distanceTraveledCenterPoint );
 			if( stride.overRepellent == false ) {
 				timeStridingInside += timeSeconds;
-				stridingSpeedInsideList.add( speed );
-				strideDurationInsideList.add( timeSeconds );
-				strideDistanceInsideList.add( stride.distanceTraveledCenterPoint );
+				strideDurationInsideStats.add( timeSeconds );
+				strideDistanceInsideStats.add( stride.distanceTraveledCenterPoint );
 			}
 			else {
 				timeStridingOutside += timeSeconds;
-				stridingSpeedOutsideList.add( speed );
-				strideDurationOutsideList.add( timeSeconds );
-				strideDistanceOutsideList.add( stride.distanceTraveledCenterPoint );
+				strideDurationOutsideStats.add( timeSeconds );
+				strideDistanceOutsideStats.add( stride.distanceTraveledCenterPoint );
 			}; // if
 			strideCount++;
 		}; // for
@@ -1042,18 +1037,18 @@ public class Video {
 
 		double stridingPercentageInsideViaFramesCount = frameStridingCountInside * 1.0 / totalFramesInside;
 		double stridingPercentageOutsideViaFramesCount = totalFramesOverRepellent == 0 ? 0 : ( frameStridingCountOutside * 1.0 / totalFramesOverRepellent );
-		valuesMap.put( "time_striding_overall" + "[%]", stridingPercentageOverall + "" );
-		valuesMap.put( "time_striding_inside" + "[%]", stridingPercentageInsideViaFramesCount + "" );
-		valuesMap.put( "time_striding_outside" + "[%]", stridingPercentageOutsideViaFramesCount + "" );
-		valuesMap.put( "strides_per_minute", format( strideCount / ( timeSeconds / 60.0 ) ) );
-
-		computeStatisticsAndAddThemToValuesMap( strideDurationOverallList, "stride_duration_overall" + "[second]" );
-		computeStatisticsAndAddThemToValuesMap( strideDurationInsideList, "stride_duration_inside" + "[second]" );
-		computeStatisticsAndAddThemToValuesMap( strideDurationOutsideList, "stride_duration_outside" + "[second]" );
-
-		computeStatisticsAndAddThemToValuesMap( strideDistanceOverallList, "stride_distance_overall" + "[mm]" );
-		computeStatisticsAndAddThemToValuesMap( strideDistanceInsideList, "stride_distance_inside" + "[mm]" );
-		computeStatisticsAndAddThemToValuesMap( strideDistanceOutsideList, "stride_distance_outside" + "[mm]" );
+		metrics.set( "time_striding_overall" + "[%]", stridingPercentageOverall );
+		metrics.set( "time_striding_inside" + "[%]", stridingPercentageInsideViaFramesCount );
+		metrics.set( "time_striding_outside" + "[%]", stridingPercentageOutsideViaFramesCount );
+		metrics.set( "strides_per_minute", strideCount / ( timeSeconds / 60.0 ) );
+
+		computeStatisticsAndAddThemToValuesMap( strideDurationOverallStats, "stride_duration_overall" + "[second]" );
+		computeStatisticsAndAddThemToValuesMap( strideDurationInsideStats, "stride_duration_inside" + "[second]" );
+		computeStatisticsAndAddThemToValuesMap( strideDurationOutsideStats, "stride_duration_outside" + "[second]" );
+
+		computeStatisticsAndAddThemToValuesMap( strideDistanceOverallStats, "stride_distance_overall" + "[mm]" );
+		computeStatisticsAndAddThemToValuesMap( strideDistanceInsideStats, "stride_distance_inside" + "[mm]" );
+		computeStatisticsAndAddThemToValuesMap( strideDistanceOutsideStats, "stride_distance_outside" + "[mm]" );
 		// verification just in case
 		if( stridingPercentageInsideViaFramesCount < 0 || stridingPercentageInsideViaFramesCount > 1 ) {
 			out.println( "Erroneous stridingPercentageInsideViaFramesCount: " + stridingPercentageInsideViaFramesCount );
@@ -1068,43 +1063,36 @@ public class Video {
 	 * Calculates stride statistics at each point: speed_striding
 	 */
 	public void calculateStrideStatisticsAtEachPoint_speed( ) {
-		// calculate it for 'overall'
-		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			List<Double> stridingSpeedOverallList = new ArrayList<Double>();
-			for( Stride stride : strideList ) {
-				int frames = stride.indexSecondMinima - stride.indexFirstMinima ;
+		StatAccumulator[] overallStats = StatAccumulator.createArray( Frame.MIDLINE );
+		StatAccumulator[] insideStats = StatAccumulator.createArray( Frame.MIDLINE );
+		StatAccumulator[] outsideStats = StatAccumulator.createArray( Frame.MIDLINE );
+		for( Stride stride : strideList ) {
+			int frames = stride.indexSecondMinima - stride.indexFirstMinima ;
+			for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
 				double speed = stride.distanceTraveledAt[ eachPoint ] / ( frames / frameRate );
-				stridingSpeedOverallList.add( speed );
+				overallStats[ eachPoint ].add( speed );
+				if( stride.overRepellent == false ) {
+					insideStats[ eachPoint ].add( speed );
+				}
+				else {
+					outsideStats[ eachPoint ].add( speed );
+				}; // if
 			}; // for
-			computeStatisticsAndAddThemToValuesMap( stridingSpeedOverallList, "speed_striding_overall_at_point_" + eachPoint + "" + "[mm/second]" );
+		}; // for
+
+		// calculate it for 'overall'
+		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
+			computeStatisticsAndAddThemToValuesMap( overallStats[ eachPoint ], "speed_striding_overall_at_point_" + eachPoint + "" + "[mm/second]" );
 		}; // for
 
 		// calculate it for 'inside'
 		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			List<Double> stridingSpeedInsideList = new ArrayList<Double>();
-			for( Stride stride : strideList ) {
-				int frames = stride.indexSecondMinima - stride.indexFirstMinima ;
-				double speed = stride.distanceTraveledAt[ eachPoint ] / ( frames / frameRate );
-				if( stride.overRepellent == false ) {
-					stridingSpeedInsideList.add( speed );
-				}; // if
-			}; // for
-			computeStatisticsAndAddThemToValuesMap( stridingSpeedInsideList, "speed_striding_inside_at_point_" + eachPoint + "" + "[mm/second]" );
+			computeStatisticsAndAddThemToValuesMap( insideStats[ eachPoint ], "speed_striding_inside_at_point_" + eachPoint + "" + "[mm/second]" );
 		}; // for
 
 		// calculate it for 'outside'
 		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			List<Double> stridingSpeedOutsideList = new ArrayList<Double>();
-			for( Stride stride : strideList ) {
-				int frames = stride.indexSecondMinima - stride.indexFirstMinima ;
-				double speed = stride.distanceTraveledAt[ eachPoint ] / ( frames / frameRate );
-				if( stride.overRepellent == false ) {
-				}
-				else {
-					stridingSpeedOutsideList.add( speed );
-				}; // if
-			}; // for
-			computeStatisticsAndAddThemToValuesMap( stridingSpeedOutsideList, "speed_striding_outside_at_point_" + eachPoint + "" + "[mm/second]" );
+			computeStatisticsAndAddThemToValuesMap( outsideStats[ eachPoint ], "speed_striding_outside_at_point_" + eachPoint + "" + "[mm/second]" );
 		}; // for
 
 	}
@@ -1112,38 +1100,34 @@ public class Video {
 
 	/**
 	 * Calculates stride statistics at each point: stride_distance,
-	 * WZ said it is no longer needed
+	 * WZ said it is no longer needed (its columns are not part of MetricsSchema)
 	 */
 	public void calculateStrideStatisticsAtEachPoint_distance( ) {
+		StatAccumulator[] overallStats = StatAccumulator.createArray( Frame.MIDLINE );
+		StatAccumulator[] insideStats = StatAccumulator.createArray( Frame.MIDLINE );
+		StatAccumulator[] outsideStats = StatAccumulator.createArray( Frame.MIDLINE );
+		for( Stride stride : strideList ) {
+			for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
+				overallStats[ eachPoint ].add( stride.distanceTraveledAt[ eachPoint ] );
+				if( stride.overRepellent == false ) {
+					insideStats[ eachPoint ].add( stride.distanceTraveledAt[ eachPoint ] );
+				}
+				else {
+					outsideStats[ eachPoint ].add( stride.distanceTraveledAt[ eachPoint ] );
+				}; // if
+			}; // for
+		}; // for
 		// calculate for 'overall'
 		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			List<Double> strideDistanceOverallList = new ArrayList<Double>();
-			for( Stride stride : strideList ) {
-				strideDistanceOverallList.add( stride.distanceTraveledAt[ eachPoint ] );
-			}; // for
-			computeStatisticsAndAddThemToValuesMap( strideDistanceOverallList, "stride_distance_overall_at_point_" + eachPoint + "" + "[mm]" );
+			computeStatisticsAndAddThemToValuesMap( overallStats[ eachPoint ], "stride_distance_overall_at_point_" + eachPoint + "" + "[mm]" );
 		}; // for
 		// calculate for 'inside'
 		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			List<Double> strideDistanceInsideList = new ArrayList<Double>();
-			for( Stride stride : strideList ) {
-				if( stride.overRepellent == false ) {
-					strideDistanceInsideList.add( stride.distanceTraveledAt[ eachPoint ] );
-				}; // if
-			}; // for
-			computeStatisticsAndAddThemToValuesMap( strideDistanceInsideList, "stride_distance_inside_at_point_" + eachPoint + "" + "[mm]" );
+			computeStatisticsAndAddThemToValuesMap( insideStats[ eachPoint ], "stride_distance_inside_at_point_" + eachPoint + "" + "[mm]" );
 		}; // for
 		// calculate for 'outside'
 		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			List<Double> strideDistanceOutsideList = new ArrayList<Double>();
-			for( Stride stride : strideList ) {
-				if( stride.overRepellent == false ) {
-				}
-				else {
-					strideDistanceOutsideList.add( stride.distanceTraveledAt[ eachPoint ] );
-				}; // if
-			}; // for
-			computeStatisticsAndAddThemToValuesMap( strideDistanceOutsideList, "stride_distance_outside_at_point_" + eachPoint + "" + "[mm]" );
+			computeStatisticsAndAddThemToValuesMap( outsideStats[ eachPoint ], "stride_distance_outside_at_point_" + eachPoint + "" + "[mm]" );
 		}; // for
 	}
 
@@ -1217,12 +1201,12 @@ public class Video {
 	 * Calculates statistics for contraction rate and extension rate
 	 */
 	public void calculateContractionRateStatistics( ) {
-		List<Double> contractionRateOverallList = new ArrayList<Double>();
-		List<Double> contractionRateInsideList = new ArrayList<Double>();
-		List<Double> contractionRateOutsideList = new ArrayList<Double>();
-		List<Double> extensionRateOverallList = new ArrayList<Double>();
-		List<Double> extensionRateInsideList = new ArrayList<Double>();
-		List<Double> extensionRateOutsideList = new ArrayList<Double>();
+		StatAccumulator contractionRateOverallStats = new StatAccumulator();
+		StatAccumulator contractionRateInsideStats = new StatAccumulator();
+		StatAccumulator contractionRateOutsideStats = new StatAccumulator();
+		StatAccumulator extensionRateOverallStats = new StatAccumulator();
+		StatAccumulator extensionRateInsideStats = new StatAccumulator();
+		StatAccumulator extensionRateOutsideStats = new StatAccumulator();
 		for( Stride stride : strideList ) {
 			if( stride.contractionRate < 0 ) {
 				out.println( "Skipping stride " + stride.strideNumber + ", contractionRate is < 0, " + format( stride.contractionRate ) );
@@ -1232,23 +1216,23 @@ public class Video {
 				out.println( "Skipping stride " + stride.strideNumber + ", extensionRate is < 0, " + format( stride.extensionRate ) );
 				continue;
 			}; // if
-			contractionRateOverallList.add( stride.contractionRate );
-			extensionRateOverallList.add( stride.extensionRate );
+			contractionRateOverallStats.add( stride.contractionRate );
+			extensionRateOverallStats.add( stride.extensionRate );
 			if( stride.overRepellent == false ) {
-				contractionRateInsideList.add( stride.contractionRate );
-				extensionRateInsideList.add( stride.extensionRate );
+				contractionRateInsideStats.add( stride.contractionRate );
+				extensionRateInsideStats.add( stride.extensionRate );
 			}
 			else {
-				contractionRateOutsideList.add( stride.contractionRate );
-				extensionRateOutsideList.add( stride.extensionRate );
+				contractionRateOutsideStats.add( stride.contractionRate );
+				extensionRateOutsideStats.add( stride.extensionRate );
 			}; // if
 		}; // if
-		computeStatisticsAndAddThemToValuesMap( contractionRateOverallList, "contraction_rate_overall" + "[mm/second]" );
-		computeStatisticsAndAddThemToValuesMap( contractionRateInsideList, "contraction_rate_inside" + "[mm/second]" );
-		computeStatisticsAndAddThemToValuesMap( contractionRateOutsideList, "contraction_rate_outside" + "[mm/second]" );
-		computeStatisticsAndAddThemToValuesMap( extensionRateOverallList, "extension_rate_overall" + "[mm/second]" );
-		computeStatisticsAndAddThemToValuesMap( extensionRateInsideList, "extension_rate_inside" + "[mm/second]" );
-		computeStatisticsAndAddThemToValuesMap( extensionRateOutsideList, "extension_rate_outside" + "[mm/second]" );
+		computeStatisticsAndAddThemToValuesMap( contractionRateOverallStats, "contraction_rate_overall" + "[mm/second]" );
+		computeStatisticsAndAddThemToValuesMap( contractionRateInsideStats, "contraction_rate_inside" + "[mm/second]" );
+		computeStatisticsAndAddThemToValuesMap( contractionRateOutsideStats, "contraction_rate_outside" + "[mm/second]" );
+		computeStatisticsAndAddThemToValuesMap( extensionRateOverallStats, "extension_rate_overall" + "[mm/second]" );
+		computeStatisticsAndAddThemToValuesMap( extensionRateInsideStats, "extension_rate_inside" + "[mm/second]" );
+		computeStatisticsAndAddThemToValuesMap( extensionRateOutsideStats, "extension_rate_outside" + "[mm/second]" );
 	}
 
 		
@@ -1279,14 +1263,7 @@ public class Video {
 			if( segmentEnd <= frameList.size() - 1 ) {
 				Frame frameSegmentStart = frameList.get( segmentStart );
 				Frame frameSegmentEnd = frameList.get( segmentEnd );
-				overRepellentFlag = false;
-				for( int f = segmentStart; f <= segmentEnd; f++ ) {
-					Frame frame = frameList.get( f );
-					if( frame.onTheRepellent == true ) {
-						overRepellentFlag = true;
-						break;
-					}; // if
-				}; // for
+				overRepellentFlag = frameIndex.countOverRepellent( segmentStart, segmentEnd ) > 0;
 				// how far did the center-point move?
 				double centerpointDistance = Utilities.distance( 
 				frameSegmentStart.x[ Frame.CENTER_POINT ], frameSegmentStart.y[ Frame.CENTER_POINT ], 
@@ -1306,9 +1283,9 @@ public class Video {
 		double distance = ( distanceTraveledInside + distanceTraveledOutside ) / ( timeSeconds / 60.0 );
 		double distanceInside = distanceTraveledInside / ( timeSecondsInside / 60.0 );
 		double distanceOutside = timeSecondsOutside > 0 ? ( distanceTraveledOutside / ( timeSecondsOutside / 60.0 ) ) : 0;
-		valuesMap.put( "distance_traveled_per_minute_overall" + "[mm]", format( distance ) );
-		valuesMap.put( "distance_traveled_per_minute_inside" + "[mm]", format( distanceInside ) );
-		valuesMap.put( "distance_traveled_per_minute_outside" + "[mm]", format( distanceOutside ) );
+		metrics.set( "distance_traveled_per_minute_overall" + "[mm]", distance );
+		metrics.set( "distance_traveled_per_minute_inside" + "[mm]", distanceInside );
+		metrics.set( "distance_traveled_per_minute_outside" + "[mm]", distanceOutside );
 	}
 
 
@@ -1319,40 +1296,28 @@ public class Video {
 	 * then X is considered a direction change
 	 */
 	public void calculateDirectionChange( ) {
+		// index of positions of center point, so that pauses are not walked frame by frame
+		if( trackDistanceIndex == null ) {
+			double[] centerX = new double[ frameList.size() ];
+			double[] centerY = new double[ frameList.size() ];
+			for( int f = 0; f < frameList.size(); f++ ) {
+				centerX[ f ] = frameList.get( f ).x[ Frame.CENTER_POINT ];
+				centerY[ f ] = frameList.get( f ).y[ Frame.CENTER_POINT ];
+			}; // for
+			trackDistanceIndex = new TrackDistanceIndex( centerX, centerY );
+		}; // if
+		double distanceThreshold = config.getDistanceThresholdForDirectionChange();
 		// skip the first and last frame
 		for( int f = 1; f < frameList.size() - 1; f++ ) {
 			Frame frame = frameList.get( f );
 			// does it have a line before it that is of distance 2.25mm?
-			double centerpointDistance = 0.0;
-			int firstPointIndex = f;
-			do {
-				firstPointIndex--;
-				if( firstPointIndex < 0 ) {
-					break;
-				}; // if
-				Frame firstPointFrame = frameList.get( firstPointIndex );
-				centerpointDistance = Utilities.distance( 
-				frame.x[ Frame.CENTER_POINT ], frame.y[ Frame.CENTER_POINT ], 
-				firstPointFrame.x[ Frame.CENTER_POINT ], firstPointFrame.y[ Frame.CENTER_POINT ] );
-				//out.println( "looking at frame " + f + " to " + firstPointIndex + "  distance: " + format( centerpointDistance ) );
-			} while( centerpointDistance < DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE );
-			if( centerpointDistance < DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE ) {
+			int firstPointIndex = trackDistanceIndex.lastBefore( f, distanceThreshold );
+			if( firstPointIndex == -1 ) {
 				continue;
 			}; // if
-			// does it have a line before it that is of distance 2.25mm?
-			centerpointDistance = 0.0;
-			int thirdPointIndex = f;
-			do {
-				thirdPointIndex++;
-				if( thirdPointIndex == frameList.size() ) {
-					break;
-				}; // if
-				Frame thirdPointFrame = frameList.get( thirdPointIndex );
-				centerpointDistance = Utilities.distance( 
-				frame.x[ Frame.CENTER_POINT ], frame.y[ Frame.CENTER_POINT ], 
-				thirdPointFrame.x[ Frame.CENTER_POINT ], thirdPointFrame.y[ Frame.CENTER_POINT ] );
-			} while( centerpointDistance < DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE );
-			if( centerpointDistance < DISTANCE_THRESHOLD_FOR_DIRECTION_CHANGE ) {
+			// does it have a line after it that is of distance 2.25mm?
+			int thirdPointIndex = trackDistanceIndex.firstAfter( f, distanceThreshold );
+			if( thirdPointIndex == -1 ) {
 				continue;
 			}; // if
 			Frame firstPointFrame = frameList.get( firstPointIndex );
@@ -1393,7 +1358,7 @@ public class Video {
 				continue;
 			}; // if
 			count++;
-			if( frame.directionChangeAngle < ANGLE_THRESHOLD_FOR_DIRECTION_CHANGE ) {
+			if( frame.directionChangeAngle < config.getAngleThresholdForDirectionChange() ) {
 				continue;
 			}; // if
 			if( frame.onTheRepellent == false ) {
@@ -1405,17 +1370,17 @@ public class Video {
 		}; // for
 		if( count == 0 ) {
 			//out.println( "Never did direction change" );
-			valuesMap.put( "direction_change_overall" + "[%]", "NULL" );
-			valuesMap.put( "direction_change_inside" + "[%]", "NULL" );
-			valuesMap.put( "direction_change_outside" + "[%]", "NULL" );
+			metrics.set( "direction_change_overall" + "[%]", null );
+			metrics.set( "direction_change_inside" + "[%]", null );
+			metrics.set( "direction_change_outside" + "[%]", null );
 			return;
 		}; // if
 		double directionChange = ( inside + outside ) * 1.0 / frameList.size();
 		double directionChangeInside = inside * 1.0 / totalFramesInside;
 		double directionChangeOutside = totalFramesOverRepellent > 0 ? ( outside * 1.0 / totalFramesOverRepellent ) : 0;
-		valuesMap.put( "direction_change_overall" + "[%]", format( directionChange ) );
-		valuesMap.put( "direction_change_inside" + "[%]", format( directionChangeInside ) );
-		valuesMap.put( "direction_change_outside" + "[%]", format( directionChangeOutside ) );
+		metrics.set( "direction_change_overall" + "[%]", directionChange );
+		metrics.set( "direction_change_inside" + "[%]", directionChangeInside );
+		metrics.set( "direction_change_outside" + "[%]", directionChangeOutside );
 		// verification just in case
 		if( directionChange < 0 || directionChange > 1 ) {
 			out.println( "ERRRROR : directionChange " + directionChange );
@@ -1433,25 +1398,22 @@ public class Video {
 
 
 	/**
-	 * Finds runs: a stretch of consecutive strides (minimum 3 strides)
+	 * Finds runs: a stretch of consecutive strides (minimum 3 strides, see AnalysisConfig)
 	 */
 	public void findRuns( ) {
 		// find out the average number of frames that strides have
-		List<Integer> frameCountList = new ArrayList<Integer>();
+		// (the sum of frame counts is exact, so the mean is the same as StatUtils.mean)
+		long frameCountSum = 0;
 		for( Stride stride : strideList ) {
 			int frameCount = stride.indexSecondMinima - stride.indexFirstMinima;
 			//out.println( stride.indexFirstMinima + " .. " + stride.indexSecondMinima + "  " + frameCount );
-			frameCountList.add( frameCount );
-		}; // for
-		double[] theFrames = new double[ frameCountList.size() ];
-		for( int i = 0; i < theFrames.length; i++ ) {
-			theFrames[ i ] = frameCountList.get( i );
+			frameCountSum += frameCount;
 		}; // for
-		if( frameCountList.size() < 2 ) {
+		if( strideList.size() < 2 ) {
 			out.println( "WARNING, frameCountList.size is 2 !!!! location: " + directory );
 			return;
 		}; // if
-		int halfMean = (int) Math.round( Math.floor( StatUtils.mean( theFrames ) / 2.0 ) );
+		int halfMean = (int) Math.round( Math.floor( frameCountSum * 1.0 / strideList.size() / 2.0 ) );
 		//out.println( "halfMean: " + halfMean );
 		int runCount = 0;
 		List<Run> tmpRunList = new ArrayList<Run>();
@@ -1463,7 +1425,7 @@ public class Video {
 			if( frame.stride != null ) {
 				if( run == null ) {
 					runCount++;
-					run = new Run( runCount, halfMean );
+					run = new Run( runCount, halfMean, config.getMinimumStridesForBeingValidStride() );
 					tmpRunList.add( run );
 				}; // if
 				boolean addedFlag = run.addStride( frame.stride );
@@ -1472,7 +1434,7 @@ public class Video {
 					if( validRun == true ) {
 						// make a new run 
 						runCount++;
-						run = new Run( runCount, halfMean );
+						run = new Run( runCount, halfMean, config.getMinimumStridesForBeingValidStride() );
 						tmpRunList.add( run );
 					}
 					else {
@@ -1506,9 +1468,9 @@ public class Video {
 		// the way in which distance is calculated is exactly same as that of method computeDistanceTraveled
 		int xFrames = (int) Math.round( Math.floor( frameRate ) );
 
-		List<Double> distanceList = new ArrayList<Double>();
-		List<Double> durationList = new ArrayList<Double>();
-		List<Double> strideCountList = new ArrayList<Double>();
+		StatAccumulator distanceStats = new StatAccumulator();
+		StatAccumulator durationStats = new StatAccumulator();
+		StatAccumulator strideCountStats = new StatAccumulator();
 
 		for( Run eachRun : runList ) {
 			Stride firstStride = eachRun.strideList.get( 0 );
@@ -1537,17 +1499,17 @@ public class Video {
 				// prepare for next iteration
 				segmentStart += xFrames;
 			} while( segmentStart < lastStride.indexSecondMinima );
-			distanceList.add( distanceTraveled );
+			distanceStats.add( distanceTraveled );
 			double timeSeconds = ( lastStride.indexSecondMinima - firstStride.indexFirstMinima ) / frameRate;
-			durationList.add( timeSeconds );
-			strideCountList.add( eachRun.strideList.size() * 1.0 );
+			durationStats.add( timeSeconds );
+			strideCountStats.add( eachRun.strideList.size() * 1.0 );
 		}; // for
 		
-		computeStatisticsAndAddThemToValuesMap( distanceList, "run_distance" + "[mm]" );
-		computeStatisticsAndAddThemToValuesMap( durationList, "run_duration" + "[second]" );
-		computeStatisticsAndAddThemToValuesMap( strideCountList, "strides_per_run" );
+		computeStatisticsAndAddThemToValuesMap( distanceStats, "run_distance" + "[mm]" );
+		computeStatisticsAndAddThemToValuesMap( durationStats, "run_duration" + "[second]" );
+		computeStatisticsAndAddThemToValuesMap( strideCountStats, "strides_per_run" );
 		double timeSeconds = frameList.size() / frameRate;
-		valuesMap.put( "runs_per_minute", format( runList.size() / ( timeSeconds / 60.0 ) ) );
+		metrics.set( "runs_per_minute", runList.size() / ( timeSeconds / 60.0 ) );
 	}
 
 
@@ -1564,7 +1526,7 @@ public class Video {
 			out.println( "Got a Nan, check the code!" );
 			throw new RuntimeException( "Got a Nan, check the code!" );
 		}; // if
-		return formatter.format( value );
+		return formatter.get().format( value );
 	}
 	
 
@@ -1582,78 +1544,45 @@ public class Video {
 			out.println( "Got a Nan, check the code (format3)!" );
 			throw new RuntimeException( "Got a Nan, check the code (format3)!" );
 		}; // if
-		return formatter3.format( value );
+		return formatter3.get().format( value );
 	}
 	
 
 	/**
 	 * Computes statistics and adds them to the values map (mean, std-dev, n )
-	 * @param  valuesList  the list of values
+	 * @param  stats  the statistics of the values
 	 * @param  keyPrefix  the prefix to use as key in the values-map
 	 */
-	public void computeStatisticsAndAddThemToValuesMap( List<Double> valuesList, String keyPrefix ) {
-		double[] values = new double[ valuesList.size() ];
-		Double min = null;
-		Double max = null;
-		int index = 0;
-		for( Double each : valuesList ) {
-			values[ index ] = each;
-			min = min == null ? each : min;
-			max = max == null ? each : max;
-			min = each < min ? each : min;
-			max = each > max ? each : max;
-			index++;
-		}; // for
+	public void computeStatisticsAndAddThemToValuesMap( StatAccumulator stats, String keyPrefix ) {
 		Double mean = null;
-		if( values.length > 0 ) {
-			mean = StatUtils.mean( values );
-		}; // if
 		Double stdev = null;
-		if( mean != null ) {
-			stdev = Math.sqrt( StatUtils.variance( values, mean ) );
+		if( stats.getCount() > 0 ) {
+			mean = stats.getMean();
+			stdev = Math.sqrt( stats.getVariance() );
 		}; // if
-		valuesMap.put( keyPrefix + "_mean", format( mean ) );
-		valuesMap.put( keyPrefix + "_stdev", format( stdev ) );
-		//not adding min anymore, valuesMap.put( keyPrefix + "_min", format( min ) );
-		//not adding max anymore, valuesMap.put( keyPrefix + "_max", format( max ) );
+		metrics.set( keyPrefix + "_mean", mean );
+		metrics.set( keyPrefix + "_stdev", stdev );
+		//not adding min anymore, metrics.set( keyPrefix + "_min", stats.getMin() );
+		//not adding max anymore, metrics.set( keyPrefix + "_max", stats.getMax() );
 		int cutoff = keyPrefix.indexOf( "[" );
 		if( cutoff != -1 ) {
 			keyPrefix = keyPrefix.substring( 0, cutoff );
 		}; // if
-		valuesMap.put( keyPrefix + "_n", "" + valuesList.size() );
+		metrics.set( keyPrefix + "_n", (double) stats.getCount() );
 	}
 
 
 	/**
-	 * Computes statistics and adds them to the values map (mean, std-dev, min, max)
+	 * Computes statistics and adds them to the values map (mean, std-dev, n)
 	 * @param  values  the values
 	 * @param  keyPrefix  the prefix to use as key in the values-map
 	 */
 	public void computeStatisticsAndAddThemToValuesMap( double[] values, String keyPrefix ) {
-		Double min = null;
-		Double max = null;
+		StatAccumulator stats = new StatAccumulator();
 		for( int index = 0; index < values.length; index++ ) {
-			double each = values[ index ];
-			min = min == null ? each : min;
-			max = max == null ? each : max;
-			min = each < min ? each : min;
-			max = each > max ? each : max;
+			stats.add( values[ index ] );
 		}; // for
-		Double mean = null;
-		if( values.length > 0 ) {
-			mean = StatUtils.mean( values );
-		}; // if
-		Double stdev = null;
-		if( mean != null ) {
-			stdev = Math.sqrt( StatUtils.variance( values, mean ) );
-		}; // if
-		valuesMap.put( keyPrefix + "_mean", format( mean ) );
-		valuesMap.put( keyPrefix + "_stdev", format( stdev ) );
-		int cutoff = keyPrefix.indexOf( "[" );
-		if( cutoff != -1 ) {
-			keyPrefix = keyPrefix.substring( 0, cutoff );
-		}; // if
-		valuesMap.put( keyPrefix + "_n", "" + values.length );
+		computeStatisticsAndAddThemToValuesMap( stats, keyPrefix );
 	}
 
 
@@ -1661,12 +1590,7 @@ public class Video {
 	 * Returns the values header, separated by tabs
 	 */
 	public String getValuesHeader() {
-		String ret = null;
-		for( Entry<String,String> entry : valuesMap.entrySet() ) {
-			ret = ret == null ? "" : ret + "\t";
-			ret += entry.getKey();
-		}; // for
-		return "#" + ret;
+		return MetricsSchema.getHeader();
 	}
 
 	
@@ -1674,12 +1598,27 @@ public class Video {
 	 * Returns the values, separated by tabs
 	 */
 	public String getValues() {
-		String ret = null;
-		for( Entry<String,String> entry : valuesMap.entrySet() ) {
-			ret = ret == null ? "" : ret + "\t";
-			ret += entry.getValue();
-		}; // for
-		return ret;
+		return new MetricsWriter( null ).format( metrics );
+	}
+
+
+	/**
+	 * Sets the parameter values (e.g., obtained from the analysis cache) instead of calculating them;
+	 * the name of the larvae is kept from the directory
+	 * @param  row  the parameter values
+	 */
+	public void setMetrics( MetricsRow row ) {
+		row.setLabel( larvae );
+		metrics = row;
+	}
+
+
+	/**
+	 * Gets the parameter values (as calculated)
+	 * @return  the parameter values
+	 */
+	public MetricsRow getMetrics() {
+		return metrics;
 	}
 
 
@@ -1694,17 +1633,73 @@ public class Video {
 		minY = null;
 		maxX = null;
 		maxY = null;
-		valuesMap.clear();
+		frameIndex = null;
+		invariantMetrics = null;
+		trackDistanceIndex = null;
+		metrics = new MetricsRow();
 		frameList.clear();
 		strideList.clear();
 		runList.clear();
 	}
 
 	/**
-	 * Calculate all parameters 
+	 * Creates the windowed metrics of this video (parameters must have been calculated before)
+	 * @return  the windowed metrics, null when parameters have not been calculated
+	 */
+	public WindowedMetrics createWindowedMetrics() {
+		if( frameIndex == null ) {
+			return null;
+		}; // if
+		return new WindowedMetrics( frameList, frameIndex, frameRate );
+	}
+
+
+	/**
+	 * Sets the thresholds used in calculations
+	 * @param  config  the thresholds
+	 */
+	public void setConfig( AnalysisConfig config ) {
+		this.config = config;
+	}
+
+
+	/**
+	 * Gets the thresholds used in calculations
+	 * @return  the thresholds
+	 */
+	public AnalysisConfig getConfig() {
+		return config;
+	}
+
+
+	/**
+	 * Gets the frame rate
+	 * @return  frames per second, null when not known yet
+	 */
+	public Double getFrameRate() {
+		return frameRate;
+	}
+
+
+	/**
+	 * Calculate all parameters (with the current thresholds)
 	 * @return  null when things are OK; otherwise it returns an error message
 	 */
 	public String calculateAllParameters() {
+		String error = calculateInvariantParameters();
+		if( error != null ) {
+			return error;
+		}; // if
+		return calculateParameters( config );
+	}
+
+
+	/**
+	 * Calculates everything that does not depend on the thresholds (AnalysisConfig):
+	 * reads the data, body length, smoothing, local minima/maxima, bending angles and speed of each frame
+	 * @return  null when things are OK; otherwise it returns an error message
+	 */
+	public String calculateInvariantParameters() {
 		String error = readAbsolutePoints();
 		if( error != null ) {
 			return error;
@@ -1719,17 +1714,44 @@ public class Video {
 		localMinimaMaxima();
 		localMinimaMaximaVerifications();
 		lengthExtendedContracted( );
-		verifyPositionOnTheRepellent();
 		computeBending();
-		computeBendingPercentage( );
 		calculateSpeed( );
+		invariantMetrics = metrics.copy();
+		return null;
+	}
+
+
+	/**
+	 * Calculates the parameters that depend on the thresholds, it can be called many times 
+	 * (one per configuration) after calculateInvariantParameters
+	 * @param  config  the thresholds
+	 * @return  null when things are OK; otherwise it returns an error message
+	 */
+	public String calculateParameters( AnalysisConfig config ) {
+		if( invariantMetrics == null ) {
+			return "Programming error: calculateInvariantParameters must be called first!";
+		}; // if
+		this.config = config;
+		// forget anything calculated with previous thresholds
+		metrics = invariantMetrics.copy();
+		strideList.clear();
+		runList.clear();
+		for( Frame frame : frameList ) {
+			frame.setStride( null );
+			frame.setDirectionChangeAngle( null );
+		}; // for
+
+		verifyPositionOnTheRepellent();
+		frameIndex = new FrameIndex( frameList, config.getBendingAngleThreshold() );
+		computeBendingPercentage( );
+		calculateSpeedStatisticsAtEachPoint( );
 		findStrides( );
 		calculateContractionRate( );
 		computeDistanceTraveled( );
 		calculateDirectionChange( );
 		findRuns( );
 		double timeInside = totalFramesInside * 1.0 / frameList.size();
-		valuesMap.put( "time_not_over_repellent" + "[%]", format( timeInside ) );
+		metrics.set( "time_not_over_repellent" + "[%]", timeInside );
 		// verification just in case
 		if( timeInside < 0 || timeInside > 1 ) {
 			out.println( "ERRRROR : timeInside " + timeInside );
@@ -1740,61 +1762,125 @@ public class Video {
 
 
 	/**
+	 * Writes details.txt: for each line of frame-time text file, the timestamp, body length, stride number,
+	 * speed at each point and coordinates of each point; lines are written as they are made
+	 * (calculateAllParameters must have been called before)
+	 * @return  null when things go OK; otherwise it returns an error message
 	 */
 	public String writeDetailsTextfile() {
-		List<String> linesList = Utilities.readFile( directory + FRAMETIME_TXT );
-		if( linesList == null || linesList.size() == 0 ) {
+		File frametimeFile = new File( directory + FRAMETIME_TXT );
+		if( frametimeFile.isFile() == false ) {
 			return "Unable to read frame-time text file (" + directory + FRAMETIME_TXT + ")";
 		}; // if
 
-		List<String> outputList = new ArrayList<String>();
-		String header = "#Timestamp (seconds)\tLength\tStride(zero means not striding)";
-		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			header += "\t" + "speed_pt" + ( eachPoint + 1 );
-		}; // for
-		for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-			header += "\t" + "x_" + ( eachPoint + 1 ) + "\t" + "y_" + ( eachPoint + 1 );
-		}; // for
-		outputList.add( header );
-
-		// stuff to know in which stride we are at each frame
-		Map<Integer,Stride> frameStrideMap = new TreeMap<Integer,Stride>();
-		for( Stride stride : strideList ) {
+		// stuff to know in which stride we are at each frame (position in stride-list plus one, zero when not striding)
+		int[] frameToStride = new int[ frameList.size() ];
+		for( int s = strideList.size() - 1; s >= 0; s-- ) {
+			// going backwards so that a frame shared by two strides ends up with the first one
+			Stride stride = strideList.get( s );
 			for( int f = stride.indexFirstMinima; f <= stride.indexSecondMinima; f++ ) {
-				if( frameStrideMap.containsKey( f ) == false ) {
-					frameStrideMap.put( f, stride );
-				}; // if
+				frameToStride[ f ] = s + 1;
 			}; // for
 		}; // for
 
-		// process each line of time-frame to get together info at each frame
-		for( int i = 1; i < linesList.size(); i++ ) {
-			String line = linesList.get( i );
-			String[] parts = line.split( "\t" );
-			String ret = null;
-			if( parts.length != 2 ) {
-				ret = "Line " + ( i + 1 ) + " in " + FRAMETIME_TXT + " has an unexpected number of columns. Line: " + line;
-			}
-			else {
-				Integer frameNumber = Integer.parseInt( parts[ 0 ] );
-				Double time = Double.parseDouble( parts[ 1 ] );
-				String timestamp = format3( time );
-				Frame frame = frameList.get( frameNumber );
-				Stride stride = frameStrideMap.get( frameNumber );
-				ret = timestamp + "\t" + format3( frame.bodyLength )
-					+ "\t" + ( stride == null ? "0" : stride.strideNumber ) ; 
-				for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-					ret += "\t" + ( -999 == frame.speedAt[ eachPoint ] ? "" : format3( frame.speedAt[ eachPoint ] ) );
-				}; // for
-				for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
-					ret += "\t" + ( -999 == frame.x[ eachPoint ] ? "" : format3( frame.x[ eachPoint ] ) );
-					ret += "\t" + ( -999 == frame.y[ eachPoint ] ? "" : format3( frame.y[ eachPoint ] ) );
-				}; // for
+		FixedDecimalFormat fixedDecimalFormat = new FixedDecimalFormat( 3 );
+		StringBuilder builder = new StringBuilder( 1024 );
+		String lineSeparator = System.getProperty( "line.separator" );
+		BufferedReader bufferedReader = null;
+		Writer writer = null;
+		String ret = null;
+		try {
+			bufferedReader = new BufferedReader( new FileReader( frametimeFile ) );
+			String line = bufferedReader.readLine();
+			if( line == null ) {
+				bufferedReader.close();
+				return "Unable to read frame-time text file (" + directory + FRAMETIME_TXT + ")";
 			}; // if
-			outputList.add( ret );
-		}; // for
-		Utilities.writeFile( directory + "details.txt", outputList );
-		return null;
+			writer = new BufferedWriter( new FileWriter( directory + "details.txt" ), 1 << 16 );
+			builder.append( "#Timestamp (seconds)\tLength\tStride(zero means not striding)" );
+			for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
+				builder.append( "\tspeed_pt" ).append( eachPoint + 1 );
+			}; // for
+			for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
+				builder.append( "\tx_" ).append( eachPoint + 1 ).append( "\ty_" ).append( eachPoint + 1 );
+			}; // for
+			builder.append( lineSeparator );
+
+			// process each line of time-frame to get together info at each frame
+			int i = 0;
+			while( ( line = bufferedReader.readLine() ) != null ) {
+				i++;
+				String[] parts = line.split( "\t" );
+				if( parts.length != 2 ) {
+					builder.append( "Line " ).append( i + 1 ).append( " in " ).append( FRAMETIME_TXT )
+						.append( " has an unexpected number of columns. Line: " ).append( line );
+				}
+				else {
+					int frameNumber = Integer.parseInt( parts[ 0 ] );
+					double time = Double.parseDouble( parts[ 1 ] );
+					Frame frame = frameList.get( frameNumber );
+					appendFormat3( builder, fixedDecimalFormat, time ).append( '\t' );
+					appendFormat3( builder, fixedDecimalFormat, frame.bodyLength ).append( '\t' );
+					int strideIndex = frameToStride[ frameNumber ];
+					builder.append( strideIndex == 0 ? 0 : strideList.get( strideIndex - 1 ).strideNumber );
+					for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
+						builder.append( '\t' );
+						if( -999 != frame.speedAt[ eachPoint ] ) {
+							appendFormat3( builder, fixedDecimalFormat, frame.speedAt[ eachPoint ] );
+						}; // if
+					}; // for
+					for( int eachPoint = 0; eachPoint < Frame.MIDLINE; eachPoint++ ) {
+						builder.append( '\t' );
+						if( -999 != frame.x[ eachPoint ] ) {
+							appendFormat3( builder, fixedDecimalFormat, frame.x[ eachPoint ] );
+						}; // if
+						builder.append( '\t' );
+						if( -999 != frame.y[ eachPoint ] ) {
+							appendFormat3( builder, fixedDecimalFormat, frame.y[ eachPoint ] );
+						}; // if
+					}; // for
+				}; // if
+				builder.append( lineSeparator );
+				writer.append( builder );
+				builder.setLength( 0 );
+			}; // while
+			writer.close();
+			writer = null;
+		}
+		catch( IOException ioe ) {
+			ioe.printStackTrace();
+			ret = ioe.toString();
+		}
+		finally {
+			try {
+				if( bufferedReader != null ) {
+					bufferedReader.close();
+				}; // if
+				if( writer != null ) {
+					writer.close();
+				}; // if
+			}
+			catch( IOException ioe ) {
+				// nothing else to do
+			}; // try
+		}; // try
+		return ret;
+	}
+
+
+	/**
+	 * Appends a value formatted the same way as format3
+	 * @param  builder  the string-builder
+	 * @param  fixedDecimalFormat  formatter with 3 digits after decimal point
+	 * @param  value  the value
+	 * @return  the same string-builder
+	 */
+	private static StringBuilder appendFormat3( StringBuilder builder, FixedDecimalFormat fixedDecimalFormat, double value ) {
+		if( Double.isNaN( value ) == true ) {
+			out.println( "Got a Nan, check the code (format3)!" );
+			throw new RuntimeException( "Got a Nan, check the code (format3)!" );
+		}; // if
+		return fixedDecimalFormat.append( builder, value );
 	}
 
 
@@ -0,0 +1,198 @@
+/*
+ * Filename: WindowedMetrics.java
+ */
+
+package org.wormloco.mag;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.List;
+
+/**
+ * Metrics of a video within windows of time (e.g., each 30 seconds): speed of the center point, distance traveled,
+ * time over the repellent, time bending, time striding and strides;
+ * prefix sums are made once (after parameters are calculated) so that each window is computed without looking at its frames
+ *
+ * @author Aleman-Meza
+ */
+
+public class WindowedMetrics {
+
+	/** file-name of the windows text file (one per larvae) */
+	public static final String FILENAME = "windows.txt";
+
+	/** the header line (columns separated by tabs) */
+	public static final String HEADER = "#window\tstart[seconds]\tend[seconds]\tframes"
+		+ "\tspeed[mm/second]_mean\tspeed[mm/second]_stdev\tspeed_n"
+		+ "\tdistance_traveled[mm]\tdistance_traveled_per_minute[mm]"
+		+ "\ttime_over_repellent[%]\ttime_bending[%]\ttime_striding[%]"
+		+ "\tstrides\tstrides_per_minute";
+
+	// the frame rate
+	private final double frameRate;
+
+	// counts of frames with bending and over the repellent
+	private final FrameIndex frameIndex;
+
+	// prefix sums: value at position k is the sum among frames 0..k-1
+	private final double[] speedSum;
+	private final double[] speedSquaresSum;
+	private final int[] speedCount;
+	private final double[] pathLength;
+	private final int[] stridingCount;
+	private final int[] strideEndCount;
+
+	// formatter of values (same as Video.format)
+	private final FixedDecimalFormat fixedDecimalFormat = new FixedDecimalFormat( 5 );
+
+
+	/**
+	 * Constructor
+	 * @param  frameList  the frames (with speed, strides and flags already computed)
+	 * @param  frameIndex  counts of frames with bending and over the repellent
+	 * @param  frameRate  the frame rate
+	 */
+	public WindowedMetrics( List<Frame> frameList, FrameIndex frameIndex, double frameRate ) {
+		this.frameRate = frameRate;
+		this.frameIndex = frameIndex;
+		int n = frameList.size();
+		speedSum = new double[ n + 1 ];
+		speedSquaresSum = new double[ n + 1 ];
+		speedCount = new int[ n + 1 ];
+		pathLength = new double[ n + 1 ];
+		stridingCount = new int[ n + 1 ];
+		strideEndCount = new int[ n + 1 ];
+		Frame previous = null;
+		for( int f = 0; f < n; f++ ) {
+			Frame frame = frameList.get( f );
+			boolean validSpeed = frame.speed != -999;
+			speedSum[ f + 1 ] = speedSum[ f ] + ( validSpeed == true ? frame.speed : 0 );
+			speedSquaresSum[ f + 1 ] = speedSquaresSum[ f ] + ( validSpeed == true ? frame.speed * frame.speed : 0 );
+			speedCount[ f + 1 ] = speedCount[ f ] + ( validSpeed == true ? 1 : 0 );
+			// path length of the center point from the previous frame to this frame
+			double step = previous == null ? 0 : Utilities.distance( previous.x[ Frame.CENTER_POINT ], previous.y[ Frame.CENTER_POINT ],
+				frame.x[ Frame.CENTER_POINT ], frame.y[ Frame.CENTER_POINT ] );
+			pathLength[ f + 1 ] = pathLength[ f ] + step;
+			stridingCount[ f + 1 ] = stridingCount[ f ] + ( frame.stridingFlag == true ? 1 : 0 );
+			// the stride is assigned to the frame where it ends
+			strideEndCount[ f + 1 ] = strideEndCount[ f ] + ( frame.stride != null ? 1 : 0 );
+			previous = frame;
+		}; // for
+	}
+
+
+	/**
+	 * Gets the number of frames
+	 * @return  the number of frames
+	 */
+	public int size() {
+		return speedCount.length - 1;
+	}
+
+
+	/**
+	 * Gets the number of frames of a window of time
+	 * @param  windowSeconds  the window size in seconds
+	 * @return  the number of frames (at least one)
+	 */
+	public int getWindowFrames( double windowSeconds ) {
+		return Math.max( 1, (int) Math.round( windowSeconds * frameRate ) );
+	}
+
+
+	/**
+	 * Appends the values of a window (separated by tabs, same columns as HEADER)
+	 * @param  builder  the string-builder
+	 * @param  window  number of the window (starting at 1)
+	 * @param  first  first frame of the window (inclusive)
+	 * @param  last  last frame of the window (inclusive)
+	 * @return  the same string-builder
+	 */
+	public StringBuilder appendWindow( StringBuilder builder, int window, int first, int last ) {
+		int frames = last - first + 1;
+		double seconds = frames / frameRate;
+		builder.append( window ).append( '\t' );
+		fixedDecimalFormat.append( builder, first / frameRate ).append( '\t' );
+		fixedDecimalFormat.append( builder, ( last + 1 ) / frameRate ).append( '\t' );
+		builder.append( frames ).append( '\t' );
+
+		int n = speedCount[ last + 1 ] - speedCount[ first ];
+		if( n == 0 ) {
+			builder.append( "NULL\tNULL\t" );
+		}
+		else {
+			double sum = speedSum[ last + 1 ] - speedSum[ first ];
+			double squares = speedSquaresSum[ last + 1 ] - speedSquaresSum[ first ];
+			double mean = sum / n;
+			double variance = n == 1 ? 0 : Math.max( 0, ( squares - sum * mean ) / ( n - 1 ) );
+			fixedDecimalFormat.append( builder, mean ).append( '\t' );
+			fixedDecimalFormat.append( builder, Math.sqrt( variance ) ).append( '\t' );
+		}; // if
+		builder.append( n ).append( '\t' );
+
+		// path within the window (from its first frame to its last frame)
+		double distance = pathLength[ last + 1 ] - pathLength[ first + 1 ];
+		fixedDecimalFormat.append( builder, distance ).append( '\t' );
+		fixedDecimalFormat.append( builder, distance / ( seconds / 60.0 ) ).append( '\t' );
+		fixedDecimalFormat.append( builder, frameIndex.countOverRepellent( first, last ) * 1.0 / frames ).append( '\t' );
+		fixedDecimalFormat.append( builder, frameIndex.countBending( first, last ) * 1.0 / frames ).append( '\t' );
+		fixedDecimalFormat.append( builder, ( stridingCount[ last + 1 ] - stridingCount[ first ] ) * 1.0 / frames ).append( '\t' );
+		int strides = strideEndCount[ last + 1 ] - strideEndCount[ first ];
+		builder.append( strides ).append( '\t' );
+		fixedDecimalFormat.append( builder, strides / ( seconds / 60.0 ) );
+		return builder;
+	}
+
+
+	/**
+	 * Makes the lines of all windows of a given size (the last window can be shorter)
+	 * @param  windowSeconds  the window size in seconds
+	 * @param  prefix  text written at the start of each line (e.g., name of larvae followed by tab), can be null
+	 * @param  linesList  where the lines are added (without header)
+	 */
+	public void addWindows( double windowSeconds, String prefix, List<String> linesList ) {
+		int windowFrames = getWindowFrames( windowSeconds );
+		StringBuilder builder = new StringBuilder( 256 );
+		int window = 0;
+		for( int first = 0; first < size(); first += windowFrames ) {
+			window++;
+			builder.setLength( 0 );
+			if( prefix != null ) {
+				builder.append( prefix );
+			}; // if
+			appendWindow( builder, window, first, Math.min( size(), first + windowFrames ) - 1 );
+			linesList.add( builder.toString() );
+		}; // for
+	}
+
+
+	/**
+	 * Writes the windows text file
+	 * @param  file  the file
+	 * @param  linesList  lines of the windows (as made by addWindows, without prefix)
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public static String write( File file, List<String> linesList ) {
+		try {
+			PrintWriter printWriter = new PrintWriter( new BufferedWriter( new FileWriter( file ) ) );
+			printWriter.println( HEADER );
+			for( String line : linesList ) {
+				printWriter.println( line );
+			}; // for
+			printWriter.close();
+			if( printWriter.checkError() == true ) {
+				return "Error writing " + file.getAbsolutePath();
+			}; // if
+		}
+		catch( IOException ioe ) {
+			return "Unable to write " + file.getAbsolutePath() + " : " + ioe;
+		}; // try
+		return null;
+	}
+
+} // class WindowedMetrics
+
@@ -0,0 +1,306 @@
+/*
+ * BatchStitcher.java
+ *
+ */
+
+package org.wormloco.mag;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import java.text.DecimalFormat;
+import java.text.NumberFormat;
+
+/**
+ * Re-runs the data-stitcher on every folder (of a directory tree) already processed by MagRecognizer,
+ * e.g., after changes in stage calibration or in the swap heuristics;
+ * folders are processed in parallel (work-stealing pool) and abs_points files are replaced atomically;
+ * the reports of all folders are aggregated into a CSV file
+ *
+ * @author Aleman-Meza
+ */
+
+public class BatchStitcher {
+
+	/** file-name of the aggregated reports (CSV) */
+	public static final String REPORTS_FILENAME = "stitch_reports.csv";
+
+	// convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// files needed in a folder for it to be re-stitched
+	private static final String[] WANTED = new String[] { Snappy.POINTS_FILENAME, Snappy.FRAME_TIME_FILENAME,
+		DataStitcher.STAGE_INFO_XML_FILE, DataStitcher.LOG_CSV_FILENAME };
+
+	// folders to be stitched
+	private final List<File> foldersList;
+
+	// error of each folder (null when things went OK)
+	private final String[] errors;
+
+	// number of frames of each folder
+	private final int[] frames;
+
+	// milliseconds spent in each folder
+	private final long[] milliseconds;
+
+	// report of each folder
+	private final StitchReport[] reports;
+
+	// elapsed time of the whole run
+	private long totalMilliseconds = 0;
+
+
+	/**
+	 * Constructor
+	 * @param  foldersList  the folders to be stitched
+	 */
+	public BatchStitcher( List<File> foldersList ) {
+		this.foldersList = foldersList;
+		errors = new String[ foldersList.size() ];
+		frames = new int[ foldersList.size() ];
+		milliseconds = new long[ foldersList.size() ];
+		reports = new StitchReport[ foldersList.size() ];
+	}
+
+
+	/**
+	 * Runs the batch stitcher
+	 * @param  args  the first parameter must be a folder name; optionally: --threads N
+	 */
+	public static void main( String[] args ) {
+		if( args.length != 1 && ( args.length != 3 || "--threads".equalsIgnoreCase( args[ 1 ] ) == false ) ) {
+			errorMsg();
+			System.exit( 1 );
+		}; // if
+		int threads = Runtime.getRuntime().availableProcessors();
+		if( args.length == 3 ) {
+			try {
+				threads = Integer.parseInt( args[ 2 ] );
+			}
+			catch( NumberFormatException nfe ) {
+				errorMsg();
+				System.exit( 1 );
+			}; // try
+			if( threads < 1 ) {
+				errorMsg();
+				System.exit( 1 );
+			}; // if
+		}; // if
+		File directory = new File( args[ 0 ] );
+		if( directory.isDirectory() == false ) {
+			out.println( "Error, directory does not exist! " + args[ 0 ] );
+			errorMsg();
+			System.exit( 1 );
+		}; // if
+
+		List<File> foldersList = new ArrayList<File>();
+		findSubfoldersWithData( directory, foldersList );
+		out.println( "Found " + foldersList.size() + " folders to be stitched (" + threads + " threads)." );
+		if( foldersList.isEmpty() == true ) {
+			return;
+		}; // if
+		BatchStitcher batchStitcher = new BatchStitcher( foldersList );
+		batchStitcher.run( threads );
+		batchStitcher.printSummary( System.out );
+		String error = batchStitcher.writeReports( new File( directory, REPORTS_FILENAME ) );
+		if( error != null ) {
+			out.println( error );
+		}; // if
+	}
+
+
+	/**
+	 * Displays error message that indicates usage of the command-line parameters
+	 */
+	public static void errorMsg() {
+		out.println( "Usage: java BatchStitcher foldername [--threads N]" );
+		out.println( "\nfoldername:\nthe folder containing (in any of its sub-folders) the 'worm_' folders made by MagRecognizer." );
+		out.println( "--threads is optional, it indicates how many folders are stitched at the same time" );
+		out.println( "          (default is the number of processors)" );
+	}
+
+
+	/**
+	 * Recursively finds folders containing the files needed by the data-stitcher, skips 'bad' folders
+	 * @param  file  the folder to start with (normally a directory)
+	 * @param  foldersList  the list into which to put results
+	 */
+	public static void findSubfoldersWithData( File file, List<File> foldersList ) {
+		if( file == null || file.isDirectory() == false ) {
+			return;
+		}; // if
+		// skip 'bad' folders
+		if( file.getName().startsWith( "bad" ) == true ) {
+			return;
+		}; // if
+		File[] directoryContents = file.listFiles();
+		if( directoryContents == null ) {
+			return;
+		}; // if
+		int hits = 0;
+		for( String filename : WANTED ) {
+			if( new File( file, filename ).isFile() == true ) {
+				hits++;
+			}; // if
+		}; // for
+		if( hits == WANTED.length ) {
+			foldersList.add( file );
+		}; // if
+		// now do the recursive call
+		for( File each : directoryContents ) {
+			if( each.isDirectory() == true ) {
+				findSubfoldersWithData( each, foldersList );
+			}; // if
+		}; // for
+	}
+
+
+	/**
+	 * Stitches all the folders
+	 * @param  threads  the number of threads to use
+	 */
+	public void run( int threads ) {
+		ForkJoinPool forkJoinPool = new ForkJoinPool( threads );
+		long start = System.currentTimeMillis();
+		forkJoinPool.invoke( new StitchTask( 0, foldersList.size() ) );
+		forkJoinPool.shutdown();
+		totalMilliseconds = System.currentTimeMillis() - start;
+	}
+
+
+	/**
+	 * Stitches a single folder, any exception becomes an error of the folder
+	 * @param  index  the index of the folder
+	 */
+	protected void stitch( int index ) {
+		long start = System.currentTimeMillis();
+		DataStitcher dataStitcher = new DataStitcher( foldersList.get( index ).getAbsolutePath() );
+		try {
+			errors[ index ] = dataStitcher.run();
+		}
+		catch( Exception e ) {
+			e.printStackTrace();
+			errors[ index ] = "(batchstitcher) " + e;
+		}; // try
+		if( dataStitcher.points != null ) {
+			frames[ index ] = dataStitcher.points.length;
+		}; // if
+		reports[ index ] = dataStitcher.getReport();
+		milliseconds[ index ] = System.currentTimeMillis() - start;
+		out.println( "\t" + ( errors[ index ] == null ? "done: " : "failed: " ) + foldersList.get( index ).getAbsolutePath() );
+	}
+
+
+	/**
+	 * Prints a summary of throughput and errors
+	 * @param  printStream  where to print the summary
+	 */
+	public void printSummary( PrintStream printStream ) {
+		NumberFormat formatter = new DecimalFormat( "#0.0" );
+		int failed = 0;
+		long totalFrames = 0;
+		long sumMilliseconds = 0;
+		for( int i = 0; i < errors.length; i++ ) {
+			if( errors[ i ] != null ) {
+				failed++;
+				continue;
+			}; // if
+			totalFrames += frames[ i ];
+			sumMilliseconds += milliseconds[ i ];
+		}; // for
+		double seconds = Math.max( totalMilliseconds, 1 ) / 1000.0;
+		printStream.println();
+		printStream.println( "==================== summary" );
+		printStream.println( "folders stitched: " + ( errors.length - failed ) + " of " + errors.length + " (" + failed + " failed)" );
+		printStream.println( "frames stitched : " + totalFrames );
+		printStream.println( "elapsed time    : " + formatter.format( seconds ) + " seconds (" + formatter.format( sumMilliseconds / 1000.0 ) + " seconds of stitching of successful folders)" );
+		printStream.println( "throughput      : " + formatter.format( ( errors.length - failed ) / seconds ) + " folders/second, "
+			+ formatter.format( totalFrames / seconds ) + " frames/second" );
+		if( failed > 0 ) {
+			printStream.println( "========== errors: " );
+			for( int i = 0; i < errors.length; i++ ) {
+				if( errors[ i ] != null ) {
+					printStream.println( foldersList.get( i ).getAbsolutePath() + " \t " + errors[ i ] );
+				}; // if
+			}; // for
+		}; // if
+		printStream.println( "==================== " );
+	}
+
+
+	/**
+	 * Writes the reports of all folders (one line per folder) into a CSV file
+	 * @param  file  the CSV file
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String writeReports( File file ) {
+		File temporaryFile = new File( file.getPath() + DataStitcher.TEMPORARY_SUFFIX );
+		try {
+			PrintWriter printWriter = new PrintWriter( new BufferedWriter( new FileWriter( temporaryFile ) ) );
+			printWriter.println( StitchReport.getCsvHeader() );
+			for( int i = 0; i < reports.length; i++ ) {
+				if( reports[ i ] != null ) {
+					printWriter.println( reports[ i ].toCsvLine( foldersList.get( i ).getAbsolutePath() ) );
+				}; // if
+			}; // for
+			printWriter.close();
+			if( printWriter.checkError() == true ) {
+				temporaryFile.delete();
+				return "(batchstitcher) Error writing " + temporaryFile.getAbsolutePath();
+			}; // if
+		}
+		catch( Exception e ) {
+			temporaryFile.delete();
+			return "(batchstitcher) Unable to write reports: " + e;
+		}; // try
+		return DataStitcher.moveIntoPlace( temporaryFile, file );
+	}
+
+
+	/**
+	 * Fork-join task over a range of folders, splits the range in halves until a single folder is left
+	 */
+	private class StitchTask extends RecursiveAction {
+
+		// serializable class
+		private static final long serialVersionUID = 1L;
+
+		// first index (inclusive)
+		private final int from;
+
+		// last index (exclusive)
+		private final int to;
+
+		/**
+		 * Constructor
+		 * @param  from  first index (inclusive)
+		 * @param  to  last index (exclusive)
+		 */
+		StitchTask( int from, int to ) {
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if( to - from == 1 ) {
+				stitch( from );
+				return;
+			}; // if
+			int middle = ( from + to ) / 2;
+			invokeAll( new StitchTask( from, middle ), new StitchTask( middle, to ) );
+		}
+	} // class StitchTask
+
+} // class BatchStitcher
+
@@ -0,0 +1,581 @@
+/*
+ * ContactSheet.java
+ *
+ */
+
+package org.wormloco.mag;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+
+import java.awt.image.BufferedImage;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Contact sheet of a larva: downscaled overlay frames (every TILE_INTERVAL frames) packed as tiles into a single image,
+ * so that the quality of recognition can be reviewed without opening one file per frame.
+ * Snappy adds the tiles while it recognizes a video (no overlay files are needed); for folders recognized earlier,
+ * the sheet is made from their 'file.NNNoverlay.jpg' files. Run as a program, it makes the sheets missing in a
+ * directory tree (in parallel) and an index of all sheets (HTML and PNG)
+ *
+ * @author Aleman-Meza
+ */
+
+public class ContactSheet {
+
+	/** file-name of the contact sheet of a larva */
+	public static final String SHEET_FILENAME = "contact_sheet.jpg";
+
+	/** file-name of the thumbnail of a larva (used by the index) */
+	public static final String THUMBNAIL_FILENAME = "contact_thumbnail.png";
+
+	/** file-name of the index (HTML) */
+	public static final String INDEX_HTML_FILENAME = "contact_sheets.html";
+
+	/** file-name of the index (PNG) */
+	public static final String INDEX_PNG_FILENAME = "contact_sheets.png";
+
+	/** Snappy makes a tile every this many frames */
+	public static final int TILE_INTERVAL = 100;
+
+	/** width of a tile (pixels) */
+	public static final int TILE_WIDTH = 160;
+
+	/** tiles per row of a contact sheet, and thumbnails per row of the index */
+	public static final int COLUMNS = 10;
+
+	/** maximum number of tiles of a sheet (longer videos keep every n-th tile) */
+	public static final int MAX_TILES = 300;
+
+	// convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// prefix and suffix of the overlay files written by Snappy
+	private static final String OVERLAY_PREFIX = "file.";
+	private static final String OVERLAY_SUFFIX = "overlay.jpg";
+
+	// font of the labels
+	private static final Font FONT = new Font( "SansSerif", Font.PLAIN, 10 );
+
+	// height of the caption of a thumbnail in the index
+	private static final int CAPTION_HEIGHT = 14;
+
+	// the tiles by frame number (tiles can be added by background threads, in any order)
+	private final Map<Integer,BufferedImage> tilesMap = new TreeMap<Integer,BufferedImage>();
+
+	// frames whose tile has no spine
+	private int noSpineCount = 0;
+
+	// number of frames between tiles
+	private final int interval;
+
+
+	/**
+	 * Constructor
+	 * @param  interval  number of frames between tiles
+	 */
+	public ContactSheet( int interval ) {
+		this.interval = interval;
+	}
+
+
+	/**
+	 * Adds the tile of a frame already showing its overlay (e.g., an overlay file)
+	 * @param  image  the image of the frame (it is not modified)
+	 * @param  frameNumber  the frame number
+	 */
+	public void addTile( BufferedImage image, int frameNumber ) {
+		BufferedImage tile = downscale( image );
+		Graphics2D graphics = tile.createGraphics();
+		drawLabel( graphics, "" + frameNumber, Color.YELLOW );
+		graphics.dispose();
+		synchronized( tilesMap ) {
+			tilesMap.put( frameNumber, tile );
+		}; // synchronized
+	}
+
+
+	/**
+	 * Adds the tile of a frame and draws its spine (frames without spine are marked)
+	 * @param  image  the image of the frame (it is not modified)
+	 * @param  spine  the spine (as in MagImageProcessor), null when there is none
+	 * @param  frameNumber  the frame number
+	 */
+	public void addTile( BufferedImage image, int[][] spine, int frameNumber ) {
+		BufferedImage tile = downscale( image );
+		double scale = tile.getWidth() * 1.0 / image.getWidth();
+		Graphics2D graphics = tile.createGraphics();
+		graphics.setRenderingHint( RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON );
+		if( spine == null ) {
+			drawLabel( graphics, frameNumber + " no spine", Color.ORANGE );
+		}
+		else {
+			graphics.setColor( Color.RED );
+			graphics.setStroke( new BasicStroke( 1.5f ) );
+			for( int i = 0; i < spine[ 0 ].length; i++ ) {
+				int x = (int) Math.round( spine[ 0 ][ i ] * scale );
+				int y = (int) Math.round( spine[ 1 ][ i ] * scale );
+				if( i == 0 ) {
+					graphics.fillOval( x - 2, y - 2, 5, 5 );
+				}
+				else {
+					graphics.drawLine( (int) Math.round( spine[ 0 ][ i - 1 ] * scale ), (int) Math.round( spine[ 1 ][ i - 1 ] * scale ), x, y );
+				}; // if
+			}; // for
+			drawLabel( graphics, "" + frameNumber, Color.YELLOW );
+		}; // if
+		graphics.dispose();
+		synchronized( tilesMap ) {
+			tilesMap.put( frameNumber, tile );
+			if( spine == null ) {
+				noSpineCount++;
+			}; // if
+		}; // synchronized
+	}
+
+
+	/**
+	 * Gets the number of tiles
+	 * @return  the number of tiles
+	 */
+	public int size() {
+		synchronized( tilesMap ) {
+			return tilesMap.size();
+		}
+	}
+
+
+	/**
+	 * Writes the contact sheet and the thumbnail into the folder of the larva
+	 * @param  directory  the folder of the larva
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String write( File directory ) {
+		List<BufferedImage> tilesList = null;
+		synchronized( tilesMap ) {
+			tilesList = new ArrayList<BufferedImage>( tilesMap.values() );
+		}; // synchronized
+		if( tilesList.isEmpty() == true ) {
+			return "(contactsheet) No tiles for " + directory.getAbsolutePath();
+		}; // if
+		// longer videos keep every n-th tile
+		int step = ( tilesList.size() + MAX_TILES - 1 ) / MAX_TILES;
+		List<BufferedImage> keptList = new ArrayList<BufferedImage>();
+		for( int i = 0; i < tilesList.size(); i += step ) {
+			keptList.add( tilesList.get( i ) );
+		}; // for
+		String caption = directory.getName() + "   (" + tilesList.size() + " tiles, every " + interval * step + " frames"
+			+ ( noSpineCount > 0 ? ", " + noSpineCount + " without spine" : "" ) + ")";
+		BufferedImage sheet = pack( keptList, null, caption );
+		String error = writeImage( sheet, "jpg", new File( directory, SHEET_FILENAME ) );
+		if( error != null ) {
+			return error;
+		}; // if
+		return writeImage( tilesList.get( tilesList.size() / 2 ), "png", new File( directory, THUMBNAIL_FILENAME ) );
+	}
+
+
+	/**
+	 * Makes the contact sheet of a folder recognized earlier, from its overlay files
+	 * @param  directory  the folder of the larva
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public static String makeFromOverlays( File directory ) {
+		File[] files = directory.listFiles();
+		if( files == null ) {
+			return "(contactsheet) Unable to list " + directory.getAbsolutePath();
+		}; // if
+		// overlay files sorted by frame number
+		Map<Integer,File> overlaysMap = new TreeMap<Integer,File>();
+		for( File each : files ) {
+			String name = each.getName();
+			if( name.startsWith( OVERLAY_PREFIX ) == false || name.endsWith( OVERLAY_SUFFIX ) == false ) {
+				continue;
+			}; // if
+			try {
+				overlaysMap.put( Integer.parseInt( name.substring( OVERLAY_PREFIX.length(), name.length() - OVERLAY_SUFFIX.length() ) ), each );
+			}
+			catch( NumberFormatException nfe ) {
+				// not an overlay file
+			}; // try
+		}; // for
+		if( overlaysMap.isEmpty() == true ) {
+			// a sheet made by Snappy without writing overlay files is kept, unless it is older than the points file
+			if( new File( directory, SHEET_FILENAME ).isFile() == true ) {
+				if( isUpToDate( directory ) == true ) {
+					return null;
+				}; // if
+				return "(contactsheet) Sheet is older than " + Snappy.POINTS_FILENAME + " and there are no overlay files to make it again in "
+					+ directory.getAbsolutePath();
+			}; // if
+			return "(contactsheet) No overlay files in " + directory.getAbsolutePath();
+		}; // if
+		// overlay files may have been written at another interval
+		int interval = TILE_INTERVAL;
+		if( overlaysMap.size() > 1 ) {
+			Integer[] frames = overlaysMap.keySet().toArray( new Integer[ 0 ] );
+			interval = frames[ 1 ] - frames[ 0 ];
+		}; // if
+		ContactSheet contactSheet = new ContactSheet( interval );
+		for( Map.Entry<Integer,File> entry : overlaysMap.entrySet() ) {
+			try {
+				BufferedImage image = ImageIO.read( entry.getValue() );
+				if( image != null ) {
+					contactSheet.addTile( image, entry.getKey() );
+				}; // if
+			}
+			catch( Exception e ) {
+				out.println( "\t(contactsheet) Unable to read " + entry.getValue().getAbsolutePath() + " : " + e );
+			}; // try
+		}; // for
+		return contactSheet.write( directory );
+	}
+
+
+	/**
+	 * Tells whether the contact sheet of a folder exists and is not older than its points file
+	 * @param  directory  the folder of the larva
+	 * @return  true when the sheet is up to date
+	 */
+	public static boolean isUpToDate( File directory ) {
+		File sheetFile = new File( directory, SHEET_FILENAME );
+		File pointsFile = new File( directory, Snappy.POINTS_FILENAME );
+		return sheetFile.isFile() == true && new File( directory, THUMBNAIL_FILENAME ).isFile() == true
+			&& sheetFile.lastModified() >= pointsFile.lastModified();
+	}
+
+
+	/**
+	 * Makes the contact sheets missing in a directory tree, and the index of all sheets
+	 * @param  args  the first parameter must be a folder name; optionally: --threads N, --again
+	 */
+	public static void main( String[] args ) {
+		if( args.length == 0 ) {
+			errorMsg();
+			System.exit( 1 );
+		}; // if
+		int threads = Runtime.getRuntime().availableProcessors();
+		boolean againFlag = false;
+		for( int i = 1; i < args.length; i++ ) {
+			if( "--again".equalsIgnoreCase( args[ i ] ) == true ) {
+				againFlag = true;
+			}
+			else if( "--threads".equalsIgnoreCase( args[ i ] ) == true && i + 1 < args.length ) {
+				try {
+					threads = Integer.parseInt( args[ ++i ] );
+				}
+				catch( NumberFormatException nfe ) {
+					threads = 0;
+				}; // try
+				if( threads < 1 ) {
+					errorMsg();
+					System.exit( 1 );
+				}; // if
+			}
+			else {
+				errorMsg();
+				System.exit( 1 );
+			}; // if
+		}; // for
+		File directory = new File( args[ 0 ] );
+		if( directory.isDirectory() == false ) {
+			out.println( "Error, directory does not exist! " + args[ 0 ] );
+			errorMsg();
+			System.exit( 1 );
+		}; // if
+
+		List<File> foldersList = new ArrayList<File>();
+		findRecognizedFolders( directory, foldersList );
+		Collections.sort( foldersList );
+		final List<File> newFoldersList = new ArrayList<File>();
+		for( File each : foldersList ) {
+			if( againFlag == true || isUpToDate( each ) == false ) {
+				newFoldersList.add( each );
+			}; // if
+		}; // for
+		out.println( "Found " + foldersList.size() + " recognized folders, " + newFoldersList.size() + " need a contact sheet (" + threads + " threads)." );
+		long start = System.currentTimeMillis();
+		final String[] errors = new String[ newFoldersList.size() ];
+		if( newFoldersList.isEmpty() == false ) {
+			ForkJoinPool forkJoinPool = new ForkJoinPool( threads );
+			forkJoinPool.invoke( new SheetTask( newFoldersList, errors, 0, newFoldersList.size() ) );
+			forkJoinPool.shutdown();
+		}; // if
+		int failed = 0;
+		for( int i = 0; i < errors.length; i++ ) {
+			if( errors[ i ] != null ) {
+				out.println( "failed: " + newFoldersList.get( i ).getAbsolutePath() + " \t " + errors[ i ] );
+				failed++;
+			}; // if
+		}; // for
+		out.println( "Contact sheets made: " + ( errors.length - failed ) + " of " + errors.length + " in "
+			+ DataStitcher.formatter1.get().format( ( System.currentTimeMillis() - start ) / 1000.0 ) + " seconds." );
+		String error = writeIndex( directory, foldersList );
+		if( error != null ) {
+			out.println( error );
+		}; // if
+	}
+
+
+	/**
+	 * Displays error message that indicates usage of the command-line parameters
+	 */
+	public static void errorMsg() {
+		out.println( "Usage: java ContactSheet foldername [--threads N] [--again]" );
+		out.println( "\nfoldername:\nthe folder containing (in any of its sub-folders) the 'worm_' folders made by MagRecognizer." );
+		out.println( "--threads is optional, it indicates how many folders are done at the same time" );
+		out.println( "          (default is the number of processors)" );
+		out.println( "--again is optional, it indicates that contact sheets already made are made again" );
+		out.println( "\nThe index of all contact sheets is written into the folder: " + INDEX_HTML_FILENAME + " and " + INDEX_PNG_FILENAME );
+	}
+
+
+	/**
+	 * Recursively finds folders recognized by MagRecognizer (they have a points file), skips 'bad' folders
+	 * @param  file  the folder to start with (normally a directory)
+	 * @param  foldersList  the list into which to put results
+	 */
+	public static void findRecognizedFolders( File file, List<File> foldersList ) {
+		if( file == null || file.isDirectory() == false ) {
+			return;
+		}; // if
+		// skip 'bad' folders
+		if( file.getName().startsWith( "bad" ) == true ) {
+			return;
+		}; // if
+		File[] directoryContents = file.listFiles();
+		if( directoryContents == null ) {
+			return;
+		}; // if
+		if( new File( file, Snappy.POINTS_FILENAME ).isFile() == true ) {
+			foldersList.add( file );
+		}; // if
+		// now do the recursive call
+		for( File each : directoryContents ) {
+			if( each.isDirectory() == true ) {
+				findRecognizedFolders( each, foldersList );
+			}; // if
+		}; // for
+	}
+
+
+	/**
+	 * Writes the index of the contact sheets of a directory tree: an HTML page (thumbnails linked to the sheets)
+	 * and a PNG image with the thumbnails of all larvae
+	 * @param  directory  the top folder (the index is written there)
+	 * @param  foldersList  the folders of the larvae
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public static String writeIndex( File directory, List<File> foldersList ) {
+		String topPath = directory.getAbsoluteFile().toURI().getPath();
+		List<BufferedImage> thumbnailsList = new ArrayList<BufferedImage>();
+		List<String> captionsList = new ArrayList<String>();
+		File temporaryFile = new File( directory, INDEX_HTML_FILENAME + DataStitcher.TEMPORARY_SUFFIX );
+		try {
+			PrintWriter printWriter = new PrintWriter( new BufferedWriter( new FileWriter( temporaryFile ) ) );
+			printWriter.println( "<html><head><title>Contact sheets of " + escape( directory.getName() ) + "</title></head><body>" );
+			printWriter.println( "<h3>Contact sheets of " + escape( directory.getAbsolutePath() ) + "</h3>" );
+			int shown = 0;
+			for( File each : foldersList ) {
+				File thumbnailFile = new File( each, THUMBNAIL_FILENAME );
+				if( thumbnailFile.isFile() == false ) {
+					continue;
+				}; // if
+				String path = each.getAbsoluteFile().toURI().getPath();
+				String relative = path.startsWith( topPath ) == true ? path.substring( topPath.length() ) : path;
+				printWriter.println( "<div style=\"display:inline-block; margin:4px; text-align:center; font-size:small\">"
+					+ "<a href=\"" + escape( relative + SHEET_FILENAME ) + "\"><img src=\"" + escape( relative + THUMBNAIL_FILENAME ) + "\" width=\"" + TILE_WIDTH + "\"></a>"
+					+ "<br>" + escape( relative ) + "</div>" );
+				shown++;
+				BufferedImage thumbnail = ImageIO.read( thumbnailFile );
+				if( thumbnail != null ) {
+					thumbnailsList.add( thumbnail );
+					File parent = each.getAbsoluteFile().getParentFile();
+					captionsList.add( ( parent == null ? "" : parent.getName() + File.separator ) + each.getName() );
+				}; // if
+			}; // for
+			printWriter.println( "<p>" + shown + " of " + foldersList.size() + " recognized folders have a contact sheet.</p>" );
+			printWriter.println( "</body></html>" );
+			printWriter.close();
+			if( printWriter.checkError() == true ) {
+				temporaryFile.delete();
+				return "(contactsheet) Error writing " + temporaryFile.getAbsolutePath();
+			}; // if
+		}
+		catch( Exception e ) {
+			temporaryFile.delete();
+			return "(contactsheet) Unable to write the index: " + e;
+		}; // try
+		String error = DataStitcher.moveIntoPlace( temporaryFile, new File( directory, INDEX_HTML_FILENAME ) );
+		if( error != null || thumbnailsList.isEmpty() == true ) {
+			return error;
+		}; // if
+		BufferedImage index = pack( thumbnailsList, captionsList, directory.getName() + "   (" + thumbnailsList.size() + " larvae)" );
+		return writeImage( index, "png", new File( directory, INDEX_PNG_FILENAME ) );
+	}
+
+
+	/**
+	 * Packs images (of the same size as the first one) into rows of COLUMNS images, with a caption on top
+	 * @param  imagesList  the images
+	 * @param  captionsList  caption under each image, null when none
+	 * @param  caption  the caption on top
+	 * @return  the packed image
+	 */
+	private static BufferedImage pack( List<BufferedImage> imagesList, List<String> captionsList, String caption ) {
+		int tileWidth = imagesList.get( 0 ).getWidth();
+		int tileHeight = imagesList.get( 0 ).getHeight() + ( captionsList == null ? 0 : CAPTION_HEIGHT );
+		int columns = Math.min( COLUMNS, imagesList.size() );
+		int rows = ( imagesList.size() + columns - 1 ) / columns;
+		BufferedImage packed = new BufferedImage( Math.max( columns * tileWidth, TILE_WIDTH * 2 ), CAPTION_HEIGHT + rows * tileHeight, BufferedImage.TYPE_INT_RGB );
+		Graphics2D graphics = packed.createGraphics();
+		graphics.setColor( Color.DARK_GRAY );
+		graphics.fillRect( 0, 0, packed.getWidth(), packed.getHeight() );
+		graphics.setFont( FONT );
+		graphics.setColor( Color.WHITE );
+		graphics.drawString( caption, 3, CAPTION_HEIGHT - 3 );
+		for( int i = 0; i < imagesList.size(); i++ ) {
+			int x = ( i % columns ) * tileWidth;
+			int y = CAPTION_HEIGHT + ( i / columns ) * tileHeight;
+			graphics.drawImage( imagesList.get( i ), x, y, tileWidth, imagesList.get( 0 ).getHeight(), null );
+			if( captionsList != null ) {
+				graphics.setColor( Color.WHITE );
+				graphics.drawString( captionsList.get( i ), x + 3, y + tileHeight - 3 );
+			}; // if
+		}; // for
+		graphics.dispose();
+		return packed;
+	}
+
+
+	/**
+	 * Downscales an image to the width of a tile
+	 * @param  image  the image
+	 * @return  the tile
+	 */
+	private static BufferedImage downscale( BufferedImage image ) {
+		int height = Math.max( 1, (int) Math.round( image.getHeight() * TILE_WIDTH * 1.0 / image.getWidth() ) );
+		BufferedImage tile = new BufferedImage( TILE_WIDTH, height, BufferedImage.TYPE_INT_RGB );
+		Graphics2D graphics = tile.createGraphics();
+		graphics.setRenderingHint( RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR );
+		graphics.drawImage( image, 0, 0, TILE_WIDTH, height, null );
+		graphics.dispose();
+		return tile;
+	}
+
+
+	/**
+	 * Draws a label on the top-left corner of a tile
+	 * @param  graphics  graphics of the tile
+	 * @param  label  the label
+	 * @param  color  color of the label
+	 */
+	private static void drawLabel( Graphics2D graphics, String label, Color color ) {
+		graphics.setFont( FONT );
+		graphics.setColor( Color.BLACK );
+		graphics.drawString( label, 4, 12 );
+		graphics.setColor( color );
+		graphics.drawString( label, 3, 11 );
+	}
+
+
+	/**
+	 * Writes an image (into a temporary file that is then moved into place)
+	 * @param  image  the image
+	 * @param  format  the format, e.g., jpg
+	 * @param  file  the file
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	private static String writeImage( BufferedImage image, String format, File file ) {
+		File temporaryFile = new File( file.getPath() + DataStitcher.TEMPORARY_SUFFIX );
+		try {
+			if( ImageIO.write( image, format, temporaryFile ) == false ) {
+				temporaryFile.delete();
+				return "(contactsheet) No writer for format " + format;
+			}; // if
+		}
+		catch( Exception e ) {
+			temporaryFile.delete();
+			return "(contactsheet) Unable to write " + file.getAbsolutePath() + " : " + e;
+		}; // try
+		return DataStitcher.moveIntoPlace( temporaryFile, file );
+	}
+
+
+	/**
+	 * Escapes text for HTML
+	 * @param  text  the text
+	 * @return  the escaped text
+	 */
+	private static String escape( String text ) {
+		return text.replace( "&", "&amp;" ).replace( "<", "&lt;" ).replace( ">", "&gt;" ).replace( "\"", "&quot;" );
+	}
+
+
+	/**
+	 * Fork-join task over a range of folders, splits the range in halves until a single folder is left
+	 */
+	private static class SheetTask extends RecursiveAction {
+
+		// serializable class
+		private static final long serialVersionUID = 1L;
+
+		// the folders
+		private final List<File> foldersList;
+
+		// error of each folder (null when things went OK)
+		private final String[] errors;
+
+		// first index (inclusive)
+		private final int from;
+
+		// last index (exclusive)
+		private final int to;
+
+		/**
+		 * Constructor
+		 * @param  foldersList  the folders
+		 * @param  errors  error of each folder
+		 * @param  from  first index (inclusive)
+		 * @param  to  last index (exclusive)
+		 */
+		SheetTask( List<File> foldersList, String[] errors, int from, int to ) {
+			this.foldersList = foldersList;
+			this.errors = errors;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if( to - from == 1 ) {
+				errors[ from ] = makeFromOverlays( foldersList.get( from ) );
+				out.println( "\t" + ( errors[ from ] == null ? "done: " : "failed: " ) + foldersList.get( from ).getAbsolutePath() );
+				return;
+			}; // if
+			int middle = ( from + to ) / 2;
+			invokeAll( new SheetTask( foldersList, errors, from, middle ), new SheetTask( foldersList, errors, middle, to ) );
+		}
+	} // class SheetTask
+
+} // class ContactSheet
+
@@ -9,12 +9,20 @@ import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.PrintWriter;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -63,6 +71,24 @@ public class DataStitcher {
 	/** default constant for abs_points.txt filename */
 	public static final String ABS_POINTS_FILENAME = "abs_points.txt";
 
+	/** default constant for abs_points.bin filename (binary version of abs_points.txt) */
+	public static final String ABS_POINTS_BINARY_FILENAME = "abs_points.bin";
+
+	/** magic number at the start and at the end of abs_points.bin ('MABS') */
+	public static final int ABS_POINTS_BINARY_MAGIC = 0x5342414D;
+
+	/** version of the abs_points.bin format (2: coordinates as double, the same values as in abs_points.txt) */
+	public static final int ABS_POINTS_BINARY_VERSION = 2;
+
+	/** suffix of temporary files, they get renamed once completely written */
+	public static final String TEMPORARY_SUFFIX = ".tmp";
+
+	// flag for writing abs_points.txt too (the binary file is always written); use -DABS_POINTS_TEXT=false to skip it
+	private static final boolean WRITE_ABS_POINTS_TEXT = "false".equalsIgnoreCase( System.getProperty( "ABS_POINTS_TEXT" ) ) == false;
+
+	// whether abs_points.txt is written by this data-stitcher (WRITE_ABS_POINTS_TEXT unless changed)
+	protected boolean writeAbsolutePointsText = WRITE_ABS_POINTS_TEXT;
+
 	// length of larvae at each frame (in pixels)
 	protected int[] length = null;
 
@@ -75,11 +101,21 @@ public class DataStitcher {
 	// keeps the stage position
 	protected List<StagePosition> stagePositionList = new ArrayList<StagePosition>();
 
-	/** formatter, for debugging purposes  */
-	protected static final NumberFormat formatter3 = new DecimalFormat( "#0.000" );	
+	/** formatter, for debugging purposes (one per thread, stitching runs in several threads) */
+	protected static final ThreadLocal<NumberFormat> formatter3 = new ThreadLocal<NumberFormat>() {
+		@Override
+		protected NumberFormat initialValue() {
+			return new DecimalFormat( "#0.000" );
+		}
+	};
 
-	/** another formatter, for debugging purposes  */
-	protected static final NumberFormat formatter1 = new DecimalFormat( "#0.0" );	
+	/** another formatter, for debugging purposes (one per thread) */
+	protected static final ThreadLocal<NumberFormat> formatter1 = new ThreadLocal<NumberFormat>() {
+		@Override
+		protected NumberFormat initialValue() {
+			return new DecimalFormat( "#0.0" );
+		}
+	};
 
 	// remembers the average of distances between frames, already substracting for stage shifts.
 	// Only small gaps are used to calculate average, 
@@ -101,9 +137,18 @@ public class DataStitcher {
 	// image height
 	protected int image_height = 1;
 
+	// frame rate according to the stage information file (-1 when unknown)
+	protected double frame_rate = -1;
+
 	// calculated frame rate considering total time and number of frames
 	protected double actual_frame_rate = -1;
 
+	// parsed stage positions, calibration and timing (kept in a sidecar file to avoid parsing the files again)
+	protected StitcherMetadata metadata = null;
+
+	// report of timing and counters of the run (a new one on each run)
+	protected StitchReport report = new StitchReport();
+
 	// each frame has a time-frame value (in seconds)
 	protected double[] timing = null;
 	
@@ -159,8 +204,25 @@ public class DataStitcher {
 	}
 
 
-	/** for testing purposes only */
+	/** for testing purposes only; with a larva folder as argument: stitches it, then re-stitches it (same data-stitcher) without abs_points.txt */
 	public static void main ( String[] args ) {
+		if( args.length > 0 ) {
+			File textFile = new File( args[ 0 ], ABS_POINTS_FILENAME );
+			File binaryFile = new File( args[ 0 ], ABS_POINTS_BINARY_FILENAME );
+			DataStitcher dataStitcher = new DataStitcher( args[ 0 ] );
+			dataStitcher.setWriteAbsolutePointsText( true );
+			String error = dataStitcher.run();
+			StitchReport firstReport = dataStitcher.getReport();
+			out.println( "stitched: error " + error + ", text file " + textFile.exists() + ", binary file " + binaryFile.exists() );
+			dataStitcher.setWriteAbsolutePointsText( false );
+			error = dataStitcher.run();
+			StitchReport secondReport = dataStitcher.getReport();
+			out.println( "re-stitched without text: error " + error + ", text file " + textFile.exists() + " (expected false), binary file " + binaryFile.exists() );
+			out.println( "reports: frames in " + firstReport.framesIn + " and " + secondReport.framesIn
+				+ ", interpolated " + firstReport.interpolatedFrames + " and " + secondReport.interpolatedFrames
+				+ ", readPoints " + firstReport.getMilliseconds( "readPoints" ) + " and " + secondReport.getMilliseconds( "readPoints" ) + " ms (expected similar)" );
+			return;
+		}; // if
 		if( DEBUG == true ) {
 			String folder = "/data/worm_x1/";
 			DataStitcher dataStitcher = new DataStitcher( folder, STAGE_INFO_XML_FILE, LOG_CSV_FILENAME );
@@ -178,103 +240,233 @@ public class DataStitcher {
 
 
 	/**
-	 * Runs all the steps of data-stitcher
+	 * Runs all the steps of data-stitcher, and writes the report (StitchReport.FILENAME) of the run
 	 * @return  null when things go OK; otherwise it returns an error message
 	 */
 	public String run() {
+		// a data-stitcher can be run again, nothing of the previous run is kept
+		report = new StitchReport();
+		stagePositionList.clear();
+		likelyShiftsMap.clear();
+		avgDistancesSmallGaps = null;
+		long runStart = System.nanoTime();
+		String error = runSteps();
+		report.error = error;
+		report.totalMilliseconds = ( System.nanoTime() - runStart ) / 1000000.0;
+		String reportError = report.write( directory );
+		if( reportError != null ) {
+			out.println( "\t" + reportError );
+		}; // if
+		return error;
+	}
+
+
+	/**
+	 * Runs all the steps of data-stitcher (called by run), keeps time of each step in the report
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	protected String runSteps() {
+		long start = System.nanoTime();
 		String error = readPoints();
+		report.step( "readPoints", start );
 		if( error != null ) {
 			return error;
 		}; // if
+		report.framesIn = points.length;
+		report.validFramesIn = countValidFrames( points );
+
+		start = System.nanoTime();
+		metadata = new StitcherMetadata( directory );
+		metadata.read();
+		report.step( "readSidecar", start );
 
+		start = System.nanoTime();
 		error = readFrametime();
+		report.step( "readFrametime", start );
 		if( error != null ) {
 			return error;
 		}; // if
 
+		start = System.nanoTime();
 		error = calculateLength();
+		report.step( "calculateLength", start );
 		if( error != null ) {
 			return error;
 		}; // if
 
+		start = System.nanoTime();
 		error = detectBadFramesViaLength();
+		report.step( "detectBadFramesViaLength", start );
 		if( error != null ) {
 			return error;
 		}; // if
 
+		start = System.nanoTime();
 		error = findAndFixSwaps();
+		report.step( "findAndFixSwaps", start );
 		if( error != null ) {
 			return error;
 		}; // if
 
+		start = System.nanoTime();
 		error = readStageFile();
+		report.step( "readStageFile", start );
 		if( error != null ) {
 			return error;
 		}; // if
+		report.stagePositions = stagePositionList.size();
 
-		readStageInformation();
+		start = System.nanoTime();
+		error = readStageInformation();
+		report.step( "readStageInformation", start );
+		if( error != null ) {
+			return error;
+		}; // if
+
+		// remember whatever was just parsed
+		start = System.nanoTime();
+		error = metadata.writeWhenModified();
+		report.step( "writeSidecar", start );
+		if( error != null ) {
+			out.println( "\t" + error );
+		}; // if
 
+		start = System.nanoTime();
 		error = setupStagePositionIndexes();
+		report.step( "setupStagePositionIndexes", start );
 		if( error != null ) {
 			return error;
 		}; // if
 
+		start = System.nanoTime();
 		error = absoluteScale( indexInStagePosition, null );
+		report.step( "absoluteScale", start );
 		if( error != null ) {
 			return error;
 		}; // if
 
+		start = System.nanoTime();
 		Double baselineDistance = calculateDistanceTraveled();
+		report.step( "calculateDistanceTraveled", start );
 		if( baselineDistance == null ) {
 			return "ERROR, unable to calculate distance traveled!";
 		}; // if
+		report.distanceBaseline = baselineDistance;
 		if( DEBUG == true ) {
-			out.println( "\t(datastitcher) distance traveled baseline: " + formatter1.format( baselineDistance ) );
+			out.println( "\t(datastitcher) distance traveled baseline: " + formatter1.get().format( baselineDistance ) );
 		}; // if
 
+		start = System.nanoTime();
 		error = fixStageMovements( baselineDistance );
+		report.step( "fixStageMovements", start );
 		if( error != null ) {
 			return error;
 		}; // if
 
+		start = System.nanoTime();
 		error = absoluteScale( indexInStagePosition, null );
+		report.step( "absoluteScale", start );
 		if( error != null ) {
 			return error;
 		}; // if
 
+		start = System.nanoTime();
 		Double distance = calculateDistanceTraveled();
+		report.step( "calculateDistanceTraveled", start );
 		if( distance == null ) {
 			return "ERROR, unable to calculate distance traveled!";
 		}; // if
+		report.distanceAfterStageFix = distance;
 		if( DEBUG == true ) {
-			out.println( "\t(datastitcher) distance traveled : " + formatter1.format( distance ) );
+			out.println( "\t(datastitcher) distance traveled : " + formatter1.get().format( distance ) );
 		}; // if
 
+		start = System.nanoTime();
 		error = interpolateMissingPoints();
+		report.step( "interpolateMissingPoints", start );
 		if( error != null ) {
 			return error;
 		}; // if
 
+		start = System.nanoTime();
 		Double distance2 = calculateDistanceTraveled();
+		report.step( "calculateDistanceTraveled", start );
 		if( distance2 == null ) {
 			return "ERROR, unable to calculate distance traveled (2)!";
 		}; // if
+		report.distanceInterpolated = distance2;
 		if( distance.doubleValue() != distance2.doubleValue() && DEBUG == true ) {
-			out.println( "\t(datastitcher) distance traveled : " + formatter1.format( distance2 ) + " (interpolated)" ); 
+			out.println( "\t(datastitcher) distance traveled : " + formatter1.get().format( distance2 ) + " (interpolated)" ); 
 		}; // if
 
+		start = System.nanoTime();
 		error = calculateAveragesOfDistanceAtLarvaeEndings();
+		report.step( "calculateAveragesOfDistanceAtLarvaeEndings", start );
 		if( error != null ) {
 			return error;
 		}; // if
+		report.framesOut = countValidFrames( absPoints );
+
+		if( writeAbsolutePointsText == true ) {
+			start = System.nanoTime();
+			error = writeAbsolutePoins();
+			report.step( "writeAbsolutePoints", start );
+			if( error != null ) {
+				return error;
+			}; // if
+		}
+		else {
+			// a text file of an earlier run would no longer match the binary file
+			File textFile = new File( directory + ABS_POINTS_FILENAME );
+			if( textFile.exists() == true && textFile.delete() == false ) {
+				return "(datastitcher) Unable to delete the earlier " + textFile.getAbsolutePath();
+			}; // if
+		}; // if
 
-		error = writeAbsolutePoins();
+		start = System.nanoTime();
+		error = writeAbsolutePointsBinary();
+		report.step( "writeAbsolutePointsBinary", start );
 		if( error != null ) {
 			return error;
 		}; // if
 		return null;
 	}
 
+
+	/**
+	 * Sets whether abs_points.txt is written (the binary file is always written);
+	 * when it is not, an abs_points.txt of an earlier run is deleted
+	 * @param  writeAbsolutePointsText  true to write the text file
+	 */
+	public void setWriteAbsolutePointsText( boolean writeAbsolutePointsText ) {
+		this.writeAbsolutePointsText = writeAbsolutePointsText;
+	}
+
+
+	/**
+	 * Gets the report of timing and counters of the run
+	 * @return  the report
+	 */
+	public StitchReport getReport() {
+		return report;
+	}
+
+
+	/**
+	 * Counts the valid (non-null) frames
+	 * @param  frames  the points of frames
+	 * @return  the number of valid frames
+	 */
+	protected static int countValidFrames( double[][][] frames ) {
+		int count = 0;
+		for( int frame = 0; frame < frames.length; frame++ ) {
+			if( frames[ frame ] != null ) {
+				count++;
+			}; // if
+		}; // for
+		return count;
+	}
+
 	 
 	/**
 	 * Detects bad frames via length statistics
@@ -331,6 +523,7 @@ public class DataStitcher {
 				}; // if
 			}; // if
 		}; // for
+		report.invalidatedByLength += invalidatedCount;
 		if( DEBUG == true ) {
 			out.println( "\t(datastitcher) " + invalidatedCount + " frames were invalidated via length-statistics." );
 		}; // if
@@ -383,6 +576,12 @@ public class DataStitcher {
 			return "(datastitcher) Unable to continue. Must read points file first.";
 		}; // if
 
+		if( metadata != null && metadata.timing != null ) {
+			timing = metadata.timing;
+			totalTimeInSeconds = metadata.totalTimeInSeconds;
+			return verifyFrametime();
+		}; // if
+
 		String filename = directory + Snappy.FRAME_TIME_FILENAME;
 		List<String> linesList = new ArrayList<String>();
 		try {
@@ -416,13 +615,26 @@ public class DataStitcher {
 		if( totalTimeInSeconds == -1 ) {
 			return "(datastitcher) Unable to correctly read value of time in seconds.";
 		}; // if
+		if( metadata != null ) {
+			metadata.setTiming( timing, totalTimeInSeconds );
+		}; // if
+		return verifyFrametime();
+	}
+
+
+	/**
+	 * Verifies that timing matches the points, and calculates the actual frame rate
+	 * (called by readFrametime)
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	protected String verifyFrametime() {
 		if( points.length != timing.length ) {
 			return "(datastitcher) Error, frames in points (" + points.length + ") is different than frames in frametime (" + timing.length + ")";
 		}; // if
 		actual_frame_rate = points.length / totalTimeInSeconds;
 		if( DEBUG == true ) {
-			out.println( "\t(datastitcher) duration (seconds) : " + formatter1.format( totalTimeInSeconds ) );
-			out.println( "\t(datastitcher) actual frame rate  : " + formatter1.format( actual_frame_rate ) );
+			out.println( "\t(datastitcher) duration (seconds) : " + formatter1.get().format( totalTimeInSeconds ) );
+			out.println( "\t(datastitcher) actual frame rate  : " + formatter1.get().format( actual_frame_rate ) );
 		}; // if
 		return null;
 	}
@@ -430,24 +642,42 @@ public class DataStitcher {
 
 	/** 
 	 * Reads the stage information file ( STAGE_INFO_XML_FILE )
+	 * @return  null when things go OK; otherwise it returns an error message
 	 */
-	public void readStageInformation() {
-		// read stage information
-		readInfo( directory + STAGE_INFO_XML_FILE ); 
+	public String readStageInformation() {
+		// read stage information (unless it is already known from the sidecar file)
+		if( metadata != null && metadata.calibrationFlag == true ) {
+			x_steps_per_pixel = metadata.x_steps_per_pixel;
+			y_steps_per_pixel = metadata.y_steps_per_pixel;
+			image_width = metadata.image_width;
+			image_height = metadata.image_height;
+			frame_rate = metadata.frame_rate;
+		}
+		else {
+			String error = readInfo( directory + STAGE_INFO_XML_FILE ); 
+			if( error != null ) {
+				return error;
+			}; // if
+			if( metadata != null ) {
+				metadata.setCalibration( x_steps_per_pixel, y_steps_per_pixel, image_width, image_height, frame_rate );
+			}; // if
+		}; // if
 		if( DEBUG == true ) {
 			out.println( "\t(datastitcher) image_width " + image_width );
 			out.println( "\t(datastitcher) image_height " + image_height );
 			out.println( "\t(datastitcher) x_steps_per_pixel " + x_steps_per_pixel );
 			out.println( "\t(datastitcher) y_steps_per_pixel " + y_steps_per_pixel );
 		}; // if
+		return null;
 	}
 
 	
 	/**
 	 * reads the stage information
 	 * @param  filename  the filename (normally STAGE_INFO_XML_FILE)
+	 * @return  null when things go OK; otherwise it returns an error message
 	 */
-	protected void readInfo( String filename ) {
+	protected String readInfo( String filename ) {
 		try{
 			BufferedReader br = new BufferedReader( new FileReader( filename ) );
 			String line = null;
@@ -494,22 +724,30 @@ public class DataStitcher {
 				}
 				if( frame && line.indexOf( "<rate>" ) >= 0 ) {
 					line = line.substring( line.indexOf( "<rate>" ) + 6, line.indexOf( "</rate>" ) );
+					try {
+						frame_rate = Double.parseDouble( line.trim() );
+					}
+					catch( NumberFormatException nfe ) {
+						// the frame rate is not used for stitching, unknown value is OK
+						frame_rate = -1;
+					}; // try
 					continue;
 				}; // continue
 			}
 			br.close();			
 		}
 		catch ( Exception e ) {
-	      out.println ( "\t(datastitcher::readInfo) Error: " + e );
-	      System.exit( -1 );
-     	}; // try 	
+			out.println ( "\t(datastitcher::readInfo) Error: " + e );
+			return "(datastitcher) Error reading " + filename + " : " + e;
+		}; // try 	
+		return null;
 	}
 	
 	/**
 	 * Read the points file and store all points in an array
 	 * points[f][0][0]-points[f][0][12]: the X-coordinates of the 13 points on frame f;
 	 * points[f][1][0]-points[f][1][12]: the Y-coordinates of the 13 points on frame f;
-	 * when there is some error, it returns null ( or exits via system.exit() )
+	 * when there is some error, it returns null
 	 * @param  filename  the file name (normally POINTS_FILENAME)
 	 */
 	public static double[][][] readPoints( String filename ) {
@@ -558,10 +796,9 @@ public class DataStitcher {
 			return points;			
 		}	
 		catch( Exception e ) {
-	       out.println ( "Error: " + e );
-	       System.exit( -1 );
-      }; // try 	
-      return null;		
+			out.println ( "Error: " + e + " ( " + filename + " )" );
+		}; // try 	
+		return null;		
 	}
 
 	
@@ -634,6 +871,7 @@ public class DataStitcher {
 			validFrameStart = frame;
 		}; // for
 		
+		report.interpolatedFrames += fixedFramesCount;
 		if( DEBUG == true && fixedFramesCount > 0 ) {
 			out.println( "\t(datastitcher) fixed " + fixedFramesCount + " frames via extrapolation" );
 		}; // if
@@ -651,8 +889,9 @@ public class DataStitcher {
 			out.println( "ERROR, absPoints is null, in DataStitcher::writeAbsolutePoins" );
 			return null;
 		}; // if
+		File temporaryFile = new File( directory + ABS_POINTS_FILENAME + TEMPORARY_SUFFIX );
 		try {
-			BufferedWriter bufferedWriter = new BufferedWriter( new FileWriter( directory + ABS_POINTS_FILENAME ) );	
+			BufferedWriter bufferedWriter = new BufferedWriter( new FileWriter( temporaryFile ) );	
 			PrintWriter printWriter = new PrintWriter( bufferedWriter );
 			printWriter.println( ">frame rate:\t" + actual_frame_rate );	
 			for( int i = 0; i < absPoints.length; i++ ) {
@@ -669,11 +908,101 @@ public class DataStitcher {
 				printWriter.println( absPoints[i][0][12] + "\t" + absPoints[i][1][12] ); 
 			}; // for
 			printWriter.close();
+			if( printWriter.checkError() == true ) {
+				temporaryFile.delete();
+				return "(datastitcher) Error writing " + temporaryFile.getAbsolutePath();
+			}; // if
 		}
 		catch( Exception e ) {
 			e.printStackTrace();
+			temporaryFile.delete();
 			return e.getMessage();
 		}; // try
+		return moveIntoPlace( temporaryFile, new File( directory + ABS_POINTS_FILENAME ) );
+	}
+
+
+	/**
+	 * Writes absolute-points to binary file (ABS_POINTS_BINARY_FILENAME), all values are little-endian:
+	 * header (magic, version, frame rate as double, frame count, points per frame),
+	 * coordinates as double (per frame: 13 x values followed by 13 y values, NaN for invalid frames),
+	 * validity bitmap (one bit per frame, set when the frame is valid), 
+	 * and footer index (offset of coordinates, offset of bitmap, frame count, magic)
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String writeAbsolutePointsBinary() {
+		if( absPoints == null ) {
+			out.println( "ERROR, absPoints is null, in DataStitcher::writeAbsolutePointsBinary" );
+			return null;
+		}; // if
+		final int headerSize = 4 + 4 + 8 + 4 + 4;
+		final int footerSize = 8 + 8 + 4 + 4;
+		final int frameSize = 2 * 13 * 8;
+		int bitmapSize = ( absPoints.length + 7 ) / 8;
+		long coordinatesOffset = headerSize;
+		long bitmapOffset = coordinatesOffset + (long) absPoints.length * frameSize;
+		ByteBuffer buffer = ByteBuffer.allocate( headerSize + absPoints.length * frameSize + bitmapSize + footerSize );
+		buffer.order( ByteOrder.LITTLE_ENDIAN );
+		buffer.putInt( ABS_POINTS_BINARY_MAGIC );
+		buffer.putInt( ABS_POINTS_BINARY_VERSION );
+		buffer.putDouble( actual_frame_rate );
+		buffer.putInt( absPoints.length );
+		buffer.putInt( 13 );
+		byte[] bitmap = new byte[ bitmapSize ];
+		for( int i = 0; i < absPoints.length; i++ ) {
+			for( int xy = 0; xy < 2; xy++ ) {
+				for( int j = 0; j < 13; j++ ) {
+					buffer.putDouble( absPoints[ i ] == null ? Double.NaN : absPoints[ i ][ xy ][ j ] );
+				}; // for
+			}; // for
+			if( absPoints[ i ] != null ) {
+				bitmap[ i / 8 ] |= (byte) ( 1 << ( i % 8 ) );
+			}; // if
+		}; // for
+		buffer.put( bitmap );
+		buffer.putLong( coordinatesOffset );
+		buffer.putLong( bitmapOffset );
+		buffer.putInt( absPoints.length );
+		buffer.putInt( ABS_POINTS_BINARY_MAGIC );
+		buffer.flip();
+		File temporaryFile = new File( directory + ABS_POINTS_BINARY_FILENAME + TEMPORARY_SUFFIX );
+		try {
+			FileOutputStream fileOutputStream = new FileOutputStream( temporaryFile );
+			FileChannel channel = fileOutputStream.getChannel();
+			while( buffer.hasRemaining() == true ) {
+				channel.write( buffer );
+			}; // while
+			fileOutputStream.close();
+		}
+		catch( IOException e ) {
+			e.printStackTrace();
+			temporaryFile.delete();
+			return e.getMessage();
+		}; // try
+		return moveIntoPlace( temporaryFile, new File( directory + ABS_POINTS_BINARY_FILENAME ) );
+	}
+
+
+	/**
+	 * Replaces a file with a (completely written) temporary file, atomically when the file-system allows it;
+	 * this way readers never see a partially written file
+	 * @param  temporaryFile  the temporary file
+	 * @param  file  the file to be replaced
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public static String moveIntoPlace( File temporaryFile, File file ) {
+		try {
+			try {
+				Files.move( temporaryFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING );
+			}
+			catch( AtomicMoveNotSupportedException amnse ) {
+				Files.move( temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+			}; // try
+		}
+		catch( IOException e ) {
+			temporaryFile.delete();
+			return "(datastitcher) Unable to rename " + temporaryFile.getAbsolutePath() + " to " + file.getName() + " : " + e;
+		}; // try
 		return null;
 	}
 
@@ -804,11 +1133,12 @@ public class DataStitcher {
 						avgDistancesSmallGapList.add( avgDistances );
 					}; // if
 					if( flagMessages == true ) {
-						out.println( "[" + frame + "]  (easy-case) avgDistances: " + formatter1.format( avgDistances ) + "  \tif swapped: " + formatter1.format( avgReversedDistances )
+						out.println( "[" + frame + "]  (easy-case) avgDistances: " + formatter1.get().format( avgDistances ) + "  \tif swapped: " + formatter1.get().format( avgReversedDistances )
 						+ " (avgReversedDistances)  " + ( swapNeeded ? "swapit" : ". noop. ")
 						+ "  " + (rememberAvgDistance == null ? "-remember-avg-distance-is-null-" : "" ) );
 					}
 					if( swapNeeded == true ) {
+						report.swapsFixed++;
 						holdx = Arrays.copyOf( x, x.length );
 						holdy = Arrays.copyOf( y, y.length );
 						for( int p = 0; p < x.length; p++ ) {
@@ -827,8 +1157,8 @@ public class DataStitcher {
 								double yPrev = points[ prevFrame ][ 1 ][ p ];
 								xDifferences[ p ] = x[ p ] - xPrev;
 								yDifferences[ p ] = y[ p ] - yPrev;
-								//out.println( "[" + frame + "]  lotsofmovement x " + formatter1.format( x[ p ] ) + "\t" + formatter1.format( xPrev ) + "\t" + formatter1.format( xDifferences[ p ] )
-								//+ " , \t" + formatter1.format( y[p]) + "  " + formatter1.format(yPrev) + "  " + formatter1.format(yDifferences[p]));
+								//out.println( "[" + frame + "]  lotsofmovement x " + formatter1.get().format( x[ p ] ) + "\t" + formatter1.get().format( xPrev ) + "\t" + formatter1.get().format( xDifferences[ p ] )
+								//+ " , \t" + formatter1.get().format( y[p]) + "  " + formatter1.get().format(yPrev) + "  " + formatter1.get().format(yDifferences[p]));
 							}; // for
 							int xAvgDifference = (int) Math.ceil( StatUtils.mean( xDifferences ) );
 							int yAvgDifference = (int) Math.ceil( StatUtils.mean( yDifferences ) );
@@ -841,8 +1171,8 @@ public class DataStitcher {
 								double yPrev = points[ prevFrame ][ 1 ][ p ];
 								xDifferences[ p ] = x[ x.length - p - 1 ] - xPrev;
 								yDifferences[ p ] = y[ y.length - p - 1 ] - yPrev;
-								//out.println( "[" + frame + "]  lotsofmovement x " + formatter1.format( x[ p ] ) + "\t" + formatter1.format( xPrev ) + "\t" + formatter1.format( xDifferences[ p ] )
-								//+ " , \t" + formatter1.format( y[p]) + "  " + formatter1.format(yPrev) + "  " + formatter1.format(yDifferences[p]));
+								//out.println( "[" + frame + "]  lotsofmovement x " + formatter1.get().format( x[ p ] ) + "\t" + formatter1.get().format( xPrev ) + "\t" + formatter1.get().format( xDifferences[ p ] )
+								//+ " , \t" + formatter1.get().format( y[p]) + "  " + formatter1.get().format(yPrev) + "  " + formatter1.get().format(yDifferences[p]));
 							}; // for
 							int xStdevDifferenceReversed = (int) Math.ceil( Math.sqrt( StatUtils.variance( xDifferences ) ) );
 							int yStdevDifferenceReversed = (int) Math.ceil( Math.sqrt( StatUtils.variance( yDifferences ) ) );
@@ -867,7 +1197,7 @@ public class DataStitcher {
 							}; // for
 							avgReversedDistances = StatUtils.mean( reversedDistances );
 							if( flagMessages == true ) {
-								out.println( "[" + frame + "]  lotsofmovement avgDistances " + formatter1.format( avgDistances) + " == " + formatter1.format(avgReversedDistances) );
+								out.println( "[" + frame + "]  lotsofmovement avgDistances " + formatter1.get().format( avgDistances) + " == " + formatter1.get().format(avgReversedDistances) );
 							}
 							rememberAvgDistance = null;
 							swapNeeded = false;
@@ -881,6 +1211,7 @@ public class DataStitcher {
 								avgDistancesSmallGapList.add( avgDistances );
 							}; // if
 							if( swapNeeded == true ) {
+								report.swapsFixed++;
 								holdx = Arrays.copyOf( x, x.length );
 								holdy = Arrays.copyOf( y, y.length );
 								for( int p = 0; p < x.length; p++ ) {
@@ -908,7 +1239,7 @@ public class DataStitcher {
 		if( avgDistancesSmallGapList.size() > 99 ) {
 			avgDistancesSmallGaps = calculateMean( avgDistancesSmallGapList );
 			if( avgDistancesSmallGaps != null && DEBUG == true ) {
-				out.println( "\t(datastitcher) the mean of small gaps is " + formatter1.format( avgDistancesSmallGaps ) );
+				out.println( "\t(datastitcher) the mean of small gaps is " + formatter1.get().format( avgDistancesSmallGaps ) );
 			}; // if
 		}; // if
 		return null;
@@ -974,6 +1305,7 @@ public class DataStitcher {
 		}; // if
 		if( first4Mean < last4Mean ) {
 			// swapping of points is required
+			report.endsSwapped = true;
 			if( DEBUG == true ) {
 				out.println( "\t(datastitcher) swapping of points is required." );
 			}
@@ -1009,19 +1341,15 @@ public class DataStitcher {
 		int[] indexInStageWork = Arrays.copyOf( indexInStagePosition, indexInStagePosition.length );
 		int indexOfBest = 0;
 		Double bestDistance = baselineDistance;
+		// first frame of each stage index; adjusting a stage index only changes frames of that index and the previous one,
+		// therefore first frames of the stage indexes still to be adjusted stay the same
+		int[] firstFrame = StageTimeline.firstFrames( indexInStageWork, stagePositionList.size() );
 		// we start attempting to adjust index 1
 		int stageIndex = 1;
 		int stageDebug = -990; // used in debugging only
 		while( stageIndex < stagePositionList.size() ) {
-			// find the first frame with stageIndexPosition same as stageIndex
-			int foundItInFrame = -1;
-			for( int frame = 0; frame < points.length; frame++ ) {
-				if( indexInStageWork[ frame ] == stageIndex ) {
-					foundItInFrame = frame;
-					//out.println( "  found stageIndex " + stageIndex + " in frame: " + foundItInFrame );
-					break;
-				}; // if
-			}; // for
+			// the first frame with stageIndexPosition same as stageIndex
+			int foundItInFrame = firstFrame[ stageIndex ];
 			// when not found, then might as well leave (possible error if such thing happens)
 			if( foundItInFrame == -1 ) {
 				out.println( "WARNING, foundItInFrame is -1, stageIndex is: " + stageIndex );
@@ -1063,17 +1391,20 @@ public class DataStitcher {
 					return error;
 				}; // if
 				Double distance = calculateDistanceTraveled();
-				//out.println( "        distance: " +  formatter3.format( distance ) );
+				//out.println( "        distance: " +  formatter3.get().format( distance ) );
 				if( distance != null && distance < bestDistance ) {
 					bestDistance = distance;
 					indexOfBest = analyzeFrame;
-					//out.println( "         best     " +  formatter3.format( bestDistance ) );
+					//out.println( "         best     " +  formatter3.get().format( bestDistance ) );
 				}; // if
 
 			}; // for
 			if( stageIndex >= stageDebug && stageIndex < ( stageDebug + 5 ) ) {
-			out.println( "     -- best     " +  formatter3.format( bestDistance ) + " @ " + indexOfBest );
+			out.println( "     -- best     " +  formatter3.get().format( bestDistance ) + " @ " + indexOfBest );
 			}
+			if( indexOfBest != foundItInFrame ) {
+				report.stageBoundariesMoved++;
+			}; // if
 			// update indexInStageWork with indexOfBest (almost same loop as earlier)
 			for( int update = startFrame; update <= endingFrame; update++ ) {
 				// skip frames having too smaller index or bigger than the one we're interested
@@ -1104,6 +1435,13 @@ public class DataStitcher {
 	 * @return  null when things go OK; otherwise it returns an error message
 	 */
 	public String readStageFile() {
+		if( metadata != null && metadata.stagePositionList != null ) {
+			stagePositionList.addAll( metadata.stagePositionList );
+			if( DEBUG == true ) {
+				out.println( "\t(datastitcher) counted " + stagePositionList.size() + " stage-coordinates (sidecar file)" );
+			}; // if
+			return null;
+		}; // if
 		String filename = directory + LOG_CSV_FILENAME;
 		
 		try {
@@ -1159,6 +1497,9 @@ public class DataStitcher {
 			e.printStackTrace();
 			return "Error reading stage file: " + e.getMessage();
 		}; // try
+		if( metadata != null ) {
+			metadata.setStagePositions( stagePositionList );
+		}; // if
 		if( DEBUG == true ) {
 			out.println( "\t(datastitcher) counted " + stagePositionList.size() + " stage-coordinates" );
 		}; // if
@@ -1168,7 +1509,7 @@ public class DataStitcher {
 	
 	/** 
 	 * Sets up the array of position-index, each frame has a reference to stage position
-	 * (uses array: timing)
+	 * (uses array: timing, the stage position is found via binary search in the stage timeline)
 	 * @return  null when things go OK; otherwise it returns an error message
 	 */
 	public String setupStagePositionIndexes() {
@@ -1182,37 +1523,13 @@ public class DataStitcher {
 		if( stagePositionList.size() == 0 ) {
 			return "FATAL ERROR, the stage positions must at least have one item!";
 		}; // if
-		indexInStagePosition = new int[ points.length ];
-		
-		int positionIndex = 0;
-		StagePosition currentStagePosition = stagePositionList.get( positionIndex );
-		StagePosition nextStagePosition = currentStagePosition;
-		if( stagePositionList.size() > ( positionIndex + 1 ) ) {
-			nextStagePosition = stagePositionList.get( positionIndex + 1 );
-		}; // if
-
-		for( int frame = 0; frame < points.length; frame++ ) {
-			indexInStagePosition[ frame ] = positionIndex;
-			if( timing[ frame ] >= currentStagePosition.timeframe
-			&& nextStagePosition != null
-			&& timing[ frame ] > nextStagePosition.timeframe ) {
-				positionIndex++;
-				if( stagePositionList.size() > positionIndex ) {
-					currentStagePosition = stagePositionList.get( positionIndex );
-					indexInStagePosition[ frame ] = positionIndex;
-				}; // if
-				if( stagePositionList.size() > ( positionIndex + 1 ) ) {
-					nextStagePosition = stagePositionList.get( positionIndex + 1 );
-				}
-				else {
-					nextStagePosition = null;
-				}; // if
-			}; // if
-		}; // for
-		if( nextStagePosition != null ) {
+		StageTimeline stageTimeline = new StageTimeline( stagePositionList );
+		indexInStagePosition = stageTimeline.indexesOfFrames( timing );
+		// position index of the last frame
+		int positionIndex = indexInStagePosition[ points.length - 1 ];
+		if( ( positionIndex + 1 ) < stagePositionList.size() && points.length > 1 ) {
 			// see whether we can insert it at the end (only when at least 2 frames have the same position index)
-			if( indexInStagePosition[ points.length - 1 ] == positionIndex 
-			&&  indexInStagePosition[ points.length - 2 ] == positionIndex ) {
+			if( indexInStagePosition[ points.length - 2 ] == positionIndex ) {
 				indexInStagePosition[ points.length - 2 ] = positionIndex + 1;
 			}; // if
 		}
@@ -1249,9 +1566,9 @@ public class DataStitcher {
 			xPrev = x;
 			yPrev = y;
 			if( frame <0) {
-				out.println( "\t" + frame + "  " + formatter3.format( x ) + " , " + formatter3.format( y ) 
-				+ " hop: " + formatter3.format( howFar ) 
-				+ " sofar: " + formatter3.format( distance ) );
+				out.println( "\t" + frame + "  " + formatter3.get().format( x ) + " , " + formatter3.get().format( y ) 
+				+ " hop: " + formatter3.get().format( howFar ) 
+				+ " sofar: " + formatter3.get().format( distance ) );
 			}
 		}; // for
 		return new Double( distance );
@@ -1295,7 +1612,7 @@ public class DataStitcher {
 			if( messageFlag == true && spacing != null ) {
 				out.println( spacing + "[" + frame + "] stage: " + positionIndex 
 				+ " , " + points[ frame ][ 0 ][ 6 ] + "," + points[ frame ][ 1 ][ 6 ]
-				+ " , " + formatter3.format( absPoints[ frame ][ 0 ][ 6 ] ) + "," + formatter3.format( absPoints[ frame ][ 1 ][ 6 ] )
+				+ " , " + formatter3.get().format( absPoints[ frame ][ 0 ][ 6 ] ) + "," + formatter3.get().format( absPoints[ frame ][ 1 ][ 6 ] )
 				);
 			}
 		}
@@ -721,6 +721,17 @@ public class MagImageProcessor {
      * @param filename the file name
      */
     public void outputImage(ImageProcessor ip, String filename) {
+        saveJpeg(ip, filename);
+    }
+
+    /**
+     * Writes an image to a specified filename (jpeg extension is added when
+     * needed); it uses no fields, so it can run in any thread
+     *
+     * @param ip the image-processor
+     * @param filename the file name
+     */
+    public static void saveJpeg(ImageProcessor ip, String filename) {
         ImagePlus imgPls = new ImagePlus(null, ip);
         FileSaver fs = new FileSaver(imgPls);
         if (filename.indexOf(".jpg") < 0 && filename.indexOf(".JPG") < 0) {
@@ -735,13 +746,24 @@ public class MagImageProcessor {
 	 * @param  overlayImage  the name given to the file (jpg default) that will have overlay points 
 	 */
     public void outputOverlayImage(String overlayImage) {
+        outputOverlayImage(oriImage, spine, overlayImage);
+    }
+
+	/**
+	 * Super-impose the spine points (red) on an image, and then writes the image to a filename;
+	 * it uses no fields, so it can run in any thread (see OverlayWriter)
+	 * @param  image  the 8-bit image of the frame (it is not modified)
+	 * @param  spine  the spine points, null when there is no valid spine
+	 * @param  overlayImage  the name given to the file (jpg default) that will have overlay points 
+	 */
+    public static void outputOverlayImage(ByteProcessor image, int[][] spine, String overlayImage) {
         if (spine == null) {
-            outputImage(oriImage, overlayImage); //no valid spine
+            saveJpeg(image, overlayImage); //no valid spine
             return;
         }
 
         //load original image, convert to RGB
-        ImagePlus imp = new ImagePlus("dummy", oriImage);
+        ImagePlus imp = new ImagePlus("dummy", image);
         ImageConverter imgcvt = new ImageConverter(imp);
         imgcvt.convertToRGB();
         ImageProcessor ip = imp.getProcessor();
@@ -764,7 +786,7 @@ public class MagImageProcessor {
         x = (int) (spine[ 0][ 0] + 0.5);
         y = (int) (spine[ 1][ 0] + 0.5);
         ip.drawString(x + " , " + y + " (point " + 1 + ")", x, (y - 20));
-        outputImage(ip, overlayImage);
+        saveJpeg(ip, overlayImage);
     }
 
 }
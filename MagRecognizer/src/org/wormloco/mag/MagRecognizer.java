@@ -206,7 +206,7 @@ public class MagRecognizer{
 						}; // if
 						historicalFile = new File( targetDirectory, "historical." + number + ".frametime.txt" );
 					} while( historicalFile.exists() == true );
-					for( String each : new String[] { "abs_points.txt", Snappy.POINTS_FILENAME, "frametime.txt" } ) {
+					for( String each : new String[] { "abs_points.txt", DataStitcher.ABS_POINTS_BINARY_FILENAME, Snappy.POINTS_FILENAME, "frametime.txt" } ) {
 						historicalFile = new File( targetDirectory, "historical." + number + "." + each );
 						File file = new File( targetDirectory, each );
 						if( file.exists() == true ) {
@@ -298,7 +298,7 @@ public class MagRecognizer{
 					}; // for
 				}; // if
 				
-				// data-sticher wil create abs_points text file
+				// data-sticher wil create abs_points text file (and its binary version)
 				DataStitcher dataStitcher = new DataStitcher( targetDirectory.getAbsolutePath() );
 				String error = dataStitcher.run();
 				if( error == null ) {
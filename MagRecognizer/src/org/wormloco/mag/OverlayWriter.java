@@ -0,0 +1,256 @@
+/*
+ * OverlayWriter.java
+ *
+ */
+
+package org.wormloco.mag;
+
+import ij.process.ByteProcessor;
+
+import java.awt.image.BufferedImage;
+
+import java.io.File;
+import java.io.PrintStream;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes overlay images (spine drawn on the frame, JPEG) in background threads, so that recognition
+ * does not wait for the conversion to RGB, the JPEG encoding and the disk; only the 8-bit frame and the spine
+ * are copied, once a permit is acquired (so memory is capped too). At most a few overlays are pending: when that many are pending, submit waits (backpressure)
+ * instead of letting them pile up in memory. Tiles of the contact sheet are made by the same threads
+ *
+ * @author Aleman-Meza
+ */
+
+public class OverlayWriter {
+
+	/** default number of threads */
+	public static final int DEFAULT_THREADS = 1;
+
+	/** default maximum number of overlays pending (being written or waiting) */
+	public static final int DEFAULT_MAX_PENDING = 4;
+
+	// convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// the threads that write the overlays
+	private final ExecutorService executorService;
+
+	// one permit per overlay that can be pending
+	private final Semaphore permits;
+
+	// maximum number of overlays pending
+	private final int maxPending;
+
+	// number of overlays written
+	private final AtomicInteger writtenCount = new AtomicInteger();
+
+	// first error, null when none
+	private volatile String error = null;
+
+	// time spent by submit waiting for a pending overlay to finish (nanoseconds)
+	private long waitNanos = 0;
+
+
+	/**
+	 * Constructor
+	 * @param  threads  number of threads that write the overlays
+	 * @param  maxPending  maximum number of overlays pending (being written or waiting)
+	 */
+	public OverlayWriter( int threads, int maxPending ) {
+		this.maxPending = maxPending;
+		executorService = Executors.newFixedThreadPool( threads );
+		permits = new Semaphore( maxPending );
+	}
+
+
+	/**
+	 * Submits an overlay to be written, it waits when too many overlays are pending
+	 * @param  image  the 8-bit image of the frame (copied, it can change afterwards)
+	 * @param  spine  the spine (copied), null when there is no valid spine
+	 * @param  filename  the name of the file (jpg extension is added when needed)
+	 * @return  null when things go OK; otherwise it returns an error message (e.g., interrupted)
+	 */
+	public String submit( ByteProcessor image, int[][] spine, final String filename ) {
+		long start = System.nanoTime();
+		try {
+			permits.acquire();
+		}
+		catch( InterruptedException ie ) {
+			return "(overlaywriter) Interrupted while waiting to write " + filename;
+		}; // try
+		waitNanos += System.nanoTime() - start;
+		// copied only once there is a permit, so at most maxPending copies exist (the permit is given back when copying fails)
+		ByteProcessor copiedImage = null;
+		int[][] copiedSpine = null;
+		boolean copied = false;
+		try {
+			copiedImage = (ByteProcessor) image.duplicate();
+			copiedSpine = spine == null ? null : new int[][] { spine[ 0 ].clone(), spine[ 1 ].clone() };
+			copied = true;
+		}
+		finally {
+			if( copied == false ) {
+				permits.release();
+			}; // if
+		}; // try
+		final ByteProcessor imageCopy = copiedImage;
+		final int[][] spineCopy = copiedSpine;
+		executorService.execute( new Runnable() {
+			public void run() {
+				try {
+					MagImageProcessor.outputOverlayImage( imageCopy, spineCopy, filename );
+					writtenCount.incrementAndGet();
+				}
+				catch( Exception e ) {
+					if( error == null ) {
+						error = "(overlaywriter) Unable to write " + filename + " : " + e;
+					}; // if
+				}
+				finally {
+					permits.release();
+				}; // try
+			}
+		} );
+		return null;
+	}
+
+
+	/**
+	 * Submits a tile of the contact sheet to be made (downscaled, spine drawn), it waits when too many overlays are pending
+	 * @param  contactSheet  the contact sheet that gets the tile
+	 * @param  image  the image of the frame (not copied, it must not change afterwards)
+	 * @param  spine  the spine (copied), null when there is no valid spine
+	 * @param  frameNumber  the frame number
+	 * @return  null when things go OK; otherwise it returns an error message (e.g., interrupted)
+	 */
+	public String submitTile( final ContactSheet contactSheet, final BufferedImage image, int[][] spine, final int frameNumber ) {
+		long start = System.nanoTime();
+		try {
+			permits.acquire();
+		}
+		catch( InterruptedException ie ) {
+			return "(overlaywriter) Interrupted while waiting to make tile of frame " + frameNumber;
+		}; // try
+		waitNanos += System.nanoTime() - start;
+		final int[][] spineCopy = spine == null ? null : new int[][] { spine[ 0 ].clone(), spine[ 1 ].clone() };
+		executorService.execute( new Runnable() {
+			public void run() {
+				try {
+					contactSheet.addTile( image, spineCopy, frameNumber );
+				}
+				catch( Exception e ) {
+					if( error == null ) {
+						error = "(overlaywriter) Unable to make tile of frame " + frameNumber + " : " + e;
+					}; // if
+				}
+				finally {
+					permits.release();
+				}; // try
+			}
+		} );
+		return null;
+	}
+
+
+	/**
+	 * Waits until all overlays are written, then stops the threads
+	 * @return  null when things go OK; otherwise it returns the first error
+	 */
+	public String close() {
+		executorService.shutdown();
+		try {
+			while( executorService.awaitTermination( 1, TimeUnit.MINUTES ) == false ) {
+				out.println( "\t(overlaywriter) waiting for " + ( maxPending - permits.availablePermits() ) + " overlays to be written" );
+			}; // while
+		}
+		catch( InterruptedException ie ) {
+			executorService.shutdownNow();
+			return "(overlaywriter) Interrupted while waiting for overlays to be written";
+		}; // try
+		return error;
+	}
+
+
+	/**
+	 * Gets the number of overlays written
+	 * @return  the number of overlays
+	 */
+	public int getWrittenCount() {
+		return writtenCount.get();
+	}
+
+
+	/**
+	 * Gets the time submit spent waiting for pending overlays (i.e., the time recognition was held back)
+	 * @return  milliseconds
+	 */
+	public long getWaitMilliseconds() {
+		return waitNanos / 1000000L;
+	}
+
+
+	/** for testing purposes only, writes overlays of a synthetic frame in the background and in the calling thread, into a given folder */
+	public static void main( String[] args ) {
+		File directory = new File( args.length > 0 ? args[ 0 ] : System.getProperty( "java.io.tmpdir" ) );
+		int count = 40;
+		ByteProcessor image = new ByteProcessor( 640, 480 );
+		image.setColor( 200 );
+		image.fill();
+		image.setColor( 40 );
+		image.fillOval( 250, 220, 140, 40 );
+		int[][] spine = new int[ 2 ][ 13 ];
+		for( int i = 0; i < 13; i++ ) {
+			spine[ 0 ][ i ] = 255 + i * 10;
+			spine[ 1 ][ i ] = 240;
+		}; // for
+
+		long start = System.nanoTime();
+		for( int f = 0; f < count; f++ ) {
+			MagImageProcessor.outputOverlayImage( image, f % 10 == 0 ? null : spine, new File( directory, "sync." + f + "overlay" ).getAbsolutePath() );
+		}; // for
+		long syncNanos = System.nanoTime() - start;
+
+		OverlayWriter overlayWriter = new OverlayWriter( DEFAULT_THREADS, DEFAULT_MAX_PENDING );
+		start = System.nanoTime();
+		long submitNanos = 0;
+		for( int f = 0; f < count; f++ ) {
+			long each = System.nanoTime();
+			String error = overlayWriter.submit( image, f % 10 == 0 ? null : spine, new File( directory, "async." + f + "overlay" ).getAbsolutePath() );
+			if( error != null ) {
+				out.println( error );
+			}; // if
+			submitNanos += System.nanoTime() - each;
+			// recognition of the frames in between (about 100 frames)
+			long busy = System.nanoTime() + 20 * 1000000L;
+			while( System.nanoTime() < busy ) {
+				image.get( 0, 0 );
+			}; // while
+		}; // for
+		String error = overlayWriter.close();
+		long asyncNanos = System.nanoTime() - start;
+
+		int identical = 0;
+		for( int f = 0; f < count; f++ ) {
+			File syncFile = new File( directory, "sync." + f + "overlay.jpg" );
+			File asyncFile = new File( directory, "async." + f + "overlay.jpg" );
+			if( asyncFile.length() > 0 && asyncFile.length() == syncFile.length() ) {
+				identical++;
+			}; // if
+			syncFile.delete();
+			asyncFile.delete();
+		}; // for
+		out.println( "in the calling thread: " + syncNanos / 1000000 + " ms for " + count + " overlays" );
+		out.println( "background: submit took " + submitNanos / 1000000 + " ms in total (" + overlayWriter.getWaitMilliseconds() + " ms waiting), "
+			+ asyncNanos / 1000000 + " ms with " + count * 20 + " ms of simulated recognition; written: " + overlayWriter.getWrittenCount()
+			+ ", same size as in the calling thread: " + identical + ", error: " + error );
+	}
+
+} // class OverlayWriter
+
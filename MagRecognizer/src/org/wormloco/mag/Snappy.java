@@ -51,6 +51,9 @@ public class Snappy implements ControllerListener {
 
 	public static final String FRAME_TIME_FILENAME = "frametime.txt";
 
+	/** by default, an overlay file (spine on the frame) is written every this many frames */
+	public static final int DEFAULT_OVERLAY_INTERVAL = 100;
+
 	private boolean stateTransitionOK = true;
 
 	private Object waitSync = new Object();
@@ -64,6 +67,9 @@ public class Snappy implements ControllerListener {
 
 	private static final boolean DEBUG = "true".equalsIgnoreCase( System.getProperty( "DEBUG" ) );
 
+	// an overlay file is written every this many frames, 0 means none (the contact sheet is always made), e.g., -DOVERLAY_INTERVAL=0
+	private int overlayInterval = Integer.getInteger( "OVERLAY_INTERVAL", DEFAULT_OVERLAY_INTERVAL );
+
 	/**
 	 * Main program
 	 */
@@ -82,6 +88,15 @@ public class Snappy implements ControllerListener {
 	}
 
 
+	/**
+	 * Sets how often an overlay file (file.NNNoverlay.jpg) is written; the contact sheet is always made
+	 * @param  overlayInterval  number of frames between overlay files, 0 means no overlay files
+	 */
+	public void setOverlayInterval( int overlayInterval ) {
+		this.overlayInterval = overlayInterval;
+	}
+
+
 	/**
 	 * Takes snaps of the video, find the spine (13 points along the midline of the animal) in each frame, and write the results to a text file.
 	 * @param  filename  name of the file
@@ -140,7 +155,7 @@ public class Snappy implements ControllerListener {
 		double seconds = -1;
 		if( duration != Duration.DURATION_UNKNOWN ) {
 			seconds = duration.getSeconds();
-			out.println( "\t(duration) \t" + DataStitcher.formatter1.format( seconds ) + " seconds" );
+			out.println( "\t(duration) \t" + DataStitcher.formatter1.get().format( seconds ) + " seconds" );
 			totalFrames = framePositioningControl.mapTimeToFrame( duration );
 			if( totalFrames != FramePositioningControl.FRAME_UNKNOWN ) {
 				out.println( "\t(frames) \t" + ( totalFrames + 1 ) );
@@ -169,6 +184,9 @@ public class Snappy implements ControllerListener {
 		//System.err.println( "\tprefetch ok" );
 
 		List<String> timeLines = new ArrayList<String>();
+		ContactSheet contactSheet = new ContactSheet( ContactSheet.TILE_INTERVAL );
+		// overlay files are written in the background, recognition does not wait for the disk
+		OverlayWriter overlayWriter = new OverlayWriter( OverlayWriter.DEFAULT_THREADS, OverlayWriter.DEFAULT_MAX_PENDING );
 		int nextFrame = 0;
 		try {
 			BufferedWriter outfile = new BufferedWriter( new FileWriter( pointsFileDirectory + File.separator + POINTS_FILENAME ) );
@@ -196,6 +214,7 @@ public class Snappy implements ControllerListener {
 				if( error == true ) {
 					outfile.close();
 					player.close();
+					overlayWriter.close();
 					return "Error happened, this video does not seem good";
 				}; // if
 
@@ -205,8 +224,18 @@ public class Snappy implements ControllerListener {
 				graphics.drawImage( image, 0, 0, videoFormat.getSize().width, videoFormat.getSize().height, null );
 
 				MagImageProcessor mag = new MagImageProcessor( bufferedImage );
-				if( ( currentFrame % 100 ) == 0 ) {
-					mag.outputOverlayImage( pointsFileDirectory + File.separator + "file." + currentFrame + "overlay" );
+				if( overlayInterval > 0 && ( currentFrame % overlayInterval ) == 0 ) {
+					String overlayError = overlayWriter.submit( mag.oriImage, mag.spine, pointsFileDirectory + File.separator + "file." + currentFrame + "overlay" );
+					if( overlayError != null ) {
+						out.println( "\t" + overlayError );
+					}; // if
+				}; // if
+				if( ( currentFrame % ContactSheet.TILE_INTERVAL ) == 0 ) {
+					// bufferedImage is not used again by this loop, the tile is made in the background
+					String tileError = overlayWriter.submitTile( contactSheet, bufferedImage, mag.spine, currentFrame );
+					if( tileError != null ) {
+						out.println( "\t" + tileError );
+					}; // if
 				}; // if
 
 				outfile.write( "" + currentFrame );
@@ -236,9 +265,19 @@ public class Snappy implements ControllerListener {
 		}
 		catch( Exception e ) {
 			e.printStackTrace();
+			overlayWriter.close();
 			return e + "";
 		}; // try
 
+		// overlay files are for reviewing only, the recognition is fine without them
+		String overlayError = overlayWriter.close();
+		if( overlayError != null ) {
+			out.println( "\t" + overlayError );
+		}; // if
+		if( DEBUG == true ) {
+			out.println( "\t(overlays) " + overlayWriter.getWrittenCount() + " written, recognition waited " + overlayWriter.getWaitMilliseconds() + " ms for them" );
+		}; // if
+
 		// write the frame-times values
 		if( timeLines.size() > 0 ) {
 			if( totalFrames == FramePositioningControl.FRAME_UNKNOWN ) {
@@ -259,6 +298,14 @@ public class Snappy implements ControllerListener {
 				return ioe.getMessage();
 			}; // try
 		}; // if
+
+		// the contact sheet is for reviewing only, the recognition is fine without it
+		if( contactSheet.size() > 0 ) {
+			String sheetError = contactSheet.write( new File( pointsFileDirectory ) );
+			if( sheetError != null ) {
+				out.println( "\t" + sheetError );
+			}; // if
+		}; // if
 		return null;
 	}
 
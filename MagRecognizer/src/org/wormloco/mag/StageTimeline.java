@@ -0,0 +1,162 @@
+/*
+ * StageTimeline.java
+ *
+ */
+
+package org.wormloco.mag;
+
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Index of the times of stage positions (sorted), lookup of stage position via binary search,
+ * and table of the first frame of each stage index
+ *
+ * @author Aleman-Meza
+ */
+
+public class StageTimeline {
+
+	// convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// time (seconds) of each stage position, non-decreasing
+	private final double[] times;
+
+
+	/**
+	 * Constructor
+	 * @param  stagePositionList  the stage positions (ordered as in the stage file)
+	 */
+	public StageTimeline( List<StagePosition> stagePositionList ) {
+		times = new double[ stagePositionList.size() ];
+		for( int i = 0; i < times.length; i++ ) {
+			times[ i ] = stagePositionList.get( i ).timeframe;
+			// media time going backwards would break the binary search, such position starts at time of the previous one
+			if( i > 0 && times[ i ] < times[ i - 1 ] ) {
+				out.println( "WARNING, time of stage position " + i + " is smaller than time of previous one." );
+				times[ i ] = times[ i - 1 ];
+			}; // if
+		}; // for
+	}
+
+
+	/**
+	 * Gets the number of stage positions
+	 * @return  the number of stage positions
+	 */
+	public int size() {
+		return times.length;
+	}
+
+
+	/**
+	 * Finds the stage position in place at a given time, that is, the last one whose time is smaller than the given time
+	 * @param  time  the time (seconds)
+	 * @return  the index of stage position (zero when time is before all of them)
+	 */
+	public int indexAt( double time ) {
+		int low = 0;
+		int high = times.length - 1;
+		// invariant: times[ j ] < time for all j < low, and times[ j ] >= time for all j > high
+		while( low <= high ) {
+			int middle = ( low + high ) >>> 1;
+			if( times[ middle ] < time ) {
+				low = middle + 1;
+			}
+			else {
+				high = middle - 1;
+			}; // if
+		}; // while
+		return Math.max( 0, low - 1 );
+	}
+
+
+	/**
+	 * Assigns a stage position to each frame; the index of stage position moves forward at most one position per frame
+	 * so that every stage position (up to the last one reached) has at least one frame
+	 * @param  timing  the time (seconds) of each frame
+	 * @return  the index of stage position of each frame
+	 */
+	public int[] indexesOfFrames( double[] timing ) {
+		int[] indexInStagePosition = new int[ timing.length ];
+		int positionIndex = 0;
+		for( int frame = 0; frame < timing.length; frame++ ) {
+			if( indexAt( timing[ frame ] ) > positionIndex ) {
+				positionIndex++;
+			}; // if
+			indexInStagePosition[ frame ] = positionIndex;
+		}; // for
+		return indexInStagePosition;
+	}
+
+
+	/**
+	 * Creates the table of first frame of each stage index
+	 * @param  indexInStage  the index of stage position of each frame
+	 * @param  stages  the number of stage positions
+	 * @return  the first frame of each stage index (-1 when no frame has such stage index)
+	 */
+	public static int[] firstFrames( int[] indexInStage, int stages ) {
+		int[] firstFrame = new int[ stages ];
+		Arrays.fill( firstFrame, -1 );
+		for( int frame = indexInStage.length - 1; frame >= 0; frame-- ) {
+			int stageIndex = indexInStage[ frame ];
+			if( stageIndex >= 0 && stageIndex < stages ) {
+				firstFrame[ stageIndex ] = frame;
+			}; // if
+		}; // for
+		return firstFrame;
+	}
+
+
+	/** for testing purposes only, micro-benchmark of lookups with 2,000 stage moves */
+	public static void main( String[] args ) {
+		final int stages = 2000;
+		final double frameRate = 7.5;
+		// a stage move every 5 seconds or so
+		List<StagePosition> stagePositionList = new ArrayList<StagePosition>();
+		double time = 0;
+		for( int i = 0; i < stages; i++ ) {
+			stagePositionList.add( new StagePosition( time, i, i ) );
+			time += 3 + ( i % 5 );
+		}; // for
+		double[] timing = new double[ (int) ( time * frameRate ) ];
+		for( int frame = 0; frame < timing.length; frame++ ) {
+			timing[ frame ] = frame / frameRate;
+		}; // for
+		out.println( stages + " stage moves, " + timing.length + " frames" );
+
+		for( int round = 0; round < 5; round++ ) {
+			long start = System.nanoTime();
+			StageTimeline stageTimeline = new StageTimeline( stagePositionList );
+			int[] indexInStage = stageTimeline.indexesOfFrames( timing );
+			int[] firstFrame = firstFrames( indexInStage, stages );
+			long indexedNanos = System.nanoTime() - start;
+
+			// previous approach: linear scan of all frames once per stage index
+			start = System.nanoTime();
+			int mismatches = 0;
+			for( int stageIndex = 1; stageIndex < stages; stageIndex++ ) {
+				int foundItInFrame = -1;
+				for( int frame = 0; frame < indexInStage.length; frame++ ) {
+					if( indexInStage[ frame ] == stageIndex ) {
+						foundItInFrame = frame;
+						break;
+					}; // if
+				}; // for
+				if( foundItInFrame != firstFrame[ stageIndex ] ) {
+					mismatches++;
+				}; // if
+			}; // for
+			long scanNanos = System.nanoTime() - start;
+			out.println( "round " + round + ": timeline + first-frame table " + ( indexedNanos / 1000 ) + " microseconds, "
+				+ "linear scans " + ( scanNanos / 1000 ) + " microseconds, mismatches: " + mismatches );
+		}; // for
+	}
+
+} // class StageTimeline
+
@@ -0,0 +1,262 @@
+/*
+ * StitchReport.java
+ *
+ */
+
+package org.wormloco.mag;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+
+/**
+ * Report of one run of the data-stitcher: wall time of each step and counters
+ * (frames invalidated, swapped, interpolated, stage boundaries moved, distances);
+ * written as JSON next to abs_points, and as CSV lines by the batch stitcher
+ *
+ * @author Aleman-Meza
+ */
+
+public class StitchReport {
+
+	/** file-name of the report (JSON) */
+	public static final String FILENAME = "stitch_report.json";
+
+	/** the steps of the data-stitcher, in order of execution (a step executed more than once accumulates its time) */
+	public static final String[] STEPS = new String[] { "readPoints", "readSidecar", "readFrametime", "calculateLength",
+		"detectBadFramesViaLength", "findAndFixSwaps", "readStageFile", "readStageInformation", "writeSidecar",
+		"setupStagePositionIndexes", "absoluteScale", "calculateDistanceTraveled", "fixStageMovements",
+		"interpolateMissingPoints", "calculateAveragesOfDistanceAtLarvaeEndings", "writeAbsolutePoints", "writeAbsolutePointsBinary" };
+
+	/** number of frames in points file */
+	public int framesIn = 0;
+
+	/** number of valid frames in points file */
+	public int validFramesIn = 0;
+
+	/** number of frames invalidated via length statistics */
+	public int invalidatedByLength = 0;
+
+	/** number of frames whose points were swapped (head/tail) with respect to the previous frame */
+	public int swapsFixed = 0;
+
+	/** number of stage positions */
+	public int stagePositions = 0;
+
+	/** number of stage boundaries moved by fixStageMovements */
+	public int stageBoundariesMoved = 0;
+
+	/** number of frames interpolated */
+	public int interpolatedFrames = 0;
+
+	/** number of valid frames written to abs_points */
+	public int framesOut = 0;
+
+	/** whether head and tail were swapped in all frames */
+	public boolean endsSwapped = false;
+
+	/** distance traveled (mm) before fixing stage movements */
+	public Double distanceBaseline = null;
+
+	/** distance traveled (mm) after fixing stage movements */
+	public Double distanceAfterStageFix = null;
+
+	/** distance traveled (mm) after interpolating missing frames */
+	public Double distanceInterpolated = null;
+
+	/** error message of the run, null when things went OK */
+	public String error = null;
+
+	/** wall time of the whole run, in milliseconds */
+	public double totalMilliseconds = 0;
+
+	// wall time of each step, in nanoseconds
+	private final Map<String,Long> stepNanos = new LinkedHashMap<String,Long>();
+
+	// formatter of milliseconds and distances (independent of locale)
+	private final NumberFormat formatter = new DecimalFormat( "#0.0##", new DecimalFormatSymbols( Locale.US ) );
+
+
+	/**
+	 * Adds the time spent in a step
+	 * @param  step  the name of the step (one of STEPS)
+	 * @param  startNanos  value of System.nanoTime() when the step started
+	 */
+	public void step( String step, long startNanos ) {
+		long nanos = System.nanoTime() - startNanos;
+		Long previous = stepNanos.get( step );
+		stepNanos.put( step, previous == null ? nanos : previous + nanos );
+	}
+
+
+	/**
+	 * Gets the time spent in a step
+	 * @param  step  the name of the step
+	 * @return  milliseconds spent in the step, or null when the step was not executed
+	 */
+	public Double getMilliseconds( String step ) {
+		Long nanos = stepNanos.get( step );
+		return nanos == null ? null : nanos / 1000000.0;
+	}
+
+
+	/**
+	 * Gets the report as JSON
+	 * @param  directory  the directory of the run
+	 * @return  the JSON text
+	 */
+	public String toJson( String directory ) {
+		StringBuilder builder = new StringBuilder();
+		builder.append( "{\n" );
+		builder.append( "  \"directory\": " ).append( quote( directory ) ).append( ",\n" );
+		builder.append( "  \"error\": " ).append( quote( error ) ).append( ",\n" );
+		builder.append( "  \"total_ms\": " ).append( formatter.format( totalMilliseconds ) ).append( ",\n" );
+		builder.append( "  \"frames_in\": " ).append( framesIn ).append( ",\n" );
+		builder.append( "  \"valid_frames_in\": " ).append( validFramesIn ).append( ",\n" );
+		builder.append( "  \"invalidated_by_length\": " ).append( invalidatedByLength ).append( ",\n" );
+		builder.append( "  \"swaps_fixed\": " ).append( swapsFixed ).append( ",\n" );
+		builder.append( "  \"stage_positions\": " ).append( stagePositions ).append( ",\n" );
+		builder.append( "  \"stage_boundaries_moved\": " ).append( stageBoundariesMoved ).append( ",\n" );
+		builder.append( "  \"interpolated_frames\": " ).append( interpolatedFrames ).append( ",\n" );
+		builder.append( "  \"frames_out\": " ).append( framesOut ).append( ",\n" );
+		builder.append( "  \"ends_swapped\": " ).append( endsSwapped ).append( ",\n" );
+		builder.append( "  \"distance_baseline_mm\": " ).append( number( distanceBaseline ) ).append( ",\n" );
+		builder.append( "  \"distance_after_stage_fix_mm\": " ).append( number( distanceAfterStageFix ) ).append( ",\n" );
+		builder.append( "  \"distance_interpolated_mm\": " ).append( number( distanceInterpolated ) ).append( ",\n" );
+		builder.append( "  \"steps_ms\": {" );
+		boolean firstFlag = true;
+		for( Map.Entry<String,Long> entry : stepNanos.entrySet() ) {
+			builder.append( firstFlag == true ? "\n" : ",\n" );
+			builder.append( "    " ).append( quote( entry.getKey() ) ).append( ": " ).append( formatter.format( entry.getValue() / 1000000.0 ) );
+			firstFlag = false;
+		}; // for
+		builder.append( "\n  }\n" );
+		builder.append( "}\n" );
+		return builder.toString();
+	}
+
+
+	/**
+	 * Writes the report (JSON) into a directory
+	 * @param  directory  the directory (ending with file-separator)
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String write( String directory ) {
+		File temporaryFile = new File( directory + FILENAME + DataStitcher.TEMPORARY_SUFFIX );
+		try {
+			PrintWriter printWriter = new PrintWriter( new BufferedWriter( new FileWriter( temporaryFile ) ) );
+			printWriter.print( toJson( directory ) );
+			printWriter.close();
+			if( printWriter.checkError() == true ) {
+				temporaryFile.delete();
+				return "(datastitcher) Error writing " + temporaryFile.getAbsolutePath();
+			}; // if
+		}
+		catch( Exception e ) {
+			temporaryFile.delete();
+			return "(datastitcher) Unable to write report: " + e;
+		}; // try
+		return DataStitcher.moveIntoPlace( temporaryFile, new File( directory + FILENAME ) );
+	}
+
+
+	/**
+	 * Gets the header line for CSV output
+	 * @return  the header line
+	 */
+	public static String getCsvHeader() {
+		StringBuilder builder = new StringBuilder( "directory,error,total_ms,frames_in,valid_frames_in,invalidated_by_length,swaps_fixed,"
+			+ "stage_positions,stage_boundaries_moved,interpolated_frames,frames_out,ends_swapped,"
+			+ "distance_baseline_mm,distance_after_stage_fix_mm,distance_interpolated_mm" );
+		for( String step : STEPS ) {
+			builder.append( "," ).append( step ).append( "_ms" );
+		}; // for
+		return builder.toString();
+	}
+
+
+	/**
+	 * Gets the report as CSV line (same columns as getCsvHeader)
+	 * @param  directory  the directory of the run
+	 * @return  the CSV line
+	 */
+	public String toCsvLine( String directory ) {
+		StringBuilder builder = new StringBuilder();
+		builder.append( csv( directory ) ).append( "," ).append( error == null ? "" : csv( error ) );
+		builder.append( "," ).append( formatter.format( totalMilliseconds ) );
+		builder.append( "," ).append( framesIn ).append( "," ).append( validFramesIn ).append( "," ).append( invalidatedByLength );
+		builder.append( "," ).append( swapsFixed ).append( "," ).append( stagePositions ).append( "," ).append( stageBoundariesMoved );
+		builder.append( "," ).append( interpolatedFrames ).append( "," ).append( framesOut ).append( "," ).append( endsSwapped );
+		builder.append( "," ).append( distanceBaseline == null ? "" : formatter.format( distanceBaseline ) );
+		builder.append( "," ).append( distanceAfterStageFix == null ? "" : formatter.format( distanceAfterStageFix ) );
+		builder.append( "," ).append( distanceInterpolated == null ? "" : formatter.format( distanceInterpolated ) );
+		for( String step : STEPS ) {
+			Double milliseconds = getMilliseconds( step );
+			builder.append( "," ).append( milliseconds == null ? "" : formatter.format( milliseconds ) );
+		}; // for
+		return builder.toString();
+	}
+
+
+	/**
+	 * Formats a number for JSON
+	 * @param  value  the value
+	 * @return  the value as text, null when value is null (or not a number)
+	 */
+	private String number( Double value ) {
+		if( value == null || value.isNaN() == true || value.isInfinite() == true ) {
+			return "null";
+		}; // if
+		return formatter.format( value );
+	}
+
+
+	/**
+	 * Quotes a string for JSON
+	 * @param  text  the text
+	 * @return  the quoted text, null when text is null
+	 */
+	private static String quote( String text ) {
+		if( text == null ) {
+			return "null";
+		}; // if
+		StringBuilder builder = new StringBuilder( "\"" );
+		for( int i = 0; i < text.length(); i++ ) {
+			char c = text.charAt( i );
+			if( c == '"' || c == '\\' ) {
+				builder.append( '\\' ).append( c );
+			}
+			else if( c < ' ' ) {
+				builder.append( String.format( "\\u%04x", (int) c ) );
+			}
+			else {
+				builder.append( c );
+			}; // if
+		}; // for
+		return builder.append( "\"" ).toString();
+	}
+
+
+	/**
+	 * Quotes a string for CSV (when needed)
+	 * @param  text  the text
+	 * @return  the text ready for CSV
+	 */
+	private static String csv( String text ) {
+		if( text.indexOf( ',' ) < 0 && text.indexOf( '"' ) < 0 && text.indexOf( '\n' ) < 0 ) {
+			return text;
+		}; // if
+		return "\"" + text.replace( "\"", "\"\"" ).replace( '\n', ' ' ) + "\"";
+	}
+
+} // class StitchReport
+
@@ -0,0 +1,299 @@
+/*
+ * StitcherMetadata.java
+ *
+ */
+
+package org.wormloco.mag;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed metadata used by the data-stitcher, kept in a binary sidecar file so that log.csv, info.xml
+ * and frametime.txt do not need to be parsed again (e.g., --again runs, batch re-stitching);
+ * each section is keyed by size and last-modified time of its source file and it is used only while they match
+ *
+ * @author Aleman-Meza
+ */
+
+public class StitcherMetadata {
+
+	/** file-name of the sidecar file */
+	public static final String FILENAME = "stitcher_metadata.bin";
+
+	// magic number at start of the file ('MAGM')
+	private static final int MAGIC = 0x4D41474D;
+
+	// version of the format of the file
+	private static final int VERSION = 1;
+
+	// convenience on println statements
+	private static final PrintStream out = System.out;
+
+	// flag for debugging purposes
+	private static final boolean DEBUG = "true".equalsIgnoreCase( System.getProperty( "DEBUG" ) );
+
+	// the directory of the files (ending with file-separator)
+	private final String directory;
+
+	/** stage positions (from log.csv), null when not available */
+	protected List<StagePosition> stagePositionList = null;
+
+	/** whether calibration values (from info.xml) are available */
+	protected boolean calibrationFlag = false;
+
+	/** steps per pixel on x axis */
+	protected double x_steps_per_pixel;
+
+	/** steps per pixel on y axis */
+	protected double y_steps_per_pixel;
+
+	/** image width */
+	protected int image_width;
+
+	/** image height */
+	protected int image_height;
+
+	/** frame rate in info.xml (-1 when unknown) */
+	protected double frame_rate;
+
+	/** time-frame value of each frame (from frametime.txt), null when not available */
+	protected double[] timing = null;
+
+	/** total time of video in seconds */
+	protected double totalTimeInSeconds;
+
+	// whether some section was set (and the sidecar file needs to be written)
+	private boolean modifiedFlag = false;
+
+
+	/**
+	 * Constructor, no sections are available until read() is called
+	 * @param  directory  the directory of the files (ending with file-separator)
+	 */
+	public StitcherMetadata( String directory ) {
+		this.directory = directory;
+	}
+
+
+	/**
+	 * Reads the sidecar file, sections whose source file changed (or all of them when there is no sidecar file) are not available
+	 */
+	public void read() {
+		File file = new File( directory + FILENAME );
+		if( file.exists() == false ) {
+			return;
+		}; // if
+		DataInputStream dataInputStream = null;
+		try {
+			dataInputStream = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+			if( dataInputStream.readInt() != MAGIC || dataInputStream.readInt() != VERSION ) {
+				dataInputStream.close();
+				return;
+			}; // if
+
+			// stage positions
+			boolean validFlag = isSameSource( dataInputStream, DataStitcher.LOG_CSV_FILENAME );
+			int size = dataInputStream.readInt();
+			List<StagePosition> list = new ArrayList<StagePosition>( size );
+			for( int i = 0; i < size; i++ ) {
+				double timeframe = dataInputStream.readDouble();
+				double x = dataInputStream.readDouble();
+				double y = dataInputStream.readDouble();
+				list.add( new StagePosition( timeframe, x, y ) );
+			}; // for
+
+			// calibration
+			boolean calibrationValidFlag = isSameSource( dataInputStream, DataStitcher.STAGE_INFO_XML_FILE );
+			double xStepsPerPixel = dataInputStream.readDouble();
+			double yStepsPerPixel = dataInputStream.readDouble();
+			int width = dataInputStream.readInt();
+			int height = dataInputStream.readInt();
+			double rate = dataInputStream.readDouble();
+
+			// timing
+			boolean timingValidFlag = isSameSource( dataInputStream, Snappy.FRAME_TIME_FILENAME );
+			double totalTime = dataInputStream.readDouble();
+			double[] times = new double[ dataInputStream.readInt() ];
+			for( int i = 0; i < times.length; i++ ) {
+				times[ i ] = dataInputStream.readDouble();
+			}; // for
+			dataInputStream.close();
+
+			// the whole file was read, now keep the sections that are still valid
+			if( validFlag == true ) {
+				stagePositionList = list;
+			}; // if
+			if( calibrationValidFlag == true ) {
+				setCalibration( xStepsPerPixel, yStepsPerPixel, width, height, rate );
+			}; // if
+			if( timingValidFlag == true ) {
+				setTiming( times, totalTime );
+			}; // if
+			modifiedFlag = false;
+		}
+		catch( IOException e ) {
+			// a broken sidecar file is just ignored (it will be written again)
+			out.println( "\t(datastitcher) ignoring sidecar file " + file.getAbsolutePath() + " : " + e );
+			try {
+				dataInputStream.close();
+			}
+			catch( IOException ignored ) {
+				// nothing to do
+			}; // try
+			return;
+		}; // try
+		if( DEBUG == true ) {
+			out.println( "\t(datastitcher) sidecar file: stage positions " + ( stagePositionList != null )
+				+ ", calibration " + calibrationFlag + ", timing " + ( timing != null ) );
+		}; // if
+	}
+
+
+	/**
+	 * Reads the key of a section and compares it with the current size and last-modified time of its source file
+	 * @param  dataInputStream  the input stream
+	 * @param  filename  the expected source file of the section
+	 * @return  true when the section was available and its source file has not changed; false otherwise
+	 * @throws  IOException  when the key cannot be read
+	 */
+	private boolean isSameSource( DataInputStream dataInputStream, String filename ) throws IOException {
+		String name = dataInputStream.readUTF();
+		long length = dataInputStream.readLong();
+		long lastModified = dataInputStream.readLong();
+		boolean availableFlag = dataInputStream.readBoolean();
+		if( availableFlag == false || filename.equals( name ) == false ) {
+			return false;
+		}; // if
+		File file = new File( directory + filename );
+		return file.exists() == true && file.length() == length && file.lastModified() == lastModified;
+	}
+
+
+	/**
+	 * Writes the key of a section: name, size and last-modified time of its source file
+	 * @param  dataOutputStream  the output stream
+	 * @param  filename  the source file of the section
+	 * @param  availableFlag  whether the section is available
+	 * @throws  IOException  when the key cannot be written
+	 */
+	private void writeSource( DataOutputStream dataOutputStream, String filename, boolean availableFlag ) throws IOException {
+		File file = new File( directory + filename );
+		dataOutputStream.writeUTF( filename );
+		dataOutputStream.writeLong( file.length() );
+		dataOutputStream.writeLong( file.lastModified() );
+		dataOutputStream.writeBoolean( availableFlag && file.exists() );
+	}
+
+
+	/**
+	 * Sets the stage positions (just parsed from log.csv)
+	 * @param  stagePositionList  the stage positions
+	 */
+	public void setStagePositions( List<StagePosition> stagePositionList ) {
+		this.stagePositionList = new ArrayList<StagePosition>( stagePositionList );
+		modifiedFlag = true;
+	}
+
+
+	/**
+	 * Sets the calibration values (just parsed from info.xml)
+	 * @param  x_steps_per_pixel  steps per pixel on x axis
+	 * @param  y_steps_per_pixel  steps per pixel on y axis
+	 * @param  image_width  image width
+	 * @param  image_height  image height
+	 * @param  frame_rate  frame rate (-1 when unknown)
+	 */
+	public void setCalibration( double x_steps_per_pixel, double y_steps_per_pixel, int image_width, int image_height, double frame_rate ) {
+		this.x_steps_per_pixel = x_steps_per_pixel;
+		this.y_steps_per_pixel = y_steps_per_pixel;
+		this.image_width = image_width;
+		this.image_height = image_height;
+		this.frame_rate = frame_rate;
+		calibrationFlag = true;
+		modifiedFlag = true;
+	}
+
+
+	/**
+	 * Sets the timing values (just parsed from frametime.txt)
+	 * @param  timing  the time-frame value of each frame
+	 * @param  totalTimeInSeconds  total time of video in seconds
+	 */
+	public void setTiming( double[] timing, double totalTimeInSeconds ) {
+		this.timing = timing;
+		this.totalTimeInSeconds = totalTimeInSeconds;
+		modifiedFlag = true;
+	}
+
+
+	/**
+	 * Writes the sidecar file when some section was set since it was read
+	 * @return  null when things go OK; otherwise it returns an error message
+	 */
+	public String writeWhenModified() {
+		if( modifiedFlag == false ) {
+			return null;
+		}; // if
+		File temporaryFile = new File( directory + FILENAME + DataStitcher.TEMPORARY_SUFFIX );
+		try {
+			DataOutputStream dataOutputStream = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temporaryFile ) ) );
+			dataOutputStream.writeInt( MAGIC );
+			dataOutputStream.writeInt( VERSION );
+
+			writeSource( dataOutputStream, DataStitcher.LOG_CSV_FILENAME, stagePositionList != null );
+			if( stagePositionList == null ) {
+				dataOutputStream.writeInt( 0 );
+			}
+			else {
+				dataOutputStream.writeInt( stagePositionList.size() );
+				for( StagePosition stagePosition : stagePositionList ) {
+					dataOutputStream.writeDouble( stagePosition.timeframe );
+					dataOutputStream.writeDouble( stagePosition.x );
+					dataOutputStream.writeDouble( stagePosition.y );
+				}; // for
+			}; // if
+
+			writeSource( dataOutputStream, DataStitcher.STAGE_INFO_XML_FILE, calibrationFlag );
+			dataOutputStream.writeDouble( x_steps_per_pixel );
+			dataOutputStream.writeDouble( y_steps_per_pixel );
+			dataOutputStream.writeInt( image_width );
+			dataOutputStream.writeInt( image_height );
+			dataOutputStream.writeDouble( frame_rate );
+
+			writeSource( dataOutputStream, Snappy.FRAME_TIME_FILENAME, timing != null );
+			dataOutputStream.writeDouble( totalTimeInSeconds );
+			if( timing == null ) {
+				dataOutputStream.writeInt( 0 );
+			}
+			else {
+				dataOutputStream.writeInt( timing.length );
+				for( int i = 0; i < timing.length; i++ ) {
+					dataOutputStream.writeDouble( timing[ i ] );
+				}; // for
+			}; // if
+			dataOutputStream.close();
+		}
+		catch( IOException e ) {
+			temporaryFile.delete();
+			return "(datastitcher) Unable to write sidecar file: " + e;
+		}; // try
+		String error = DataStitcher.moveIntoPlace( temporaryFile, new File( directory + FILENAME ) );
+		if( error == null ) {
+			modifiedFlag = false;
+		}; // if
+		return error;
+	}
+
+} // class StitcherMetadata
+